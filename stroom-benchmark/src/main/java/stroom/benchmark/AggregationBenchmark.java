@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stroom.dashboard.expression.FieldIndexMap;
+import stroom.mapreduce.UnsafePairQueue;
+import stroom.query.CompiledDepths;
+import stroom.query.CompiledFields;
+import stroom.query.Item;
+import stroom.query.ItemAggregator;
+import stroom.query.ItemMapper;
+import stroom.query.ItemPartitioner;
+import stroom.query.TablePayloadHandler;
+import stroom.query.shared.Field;
+import stroom.query.shared.IndexField;
+import stroom.query.shared.IndexFieldsMap;
+import stroom.query.shared.Sort;
+import stroom.query.shared.Sort.SortDirection;
+import stroom.query.shared.TableSettings;
+import stroom.util.task.MonitorImpl;
+
+/**
+ * Measures dashboard table aggregation of search results: mapping values to
+ * items, partitioning or aggregating them as they arrive (the work a table
+ * coprocessor does before sending a payload) and reducing payloads into a
+ * result store on the search node.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AggregationBenchmark {
+    private static final int ROWS = 100000;
+    private static final String[] METHODS = { "GET", "POST", "PUT", "DELETE" };
+
+    /**
+     * The number of distinct users, i.e. the number of groups the rows are
+     * aggregated into.
+     */
+    @Param({ "100", "10000" })
+    public int groups;
+
+    private TableSettings tableSettings;
+    private CompiledFields compiledFields;
+    private CompiledDepths compiledDepths;
+    private String[][] rows;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final IndexFieldsMap indexFieldsMap = new IndexFieldsMap();
+        indexFieldsMap.put(IndexField.createField("User"));
+        indexFieldsMap.put(IndexField.createField("Method"));
+        indexFieldsMap.put(IndexField.createNumericField("Size"));
+
+        final Field user = new Field("User");
+        user.setExpression("${User}");
+        user.setGroup(0);
+        final Field method = new Field("Method");
+        method.setExpression("${Method}");
+        method.setGroup(0);
+        final Field count = new Field("Count");
+        count.setExpression("count()");
+        count.setSort(new Sort(0, SortDirection.DESCENDING));
+        final Field total = new Field("Total");
+        total.setExpression("sum(${Size})");
+        final Field max = new Field("Max");
+        max.setExpression("max(${Size})");
+
+        tableSettings = new TableSettings();
+        tableSettings.addField(user);
+        tableSettings.addField(method);
+        tableSettings.addField(count);
+        tableSettings.addField(total);
+        tableSettings.addField(max);
+
+        final FieldIndexMap fieldIndexMap = new FieldIndexMap(true);
+        compiledDepths = new CompiledDepths(tableSettings.getFields(), tableSettings.showDetail());
+        compiledFields = new CompiledFields(indexFieldsMap, tableSettings.getFields(), fieldIndexMap);
+
+        final int userIndex = fieldIndexMap.get("User");
+        final int methodIndex = fieldIndexMap.get("Method");
+        final int sizeIndex = fieldIndexMap.get("Size");
+
+        final Random random = new Random(1234567890L);
+        rows = new String[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            final String[] values = new String[fieldIndexMap.size()];
+            values[userIndex] = "user" + random.nextInt(groups);
+            values[methodIndex] = METHODS[random.nextInt(METHODS.length)];
+            values[sizeIndex] = String.valueOf(random.nextInt(100000));
+            rows[i] = values;
+        }
+    }
+
+    @Benchmark
+    public UnsafePairQueue<String, Item> map() {
+        final UnsafePairQueue<String, Item> queue = new UnsafePairQueue<>();
+        final ItemMapper itemMapper = new ItemMapper(queue, compiledFields, compiledDepths.getMaxDepth(),
+                compiledDepths.getMaxGroupDepth());
+        for (final String[] values : rows) {
+            itemMapper.collect(null, values);
+        }
+        return queue;
+    }
+
+    @Benchmark
+    public UnsafePairQueue<String, Item> mapAndPartition() {
+        return partition(map());
+    }
+
+    @Benchmark
+    public UnsafePairQueue<String, Item> mapAndAggregate() {
+        final ItemAggregator aggregator = new ItemAggregator(compiledDepths.getDepths(), compiledDepths.getMaxDepth(),
+                new MonitorImpl());
+        final ItemMapper itemMapper = new ItemMapper(aggregator, compiledFields, compiledDepths.getMaxDepth(),
+                compiledDepths.getMaxGroupDepth());
+        for (final String[] values : rows) {
+            itemMapper.collect(null, values);
+        }
+        return aggregator.take();
+    }
+
+    @Benchmark
+    public long mapPartitionAndReduce() {
+        final TablePayloadHandler payloadHandler = new TablePayloadHandler(tableSettings.getFields(),
+                tableSettings.showDetail(), new int[] { 1000000 });
+        payloadHandler.addQueue(partition(map()), new MonitorImpl());
+        return payloadHandler.getResultStore().getTotalSize();
+    }
+
+    private UnsafePairQueue<String, Item> partition(final UnsafePairQueue<String, Item> queue) {
+        final UnsafePairQueue<String, Item> outputQueue = new UnsafePairQueue<>();
+        final ItemPartitioner partitioner = new ItemPartitioner(compiledDepths.getDepths(),
+                compiledDepths.getMaxDepth());
+        partitioner.setOutputCollector(outputQueue);
+        partitioner.read(queue);
+        partitioner.partition();
+        return outputQueue;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import stroom.streamstore.server.fs.FileSystemUtil;
+import stroom.util.io.StreamUtil;
+
+/**
+ * Fixture data shared by the benchmarks. All data is generated from a fixed
+ * seed so that results from different commits are measured against exactly the
+ * same input.
+ */
+public final class BenchmarkUtil {
+    public static final String RECORDS_NAMESPACE = "records:2";
+
+    private static final long SEED = 1234567890L;
+    private static final String[] USERS = { "alice", "bob", "carol", "dave", "eve", "frank", "grace", "heidi" };
+    private static final String[] METHODS = { "GET", "GET", "GET", "POST", "PUT", "DELETE" };
+    private static final String[] PATHS = { "/index.html", "/search", "/stroom/dashboard", "/images/logo.png",
+            "/api/feed", "/stroom/datafeed" };
+    private static final int[] RESPONSES = { 200, 200, 200, 200, 304, 404, 500 };
+
+    private BenchmarkUtil() {
+        // Utility class.
+    }
+
+    /**
+     * Create lines in Apache combined log format, matched by
+     * <code>apache.ds3.xml</code>.
+     */
+    public static String createApacheLogData(final int lines) {
+        final Random random = new Random(SEED);
+        final StringBuilder sb = new StringBuilder(lines * 160);
+        for (int i = 0; i < lines; i++) {
+            sb.append("192.168.");
+            sb.append(random.nextInt(256));
+            sb.append(".");
+            sb.append(random.nextInt(256));
+            sb.append(" - \"");
+            sb.append(USERS[random.nextInt(USERS.length)]);
+            sb.append("\" [18/Oct/2016:10:");
+            appendTwoDigits(sb, (i / 60) % 60);
+            sb.append(":");
+            appendTwoDigits(sb, i % 60);
+            sb.append(" +0000] \"");
+            sb.append(METHODS[random.nextInt(METHODS.length)]);
+            sb.append(" ");
+            sb.append(PATHS[random.nextInt(PATHS.length)]);
+            sb.append("?id=");
+            sb.append(i);
+            sb.append(" HTTP/1.1\" ");
+            sb.append(RESPONSES[random.nextInt(RESPONSES.length)]);
+            sb.append(" ");
+            sb.append(random.nextInt(100000));
+            sb.append(" \"http://stroom/referrer\" \"Mozilla/5.0 (X11; Linux x86_64)\"\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Create comma separated lines, matched by <code>csv.ds3.xml</code>.
+     */
+    public static String createCsvData(final int lines) {
+        final Random random = new Random(SEED);
+        final StringBuilder sb = new StringBuilder(lines * 64);
+        for (int i = 0; i < lines; i++) {
+            sb.append(i);
+            sb.append(",");
+            sb.append(USERS[random.nextInt(USERS.length)]);
+            sb.append(",");
+            sb.append(METHODS[random.nextInt(METHODS.length)]);
+            sb.append(",");
+            sb.append(PATHS[random.nextInt(PATHS.length)]);
+            sb.append(",");
+            sb.append(random.nextInt(100000));
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Create XML in the records format output by data splitter, i.e. the input
+     * expected by <code>records.xsl</code>.
+     */
+    public static String createRecordsXml(final int records) {
+        final Random random = new Random(SEED);
+        final StringBuilder sb = new StringBuilder(records * 256);
+        sb.append("<?xml version=\"1.1\" encoding=\"UTF-8\"?>\n");
+        sb.append("<records xmlns=\"");
+        sb.append(RECORDS_NAMESPACE);
+        sb.append("\" version=\"2.0\">\n");
+        for (int i = 0; i < records; i++) {
+            sb.append("<record>");
+            appendData(sb, "id", String.valueOf(i));
+            appendData(sb, "user", USERS[random.nextInt(USERS.length)]);
+            appendData(sb, "method", METHODS[random.nextInt(METHODS.length)]);
+            appendData(sb, "path", PATHS[random.nextInt(PATHS.length)]);
+            appendData(sb, "response", String.valueOf(RESPONSES[random.nextInt(RESPONSES.length)]));
+            appendData(sb, "size", String.valueOf(random.nextInt(100000)));
+            sb.append("</record>\n");
+        }
+        sb.append("</records>\n");
+        return sb.toString();
+    }
+
+    /**
+     * Read a fixture from the classpath next to this class.
+     */
+    public static String getResource(final String name) {
+        final InputStream inputStream = BenchmarkUtil.class.getResourceAsStream(name);
+        if (inputStream == null) {
+            throw new RuntimeException("Unable to find benchmark resource: " + name);
+        }
+        return StreamUtil.streamToString(inputStream);
+    }
+
+    public static File createTempDir(final String prefix) {
+        try {
+            return Files.createTempDirectory(prefix).toFile();
+        } catch (final IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    public static void deleteTempDir(final File dir) {
+        if (dir != null) {
+            FileSystemUtil.deleteDirectory(dir);
+        }
+    }
+
+    private static void appendData(final StringBuilder sb, final String name, final String value) {
+        sb.append("<data name=\"");
+        sb.append(name);
+        sb.append("\" value=\"");
+        sb.append(value);
+        sb.append("\"/>");
+    }
+
+    private static void appendTwoDigits(final StringBuilder sb, final int value) {
+        if (value < 10) {
+            sb.append('0');
+        }
+        sb.append(value);
+    }
+}
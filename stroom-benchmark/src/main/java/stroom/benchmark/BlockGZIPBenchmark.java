@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stroom.streamstore.server.fs.BlockGZIPInputFile;
+import stroom.streamstore.server.fs.BlockGZIPOutputFile;
+import stroom.streamstore.server.fs.BlockGZipOutputStream;
+import stroom.streamstore.server.fs.LockingFileOutputStream;
+import stroom.util.io.StreamUtil;
+
+/**
+ * Measures writing and reading (sequential and random access) of block GZIP
+ * files as used by the stream store. Each invocation processes the same
+ * ~15MB of log data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BlockGZIPBenchmark {
+    private static final int LINES = 100000;
+    private static final int SEEKS = 1000;
+
+    @Param({ "100000", "1000000" })
+    public int blockSize;
+
+    private File dir;
+    private byte[] data;
+    private File inputFile;
+    private File outputFile;
+    private long[] seekPositions;
+    private final byte[] buffer = new byte[StreamUtil.BUFFER_SIZE];
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = BenchmarkUtil.createTempDir("BlockGZIPBenchmark");
+        data = BenchmarkUtil.createApacheLogData(LINES).getBytes(StreamUtil.DEFAULT_CHARSET);
+        inputFile = new File(dir, "input.bgz");
+        outputFile = new File(dir, "output.bgz");
+
+        try (OutputStream outputStream = new BlockGZIPOutputFile(inputFile, blockSize)) {
+            outputStream.write(data);
+        }
+
+        // Spread the seeks evenly over the file so that every block is visited.
+        seekPositions = new long[SEEKS];
+        final long step = data.length / SEEKS;
+        for (int i = 0; i < SEEKS; i++) {
+            seekPositions[i] = (i * 7919L % SEEKS) * step;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkUtil.deleteTempDir(dir);
+    }
+
+    @Benchmark
+    public long writeFile() throws IOException {
+        try (BlockGZIPOutputFile outputStream = new BlockGZIPOutputFile(outputFile, blockSize)) {
+            outputStream.write(data);
+            outputStream.flush();
+            return outputStream.getBlockCount();
+        }
+    }
+
+    @Benchmark
+    public long writeStream() throws IOException {
+        try (BlockGZipOutputStream outputStream = new BlockGZipOutputStream(
+                new LockingFileOutputStream(outputFile, false), blockSize)) {
+            outputStream.write(data);
+            outputStream.flush();
+            return outputStream.getBlockCount();
+        }
+    }
+
+    @Benchmark
+    public long readSequential() throws IOException {
+        long total = 0;
+        try (InputStream inputStream = new BlockGZIPInputFile(inputFile)) {
+            int len;
+            while ((len = inputStream.read(buffer)) != -1) {
+                total += len;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long readRandom() throws IOException {
+        long total = 0;
+        try (BlockGZIPInputFile inputStream = new BlockGZIPInputFile(inputFile)) {
+            for (final long position : seekPositions) {
+                inputStream.seek(position);
+                total += inputStream.read(buffer, 0, 256);
+            }
+        }
+        return total;
+    }
+}
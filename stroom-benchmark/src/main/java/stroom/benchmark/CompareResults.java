@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH JSON result files, e.g. from runs against two different
+ * commits, and reports the change in score for every benchmark found in both.
+ * A benchmark is reported as a regression if its score has got worse by more
+ * than the threshold percentage (default 5) and by more than the combined
+ * error of the two scores. The exit status is 1 if there are any regressions.
+ *
+ * <pre>
+ * java -cp stroom-benchmark/target/benchmarks.jar stroom.benchmark.CompareResults \
+ *     baseline.json current.json [thresholdPercent]
+ * </pre>
+ */
+public final class CompareResults {
+    private static final double DEFAULT_THRESHOLD = 5;
+
+    private static class Score {
+        private final String mode;
+        private final double score;
+        private final double error;
+        private final String unit;
+
+        Score(final JsonNode node) {
+            final JsonNode primaryMetric = node.get("primaryMetric");
+            mode = node.get("mode").asText();
+            score = primaryMetric.get("score").asDouble();
+            final double scoreError = primaryMetric.path("scoreError").asDouble(0);
+            error = Double.isNaN(scoreError) ? 0 : scoreError;
+            unit = primaryMetric.get("scoreUnit").asText();
+        }
+
+        boolean isHigherBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    private CompareResults() {
+        // Utility class.
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <current.json> [thresholdPercent]");
+            System.exit(2);
+        }
+
+        final double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        final Map<String, Score> baseline = read(new File(args[0]));
+        final Map<String, Score> current = read(new File(args[1]));
+
+        int regressions = 0;
+        System.out.println(String.format("%-90s %14s %14s %9s %s", "Benchmark", "Baseline", "Current", "Change",
+                "Unit"));
+        for (final Entry<String, Score> entry : current.entrySet()) {
+            final Score before = baseline.get(entry.getKey());
+            final Score after = entry.getValue();
+            if (before == null) {
+                System.out.println(String.format("%-90s %14s %14.3f %9s %s", entry.getKey(), "-", after.score, "new",
+                        after.unit));
+            } else {
+                // Express the change so that a positive number is always an
+                // improvement whichever way round the mode scores.
+                double change = (after.score - before.score) / before.score * 100;
+                if (!after.isHigherBetter()) {
+                    change = -change;
+                }
+                final boolean significant = Math.abs(after.score - before.score) > before.error + after.error;
+
+                String flag = "";
+                if (significant && change < -threshold) {
+                    flag = "  REGRESSION";
+                    regressions++;
+                } else if (significant && change > threshold) {
+                    flag = "  IMPROVEMENT";
+                }
+
+                System.out.println(String.format("%-90s %14.3f %14.3f %+8.1f%% %s%s", entry.getKey(), before.score,
+                        after.score, change, after.unit, flag));
+            }
+        }
+
+        System.out.println();
+        System.out.println(regressions + " regression(s) beyond " + threshold + "%");
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Score> read(final File file) throws IOException {
+        final Map<String, Score> scores = new LinkedHashMap<>();
+        final JsonNode root = new ObjectMapper().readTree(file);
+        for (final JsonNode node : root) {
+            scores.put(getKey(node), new Score(node));
+        }
+        return scores;
+    }
+
+    private static String getKey(final JsonNode node) {
+        final StringBuilder sb = new StringBuilder(node.get("benchmark").asText());
+        final JsonNode params = node.get("params");
+        if (params != null) {
+            sb.append(" {");
+            final Iterator<Entry<String, JsonNode>> fields = params.fields();
+            while (fields.hasNext()) {
+                final Entry<String, JsonNode> param = fields.next();
+                sb.append(param.getKey());
+                sb.append("=");
+                sb.append(param.getValue().asText());
+                if (fields.hasNext()) {
+                    sb.append(", ");
+                }
+            }
+            sb.append("}");
+        }
+        return sb.toString();
+    }
+}
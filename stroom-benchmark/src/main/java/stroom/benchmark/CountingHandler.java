@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A SAX handler that does the minimum amount of work needed to stop the JIT
+ * from treating parser output as dead code.
+ */
+class CountingHandler extends DefaultHandler {
+    private long elements;
+    private long characters;
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName,
+            final Attributes attributes) {
+        elements += attributes.getLength() + 1;
+    }
+
+    @Override
+    public void characters(final char[] ch, final int start, final int length) {
+        characters += length;
+    }
+
+    public long getCount() {
+        return elements + characters;
+    }
+
+    public void reset() {
+        elements = 0;
+        characters = 0;
+    }
+}
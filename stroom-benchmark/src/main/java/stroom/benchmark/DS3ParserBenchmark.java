@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import stroom.pipeline.server.DefaultLocationFactory;
+import stroom.pipeline.server.errorhandler.ErrorHandlerAdaptor;
+import stroom.pipeline.server.errorhandler.LoggingErrorReceiver;
+import stroom.util.xml.SAXParserFactoryFactory;
+import stroom.xml.converter.ds3.ConfigFilter;
+import stroom.xml.converter.ds3.DS3Parser;
+import stroom.xml.converter.ds3.RootFactory;
+import stroom.xml.converter.ds3.ref.VarMap;
+
+/**
+ * Measures data splitter parsing of text into records. The
+ * <code>csv</code> configuration exercises delimiter splitting and the
+ * <code>apache</code> configuration exercises regular expression matching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DS3ParserBenchmark {
+    private static final int LINES = 50000;
+
+    @Param({ "csv", "apache" })
+    public String config;
+
+    private RootFactory factory;
+    private String input;
+    private final CountingHandler handler = new CountingHandler();
+    private final LoggingErrorReceiver errorReceiver = new LoggingErrorReceiver();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // Configure the parser factory without schema validation as the
+        // fixture configurations are known to be valid.
+        factory = new RootFactory();
+        final SAXParserFactory parserFactory = SAXParserFactoryFactory.newInstance();
+        parserFactory.setNamespaceAware(true);
+        final XMLReader configReader = parserFactory.newSAXParser().getXMLReader();
+        configReader.setContentHandler(new ConfigFilter(factory));
+        configReader.parse(new InputSource(new StringReader(BenchmarkUtil.getResource(config + ".ds3.xml"))));
+        factory.compile();
+
+        if ("csv".equals(config)) {
+            input = BenchmarkUtil.createCsvData(LINES);
+        } else {
+            input = BenchmarkUtil.createApacheLogData(LINES);
+        }
+    }
+
+    @Benchmark
+    public long parse() throws Exception {
+        final DS3Parser parser = new DS3Parser(factory.newInstance(new VarMap()), RootFactory.MIN_BUFFER_SIZE,
+                factory.getBufferSize());
+        parser.setContentHandler(handler);
+        parser.setErrorHandler(new ErrorHandlerAdaptor("DS3ParserBenchmark", new DefaultLocationFactory(),
+                errorReceiver));
+
+        handler.reset();
+        parser.parse(new InputSource(new StringReader(input)));
+        return handler.getCount();
+    }
+}
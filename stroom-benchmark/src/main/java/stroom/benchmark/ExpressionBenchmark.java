@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import java.text.ParseException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stroom.dashboard.expression.Expression;
+import stroom.dashboard.expression.ExpressionParser;
+import stroom.dashboard.expression.FieldIndexMap;
+import stroom.dashboard.expression.FunctionFactory;
+import stroom.dashboard.expression.Generator;
+import stroom.dashboard.expression.ParamFactory;
+
+/**
+ * Measures parsing and evaluating dashboard expressions. Non aggregate
+ * expressions get a new generator per row as they do when mapping search
+ * results whereas aggregate expressions fold every row into one generator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExpressionBenchmark {
+    private static final int ROWS = 10000;
+
+    @Param({ "${val}", "(${val}+10)*2/3", "round(${val}/7, 2)", "roundDay(${time})",
+            "concat(upperCase(${text}), '-', replace(${text}, 'a', 'b'))",
+            "decode(${text}, 'h.+o', 'hello', 'goodbye')", "count()", "sum(${val})", "average(${val}, count())" })
+    public String expression;
+
+    private final ExpressionParser parser = new ExpressionParser(new FunctionFactory(), new ParamFactory());
+    private FieldIndexMap fieldIndexMap;
+    private Expression compiled;
+    private String[][] rows;
+
+    @Setup(Level.Trial)
+    public void setup() throws ParseException {
+        fieldIndexMap = new FieldIndexMap(true);
+        final int valIndex = fieldIndexMap.create("val");
+        final int textIndex = fieldIndexMap.create("text");
+        final int timeIndex = fieldIndexMap.create("time");
+        compiled = parser.parse(fieldIndexMap, expression);
+
+        final String[] words = { "hello", "halo", "banana", "stroom", "avocado" };
+        final long start = 1476748800000L;
+        final Random random = new Random(1234567890L);
+        rows = new String[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            final String[] values = new String[fieldIndexMap.size()];
+            values[valIndex] = String.valueOf(random.nextInt(100000));
+            values[textIndex] = words[random.nextInt(words.length)];
+            values[timeIndex] = String.valueOf(start + random.nextInt(Integer.MAX_VALUE));
+            rows[i] = values;
+        }
+    }
+
+    @Benchmark
+    public Expression parse() throws ParseException {
+        return parser.parse(fieldIndexMap, expression);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Object evaluate() {
+        if (compiled.hasAggregate()) {
+            final Generator generator = compiled.createGenerator();
+            for (final String[] values : rows) {
+                generator.set(values);
+            }
+            return generator.eval();
+        }
+
+        Object last = null;
+        for (final String[] values : rows) {
+            final Generator generator = compiled.createGenerator();
+            generator.set(values);
+            last = generator.eval();
+        }
+        return last;
+    }
+}
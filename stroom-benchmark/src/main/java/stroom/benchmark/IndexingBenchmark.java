@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stroom.index.server.FieldFactory;
+import stroom.index.server.IndexShardWriter;
+import stroom.index.server.IndexShardWriterImpl;
+import stroom.index.server.LuceneVersionUtil;
+import stroom.index.server.MockIndexShardService;
+import stroom.index.shared.Index;
+import stroom.index.shared.IndexShard;
+import stroom.node.shared.Volume;
+import stroom.query.shared.IndexField;
+import stroom.query.shared.IndexFields;
+
+/**
+ * Measures indexing of records into a Lucene index shard. Each record is
+ * turned into a document field by field in the same way as
+ * <code>IndexingFilter</code> does and then added to an
+ * {@link IndexShardWriterImpl}. The filter itself is not used as it can only
+ * obtain shard writers through the Spring managed index caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IndexingBenchmark {
+    private static final int RECORDS = 10000;
+    private static final String[] USERS = { "alice", "bob", "carol", "dave", "eve", "frank", "grace", "heidi" };
+    private static final String[] PATHS = { "/index.html", "/search", "/stroom/dashboard", "/images/logo.png",
+            "/api/feed", "/stroom/datafeed" };
+
+    private File dir;
+    private IndexField[] indexFields;
+    private String[][] records;
+    private IndexShardWriter writer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dir = BenchmarkUtil.createTempDir("IndexingBenchmark");
+
+        indexFields = new IndexField[] { IndexField.createIdField("EventId"), IndexField.createField("UserId"),
+                IndexField.createField("Path"), IndexField.createNumericField("Response"),
+                IndexField.createNumericField("Size"), IndexField.createField("Message") };
+        final IndexFields fields = IndexFields.createStreamIndexFields();
+        for (final IndexField indexField : indexFields) {
+            fields.add(indexField);
+        }
+
+        final Random random = new Random(1234567890L);
+        records = new String[RECORDS][];
+        for (int i = 0; i < RECORDS; i++) {
+            final String user = USERS[random.nextInt(USERS.length)];
+            final String path = PATHS[random.nextInt(PATHS.length)];
+            records[i] = new String[] { String.valueOf(i), user, path, String.valueOf(200 + random.nextInt(4) * 100),
+                    String.valueOf(random.nextInt(100000)),
+                    "User " + user + " accessed " + path + " from host " + random.nextInt(256) };
+        }
+
+        final Volume volume = new Volume();
+        volume.setPath(dir.getAbsolutePath());
+        final Index index = new Index();
+        index.setName("Benchmark");
+        final IndexShard indexShard = new IndexShard();
+        indexShard.setId(1L);
+        indexShard.setIndex(index);
+        indexShard.setPartition("all");
+        indexShard.setVolume(volume);
+        indexShard.setIndexVersion(LuceneVersionUtil.getCurrentVersion());
+
+        writer = new IndexShardWriterImpl(new MockIndexShardService(), fields, index, indexShard);
+        writer.open(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writer.close();
+        BenchmarkUtil.deleteTempDir(dir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public int buildDocuments() {
+        int fields = 0;
+        for (final String[] record : records) {
+            fields += buildDocument(record).getFields().size();
+        }
+        return fields;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public int indexDocuments() {
+        int added = 0;
+        for (final String[] record : records) {
+            if (writer.addDocument(buildDocument(record))) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    private Document buildDocument(final String[] record) {
+        final Document document = new Document();
+        for (int i = 0; i < indexFields.length; i++) {
+            final IndexField indexField = indexFields[i];
+            final String value = record[i];
+
+            final Field field;
+            if (indexField.getFieldType().isNumeric()) {
+                field = FieldFactory.create(indexField, Long.parseLong(value));
+            } else {
+                field = FieldFactory.create(indexField, value);
+            }
+            document.add(field);
+        }
+        return document;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.event.PipelineConfiguration;
+import net.sf.saxon.trans.XPathException;
+import net.sf.saxon.tree.tiny.TinyBuilder;
+import stroom.entity.shared.Range;
+import stroom.pipeline.server.errorhandler.StoredErrorReceiver;
+import stroom.refdata.MapStore;
+import stroom.refdata.MapStoreBuilder;
+import stroom.refdata.MapStoreBuilderImpl;
+import stroom.xml.event.EventList;
+import stroom.xml.event.np.EventListConsumer;
+import stroom.xml.event.np.NPEventList;
+import stroom.xml.event.np.NPEventListBuilder;
+
+/**
+ * Measures reference data lookups against {@link MapStore} by key and by
+ * range, including building a tiny tree from the found events as the XSLT
+ * lookup function does, and the cost of building a store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MapStoreBenchmark {
+    private static final String KEY_MAP = "USER_TO_LOCATION";
+    private static final String RANGE_MAP = "IP_TO_LOCATION";
+    private static final int ENTRIES = 100000;
+    private static final int RANGE_SIZE = 256;
+    private static final int LOOKUPS = 1024;
+
+    private EventList[] eventLists;
+    private MapStore mapStore;
+    private String[] keys;
+    private String[] rangeKeys;
+    private TinyBuilder builder;
+    private EventListConsumer consumer;
+
+    @Setup(Level.Trial)
+    public void setup() throws SAXException {
+        final NPEventListBuilder eventListBuilder = new NPEventListBuilder();
+        eventLists = new EventList[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            eventListBuilder.startElement("", "Location", "Location", new AttributesImpl());
+            addElement(eventListBuilder, "Building", "Building " + (i % 100));
+            addElement(eventListBuilder, "Room", "Room " + i);
+            addElement(eventListBuilder, "TimeZone", "+00:00");
+            eventListBuilder.endElement("", "Location", "Location");
+            eventLists[i] = eventListBuilder.getEventList();
+            eventListBuilder.reset();
+        }
+
+        mapStore = build();
+
+        final PipelineConfiguration pipe = new Configuration().makePipelineConfiguration();
+        builder = new TinyBuilder(pipe);
+        consumer = new EventListConsumer(builder, pipe);
+
+        // Choose lookups spread over the whole store, a few of which miss.
+        keys = new String[LOOKUPS];
+        rangeKeys = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            final long entry = (i * 7919L) % (ENTRIES + ENTRIES / 100);
+            keys[i] = "user" + entry;
+            rangeKeys[i] = String.valueOf(entry * RANGE_SIZE + i % RANGE_SIZE);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long lookupKey() throws XPathException {
+        return lookup(keys, KEY_MAP);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long lookupRange() throws XPathException {
+        return lookup(rangeKeys, RANGE_MAP);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public MapStore buildStore() {
+        return build();
+    }
+
+    private long lookup(final String[] lookupKeys, final String mapName) throws XPathException {
+        long found = 0;
+        for (final String key : lookupKeys) {
+            final EventList eventList = mapStore.getEvents(mapName, key);
+            if (eventList != null) {
+                consumer.startDocument();
+                consumer.consume((NPEventList) eventList);
+                consumer.endDocument();
+                builder.reset();
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private MapStore build() {
+        final MapStoreBuilder builder = new MapStoreBuilderImpl(new StoredErrorReceiver());
+        for (int i = 0; i < ENTRIES; i++) {
+            final long from = (long) i * RANGE_SIZE;
+            builder.setEvents(KEY_MAP, "user" + i, eventLists[i], false);
+            builder.setEvents(RANGE_MAP, new Range<>(from, from + RANGE_SIZE - 1), eventLists[i], false);
+        }
+        return builder.getMapStore();
+    }
+
+    private void addElement(final NPEventListBuilder builder, final String name, final String value)
+            throws SAXException {
+        builder.startElement("", name, name, new AttributesImpl());
+        final char[] chars = value.toCharArray();
+        builder.characters(chars, 0, chars.length);
+        builder.endElement("", name, name);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stroom.streamstore.server.fs.BlockGZIPInputFile;
+import stroom.streamstore.server.fs.BlockGZIPOutputFile;
+import stroom.streamstore.server.fs.LockingFileOutputStream;
+import stroom.streamstore.server.fs.UncompressedInputStream;
+import stroom.streamstore.server.fs.serializable.RASegmentInputStream;
+import stroom.streamstore.server.fs.serializable.RASegmentOutputStream;
+import stroom.util.io.StreamUtil;
+
+/**
+ * Measures writing a segmented (one segment per record) stream and reading it
+ * back whole or as a subset of segments, as happens when stepping or paging
+ * through records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RASegmentBenchmark {
+    private static final int SEGMENTS = 20000;
+    private static final int INCLUDE_EVERY = 100;
+
+    private File dir;
+    private byte[][] segments;
+    private File dataFile;
+    private File indexFile;
+    private File outputDataFile;
+    private File outputIndexFile;
+    private final byte[] buffer = new byte[StreamUtil.BUFFER_SIZE];
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = BenchmarkUtil.createTempDir("RASegmentBenchmark");
+        final String[] lines = BenchmarkUtil.createApacheLogData(SEGMENTS).split("\n");
+        segments = new byte[lines.length][];
+        for (int i = 0; i < lines.length; i++) {
+            segments[i] = (lines[i] + "\n").getBytes(StreamUtil.DEFAULT_CHARSET);
+        }
+
+        dataFile = new File(dir, "input.bgz");
+        indexFile = new File(dir, "input.seg.dat");
+        outputDataFile = new File(dir, "output.bgz");
+        outputIndexFile = new File(dir, "output.seg.dat");
+        write(dataFile, indexFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkUtil.deleteTempDir(dir);
+    }
+
+    @Benchmark
+    public long writeSegments() throws IOException {
+        return write(outputDataFile, outputIndexFile);
+    }
+
+    @Benchmark
+    public long readAll() throws IOException {
+        try (RASegmentInputStream inputStream = open()) {
+            return drain(inputStream);
+        }
+    }
+
+    @Benchmark
+    public long readIncludedSegments() throws IOException {
+        try (RASegmentInputStream inputStream = open()) {
+            for (long i = 0; i < SEGMENTS; i += INCLUDE_EVERY) {
+                inputStream.include(i);
+            }
+            return drain(inputStream);
+        }
+    }
+
+    @Benchmark
+    public long readSingleSegments() throws IOException {
+        long total = 0;
+        for (long i = 0; i < SEGMENTS; i += SEGMENTS / 20) {
+            try (RASegmentInputStream inputStream = open()) {
+                inputStream.include(i);
+                total += drain(inputStream);
+            }
+        }
+        return total;
+    }
+
+    private long write(final File data, final File index) throws IOException {
+        try (RASegmentOutputStream outputStream = new RASegmentOutputStream(new BlockGZIPOutputFile(data),
+                new LockingFileOutputStream(index, false))) {
+            for (final byte[] segment : segments) {
+                outputStream.write(segment);
+                outputStream.addSegment();
+            }
+            return outputStream.getPosition();
+        }
+    }
+
+    private RASegmentInputStream open() throws IOException {
+        return new RASegmentInputStream(new BlockGZIPInputFile(dataFile), new UncompressedInputStream(indexFile, true));
+    }
+
+    private long drain(final RASegmentInputStream inputStream) throws IOException {
+        long total = 0;
+        int len;
+        while ((len = inputStream.read(buffer)) != -1) {
+            total += len;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stroom.pipeline.server.reader.BadTextXMLFilterReader;
+import stroom.pipeline.server.reader.InvalidXMLCharFilterReader;
+import stroom.pipeline.server.reader.InvalidXMLCharFilterReader.XMLmode;
+
+/**
+ * Measures the character filtering readers that sit in front of the XML
+ * parser. Every invocation reads exactly {@link #INPUT_MB} MB of characters so
+ * the throughput in MB/s is the reported ops/s multiplied by {@link #INPUT_MB}.
+ * The <code>baseline</code> benchmark reads the XML input without any
+ * filtering.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReaderBenchmark {
+    public static final int INPUT_MB = 8;
+
+    private char[] input;
+    private char[] badTextInput;
+    private final char[] buffer = new char[8192];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        input = repeat(BenchmarkUtil.createRecordsXml(20000));
+        // Sprinkle in some characters that are not valid XML so the
+        // replacement path is exercised too.
+        for (int i = 1000; i < input.length; i += 100000) {
+            input[i] = (char) 0x1;
+        }
+
+        // Leaf elements containing text that should have been escaped.
+        final StringBuilder sb = new StringBuilder();
+        sb.append("<Events>\n");
+        for (int i = 0; i < 1000; i++) {
+            sb.append("<Event><Id>");
+            sb.append(i);
+            sb.append("</Id><Message>if (a < b && b > c) { print \"<html>\" & exit; }</Message></Event>\n");
+        }
+        badTextInput = repeat(sb.toString());
+    }
+
+    @Benchmark
+    public long baseline() throws IOException {
+        return drain(new CharArrayReader(input));
+    }
+
+    @Benchmark
+    public long invalidXMLCharFilterReader() throws IOException {
+        return drain(new InvalidXMLCharFilterReader(new CharArrayReader(input), XMLmode.XML_1_1));
+    }
+
+    @Benchmark
+    public long badTextXMLFilterReader() throws IOException {
+        return drain(new BadTextXMLFilterReader(new CharArrayReader(badTextInput), new String[] { "Message" }));
+    }
+
+    private char[] repeat(final String text) {
+        final int length = INPUT_MB * 1024 * 1024;
+        final StringBuilder sb = new StringBuilder(length + text.length());
+        while (sb.length() < length) {
+            sb.append(text);
+        }
+        sb.setLength(length);
+        return sb.toString().toCharArray();
+    }
+
+    private long drain(final Reader reader) throws IOException {
+        long total = 0;
+        try {
+            int len;
+            while ((len = reader.read(buffer, 0, buffer.length)) != -1) {
+                total += len;
+            }
+        } finally {
+            reader.close();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import stroom.pipeline.server.reader.InvalidXMLCharFilterReader;
+import stroom.pipeline.server.reader.InvalidXMLCharFilterReader.XMLmode;
+import stroom.util.xml.SAXParserFactoryFactory;
+
+/**
+ * Measures XML parsing of records the same way as the XML parser pipeline
+ * element, with and without the invalid character filter in front of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class XMLParserBenchmark {
+    private static final int RECORDS = 50000;
+
+    private SAXParserFactory parserFactory;
+    private String input;
+    private final CountingHandler handler = new CountingHandler();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        parserFactory = SAXParserFactoryFactory.newInstance();
+        parserFactory.setNamespaceAware(true);
+        input = BenchmarkUtil.createRecordsXml(RECORDS);
+    }
+
+    @Benchmark
+    public long parse() throws Exception {
+        return parse(new InputSource(new StringReader(input)));
+    }
+
+    @Benchmark
+    public long parseFiltered() throws Exception {
+        return parse(new InputSource(new InvalidXMLCharFilterReader(new StringReader(input), XMLmode.XML_1_1)));
+    }
+
+    private long parse(final InputSource inputSource) throws Exception {
+        final XMLReader xmlReader = parserFactory.newSAXParser().getXMLReader();
+        xmlReader.setContentHandler(handler);
+        handler.reset();
+        xmlReader.parse(inputSource);
+        return handler.getCount();
+    }
+}
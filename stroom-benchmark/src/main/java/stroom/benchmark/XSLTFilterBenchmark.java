@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.benchmark;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import net.sf.saxon.s9api.Processor;
+import stroom.cache.server.StoredXsltExecutable;
+import stroom.cache.server.XSLTPool;
+import stroom.entity.shared.VersionedEntityDecorator;
+import stroom.node.server.MockStroomPropertyService;
+import stroom.pipeline.server.DefaultLocationFactory;
+import stroom.pipeline.server.LocationFactory;
+import stroom.pipeline.server.LocationFactoryProxy;
+import stroom.pipeline.server.MockXSLTService;
+import stroom.pipeline.server.errorhandler.ErrorReceiver;
+import stroom.pipeline.server.errorhandler.ErrorReceiverProxy;
+import stroom.pipeline.server.errorhandler.LoggingErrorReceiver;
+import stroom.pipeline.server.errorhandler.StoredErrorReceiver;
+import stroom.pipeline.server.filter.XSLTFilter;
+import stroom.pipeline.server.writer.PathCreator;
+import stroom.pipeline.shared.XSLT;
+import stroom.pipeline.shared.data.PipelineReference;
+import stroom.pipeline.state.PipelineContext;
+import stroom.pool.PoolItem;
+import stroom.util.io.StreamUtil;
+import stroom.util.xml.SAXParserFactoryFactory;
+import stroom.xml.event.EventList;
+import stroom.xml.event.simple.SimpleEventListBuilder;
+
+/**
+ * Measures translation of a stream of split record documents by
+ * {@link XSLTFilter} using <code>records.xsl</code>. The input events are
+ * recorded up front so only the translation is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class XSLTFilterBenchmark {
+    private static final int DOCUMENTS = 200;
+    private static final int RECORDS_PER_DOCUMENT = 100;
+
+    @Param({ "1", "4" })
+    public int translationThreads;
+
+    private final List<EventList> documents = new ArrayList<>();
+    private XSLTFilter xsltFilter;
+
+    private static class BenchmarkXSLTPool implements XSLTPool {
+        @Override
+        public PoolItem<VersionedEntityDecorator<XSLT>, StoredXsltExecutable> borrowConfiguredTemplate(
+                final VersionedEntityDecorator<XSLT> k, final ErrorReceiver errorReceiver,
+                final LocationFactory locationFactory, final List<PipelineReference> pipelineReferences) {
+            return borrowObject(k);
+        }
+
+        @Override
+        public PoolItem<VersionedEntityDecorator<XSLT>, StoredXsltExecutable> borrowObject(
+                final VersionedEntityDecorator<XSLT> key) {
+            try {
+                final Processor processor = new Processor(false);
+                final StoredXsltExecutable executable = new StoredXsltExecutable(processor.newXsltCompiler()
+                        .compile(new StreamSource(StreamUtil.stringToStream(key.getEntity().getData()))), null,
+                        new StoredErrorReceiver());
+                return new PoolItem<>(key, executable);
+            } catch (final Exception e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void returnObject(final PoolItem<VersionedEntityDecorator<XSLT>, StoredXsltExecutable> poolItem) {
+            // Nothing is pooled.
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // Record the split documents.
+        final SAXParserFactory parserFactory = SAXParserFactoryFactory.newInstance();
+        parserFactory.setNamespaceAware(true);
+        final String[] records = BenchmarkUtil.createRecordsXml(DOCUMENTS * RECORDS_PER_DOCUMENT).split("\n");
+        for (int i = 0; i < DOCUMENTS; i++) {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(records[0]);
+            sb.append(records[1]);
+            for (int j = 0; j < RECORDS_PER_DOCUMENT; j++) {
+                sb.append(records[2 + i * RECORDS_PER_DOCUMENT + j]);
+            }
+            sb.append(records[records.length - 1]);
+
+            final SimpleEventListBuilder builder = new SimpleEventListBuilder();
+            final XMLReader xmlReader = parserFactory.newSAXParser().getXMLReader();
+            xmlReader.setContentHandler(builder);
+            xmlReader.parse(new InputSource(new StringReader(sb.toString())));
+            documents.add(builder.getEventList());
+        }
+
+        final MockXSLTService xsltService = new MockXSLTService();
+        XSLT xslt = xsltService.create(null, "records");
+        xslt.setData(BenchmarkUtil.getResource("records.xsl"));
+        xslt = xsltService.save(xslt);
+
+        final LocationFactoryProxy locationFactory = new LocationFactoryProxy();
+        locationFactory.setLocationFactory(new DefaultLocationFactory());
+
+        xsltFilter = new XSLTFilter(new BenchmarkXSLTPool(), new ErrorReceiverProxy(new LoggingErrorReceiver()),
+                xsltService, new MockStroomPropertyService(), locationFactory, new PipelineContext(),
+                new PathCreator());
+        xsltFilter.setElementId("XSLTFilterBenchmark");
+        xsltFilter.setXslt(xslt);
+        xsltFilter.setXsltRequired(true);
+        xsltFilter.setTranslationThreads(translationThreads);
+        xsltFilter.startProcessing();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        xsltFilter.endProcessing();
+    }
+
+    @Benchmark
+    public int translate() throws Exception {
+        xsltFilter.startStream();
+        for (final EventList document : documents) {
+            document.fire(xsltFilter);
+        }
+        xsltFilter.endStream();
+        return documents.size();
+    }
+}
@@ -0,0 +1,39 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<xsl:stylesheet xmlns="event-logging:3" xpath-default-namespace="records:2" xmlns:xsl="http://www.w3.org/1999/XSL/Transform" version="2.0">
+  <xsl:template match="records">
+    <Events>
+      <xsl:apply-templates />
+    </Events>
+  </xsl:template>
+
+  <xsl:template match="record">
+    <xsl:variable name="response" select="data[@name='response']/@value" />
+    <Event>
+      <EventTime>
+        <TimeCreated>2016-10-18T10:00:00.000Z</TimeCreated>
+      </EventTime>
+      <EventSource>
+        <System>
+          <Name>Benchmark</Name>
+          <Environment>Test</Environment>
+        </System>
+        <User>
+          <Id><xsl:value-of select="upper-case(data[@name='user']/@value)" /></Id>
+        </User>
+      </EventSource>
+      <EventDetail>
+        <TypeId><xsl:value-of select="concat(data[@name='method']/@value, '-', $response)" /></TypeId>
+        <View>
+          <Resource>
+            <URL><xsl:value-of select="data[@name='path']/@value" /></URL>
+            <Size><xsl:value-of select="data[@name='size']/@value" /></Size>
+          </Resource>
+          <Outcome>
+            <Success><xsl:value-of select="if (number($response) lt 400) then 'true' else 'false'" /></Success>
+          </Outcome>
+        </View>
+        <Data Name="Id" Value="{data[@name='id']/@value}" />
+      </EventDetail>
+    </Event>
+  </xsl:template>
+</xsl:stylesheet>
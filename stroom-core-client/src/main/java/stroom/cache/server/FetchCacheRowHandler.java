@@ -16,6 +16,7 @@
 
 package stroom.cache.server;
 
+import stroom.cache.StroomCacheManager;
 import stroom.cache.shared.CacheRow;
 import stroom.cache.shared.FetchCacheRowAction;
 import stroom.entity.shared.BaseResultList;
@@ -24,41 +25,33 @@ import stroom.security.Secured;
 import stroom.task.server.AbstractTaskHandler;
 import stroom.task.server.TaskHandlerBean;
 import stroom.util.spring.StroomScope;
-import net.sf.ehcache.CacheManager;
 import org.springframework.context.annotation.Scope;
 
-import javax.annotation.Resource;
+import javax.inject.Inject;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 @TaskHandlerBean(task = FetchCacheRowAction.class)
 @Scope(StroomScope.TASK)
 @Secured(CacheRow.MANAGE_CACHE_PERMISSION)
 public class FetchCacheRowHandler extends AbstractTaskHandler<FetchCacheRowAction, ResultList<CacheRow>> {
-    @Resource
-    private CacheManager cacheManager;
+    private final StroomCacheManager stroomCacheManager;
+
+    @Inject
+    FetchCacheRowHandler(final StroomCacheManager stroomCacheManager) {
+        this.stroomCacheManager = stroomCacheManager;
+    }
 
     @Override
     public ResultList<CacheRow> exec(final FetchCacheRowAction action) {
         final List<CacheRow> values = new ArrayList<>();
 
-        final String[] cacheNames = cacheManager.getCacheNames();
-        Arrays.sort(cacheNames);
-        for (final String cacheName : cacheNames) {
+        // The cache names include caches provided by cache beans and are
+        // already sorted.
+        for (final String cacheName : stroomCacheManager.getCacheNames()) {
             values.add(new CacheRow(cacheName));
         }
 
-        // Sort the cache names.
-        Collections.sort(values, new Comparator<CacheRow>() {
-            @Override
-            public int compare(final CacheRow o1, final CacheRow o2) {
-                return o1.getCacheName().compareTo(o2.getCacheName());
-            }
-        });
-
         return BaseResultList.createUnboundedList(values);
     }
 }
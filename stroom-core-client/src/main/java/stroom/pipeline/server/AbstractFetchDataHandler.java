@@ -46,6 +46,9 @@ import stroom.pipeline.state.FeedHolder;
 import stroom.pipeline.state.PipelineHolder;
 import stroom.pipeline.state.StreamHolder;
 import stroom.resource.server.BOMRemovalInputStream;
+import stroom.streamstore.server.LineOffsetIndex;
+import stroom.streamstore.server.LineOffsetIndexCache;
+import stroom.streamstore.server.LineOffsetIndexKey;
 import stroom.streamstore.server.StreamSource;
 import stroom.streamstore.server.StreamStore;
 import stroom.streamstore.server.fs.FileSystemUtil;
@@ -67,6 +70,7 @@ import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.Charset;
@@ -102,6 +106,8 @@ public abstract class AbstractFetchDataHandler<A extends FetchDataAction>
     private PipelineDataCache pipelineDataCache;
     @Resource
     private StreamEventLog streamEventLog;
+    @Resource
+    private LineOffsetIndexCache lineOffsetIndexCache;
     private Long streamsOffset = 0L;
     private Long streamsTotal = 0L;
     private Long pageOffset = 0L;
@@ -178,7 +184,7 @@ public abstract class AbstractFetchDataHandler<A extends FetchDataAction>
             if (segmentInputStream.count() > 1) {
                 rawData = getSegmentedData(feed, streamType, pageRange, segmentInputStream);
             } else {
-                rawData = getNonSegmentedData(feed, streamType, pageRange, segmentInputStream);
+                rawData = getNonSegmentedData(streamId, feed, streamType, pageRange, segmentInputStream);
             }
 
             writeEventLog(streamSource.getStream(), feed, streamType, null);
@@ -310,8 +316,8 @@ public abstract class AbstractFetchDataHandler<A extends FetchDataAction>
         return StreamUtil.streamToString(segmentInputStream, Charset.forName(encoding));
     }
 
-    private String getNonSegmentedData(final Feed feed, final StreamType streamType, final OffsetRange<Long> pageRange,
-            final RASegmentInputStream segmentInputStream) throws IOException {
+    private String getNonSegmentedData(final Long streamId, final Feed feed, final StreamType streamType,
+            final OffsetRange<Long> pageRange, final RASegmentInputStream segmentInputStream) throws IOException {
         // Get the appropriate encoding for the stream type.
         final String encoding = EncodingSelection.select(feed, streamType);
 
@@ -322,14 +328,48 @@ public abstract class AbstractFetchDataHandler<A extends FetchDataAction>
         long lineNo = 0;
         int len = 0;
 
-        try (BOMRemovalInputStream bomRemovalIS = new BOMRemovalInputStream(segmentInputStream, encoding);
-                final Reader reader = new InputStreamReader(bomRemovalIS, encoding)) {
+        // If we can find line feeds in the raw bytes then use the line offset
+        // index to jump to the nearest checkpoint before the requested page.
+        LineOffsetIndex lineOffsetIndex = null;
+        long startOffset = 0;
+        if (LineOffsetIndex.isSupported(encoding)) {
+            lineOffsetIndex = lineOffsetIndexCache
+                    .get(new LineOffsetIndexKey(streamId, streamType.getName(), streamsOffset, encoding));
+            final LineOffsetIndex.Checkpoint checkpoint = lineOffsetIndex.getCheckpoint(minLineNo);
+            if (checkpoint.getOffset() > 0) {
+                startOffset = segmentInputStream.skip(checkpoint.getOffset());
+                lineNo = checkpoint.getLineNo();
+            }
+        }
+
+        InputStream inputStream = segmentInputStream;
+        LineOffsetIndex.NewlineOffsetInputStream newlineOffsetIS = null;
+        if (lineOffsetIndex != null) {
+            newlineOffsetIS = new LineOffsetIndex.NewlineOffsetInputStream(segmentInputStream, startOffset);
+            inputStream = newlineOffsetIS;
+        }
+        // Only the start of the stream can have a byte order mark.
+        if (startOffset == 0) {
+            inputStream = new BOMRemovalInputStream(inputStream, encoding);
+        }
+
+        // We only index as far as the page that we read so that the first
+        // page of a large stream comes back straight away. Later pages start
+        // from the last checkpoint and extend the index as they go.
+        try (final Reader reader = new InputStreamReader(inputStream, encoding)) {
             final char[] buffer = new char[FileSystemUtil.STREAM_BUFFER_SIZE];
             int lineLength = 0;
+            long naturalLineNo = lineNo;
+            long nextCheckpointLineNo = Long.MAX_VALUE;
+            if (lineOffsetIndex != null) {
+                nextCheckpointLineNo = lineOffsetIndex.getNextCheckpointLineNo();
+            }
+            char lastChar = '\n';
 
             while (lineNo < maxLineNo && (len = reader.read(buffer)) != -1) {
                 for (int i = 0; i < len; i++) {
                     final char c = buffer[i];
+                    lastChar = c;
                     lineLength++;
 
                     if (lineNo >= minLineNo && lineNo < maxLineNo) {
@@ -368,9 +408,25 @@ public abstract class AbstractFetchDataHandler<A extends FetchDataAction>
                     if (c == '\n') {
                         lineNo++;
                         lineLength = 0;
+
+                        // Checkpoints are kept in natural lines as wrapping
+                        // only affects the line numbers within the page.
+                        if (newlineOffsetIS != null) {
+                            naturalLineNo++;
+                            final long offset = newlineOffsetIS.nextLineOffset();
+                            if (naturalLineNo >= nextCheckpointLineNo) {
+                                lineOffsetIndex.addCheckpoint(naturalLineNo, offset);
+                                nextCheckpointLineNo = lineOffsetIndex.getNextCheckpointLineNo();
+                            }
+                        }
                     }
                 }
             }
+
+            if (newlineOffsetIS != null && len == -1 && !lineOffsetIndex.isComplete()) {
+                // A final line without a line feed still counts.
+                lineOffsetIndex.setLineCount(lastChar == '\n' ? naturalLineNo : naturalLineNo + 1);
+            }
         }
 
         // Increment the line count by one more if we have some content.
@@ -382,6 +438,13 @@ public abstract class AbstractFetchDataHandler<A extends FetchDataAction>
         // If there was no more content then the page total has been reached.
         pageTotalIsExact = len == -1;
 
+        // Once the whole stream has been indexed we know the total without
+        // having to read to the end.
+        if (lineOffsetIndex != null && lineOffsetIndex.isComplete()) {
+            pageTotal = Math.max(pageTotal, lineOffsetIndex.getLineCount());
+            pageTotalIsExact = true;
+        }
+
         return sb.toString();
     }
 
@@ -76,6 +76,7 @@ public class CoreClientConfiguration {
         mappings.setProperty("/stroom/dispatch.rpc", "dispatchServiceRPC");
         mappings.setProperty("/stroom/importfile.rpc", ImportFileServlet.BEAN_NAME);
         mappings.setProperty("/stroom/script", "scriptServlet");
+        mappings.setProperty("/stroom/searchresults", "downloadSearchResultsServlet");
         mappings.setProperty("/clustercall.rpc", ClusterCallServiceRPC.BEAN_NAME);
         mappings.setProperty("/export/*", ExportConfigServlet.BEAN_NAME);
         mappings.setProperty("/status", StatusServlet.BEAN_NAME);
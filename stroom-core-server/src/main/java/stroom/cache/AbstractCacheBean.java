@@ -16,192 +16,434 @@
 
 package stroom.cache;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 import stroom.cache.shared.CacheInfo;
+import stroom.task.server.StroomThreadGroup;
 import stroom.util.logging.StroomLogger;
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheException;
+import stroom.util.thread.CustomThreadFactory;
 import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Ehcache;
-import net.sf.ehcache.Element;
-import net.sf.ehcache.Statistics;
-import net.sf.ehcache.config.CacheConfiguration;
-import net.sf.ehcache.constructs.blocking.SelfPopulatingCache;
-import net.sf.ehcache.event.CacheEventListenerAdapter;
 
+/**
+ * Base class for caches that create their own values on demand.
+ *
+ * Each key is loaded at most once at a time. Threads asking for a key that is
+ * being loaded wait for that load only, so a slow load never holds up lookups
+ * of other keys. Caches can be bounded by entry count and by the total weight
+ * of their entries as calculated by a {@link Weigher}. Entries that are still
+ * in use can be refreshed in the background ahead of expiry so that callers
+ * keep getting the old value instead of blocking on a reload.
+ */
 public abstract class AbstractCacheBean<K, V> implements CacheBean<K, V> {
     public interface Destroyable {
         void destroy();
     }
 
-    private static class CacheListener extends CacheEventListenerAdapter {
-        private static final StroomLogger LOGGER = StroomLogger.getLogger(CacheListener.class);
-
-        private final AbstractCacheBean<?, ?> parent;
-
-        public CacheListener(final AbstractCacheBean<?, ?> parent) {
-            this.parent = parent;
+    private static class Entry<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long createTime;
+        private volatile long accessTime;
+        private long weight;
+        private boolean removed;
+
+        public Entry(final long now) {
+            this.createTime = now;
+            this.accessTime = now;
         }
 
-        @Override
-        public void notifyRemoveAll(final Ehcache cache) {
-            // Hopefully clear will not be called.
-            LOGGER.trace("notifyRemoveAll()");
-            parent.destroyAll(cache);
+        public boolean isLoaded() {
+            return future.isDone() && !future.isCompletedExceptionally();
         }
+    }
 
-        @Override
-        public void notifyElementUpdated(final Ehcache cache, final Element element) throws CacheException {
-            LOGGER.trace("notifyElementUpdated()");
-        }
+    private static class EvictionCandidate<K, V> {
+        private final K key;
+        private final Entry<V> entry;
+        private final long accessTime;
 
-        @Override
-        public void notifyElementRemoved(final Ehcache cache, final Element element) throws CacheException {
-            LOGGER.trace("notifyElementRemoved()");
-            parent.destroy(element);
+        public EvictionCandidate(final K key, final Entry<V> entry) {
+            this.key = key;
+            this.entry = entry;
+            this.accessTime = entry.accessTime;
         }
+    }
 
-        @Override
-        public void notifyElementPut(final Ehcache cache, final Element element) throws CacheException {
-            LOGGER.trace("notifyElementPut()");
-        }
+    private static final StroomLogger LOGGER = StroomLogger.getLogger(AbstractCacheBean.class);
 
-        @Override
-        public void notifyElementExpired(final Ehcache cache, final Element element) {
-            LOGGER.trace("notifyElementExpired()");
-            parent.destroy(element);
-        }
+    private static final int REFRESH_THREADS = 2;
 
-        @Override
-        public void notifyElementEvicted(final Ehcache cache, final Element element) {
-            LOGGER.trace("notifyElementEvicted()");
-            parent.destroy(element);
-        }
+    // Caches are registered against the cache manager they were created for
+    // so that they can be listed and cleared alongside the caches ehcache
+    // manages.
+    private static final Map<CacheManager, Map<String, AbstractCacheBean<?, ?>>> REGISTRY = new WeakHashMap<>();
 
-        @Override
-        public void dispose() {
-            LOGGER.trace("dispose()");
-            // Do nothing.
-        }
-    }
+    private static volatile ExecutorService refreshExecutor;
 
-    private static final StroomLogger LOGGER = StroomLogger.getLogger(AbstractCacheBean.class);
+    private final String name;
+    private final int maxCacheEntries;
+    private final ConcurrentHashMap<K, Entry<V>> map = new ConcurrentHashMap<>();
+    private final AtomicLong totalWeight = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private volatile long maxIdleMs;
+    private volatile long maxLiveMs;
+    private volatile long refreshAheadMs;
+    private volatile long maxWeight = Long.MAX_VALUE;
+    private volatile Weigher<K, V> weigher;
 
-    private final Ehcache cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
 
     public AbstractCacheBean(final CacheManager cacheManager, final String name, final int maxCacheEntries) {
-        final CacheConfiguration cacheConfiguration = new CacheConfiguration(name, maxCacheEntries);
+        this.name = name;
+        this.maxCacheEntries = maxCacheEntries;
 
-        Ehcache cache = new Cache(cacheConfiguration);
-        cache = new SelfPopulatingCache(cache, key -> create((K) key));
-        cache.getCacheEventNotificationService().registerListener(new CacheListener(this));
+        synchronized (REGISTRY) {
+            REGISTRY.computeIfAbsent(cacheManager, k -> new ConcurrentHashMap<>()).put(name, this);
+        }
+    }
 
-        this.cache = cache;
-        cacheManager.addCache(cache);
+    static List<AbstractCacheBean<?, ?>> getCacheBeans(final CacheManager cacheManager) {
+        synchronized (REGISTRY) {
+            final Map<String, AbstractCacheBean<?, ?>> caches = REGISTRY.get(cacheManager);
+            if (caches == null) {
+                return Collections.emptyList();
+            }
+            return new ArrayList<>(caches.values());
+        }
+    }
+
+    String getCacheName() {
+        return name;
     }
 
     protected abstract V create(K key);
 
-    @SuppressWarnings("unchecked")
     @Override
-    public V get(final K k) {
-        try {
-            final Element element = cache.get(k);
-            if (element == null) {
-                return null;
-            }
-            return (V) element.getObjectValue();
-        } catch (final CacheException e) {
-            final Throwable cause = e.getCause();
-            if (cause != null && cause instanceof RuntimeException) {
-                throw (RuntimeException) cause;
-            }
+    public V get(final K key) {
+        final long now = System.currentTimeMillis();
 
-            throw e;
+        Entry<V> entry = map.get(key);
+        if (entry != null && entry.isLoaded() && isExpired(entry, now)) {
+            expire(key, entry);
+            entry = null;
         }
+
+        if (entry == null) {
+            final Entry<V> newEntry = new Entry<>(now);
+            entry = map.putIfAbsent(key, newEntry);
+            if (entry == null) {
+                // We own the load for this key.
+                misses.increment();
+                load(key, newEntry);
+                evictIfNeeded(newEntry);
+                return await(newEntry);
+            }
+        }
+
+        // The value is either loaded or being loaded by another thread in
+        // which case we wait for that load rather than starting another one.
+        hits.increment();
+        entry.accessTime = now;
+        refreshAheadIfNeeded(key, entry, now);
+        return await(entry);
     }
 
-    @SuppressWarnings("unchecked")
-    protected V getQuiet(final K k) {
-        final Element element = cache.getQuiet(k);
-        if (element == null) {
+    protected V getQuiet(final K key) {
+        final Entry<V> entry = map.get(key);
+        if (entry == null || !entry.isLoaded() || isExpired(entry, System.currentTimeMillis())) {
             return null;
         }
-        return (V) element.getObjectValue();
+        return entry.future.getNow(null);
+    }
+
+    protected List<K> getKeys() {
+        return new ArrayList<>(map.keySet());
     }
 
     @Override
-    public void remove(final K k) {
-        cache.remove(k);
+    public void remove(final K key) {
+        final Entry<V> entry = map.remove(key);
+        if (entry != null) {
+            onRemoval(key, entry);
+        }
     }
 
     public void setMaxIdleTime(final long maxIdleTime, final TimeUnit unit) {
-        setMaxIdleTime(TimeUnit.SECONDS.convert(maxIdleTime, unit));
+        this.maxIdleMs = unit.toMillis(maxIdleTime);
     }
 
     public void setMaxLiveTime(final long maxLiveTime, final TimeUnit unit) {
-        setMaxLiveTime(TimeUnit.SECONDS.convert(maxLiveTime, unit));
+        this.maxLiveMs = unit.toMillis(maxLiveTime);
     }
 
     public void setMaxIdleTime(final long maxIdleTime) {
-        cache.getCacheConfiguration().setTimeToIdleSeconds(maxIdleTime);
+        setMaxIdleTime(maxIdleTime, TimeUnit.SECONDS);
     }
 
     public void setMaxLiveTime(final long maxLiveTime) {
-        cache.getCacheConfiguration().setTimeToLiveSeconds(maxLiveTime);
+        setMaxLiveTime(maxLiveTime, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Entries that are requested once they are older than this are reloaded in
+     * the background while the current value continues to be served. Only
+     * caches whose values can safely exist twice while a replacement loads
+     * should use this.
+     */
+    public void setRefreshAhead(final long refreshAhead, final TimeUnit unit) {
+        this.refreshAheadMs = unit.toMillis(refreshAhead);
+    }
+
+    public void setWeigher(final Weigher<K, V> weigher) {
+        this.weigher = weigher;
+    }
+
+    public void setMaxWeight(final long maxWeight) {
+        this.maxWeight = maxWeight;
     }
 
     public void evictExpiredElements() {
-        cache.evictExpiredElements();
+        removeExpired();
+    }
+
+    private void removeExpired() {
+        final long now = System.currentTimeMillis();
+        map.forEach((key, entry) -> {
+            if (entry.isLoaded() && isExpired(entry, now)) {
+                expire(key, entry);
+            }
+        });
     }
 
     @Override
     public void clear() {
-        cache.removeAll();
+        map.forEach((key, entry) -> {
+            if (map.remove(key, entry)) {
+                onRemoval(key, entry);
+            }
+        });
     }
 
     public CacheInfo getInfo() {
-        final Statistics stats = cache.getStatistics();
+        final long hitCount = hits.sum();
+        final long missCount = misses.sum();
+        final long loadCount = loads.sum();
+        final long size = map.size();
+
+        // Report the average time taken to load a value as this is what
+        // callers actually wait for.
+        float averageLoadTime = 0;
+        if (loadCount > 0) {
+            averageLoadTime = (float) (loadNanos.sum() / 1000000D / loadCount);
+        }
+
+        return new CacheInfo(name, hitCount, 0, 0, hitCount, missCount, 0, 0, missCount, size, averageLoadTime,
+                evictions.sum(), size, 0, 0, 0, 0, 0);
+    }
+
+    public long getWeight() {
+        return totalWeight.get();
+    }
 
-        final CacheInfo info = new CacheInfo(stats.getAssociatedCacheName(), stats.getCacheHits(),
-                stats.getOnDiskHits(), stats.getOffHeapHits(), stats.getInMemoryHits(), stats.getCacheMisses(),
-                stats.getOnDiskMisses(), stats.getOffHeapMisses(), stats.getInMemoryMisses(), stats.getObjectCount(),
-                stats.getAverageGetTime(), stats.getEvictionCount(), stats.getMemoryStoreObjectCount(),
-                stats.getOffHeapStoreObjectCount(), stats.getDiskStoreObjectCount(), stats.getSearchesPerSecond(),
-                stats.getAverageSearchTime(), stats.getWriterQueueSize());
-        return info;
+    private boolean isExpired(final Entry<V> entry, final long now) {
+        final long maxLiveMs = this.maxLiveMs;
+        final long maxIdleMs = this.maxIdleMs;
+        return (maxLiveMs > 0 && now - entry.createTime > maxLiveMs)
+                || (maxIdleMs > 0 && now - entry.accessTime > maxIdleMs);
     }
 
-    protected Ehcache getCache() {
-        return cache;
+    private void expire(final K key, final Entry<V> entry) {
+        if (map.remove(key, entry)) {
+            evictions.increment();
+            onRemoval(key, entry);
+        }
     }
 
-    @SuppressWarnings("rawtypes")
-    private void destroyAll(final Ehcache cache) {
+    private boolean load(final K key, final Entry<V> entry) {
+        final long startTime = System.nanoTime();
         try {
-            final List keys = cache.getKeys();
-            for (final Object key : keys) {
-                try {
-                    // Try and get the element quietly as we don't want this
-                    // call
-                    // top extend the life of sessions that should be dying.
-                    final Element element = cache.getQuiet(key);
-                    destroy(element);
-                } catch (final Throwable t) {
-                    LOGGER.error(t.getMessage(), t);
+            final V value = create(key);
+            final long weight = weigh(key, value);
+            final long now = System.currentTimeMillis();
+
+            final boolean removed;
+            synchronized (entry) {
+                entry.weight = weight;
+                entry.createTime = now;
+                entry.accessTime = now;
+                removed = entry.removed;
+                if (!removed) {
+                    totalWeight.addAndGet(weight);
                 }
+                entry.future.complete(value);
+            }
+
+            // The entry was removed or cleared while we were loading so
+            // nothing else will destroy the value.
+            if (removed) {
+                destroyQuietly(key, value);
             }
+            return true;
         } catch (final Throwable t) {
-            LOGGER.error(t.getMessage(), t);
+            // Don't cache failures, the next request for the key will try
+            // again.
+            map.remove(key, entry);
+            entry.future.completeExceptionally(t);
+            return false;
+        } finally {
+            loads.increment();
+            loadNanos.add(System.nanoTime() - startTime);
+        }
+    }
+
+    private long weigh(final K key, final V value) {
+        final Weigher<K, V> weigher = this.weigher;
+        if (weigher == null || value == null) {
+            return 1;
+        }
+        return Math.max(1, weigher.weigh(key, value));
+    }
+
+    private V await(final Entry<V> entry) {
+        try {
+            return entry.future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e.getMessage(), e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    private void refreshAheadIfNeeded(final K key, final Entry<V> entry, final long now) {
+        final long refreshAheadMs = this.refreshAheadMs;
+        if (refreshAheadMs > 0 && entry.isLoaded() && now - entry.createTime > refreshAheadMs
+                && entry.refreshing.compareAndSet(false, true)) {
+            try {
+                getRefreshExecutor().execute(() -> refresh(key, entry));
+            } catch (final RejectedExecutionException e) {
+                entry.refreshing.set(false);
+            }
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void destroy(final Element element) {
-        if (element != null) {
-            destroy((K) element.getObjectKey(), (V) element.getObjectValue());
+    private void refresh(final K key, final Entry<V> entry) {
+        if (map.get(key) != entry) {
+            return;
+        }
+
+        final Entry<V> replacement = new Entry<>(System.currentTimeMillis());
+        if (load(key, replacement)) {
+            replacement.accessTime = entry.accessTime;
+            if (map.replace(key, entry, replacement)) {
+                onRemoval(key, entry);
+                evictIfNeeded(replacement);
+            } else {
+                // The entry was removed while we were loading.
+                onRemoval(key, replacement);
+            }
+        } else {
+            LOGGER.debug("refresh() - Failed to refresh '%s' in %s", key, name);
+            // Keep serving the current value and try again on the next
+            // request.
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Once either limit is exceeded the least recently used entries are
+     * evicted until the cache is back under 90% of its limits so that the
+     * cost of finding them is spread over many loads.
+     */
+    private void evictIfNeeded(final Entry<V> keep) {
+        if (map.size() <= maxCacheEntries && totalWeight.get() <= maxWeight) {
+            return;
+        }
+        // Only one thread needs to evict.
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            removeExpired();
+
+            final long targetEntries = maxCacheEntries - (maxCacheEntries / 10);
+            final long targetWeight = maxWeight - (maxWeight / 10);
+            if (map.size() <= targetEntries && totalWeight.get() <= targetWeight) {
+                return;
+            }
+
+            final List<EvictionCandidate<K, V>> candidates = new ArrayList<>(map.size());
+            map.forEach((key, entry) -> {
+                if (entry != keep && entry.isLoaded()) {
+                    candidates.add(new EvictionCandidate<>(key, entry));
+                }
+            });
+            candidates.sort((o1, o2) -> Long.compare(o1.accessTime, o2.accessTime));
+
+            for (final EvictionCandidate<K, V> candidate : candidates) {
+                if (map.size() <= targetEntries && totalWeight.get() <= targetWeight) {
+                    break;
+                }
+                expire(candidate.key, candidate.entry);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void onRemoval(final K key, final Entry<V> entry) {
+        V value = null;
+        synchronized (entry) {
+            if (entry.removed) {
+                return;
+            }
+            entry.removed = true;
+
+            // Values still loading are destroyed by load() once they are
+            // complete.
+            if (!entry.isLoaded()) {
+                return;
+            }
+            totalWeight.addAndGet(-entry.weight);
+            value = entry.future.getNow(null);
+        }
+
+        destroyQuietly(key, value);
+    }
+
+    private void destroyQuietly(final K key, final V value) {
+        try {
+            destroy(key, value);
+        } catch (final Throwable t) {
+            LOGGER.error(t.getMessage(), t);
         }
     }
 
@@ -213,4 +455,18 @@ public abstract class AbstractCacheBean<K, V> implements CacheBean<K, V> {
             }
         }
     }
+
+    private static ExecutorService getRefreshExecutor() {
+        if (refreshExecutor == null) {
+            synchronized (AbstractCacheBean.class) {
+                if (refreshExecutor == null) {
+                    final CustomThreadFactory threadFactory = new CustomThreadFactory("Cache Refresh ",
+                            StroomThreadGroup.instance(), Thread.NORM_PRIORITY - 1);
+                    threadFactory.setDaemon(true);
+                    refreshExecutor = Executors.newFixedThreadPool(REFRESH_THREADS, threadFactory);
+                }
+            }
+        }
+        return refreshExecutor;
+    }
 }
@@ -16,6 +16,8 @@
 
 package stroom.cache;
 
+import java.util.List;
+
 import stroom.cache.shared.CacheInfo;
 import stroom.cache.shared.FindCacheInfoCriteria;
 import stroom.entity.shared.Clearable;
@@ -28,4 +30,9 @@ import stroom.entity.shared.FindService;
  */
 public interface StroomCacheManager
         extends Clearable, FindClearService<FindCacheInfoCriteria>, FindService<CacheInfo, FindCacheInfoCriteria> {
+    /**
+     * @return The sorted names of all caches, both those managed by ehcache
+     *         and those provided by cache beans.
+     */
+    List<String> getCacheNames();
 }
@@ -18,9 +18,10 @@ package stroom.cache;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
-import javax.annotation.Resource;
+import javax.inject.Inject;
 
 import org.springframework.stereotype.Component;
 
@@ -36,8 +37,22 @@ import net.sf.ehcache.Statistics;
 
 @Component
 public class StroomCacheManagerImpl implements StroomCacheManager, Clearable {
-    @Resource
-    private CacheManager cacheManager;
+    private final CacheManager cacheManager;
+
+    @Inject
+    public StroomCacheManagerImpl(final CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public List<String> getCacheNames() {
+        final List<String> names = new ArrayList<>(Arrays.asList(cacheManager.getCacheNames()));
+        for (final AbstractCacheBean<?, ?> cacheBean : AbstractCacheBean.getCacheBeans(cacheManager)) {
+            names.add(cacheBean.getCacheName());
+        }
+        names.sort(Comparator.naturalOrder());
+        return names;
+    }
 
     @Override
     public BaseResultList<CacheInfo> find(final FindCacheInfoCriteria criteria) throws RuntimeException {
@@ -63,7 +78,8 @@ public class StroomCacheManagerImpl implements StroomCacheManager, Clearable {
         }
 
         // Return a base result list.
-        final int cacheCount = cacheManager.getCacheNames().length;
+        final int cacheCount = cacheManager.getCacheNames().length
+                + AbstractCacheBean.getCacheBeans(cacheManager).size();
         final boolean more = pageRequest.getOffset() + list.size() < cacheCount;
         return new BaseResultList<>(list, pageRequest.getOffset(), Long.valueOf(cacheCount), more);
     }
@@ -98,6 +114,15 @@ public class StroomCacheManagerImpl implements StroomCacheManager, Clearable {
                 }
             }
         }
+
+        for (final AbstractCacheBean<?, ?> cacheBean : AbstractCacheBean.getCacheBeans(cacheManager)) {
+            final CacheInfo info = cacheBean.getInfo();
+            if (criteria == null || criteria.getName() == null || criteria.getName().isMatch(info.getName())) {
+                list.add(info);
+            }
+        }
+
+        list.sort(Comparator.comparing(CacheInfo::getName));
         return list;
     }
 
@@ -113,6 +138,10 @@ public class StroomCacheManagerImpl implements StroomCacheManager, Clearable {
                 cache.removeAll();
             }
         }
+
+        for (final AbstractCacheBean<?, ?> cacheBean : AbstractCacheBean.getCacheBeans(cacheManager)) {
+            cacheBean.clear();
+        }
     }
 
     /**
@@ -122,7 +151,17 @@ public class StroomCacheManagerImpl implements StroomCacheManager, Clearable {
     public Long findClear(final FindCacheInfoCriteria criteria) {
         final List<CacheInfo> caches = findCaches(criteria);
         for (final CacheInfo cache : caches) {
-            cacheManager.getCache(cache.getName()).removeAll();
+            final Cache ehcache = cacheManager.getCache(cache.getName());
+            if (ehcache != null) {
+                ehcache.removeAll();
+            }
+        }
+
+        for (final AbstractCacheBean<?, ?> cacheBean : AbstractCacheBean.getCacheBeans(cacheManager)) {
+            if (criteria == null || criteria.getName() == null
+                    || criteria.getName().isMatch(cacheBean.getCacheName())) {
+                cacheBean.clear();
+            }
         }
         return null;
     }
@@ -14,32 +14,14 @@
  * limitations under the License.
  */
 
-package stroom.search.server;
+package stroom.cache;
 
-public class Event implements Comparable<Event> {
-    private final long id;
-    private final String[] values;
-
-    public Event(final long id, final String[] values) {
-        this.id = id;
-        this.values = values;
-    }
-
-    public long getId() {
-        return id;
-    }
-
-    public String[] getValues() {
-        return values;
-    }
-
-    @Override
-    public int compareTo(final Event o) {
-        return Long.compare(id, o.id);
-    }
-
-    @Override
-    public String toString() {
-        return String.valueOf(id);
-    }
+/**
+ * Calculates the weight of a cache entry so that caches can be bounded by the
+ * approximate size of what they hold rather than by the number of entries.
+ * The weight is calculated once when a value is loaded so it must not change
+ * while the value is cached.
+ */
+public interface Weigher<K, V> {
+    long weigh(K key, V value);
 }
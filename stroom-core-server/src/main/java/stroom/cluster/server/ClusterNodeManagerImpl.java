@@ -251,6 +251,12 @@ public class ClusterNodeManagerImpl implements ClusterNodeManager, EntityEvent.H
         updateClusterStateAsync(REQUERY_DELAY, true);
     }
 
+    @Override
+    public void onChange(final List<EntityEvent> events) {
+        // One requery covers every node change in the batch.
+        updateClusterStateAsync(REQUERY_DELAY, true);
+    }
+
     private List<Node> asList(Set<Node> set) {
         final List<Node> list = new ArrayList<>(set);
         Collections.sort(list, (o1, o2) -> {
@@ -20,17 +20,19 @@ import stroom.task.cluster.ClusterTask;
 import stroom.util.shared.Task;
 import stroom.util.shared.VoidResult;
 
+import java.util.List;
+
 public class ClusterEntityEventTask extends ClusterTask<VoidResult> {
-    private static final long serialVersionUID = -1305243739417365803L;
+    private static final long serialVersionUID = -1305243739417365804L;
 
-    private final EntityEvent entityEvent;
+    private final List<EntityEvent> entityEvents;
 
-    public ClusterEntityEventTask(final Task<?> parentTask, final EntityEvent entityEvent) {
+    public ClusterEntityEventTask(final Task<?> parentTask, final List<EntityEvent> entityEvents) {
         super(parentTask, "EntityEvent");
-        this.entityEvent = entityEvent;
+        this.entityEvents = entityEvents;
     }
 
-    public EntityEvent getEntityEvent() {
-        return entityEvent;
+    public List<EntityEvent> getEntityEvents() {
+        return entityEvents;
     }
 }
@@ -38,7 +38,7 @@ public class ClusterEntityEventTaskHandler implements TaskHandler<ClusterEntityE
     @Override
     public void exec(final ClusterEntityEventTask task, final TaskCallback<VoidResult> callback) {
         try {
-            entityEventBusImpl.fireLocally(task.getEntityEvent());
+            entityEventBusImpl.fireLocally(task.getEntityEvents());
         } catch (final Exception e) {
             LOGGER.error(e.getMessage(), e);
         }
@@ -24,14 +24,18 @@ import stroom.util.task.ServerTask;
 public class DispatchEntityEventTask extends ServerTask<VoidResult>implements Serializable {
     private static final long serialVersionUID = -1305243739417365803L;
 
-    private final EntityEvent entityEvent;
+    private final long batchWindow;
 
-    public DispatchEntityEventTask(final EntityEvent entityEvent) {
+    public DispatchEntityEventTask(final long batchWindow) {
         super(null, null, null);
-        this.entityEvent = entityEvent;
+        this.batchWindow = batchWindow;
     }
 
-    public EntityEvent getEntityEvent() {
-        return entityEvent;
+    /**
+     * @return How long to wait for more events to batch up before sending
+     *         them.
+     */
+    public long getBatchWindow() {
+        return batchWindow;
     }
 }
@@ -26,9 +26,12 @@ import stroom.task.server.TaskHandlerBean;
 import stroom.util.logging.StroomLogger;
 import stroom.util.shared.VoidResult;
 import stroom.util.spring.StroomScope;
+import stroom.util.thread.ThreadUtil;
 import org.springframework.context.annotation.Scope;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 @TaskHandlerBean(task = DispatchEntityEventTask.class)
@@ -36,17 +39,35 @@ import java.util.Set;
 class DispatchEntityEventTaskHandler extends AbstractTaskHandler<DispatchEntityEventTask, VoidResult> {
     private static final StroomLogger LOGGER = StroomLogger.getLogger(DispatchEntityEventTaskHandler.class);
 
+    // Limit the size of each call so that mass changes don't produce a single
+    // huge request.
+    private static final int MAX_BATCH_SIZE = 1000;
+
     private final ClusterDispatchAsyncHelper dispatchHelper;
     private final TargetNodeSetFactory targetNodeSetFactory;
+    private final EntityEventBusImpl entityEventBusImpl;
 
     @Inject
-    DispatchEntityEventTaskHandler(final ClusterDispatchAsyncHelper dispatchHelper, final TargetNodeSetFactory targetNodeSetFactory) {
+    DispatchEntityEventTaskHandler(final ClusterDispatchAsyncHelper dispatchHelper, final TargetNodeSetFactory targetNodeSetFactory,
+                                   final EntityEventBusImpl entityEventBusImpl) {
         this.dispatchHelper = dispatchHelper;
         this.targetNodeSetFactory = targetNodeSetFactory;
+        this.entityEventBusImpl = entityEventBusImpl;
     }
 
     @Override
     public VoidResult exec(final DispatchEntityEventTask task) {
+        // Give other events fired in quick succession, e.g. by an import, the
+        // chance to join this batch.
+        if (task.getBatchWindow() > 0) {
+            ThreadUtil.sleep(task.getBatchWindow());
+        }
+
+        final List<EntityEvent> events = entityEventBusImpl.takePendingEvents();
+        if (events.isEmpty()) {
+            return VoidResult.INSTANCE;
+        }
+
         try {
             // Get this node.
             final Node sourceNode = targetNodeSetFactory.getSourceNode();
@@ -54,11 +75,15 @@ class DispatchEntityEventTaskHandler extends AbstractTaskHandler<DispatchEntityE
             // Get the nodes that we are going to send the entity event to.
             final Set<Node> targetNodes = targetNodeSetFactory.getEnabledActiveTargetNodeSet();
 
-            // Only send the event to remote nodes and not this one.
+            // Only send the events to remote nodes and not this one.
             targetNodes.stream().filter(targetNode -> !targetNode.equals(sourceNode)).forEach(targetNode -> {
-                // Send the entity event.
-                final ClusterEntityEventTask clusterEntityEventTask = new ClusterEntityEventTask(task, task.getEntityEvent());
-                dispatchHelper.execAsync(clusterEntityEventTask, targetNode);
+                // Send the entity events.
+                for (int i = 0; i < events.size(); i += MAX_BATCH_SIZE) {
+                    final List<EntityEvent> batch = new ArrayList<>(
+                            events.subList(i, Math.min(events.size(), i + MAX_BATCH_SIZE)));
+                    final ClusterEntityEventTask clusterEntityEventTask = new ClusterEntityEventTask(task, batch);
+                    dispatchHelper.execAsync(clusterEntityEventTask, targetNode);
+                }
             });
         } catch (final NullClusterStateException | NodeNotFoundException e) {
             LOGGER.warn(e.getMessage());
@@ -18,8 +18,11 @@ package stroom.entity.server.event;
 
 import stroom.entity.shared.DocRef;
 import stroom.entity.shared.EntityAction;
+import stroom.util.shared.EqualsBuilder;
+import stroom.util.shared.HashCodeBuilder;
 
 import java.io.Serializable;
+import java.util.List;
 
 public class EntityEvent implements Serializable {
     private static final long serialVersionUID = -6646086368064417052L;
@@ -48,7 +51,47 @@ public class EntityEvent implements Serializable {
         return action;
     }
 
+    @Override
+    public int hashCode() {
+        final HashCodeBuilder builder = new HashCodeBuilder();
+        builder.append(docRef);
+        builder.append(action);
+        return builder.toHashCode();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o == this) {
+            return true;
+        } else if (!(o instanceof EntityEvent)) {
+            return false;
+        }
+
+        final EntityEvent entityEvent = (EntityEvent) o;
+        final EqualsBuilder builder = new EqualsBuilder();
+        builder.append(docRef, entityEvent.docRef);
+        builder.append(action, entityEvent.action);
+        return builder.isEquals();
+    }
+
+    @Override
+    public String toString() {
+        return action + " " + docRef;
+    }
+
     public interface Handler {
         void onChange(EntityEvent event);
+
+        /**
+         * Called with a batch of events received from another node. Events
+         * are coalesced so each entity and action appears once. Handlers that
+         * clear everything on change should override this to do so once per
+         * batch.
+         */
+        default void onChange(final List<EntityEvent> events) {
+            for (final EntityEvent event : events) {
+                onChange(event);
+            }
+        }
     }
 }
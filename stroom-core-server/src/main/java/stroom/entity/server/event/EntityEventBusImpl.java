@@ -17,21 +17,32 @@
 package stroom.entity.server.event;
 
 import stroom.entity.shared.EntityAction;
+import stroom.task.server.TaskCallbackAdaptor;
 import stroom.task.server.TaskManager;
 import stroom.util.logging.StroomLogger;
+import stroom.util.shared.ModelStringUtil;
+import stroom.util.shared.VoidResult;
 import stroom.util.spring.StroomBeanStore;
 import stroom.util.spring.StroomStartup;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Component
 public class EntityEventBusImpl implements EntityEventBus {
     private static final StroomLogger LOGGER = StroomLogger.getLogger(EntityEventBusImpl.class);
+    private static final long DEFAULT_BATCH_WINDOW = 1000;
+    // How many times in a row to try scheduling a dispatch before leaving it
+    // to the next event that is fired.
+    private static final int MAX_DISPATCH_ATTEMPTS = 3;
     private final Map<String, Map<EntityAction, List<EntityEvent.Handler>>> handlers = new HashMap<>();
     private volatile boolean initialised;
 
@@ -42,6 +53,25 @@ public class EntityEventBusImpl implements EntityEventBus {
 
     private volatile boolean started = false;
 
+    // Events waiting to be sent to other nodes. Events are equal if they have
+    // the same entity and action so repeats of an action are only sent once
+    // but every different action is sent.
+    private final Set<EntityEvent> pendingEvents = new LinkedHashSet<>();
+    // Set while a dispatch task is scheduled or running. Guarded by
+    // pendingEvents.
+    private boolean dispatchScheduled;
+    // Guarded by pendingEvents.
+    private int failedDispatches;
+    private volatile long batchWindow = DEFAULT_BATCH_WINDOW;
+
+    @Value("#{propertyConfigurer.getProperty('stroom.entityEvent.batchWindow')}")
+    public void setBatchWindow(final String batchWindow) {
+        final Long duration = ModelStringUtil.parseDurationString(batchWindow);
+        if (duration != null) {
+            this.batchWindow = duration;
+        }
+    }
+
     @StroomStartup
     public void init() {
         started = true;
@@ -66,10 +96,91 @@ public class EntityEventBusImpl implements EntityEventBus {
             fireLocally(event);
 
             if (started) {
-                // Dispatch the entity event to all nodes in the cluster.
-                taskManager.execAsync(new DispatchEntityEventTask(event));
+                // Queue the entity event to be sent to all nodes in the
+                // cluster with any others fired within the batch window.
+                boolean dispatch = false;
+                synchronized (pendingEvents) {
+                    // Move a repeated action to the end so that it is sent in
+                    // the order it last happened relative to other events.
+                    pendingEvents.remove(event);
+                    pendingEvents.add(event);
+                    if (!dispatchScheduled) {
+                        dispatchScheduled = true;
+                        dispatch = true;
+                    }
+                }
+                if (dispatch) {
+                    scheduleDispatch();
+                }
+            }
+        }
+    }
+
+    private void scheduleDispatch() {
+        try {
+            taskManager.execAsync(new DispatchEntityEventTask(batchWindow), new TaskCallbackAdaptor<VoidResult>() {
+                @Override
+                public void onSuccess(final VoidResult result) {
+                    dispatchFinished();
+                }
+
+                @Override
+                public void onFailure(final Throwable t) {
+                    dispatchFailed(t);
+                }
+            });
+        } catch (final RuntimeException e) {
+            dispatchFailed(e);
+        }
+    }
+
+    /**
+     * Called when a dispatch task has sent the events it took. Any events
+     * fired since it took them get another dispatch task.
+     */
+    void dispatchFinished() {
+        boolean dispatch;
+        synchronized (pendingEvents) {
+            failedDispatches = 0;
+            dispatch = !pendingEvents.isEmpty();
+            dispatchScheduled = dispatch;
+        }
+        if (dispatch) {
+            scheduleDispatch();
+        }
+    }
+
+    /**
+     * Called if a dispatch task could not be run. The events are kept and the
+     * dispatch is scheduled again. If that keeps failing we give up and leave
+     * the next event that is fired to schedule a new dispatch.
+     */
+    private void dispatchFailed(final Throwable t) {
+        LOGGER.error("Unable to dispatch entity events", t);
+        boolean dispatch;
+        synchronized (pendingEvents) {
+            failedDispatches++;
+            dispatch = !pendingEvents.isEmpty() && failedDispatches < MAX_DISPATCH_ATTEMPTS;
+            dispatchScheduled = dispatch;
+            if (!dispatch) {
+                failedDispatches = 0;
             }
         }
+        if (dispatch) {
+            scheduleDispatch();
+        }
+    }
+
+    /**
+     * Take all events that are waiting to be sent to other nodes. Repeated
+     * events for the same entity and action have already been coalesced.
+     */
+    List<EntityEvent> takePendingEvents() {
+        synchronized (pendingEvents) {
+            final List<EntityEvent> events = new ArrayList<>(pendingEvents);
+            pendingEvents.clear();
+            return events;
+        }
     }
 
     public void fireLocally(final EntityEvent event) {
@@ -77,6 +188,43 @@ public class EntityEventBusImpl implements EntityEventBus {
         fireEventByType(event, event.getDocRef().getType());
     }
 
+    /**
+     * Fires a batch of events received from another node so that each handler
+     * is called once with all of the events it is interested in.
+     */
+    public void fireLocally(final List<EntityEvent> events) {
+        final Map<EntityEvent.Handler, List<EntityEvent>> handlerEvents = new LinkedHashMap<>();
+        for (final EntityEvent event : events) {
+            final Map<EntityAction, List<EntityEvent.Handler>> map = getHandlers().get(event.getDocRef().getType());
+            if (map != null) {
+                addHandlerEvents(handlerEvents, map.get(null), event);
+                addHandlerEvents(handlerEvents, map.get(event.getAction()), event);
+            }
+        }
+
+        for (final Map.Entry<EntityEvent.Handler, List<EntityEvent>> entry : handlerEvents.entrySet()) {
+            try {
+                entry.getKey().onChange(entry.getValue());
+            } catch (final Exception e) {
+                LOGGER.error(e);
+            }
+        }
+    }
+
+    private void addHandlerEvents(final Map<EntityEvent.Handler, List<EntityEvent>> handlerEvents,
+                                  final List<EntityEvent.Handler> list, final EntityEvent event) {
+        if (list != null) {
+            for (final EntityEvent.Handler handler : list) {
+                List<EntityEvent> handled = handlerEvents.get(handler);
+                if (handled == null) {
+                    handled = new ArrayList<>();
+                    handlerEvents.put(handler, handled);
+                }
+                handled.add(event);
+            }
+        }
+    }
+
     /**
      * Check to see if we can find a handler for this event. If there isn't one
      * then there is no point in firing the event.
@@ -18,24 +18,41 @@ package stroom.jobsystem.server;
 
 import stroom.task.server.AbstractTaskHandler;
 import stroom.task.server.TaskHandlerBean;
+import stroom.util.date.DateUtil;
 import stroom.util.logging.StroomLogger;
 import stroom.util.shared.ModelStringUtil;
-import stroom.util.shared.SharedBoolean;
 import stroom.util.spring.StroomFrequencySchedule;
 import stroom.util.spring.StroomScope;
 import org.springframework.context.annotation.Scope;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Holds cluster lock state in memory on the master node.
+ * <p>
+ * Each run of this handler as master has an epoch, the time it started
+ * serving locks, and every lock it grants gets a fencing token greater than
+ * any handed out before. When a new master takes over, nodes that held locks
+ * from the previous master reclaim them, keeping their fencing tokens, with
+ * their next keep alive; for a grace period at the start of an epoch no fresh
+ * locks are granted so that they have the chance to do so. There is no grace
+ * period on a cold start, i.e. when the node that starts the epoch has never
+ * heard from a master, as nobody can hold a lock to reclaim. If a node reports
+ * an epoch later than ours then another node has been master since we started
+ * so we discard what we know and start a new epoch.
+ */
 @TaskHandlerBean(task = ClusterLockClusterTask.class)
 @Scope(value = StroomScope.SINGLETON)
-public class ClusterLockClusterHandler extends AbstractTaskHandler<ClusterLockClusterTask, SharedBoolean> {
+public class ClusterLockClusterHandler extends AbstractTaskHandler<ClusterLockClusterTask, ClusterLockResult> {
     private static class Lock {
         private final ClusterLockKey clusterLockKey;
+        private final long token;
         private volatile long refreshTime;
 
-        public Lock(final ClusterLockKey clusterLockKey) {
+        public Lock(final ClusterLockKey clusterLockKey, final long token) {
             this.clusterLockKey = clusterLockKey;
+            this.token = token;
             refresh();
         }
 
@@ -54,6 +71,8 @@ public class ClusterLockClusterHandler extends AbstractTaskHandler<ClusterLockCl
             final long age = System.currentTimeMillis() - refreshTime;
 
             clusterLockKey.append(sb);
+            sb.append(" token=");
+            sb.append(token);
             sb.append(" age=");
             sb.append(ModelStringUtil.formatDurationString(age));
         }
@@ -64,26 +83,97 @@ public class ClusterLockClusterHandler extends AbstractTaskHandler<ClusterLockCl
     // 10 min
     public static final long TEN_MINUTES = 10 * 60 * 1000;
 
+    // Holders keep their locks alive every minute so allow a little longer
+    // than that for them to reclaim locks from a previous master.
+    private static final long GRACE_PERIOD = 90 * 1000;
+
     private final ConcurrentHashMap<String, Lock> lockMap = new ConcurrentHashMap<>();
+    private final AtomicLong tokenSequence = new AtomicLong();
+    private final long gracePeriod;
+
+    private volatile long epoch;
+    private volatile long graceEnd;
+
+    public ClusterLockClusterHandler() {
+        this(GRACE_PERIOD);
+    }
+
+    ClusterLockClusterHandler(final long gracePeriod) {
+        this.gracePeriod = gracePeriod;
+    }
 
     @Override
-    public SharedBoolean exec(final ClusterLockClusterTask task) {
+    public ClusterLockResult exec(final ClusterLockClusterTask task) {
+        final long now = System.currentTimeMillis();
+        final long currentEpoch = checkEpoch(task.getEpoch(), now);
+
         boolean success = false;
+        Lock lock = null;
 
         final ClusterLockKey clusterLockKey = task.getKey();
         switch (task.getLockStyle()) {
         case Try:
-            success = tryLock(clusterLockKey);
+            lock = tryLock(clusterLockKey, now);
+            success = lock != null;
             break;
         case Release:
             success = release(clusterLockKey);
             break;
         case KeepAlive:
-            success = keepAlive(clusterLockKey);
+            lock = keepAlive(clusterLockKey, task.getToken(), now);
+            success = lock != null;
+            break;
+        case Check:
+            lock = check(clusterLockKey, task.getToken());
+            success = lock != null;
             break;
         }
 
-        return new SharedBoolean(success);
+        long token = 0;
+        if (lock != null) {
+            token = lock.token;
+        }
+        return new ClusterLockResult(success, currentEpoch, token);
+    }
+
+    /**
+     * Start a new epoch if this is the first request we have served as master
+     * or if the requesting node has heard from a master that started serving
+     * after we did.
+     *
+     * @param nodeEpoch
+     *            The epoch the requesting node last heard from a master.
+     * @param now
+     *            The current time.
+     * @return The current epoch.
+     */
+    private synchronized long checkEpoch(final long nodeEpoch, final long now) {
+        if (epoch == 0 || nodeEpoch > epoch) {
+            if (lockMap.size() > 0) {
+                LOGGER.warn("checkEpoch() - Discarding %s locks from epoch %s", lockMap.size(),
+                        DateUtil.createNormalDateTimeString(epoch));
+                lockMap.clear();
+            }
+
+            // Seed tokens from the clock so they keep increasing across
+            // masters as long as node clocks are roughly in step.
+            final long seed = now * 1000;
+            if (tokenSequence.get() < seed) {
+                tokenSequence.set(seed);
+            }
+
+            // Only wait for holders to reclaim their locks if there has been a
+            // master before us.
+            if (epoch != 0 || nodeEpoch != 0) {
+                graceEnd = now + gracePeriod;
+            } else {
+                graceEnd = now;
+            }
+            epoch = Math.max(now, nodeEpoch + 1);
+            LOGGER.info("checkEpoch() - Serving cluster locks from epoch %s",
+                    DateUtil.createNormalDateTimeString(epoch));
+        }
+        return epoch;
     }
 
     /**
@@ -91,18 +181,21 @@ public class ClusterLockClusterHandler extends AbstractTaskHandler<ClusterLockCl
      *
      * @param clusterLockKey
      *            The key to try and lock with.
-     * @return Return true if we managed to obtain a lock with the supplied key,
-     *         return false if this lock is already owned by another
-     *         node/process.
+     * @param now
+     *            The current time.
+     * @return Return the new lock if we managed to obtain a lock with the
+     *         supplied key, return null if this lock is already owned by
+     *         another node/process or we are still waiting for holders from a
+     *         previous epoch to reclaim their locks.
      */
-    private boolean tryLock(final ClusterLockKey clusterLockKey) {
-        boolean success = false;
+    private Lock tryLock(final ClusterLockKey clusterLockKey, final long now) {
+        Lock success = null;
 
         try {
             final String lockName = clusterLockKey.getName();
             final Lock currentLock = lockMap.get(lockName);
-            if (currentLock == null) {
-                final Lock newLock = new Lock(clusterLockKey);
+            if (currentLock == null && now >= graceEnd) {
+                final Lock newLock = new Lock(clusterLockKey, tokenSequence.incrementAndGet());
                 // Another node might have concurrently put a lock so only put
                 // this new lock if no lock is present. This method will return
                 // the lock we are trying to put if one does not already exist
@@ -112,11 +205,11 @@ public class ClusterLockClusterHandler extends AbstractTaskHandler<ClusterLockCl
                 // Check that the current lock is EXACTLY (hence ==) the one we
                 // have just tried to put.
                 if (lock == newLock) {
-                    success = true;
+                    success = newLock;
                 }
             }
 
-            debug("lock()", clusterLockKey, currentLock, success);
+            debug("lock()", clusterLockKey, currentLock, success != null);
         } catch (final Throwable t) {
             LOGGER.error(t.getMessage(), t);
         }
@@ -172,12 +265,16 @@ public class ClusterLockClusterHandler extends AbstractTaskHandler<ClusterLockCl
      *
      * @param clusterLockKey
      *            The key to try and keep alive an associated lock with.
-     * @return Return true if we managed to keep alive a lock with the supplied
-     *         key, return false if no lock could be found for this key or if
-     *         the lock is owned by another node/process.
+     * @param token
+     *            The fencing token the holder has for the lock.
+     * @param now
+     *            The current time.
+     * @return Return the lock if we managed to keep alive or reclaim a lock
+     *         with the supplied key, return null if no lock could be found for
+     *         this key or if the lock is owned by another node/process.
      */
-    private boolean keepAlive(final ClusterLockKey clusterLockKey) {
-        boolean success = false;
+    private Lock keepAlive(final ClusterLockKey clusterLockKey, final long token, final long now) {
+        Lock success = null;
 
         try {
             final String lockName = clusterLockKey.getName();
@@ -191,7 +288,7 @@ public class ClusterLockClusterHandler extends AbstractTaskHandler<ClusterLockCl
                 // be the case.
                 if (currentLock.clusterLockKey.equals(clusterLockKey)) {
                     currentLock.refresh();
-                    success = true;
+                    success = currentLock;
                 } else {
                     // The owning node might have unlocked this key at the same
                     // time as trying to keep the lock alive - another node
@@ -201,6 +298,22 @@ public class ClusterLockClusterHandler extends AbstractTaskHandler<ClusterLockCl
                     debug("keepAlive() - Attempt to keep alive with a different key to the owner", clusterLockKey,
                             currentLock, null);
                 }
+            } else if (now < graceEnd) {
+                // The lock was probably granted by a previous master so let
+                // the holder reclaim it with the token it already has. Fresh
+                // locks are not granted during the grace period so nobody else
+                // can have it. Make sure tokens we hand out later are greater.
+                long reclaimedToken = token;
+                if (reclaimedToken > 0) {
+                    tokenSequence.accumulateAndGet(reclaimedToken, Math::max);
+                } else {
+                    reclaimedToken = tokenSequence.incrementAndGet();
+                }
+                final Lock newLock = new Lock(clusterLockKey, reclaimedToken);
+                if (lockMap.putIfAbsent(lockName, newLock) == null) {
+                    success = newLock;
+                    info("keepAlive() - Reclaimed lock from a previous epoch", clusterLockKey, newLock);
+                }
             } else {
                 // The owning node might have unlocked this key at the same time
                 // as trying to keep the lock alive. As the calls are
@@ -209,7 +322,7 @@ public class ClusterLockClusterHandler extends AbstractTaskHandler<ClusterLockCl
                 debug("keepAlive() - Attempt to keep alive when was not locked", clusterLockKey, currentLock, null);
             }
 
-            debug("keepAlive()", clusterLockKey, currentLock, success);
+            debug("keepAlive()", clusterLockKey, currentLock, success != null);
         } catch (final Throwable t) {
             LOGGER.error(t.getMessage(), t);
         }
@@ -217,6 +330,28 @@ public class ClusterLockClusterHandler extends AbstractTaskHandler<ClusterLockCl
         return success;
     }
 
+    /**
+     * Check that a lock is held with the supplied key and fencing token.
+     *
+     * @param clusterLockKey
+     *            The key the lock should be held with.
+     * @param token
+     *            The fencing token the lock should be held with.
+     * @return Return the lock if it is held with the supplied key and token,
+     *         return null otherwise.
+     */
+    private Lock check(final ClusterLockKey clusterLockKey, final long token) {
+        Lock success = null;
+
+        final Lock currentLock = lockMap.get(clusterLockKey.getName());
+        if (currentLock != null && currentLock.clusterLockKey.equals(clusterLockKey) && currentLock.token == token) {
+            success = currentLock;
+        }
+
+        debug("check()", clusterLockKey, currentLock, success != null);
+        return success;
+    }
+
     /**
      * Every 10 minutes try and unlock/remove any locks that we hold that have
      * not been refreshed by their owner for 10 minutes.
@@ -249,6 +384,14 @@ public class ClusterLockClusterHandler extends AbstractTaskHandler<ClusterLockCl
         }
     }
 
+    private void info(final String message, final ClusterLockKey clusterLockKey, final Lock lock) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(message);
+        sb.append(" -");
+        appendStatus(sb, clusterLockKey, lock, null);
+        LOGGER.info(sb.toString());
+    }
+
     private void error(final String message, final ClusterLockKey clusterLockKey, final Lock lock) {
         final StringBuilder sb = new StringBuilder();
         sb.append(message);
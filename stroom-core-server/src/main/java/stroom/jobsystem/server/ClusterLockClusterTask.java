@@ -17,18 +17,21 @@
 package stroom.jobsystem.server;
 
 import stroom.task.cluster.ClusterTask;
-import stroom.util.shared.SharedBoolean;
 
-public class ClusterLockClusterTask extends ClusterTask<SharedBoolean> {
-    private static final long serialVersionUID = -2025366263627949409L;
+public class ClusterLockClusterTask extends ClusterTask<ClusterLockResult> {
+    private static final long serialVersionUID = -2025366263627949410L;
 
     private final ClusterLockKey key;
     private final ClusterLockStyle lockStyle;
+    private final long epoch;
+    private final long token;
 
     public ClusterLockClusterTask(final ClusterLockTask parent) {
         super(parent, "ClusterLockClusterTask");
         this.key = parent.getKey();
         this.lockStyle = parent.getLockStyle();
+        this.epoch = parent.getEpoch();
+        this.token = parent.getToken();
     }
 
     public ClusterLockKey getKey() {
@@ -39,8 +42,24 @@ public class ClusterLockClusterTask extends ClusterTask<SharedBoolean> {
         return lockStyle;
     }
 
+    /**
+     * @return The epoch of the master node that this node last heard from or
+     *         0 if it has not heard from one yet.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return The fencing token the node holds the lock with or 0 if it does
+     *         not hold it yet.
+     */
+    public long getToken() {
+        return token;
+    }
+
     @Override
     public String toString() {
-        return key.toString() + " lockStyle=" + lockStyle;
+        return key.toString() + " lockStyle=" + lockStyle + " epoch=" + epoch + " token=" + token;
     }
 }
@@ -23,7 +23,6 @@ import stroom.task.cluster.TargetNodeSetFactory.TargetType;
 import stroom.task.server.AbstractTaskHandler;
 import stroom.task.server.TaskHandlerBean;
 import stroom.util.logging.StroomLogger;
-import stroom.util.shared.SharedBoolean;
 import stroom.util.spring.StroomScope;
 import org.springframework.context.annotation.Scope;
 
@@ -32,7 +31,7 @@ import java.net.MalformedURLException;
 
 @TaskHandlerBean(task = ClusterLockTask.class)
 @Scope(StroomScope.TASK)
-class ClusterLockHandler extends AbstractTaskHandler<ClusterLockTask, SharedBoolean> {
+class ClusterLockHandler extends AbstractTaskHandler<ClusterLockTask, ClusterLockResult> {
     protected static final StroomLogger LOGGER = StroomLogger.getLogger(ClusterLockHandler.class);
 
     private final ClusterDispatchAsyncHelper dispatchHelper;
@@ -43,20 +42,20 @@ class ClusterLockHandler extends AbstractTaskHandler<ClusterLockTask, SharedBool
     }
 
     @Override
-    public SharedBoolean exec(final ClusterLockTask task) {
+    public ClusterLockResult exec(final ClusterLockTask task) {
         // If the cluster state is not yet initialised then don't try and call
         // master.
         if (!dispatchHelper.isClusterStateInitialised()) {
-            return SharedBoolean.wrap(Boolean.FALSE);
+            return failed();
         }
 
-        final DefaultClusterResultCollector<SharedBoolean> collector = dispatchHelper
+        final DefaultClusterResultCollector<ClusterLockResult> collector = dispatchHelper
                 .execAsync(new ClusterLockClusterTask(task), TargetType.MASTER);
-        final ClusterCallEntry<SharedBoolean> response = collector.getSingleResponse();
+        final ClusterCallEntry<ClusterLockResult> response = collector.getSingleResponse();
 
         if (response == null) {
             LOGGER.error("No response");
-            return SharedBoolean.wrap(Boolean.FALSE);
+            return failed();
         }
         if (response.getError() != null) {
             try {
@@ -67,9 +66,13 @@ class ClusterLockHandler extends AbstractTaskHandler<ClusterLockTask, SharedBool
                 LOGGER.error(response.getError().getMessage(), response.getError());
             }
 
-            return SharedBoolean.wrap(Boolean.FALSE);
+            return failed();
         }
 
         return response.getResult();
     }
+
+    private ClusterLockResult failed() {
+        return new ClusterLockResult(false, 0, 0);
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.jobsystem.server;
+
+import stroom.util.shared.SharedObject;
+
+/**
+ * The master node's answer to a cluster lock request. As well as whether the
+ * request succeeded it carries the epoch of the master that answered (the
+ * time it started serving locks) and the fencing token of the lock. Tokens
+ * only ever increase so a holder can tell that a lock has been granted again
+ * since it was last seen, e.g. after the master has changed.
+ */
+public class ClusterLockResult implements SharedObject {
+    private static final long serialVersionUID = 6185826733129442105L;
+
+    private boolean success;
+    private long epoch;
+    private long token;
+
+    public ClusterLockResult() {
+        // Default constructor necessary for serialisation.
+    }
+
+    public ClusterLockResult(final boolean success, final long epoch, final long token) {
+        this.success = success;
+        this.epoch = epoch;
+        this.token = token;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getToken() {
+        return token;
+    }
+
+    @Override
+    public String toString() {
+        return "success=" + success + " epoch=" + epoch + " token=" + token;
+    }
+}
@@ -20,7 +20,17 @@ package stroom.jobsystem.server;
  * tryLock and release lock utilises the cluster but the master node must be up
  * to work
  *
- * lock uses the database
+ * lock uses the database unless the lock name is listed in
+ * stroom.clusterLock.leaseLockNames, in which case it takes a lease from the
+ * master node that is released when the current transaction completes. Leases
+ * need the cluster state so must not be used for locks taken at startup. Like a
+ * row lock, lock waits until the lease can be taken, and callers on the same
+ * node queue locally rather than all asking the master.
+ *
+ * Every lock granted by the master has a fencing token. Holders of a lock
+ * should check their token before each write they make under the lock so that
+ * they stop if the lock has been lost, e.g. because keep alives failed to reach
+ * the master. Lease holders have their token checked before they commit.
  */
 public interface ClusterLockService {
     boolean tryLock(final String lockName);
@@ -30,4 +40,21 @@ public interface ClusterLockService {
     void lock(final String lockName);
 
     void keepAlive();
+
+    /**
+     * @return The fencing token of a lock that this node holds.
+     * @throws IllegalStateException
+     *             If this node does not hold the lock.
+     */
+    long getFencingToken(final String lockName);
+
+    /**
+     * Check with the master node that we still hold a lock with the supplied
+     * fencing token.
+     *
+     * @throws IllegalStateException
+     *             If the lock is no longer held with this token or the master
+     *             node cannot confirm that it is.
+     */
+    void checkFencingToken(final String lockName, final long token);
 }
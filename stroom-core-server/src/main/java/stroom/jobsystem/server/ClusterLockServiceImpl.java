@@ -16,17 +16,24 @@
 
 package stroom.jobsystem.server;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Resource;
 
 import stroom.entity.server.util.StroomDatabaseInfo;
 import stroom.util.logging.StroomLogger;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import stroom.entity.server.util.StroomEntityManager;
 import stroom.entity.server.util.SQLBuilder;
@@ -34,14 +41,19 @@ import stroom.entity.shared.SQLNameConstants;
 import stroom.jobsystem.shared.ClusterLock;
 import stroom.node.server.NodeCache;
 import stroom.task.server.TaskManager;
+import stroom.util.date.DateUtil;
 import stroom.util.logging.LogExecutionTime;
-import stroom.util.shared.SharedBoolean;
 import stroom.util.spring.StroomFrequencySchedule;
 
 @Component
 public class ClusterLockServiceImpl implements ClusterLockService {
     private static final StroomLogger LOGGER = StroomLogger.getLogger(ClusterLockServiceImpl.class);
 
+    // How long to wait between asking the master for a lease that is held
+    // elsewhere.
+    private static final long MIN_LEASE_RETRY_DELAY = 100;
+    private static final long MAX_LEASE_RETRY_DELAY = 1000;
+
     @Resource
     private StroomEntityManager entityManager;
     @Resource
@@ -54,10 +66,111 @@ public class ClusterLockServiceImpl implements ClusterLockService {
     private NodeCache nodeCache;
 
     private final ConcurrentHashMap<String, ClusterLockKey> lockMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> tokenMap = new ConcurrentHashMap<>();
+    // Serialises callers on this node so that only one of them at a time asks
+    // the master for a lock and holds it.
+    private final ConcurrentHashMap<String, ReentrantLock> localLockMap = new ConcurrentHashMap<>();
+    private volatile long masterEpoch;
+
+    private Set<String> leaseLockNames = Collections.emptySet();
+
+    @Value("#{propertyConfigurer.getProperty('stroom.clusterLock.leaseLockNames')}")
+    public void setLeaseLockNames(final String leaseLockNames) {
+        final Set<String> names = new HashSet<>();
+        if (leaseLockNames != null) {
+            for (final String name : leaseLockNames.split(",")) {
+                if (name.trim().length() > 0) {
+                    names.add(name.trim());
+                }
+            }
+        }
+        this.leaseLockNames = names;
+    }
 
     @Override
     @Transactional(propagation = Propagation.MANDATORY)
     public void lock(final String lockName) {
+        if (leaseLockNames.contains(lockName)) {
+            leaseLock(lockName);
+        } else {
+            databaseLock(lockName);
+        }
+    }
+
+    /**
+     * Take a lease on the lock from the master node that is held until the
+     * current transaction completes. Like a row lock we wait until the lease
+     * can be taken; other callers on this node wait on the local lock so only
+     * one of them polls the master. The fencing token of the lease is checked
+     * with the master before the transaction commits so that nothing is
+     * committed if the lease has been lost in the meantime.
+     */
+    private void leaseLock(final String lockName) {
+        LOGGER.debug("leaseLock(%s) - >>>", lockName);
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Cluster lock lease requires a transaction: " + lockName);
+        }
+
+        // Locks are re-entrant within a transaction in the same way as row
+        // locks.
+        final String resourceKey = ClusterLockServiceImpl.class.getName() + ":" + lockName;
+        if (TransactionSynchronizationManager.hasResource(resourceKey)) {
+            LOGGER.debug("leaseLock(%s) - <<< already held", lockName);
+            return;
+        }
+
+        final LogExecutionTime logExecutionTime = new LogExecutionTime();
+        final ReentrantLock localLock = getLocalLock(lockName);
+        localLock.lock();
+        try {
+            // This thread may already hold the lock outside the transaction.
+            if (localLock.getHoldCount() == 1) {
+                waitForLease(lockName);
+            }
+            final long token = getFencingToken(lockName);
+
+            TransactionSynchronizationManager.bindResource(resourceKey, lockName);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void beforeCommit(final boolean readOnly) {
+                    // Throwing here rolls the transaction back.
+                    checkFencingToken(lockName, token);
+                }
+
+                @Override
+                public void afterCompletion(final int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(resourceKey);
+                    releaseLock(lockName);
+                }
+            });
+        } catch (final RuntimeException e) {
+            localLock.unlock();
+            throw e;
+        }
+
+        LOGGER.debug("leaseLock(%s) - <<< %s", lockName, logExecutionTime);
+    }
+
+    /**
+     * Keep asking the master for the lock until we get it, backing off while
+     * it is held elsewhere.
+     */
+    private void waitForLease(final String lockName) {
+        long delay = MIN_LEASE_RETRY_DELAY;
+        while (!tryMasterLock(lockName)) {
+            LOGGER.debug("waitForLease(%s) - Held elsewhere, retrying in %s ms", lockName, delay);
+            try {
+                Thread.sleep(delay);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for cluster lock lease: " + lockName);
+            }
+            delay = Math.min(delay * 2, MAX_LEASE_RETRY_DELAY);
+        }
+    }
+
+    private void databaseLock(final String lockName) {
         LOGGER.debug("lock(%s) - >>>", lockName);
 
         final LogExecutionTime logExecutionTime = new LogExecutionTime();
@@ -91,41 +204,84 @@ public class ClusterLockServiceImpl implements ClusterLockService {
         LOGGER.debug("tryLock(%s) - >>>", lockName);
         boolean success = false;
 
-        // Don't bother the master node if we already hold the lock.
+        // Don't bother the master node if another caller on this node holds
+        // the lock. If this thread already holds it then the lock is
+        // re-entrant.
+        final ReentrantLock localLock = getLocalLock(lockName);
+        if (localLock.tryLock()) {
+            success = localLock.getHoldCount() > 1 || tryMasterLock(lockName);
+            if (!success) {
+                localLock.unlock();
+            }
+        }
+
+        LOGGER.debug("tryLock(%s) - <<< %s", lockName, success);
+        return success;
+    }
+
+    /**
+     * Ask the master node for the lock unless this node already holds it.
+     */
+    private boolean tryMasterLock(final String lockName) {
+        boolean success = true;
+
         ClusterLockKey clusterLockKey = lockMap.get(lockName);
         if (clusterLockKey == null) {
+            success = false;
             clusterLockKey = new ClusterLockKey(lockName, nodeCache.getDefaultNode().getName(),
                     System.currentTimeMillis());
-            final SharedBoolean didLock = taskManager.exec(new ClusterLockTask(clusterLockKey, ClusterLockStyle.Try));
+            final ClusterLockResult didLock = taskManager
+                    .exec(new ClusterLockTask(clusterLockKey, ClusterLockStyle.Try, masterEpoch));
             if (didLock != null) {
-                success = Boolean.TRUE.equals(didLock.getBoolean());
+                success = didLock.isSuccess();
+                checkEpoch(didLock);
             }
 
             if (success) {
                 // We managed to acquire this cluster lock so add it to the lock
                 // set for the purposes of keep alive.
                 lockMap.put(lockName, clusterLockKey);
+                tokenMap.put(lockName, didLock.getToken());
             }
         }
 
-        LOGGER.debug("tryLock(%s) - <<< %s", lockName, success);
         return success;
     }
 
     @Override
     public void releaseLock(final String lockName) {
+        final ReentrantLock localLock = getLocalLock(lockName);
+        if (localLock.getHoldCount() > 1) {
+            // Still held further up this thread.
+            localLock.unlock();
+            LOGGER.debug("releaseLock(%s) - <<< still held", lockName);
+            return;
+        }
+
+        try {
+            releaseMasterLock(lockName);
+        } finally {
+            if (localLock.isHeldByCurrentThread()) {
+                localLock.unlock();
+            }
+        }
+    }
+
+    private void releaseMasterLock(final String lockName) {
         LOGGER.debug("releaseLock(%s) - >>>", lockName);
         // Remove the lock name from the lock map.
         final ClusterLockKey clusterLockKey = lockMap.remove(lockName);
+        tokenMap.remove(lockName);
 
         boolean success = false;
         if (clusterLockKey == null) {
             LOGGER.error("releaseLock(%s) - Lock not found", lockName);
         } else {
-            final SharedBoolean sharedBoolean = taskManager
-                    .exec(new ClusterLockTask(clusterLockKey, ClusterLockStyle.Release));
-            if (sharedBoolean != null) {
-                success = sharedBoolean.getBoolean();
+            final ClusterLockResult result = taskManager
+                    .exec(new ClusterLockTask(clusterLockKey, ClusterLockStyle.Release, masterEpoch));
+            if (result != null) {
+                success = result.isSuccess();
+                checkEpoch(result);
             }
         }
 
@@ -142,9 +298,16 @@ public class ClusterLockServiceImpl implements ClusterLockService {
             final ClusterLockKey clusterLockKey = entry.getValue();
 
             LOGGER.debug("keepAlive(%s) - >>>", lockName);
-            final SharedBoolean success = taskManager
-                    .exec(new ClusterLockTask(clusterLockKey, ClusterLockStyle.KeepAlive));
+            final Long token = tokenMap.get(lockName);
+            final ClusterLockResult success = taskManager.exec(new ClusterLockTask(clusterLockKey,
+                    ClusterLockStyle.KeepAlive, masterEpoch, token == null ? 0 : token));
             LOGGER.debug("keepAlive(%s) - <<< %s", lockName, success);
+            // No epoch means that we didn't hear from the master so we don't
+            // know whether we still hold the lock.
+            if (success == null || success.getEpoch() == 0) {
+                continue;
+            }
+            checkEpoch(success);
 
             // We should only receive FALSE if the master node knows nothing
             // about the lock we are trying to keep alive. This should only ever
@@ -152,9 +315,11 @@ public class ClusterLockServiceImpl implements ClusterLockService {
             // check that we expected to keep this lock alive as the map might
             // have coincidentally had the lock removed in the releaseLock()
             // method.
-            if (Boolean.FALSE.equals(success.getBoolean())) {
-                final ClusterLockKey currentKey = lockMap.get(lockName);
-                if (currentKey != null && currentKey.equals(clusterLockKey)) {
+            if (!success.isSuccess()) {
+                // Forget the lock so that the holder fails its next fencing
+                // token check, or for a lease, fails to commit.
+                if (lockMap.remove(lockName, clusterLockKey)) {
+                    tokenMap.remove(lockName);
                     LOGGER.error("keepAlive() - Lock no longer exists - %s", clusterLockKey);
                 }
             }
@@ -162,4 +327,50 @@ public class ClusterLockServiceImpl implements ClusterLockService {
 
         LOGGER.debug("keepAlive() - <<<");
     }
+
+    @Override
+    public long getFencingToken(final String lockName) {
+        final Long token = tokenMap.get(lockName);
+        if (token == null) {
+            throw new IllegalStateException("Cluster lock is not held: " + lockName);
+        }
+        return token;
+    }
+
+    @Override
+    public void checkFencingToken(final String lockName, final long token) {
+        LOGGER.debug("checkFencingToken(%s, %s) - >>>", lockName, token);
+
+        final ClusterLockKey clusterLockKey = lockMap.get(lockName);
+        final Long currentToken = tokenMap.get(lockName);
+        boolean success = false;
+        if (clusterLockKey != null && currentToken != null && currentToken == token) {
+            final ClusterLockResult result = taskManager
+                    .exec(new ClusterLockTask(clusterLockKey, ClusterLockStyle.Check, masterEpoch, token));
+            if (result != null) {
+                success = result.isSuccess();
+                checkEpoch(result);
+            }
+        }
+
+        LOGGER.debug("checkFencingToken(%s, %s) - <<< %s", lockName, token, success);
+        if (!success) {
+            throw new IllegalStateException("Cluster lock " + lockName + " is no longer held with token " + token);
+        }
+    }
+
+    private ReentrantLock getLocalLock(final String lockName) {
+        return localLockMap.computeIfAbsent(lockName, k -> new ReentrantLock());
+    }
+
+    private void checkEpoch(final ClusterLockResult result) {
+        final long epoch = result.getEpoch();
+        if (epoch != 0 && epoch != masterEpoch) {
+            if (masterEpoch != 0) {
+                LOGGER.info("checkEpoch() - Master cluster lock epoch changed from %s to %s",
+                        DateUtil.createNormalDateTimeString(masterEpoch), DateUtil.createNormalDateTimeString(epoch));
+            }
+            masterEpoch = epoch;
+        }
+    }
 }
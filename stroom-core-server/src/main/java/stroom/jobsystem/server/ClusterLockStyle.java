@@ -17,5 +17,5 @@
 package stroom.jobsystem.server;
 
 enum ClusterLockStyle {
-    Try, Release, KeepAlive
+    Try, Release, KeepAlive, Check
 }
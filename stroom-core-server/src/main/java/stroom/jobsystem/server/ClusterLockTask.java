@@ -16,16 +16,24 @@
 
 package stroom.jobsystem.server;
 
-import stroom.util.shared.SharedBoolean;
 import stroom.util.task.ServerTask;
 
-public class ClusterLockTask extends ServerTask<SharedBoolean> {
+public class ClusterLockTask extends ServerTask<ClusterLockResult> {
     private final ClusterLockKey key;
     private final ClusterLockStyle lockStyle;
+    private final long epoch;
+    private final long token;
 
-    public ClusterLockTask(final ClusterLockKey key, final ClusterLockStyle lockStyle) {
+    public ClusterLockTask(final ClusterLockKey key, final ClusterLockStyle lockStyle, final long epoch) {
+        this(key, lockStyle, epoch, 0);
+    }
+
+    public ClusterLockTask(final ClusterLockKey key, final ClusterLockStyle lockStyle, final long epoch,
+            final long token) {
         this.key = key;
         this.lockStyle = lockStyle;
+        this.epoch = epoch;
+        this.token = token;
     }
 
     public ClusterLockKey getKey() {
@@ -35,4 +43,20 @@ public class ClusterLockTask extends ServerTask<SharedBoolean> {
     public ClusterLockStyle getLockStyle() {
         return lockStyle;
     }
+
+    /**
+     * @return The epoch of the master node that this node last heard from or
+     *         0 if it has not heard from one yet.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return The fencing token the node holds the lock with or 0 if it does
+     *         not hold it yet.
+     */
+    public long getToken() {
+        return token;
+    }
 }
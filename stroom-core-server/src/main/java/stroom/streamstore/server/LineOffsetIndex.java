@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.streamstore.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import stroom.util.io.WrappedInputStream;
+
+/**
+ * A sparse index of natural line numbers to uncompressed byte offsets within a
+ * single part of a non segmented stream. A checkpoint is kept every
+ * <code>interval</code> lines so that readers can seek close to the line they
+ * want rather than decoding everything before it. The index is filled in as
+ * the stream is read and knows the total line count once a read has reached
+ * the end.
+ */
+public class LineOffsetIndex {
+    public static class Checkpoint {
+        private final long lineNo;
+        private final long offset;
+
+        public Checkpoint(final long lineNo, final long offset) {
+            this.lineNo = lineNo;
+            this.offset = offset;
+        }
+
+        public long getLineNo() {
+            return lineNo;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        @Override
+        public String toString() {
+            return lineNo + ":" + offset;
+        }
+    }
+
+    /**
+     * Records the byte offset that follows every line feed that passes through
+     * it so that a reader further up the chain can find the byte offset of
+     * each line it decodes. This only works for encodings where a line feed is
+     * always the single byte 0x0A, see {@link LineOffsetIndex#isSupported}.
+     */
+    public static class NewlineOffsetInputStream extends WrappedInputStream {
+        private long position;
+        private long[] queue = new long[64];
+        private int head;
+        private int size;
+
+        public NewlineOffsetInputStream(final InputStream inputStream, final long position) {
+            super(inputStream);
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                position++;
+                if (b == '\n') {
+                    add(position);
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b) throws IOException {
+            return read(b, 0, b.length);
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+            for (int i = 0; i < read; i++) {
+                if (b[off + i] == '\n') {
+                    add(position + i + 1);
+                }
+            }
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            if (skipped > 0) {
+                position += skipped;
+            }
+            return skipped;
+        }
+
+        /**
+         * @return The byte offset of the start of the line that follows the
+         *         next line feed that has been read, or -1 if no more line
+         *         feeds have been read.
+         */
+        public long nextLineOffset() {
+            if (size == 0) {
+                return -1;
+            }
+
+            final long offset = queue[head];
+            head = (head + 1) % queue.length;
+            size--;
+            return offset;
+        }
+
+        private void add(final long offset) {
+            if (size == queue.length) {
+                final long[] grown = new long[queue.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = queue[(head + i) % queue.length];
+                }
+                queue = grown;
+                head = 0;
+            }
+
+            queue[(head + size) % queue.length] = offset;
+            size++;
+        }
+    }
+
+    public static final int DEFAULT_INTERVAL = 1000;
+
+    private final int interval;
+    private long[] lineNos = new long[16];
+    private long[] offsets = new long[16];
+    private int size = 1;
+    private volatile long lineCount = -1;
+
+    public LineOffsetIndex() {
+        this(DEFAULT_INTERVAL);
+    }
+
+    public LineOffsetIndex(final int interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Line feeds can only be found by looking for a 0x0A byte if the encoding
+     * never uses that byte for anything else.
+     */
+    public static boolean isSupported(final String encoding) {
+        try {
+            final Charset charset = Charset.forName(encoding);
+            return StandardCharsets.UTF_8.equals(charset) || charset.newEncoder().maxBytesPerChar() == 1;
+        } catch (final RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The checkpoint nearest to and not after the requested line.
+     */
+    public synchronized Checkpoint getCheckpoint(final long lineNo) {
+        int pos = Arrays.binarySearch(lineNos, 0, size, lineNo);
+        if (pos < 0) {
+            pos = -pos - 2;
+        }
+        return new Checkpoint(lineNos[pos], offsets[pos]);
+    }
+
+    /**
+     * @return The line number at which a reader should next call
+     *         {@link #addCheckpoint(long, long)}.
+     */
+    public synchronized long getNextCheckpointLineNo() {
+        return lineNos[size - 1] + interval;
+    }
+
+    /**
+     * Adds a checkpoint if it is at least one interval beyond the last one.
+     * Concurrent readers of the same stream may offer the same lines so
+     * anything before that is ignored.
+     */
+    public synchronized void addCheckpoint(final long lineNo, final long offset) {
+        if (lineNo >= lineNos[size - 1] + interval) {
+            if (size == lineNos.length) {
+                lineNos = Arrays.copyOf(lineNos, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            lineNos[size] = lineNo;
+            offsets[size] = offset;
+            size++;
+        }
+    }
+
+    public boolean isComplete() {
+        return lineCount != -1;
+    }
+
+    /**
+     * @return The total number of lines or -1 if no reader has reached the
+     *         end of the stream yet.
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    public void setLineCount(final long lineCount) {
+        this.lineCount = lineCount;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
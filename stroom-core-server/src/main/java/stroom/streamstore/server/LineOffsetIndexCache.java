@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.streamstore.server;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import net.sf.ehcache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import stroom.cache.AbstractCacheBean;
+
+/**
+ * Holds the line offset indexes of raw streams that have been viewed recently.
+ * Streams never change once written so an index stays valid until it is
+ * evicted.
+ */
+@Component
+public class LineOffsetIndexCache extends AbstractCacheBean<LineOffsetIndexKey, LineOffsetIndex> {
+    private static final int MAX_CACHE_ENTRIES = 1000;
+
+    @Inject
+    public LineOffsetIndexCache(final CacheManager cacheManager) {
+        super(cacheManager, "Line Offset Index Cache", MAX_CACHE_ENTRIES);
+        setMaxIdleTime(30, TimeUnit.MINUTES);
+    }
+
+    @Override
+    protected LineOffsetIndex create(final LineOffsetIndexKey key) {
+        return new LineOffsetIndex();
+    }
+}
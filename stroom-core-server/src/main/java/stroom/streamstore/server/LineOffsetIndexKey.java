@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.streamstore.server;
+
+import stroom.util.shared.EqualsBuilder;
+import stroom.util.shared.HashCodeBuilder;
+
+public class LineOffsetIndexKey {
+    private final long streamId;
+    private final String streamType;
+    private final long partNo;
+    private final String encoding;
+    private final int hashCode;
+
+    public LineOffsetIndexKey(final long streamId, final String streamType, final long partNo,
+            final String encoding) {
+        this.streamId = streamId;
+        this.streamType = streamType;
+        this.partNo = partNo;
+        this.encoding = encoding;
+
+        final HashCodeBuilder builder = new HashCodeBuilder();
+        builder.append(streamId);
+        builder.append(streamType);
+        builder.append(partNo);
+        builder.append(encoding);
+        hashCode = builder.toHashCode();
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public String getStreamType() {
+        return streamType;
+    }
+
+    public long getPartNo() {
+        return partNo;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || !(o instanceof LineOffsetIndexKey)) {
+            return false;
+        }
+
+        final LineOffsetIndexKey key = (LineOffsetIndexKey) o;
+        final EqualsBuilder builder = new EqualsBuilder();
+        builder.append(streamId, key.streamId);
+        builder.append(streamType, key.streamType);
+        builder.append(partNo, key.partNo);
+        builder.append(encoding, key.encoding);
+        return builder.isEquals();
+    }
+
+    @Override
+    public String toString() {
+        return "streamId=" + streamId + ", streamType=" + streamType + ", partNo=" + partNo + ", encoding="
+                + encoding;
+    }
+}
@@ -17,17 +17,25 @@
 package stroom.streamstore.server;
 
 import stroom.jobsystem.server.ClusterLockService;
+import stroom.jobsystem.server.JobTrackedSchedule;
+import stroom.node.server.NodeCache;
 import stroom.node.server.StroomPropertyService;
+import stroom.statistics.common.StatisticEvent;
+import stroom.statistics.common.StatisticTag;
+import stroom.statistics.common.Statistics;
+import stroom.statistics.common.StatisticsFactory;
 import stroom.streamstore.shared.Stream;
 import stroom.streamstore.shared.StreamAttributeKey;
 import stroom.streamstore.shared.StreamAttributeKeyService;
 import stroom.streamstore.shared.StreamAttributeValue;
+import stroom.task.server.StroomThreadGroup;
 import stroom.util.date.DateUtil;
 import stroom.util.logging.StroomLogger;
 import stroom.util.logging.LogExecutionTime;
 import stroom.util.shared.ModelStringUtil;
 import stroom.util.spring.StroomFrequencySchedule;
 import stroom.util.spring.StroomShutdown;
+import stroom.util.thread.CustomThreadFactory;
 import stroom.util.zip.HeaderMap;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Propagation;
@@ -36,11 +44,22 @@ import org.springframework.util.StringUtils;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Component
 public class StreamAttributeValueFlushImpl implements StreamAttributeValueFlush {
@@ -56,9 +75,16 @@ public class StreamAttributeValueFlushImpl implements StreamAttributeValueFlush
     private StroomPropertyService stroomPropertyService;
     @Resource
     private ClusterLockService clusterLockService;
+    @Resource
+    private NodeCache nodeCache;
+    @Resource
+    private StatisticsFactory statisticsFactory;
 
     public static final String LOCK_NAME = "StreamAttributeDelete";
 
+    public static final String FLUSH_BATCH_SIZE_PROPERTY = "stroom.streamAttribute.flushBatchSize";
+    public static final String FLUSH_THREADS_PROPERTY = "stroom.streamAttribute.flushThreads";
+
     public static class AsyncFlush {
         private final Stream stream;
         private final boolean append;
@@ -83,21 +109,92 @@ public class StreamAttributeValueFlushImpl implements StreamAttributeValueFlush
         }
     }
 
-    final Queue<AsyncFlush> queue = new ConcurrentLinkedQueue<>();
+    /**
+     * Queued attributes are partitioned by stream id and a partition is only
+     * ever flushed by one thread at a time. This stops two concurrent flushes
+     * both failing to find an existing value for the same stream and key and
+     * both inserting it.
+     */
+    private static class FlushPartition {
+        private final Queue<AsyncFlush> queue = new ConcurrentLinkedQueue<>();
+        private final Lock lock = new ReentrantLock();
+    }
+
+    private volatile FlushPartition[] partitions;
+    private final AtomicInteger nextPartition = new AtomicInteger();
+    // ConcurrentLinkedQueue.size() traverses the queue so keep our own count.
+    private final AtomicInteger queueSize = new AtomicInteger();
+
+    private final AtomicInteger activeFlushCount = new AtomicInteger();
+    private volatile ExecutorService flushExecutor;
+
+    private volatile List<StreamAttributeKey> keys;
+    private volatile long keysLoadedMs;
+
+    // Flush latency since statistics were last written.
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushDurationMs = new AtomicLong();
 
     @Override
     public void persitAttributes(final Stream stream, final boolean append, final HeaderMap metaMap) {
-        queue.add(new AsyncFlush(stream, append, metaMap));
+        getPartition(stream.getId()).queue.add(new AsyncFlush(stream, append, metaMap));
+
+        // If we have a full batch waiting then start flushing it now rather
+        // than waiting for the next scheduled flush.
+        if (queueSize.incrementAndGet() >= getBatchSize()) {
+            startAsyncFlush();
+        }
     }
 
     @StroomShutdown
     public void shutdown() {
-        flush();
+        final ExecutorService executor = flushExecutor;
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException e) {
+                LOGGER.error(e, e);
+            }
+        }
 
+        flush();
     }
 
     public static final int MONTH_OLD_MS = 1000 * 60 * 60 * 24 * 30;
     public static final int BATCH_SIZE = 1000;
+    public static final int FLUSH_THREADS = 2;
+    private static final long KEY_CACHE_MS = 60 * 1000;
+
+    private int getBatchSize() {
+        return Math.max(1, stroomPropertyService.getIntProperty(FLUSH_BATCH_SIZE_PROPERTY, BATCH_SIZE));
+    }
+
+    private int getFlushThreads() {
+        return Math.max(1, stroomPropertyService.getIntProperty(FLUSH_THREADS_PROPERTY, FLUSH_THREADS));
+    }
+
+    private FlushPartition[] getPartitions() {
+        if (partitions == null) {
+            synchronized (this) {
+                if (partitions == null) {
+                    // One partition per flush thread so that every thread can
+                    // have a partition of its own to work on.
+                    final FlushPartition[] arr = new FlushPartition[getFlushThreads()];
+                    for (int i = 0; i < arr.length; i++) {
+                        arr[i] = new FlushPartition();
+                    }
+                    partitions = arr;
+                }
+            }
+        }
+        return partitions;
+    }
+
+    private FlushPartition getPartition(final long streamId) {
+        final FlushPartition[] partitions = getPartitions();
+        return partitions[Math.floorMod(Long.hashCode(streamId), partitions.length)];
+    }
 
     /**
      * @return The oldest stream attribute that we should keep
@@ -114,117 +211,248 @@ public class StreamAttributeValueFlushImpl implements StreamAttributeValueFlush
         return applicableStreamAgeMs;
     }
 
+    /**
+     * Attribute keys are rarely added so we only reload them from the database
+     * every minute rather than on every flush.
+     */
+    private List<StreamAttributeKey> getKeys() {
+        final long now = System.currentTimeMillis();
+        List<StreamAttributeKey> keys = this.keys;
+        if (keys == null || keysLoadedMs < now - KEY_CACHE_MS) {
+            keys = streamAttributeKeyService.findAll();
+            this.keys = keys;
+            keysLoadedMs = now;
+        }
+        return keys;
+    }
+
+    private void startAsyncFlush() {
+        // Only allow up to the configured number of flushes to run at once.
+        final int maxFlushes = getFlushThreads();
+        int active = activeFlushCount.get();
+        while (active < maxFlushes) {
+            if (activeFlushCount.compareAndSet(active, active + 1)) {
+                try {
+                    getFlushExecutor().execute(() -> {
+                        try {
+                            flushAvailablePartitions();
+                        } catch (final Throwable t) {
+                            LOGGER.error(t.getMessage(), t);
+                        } finally {
+                            activeFlushCount.decrementAndGet();
+                        }
+                    });
+                } catch (final RuntimeException e) {
+                    activeFlushCount.decrementAndGet();
+                    LOGGER.error(e.getMessage(), e);
+                }
+                return;
+            }
+            active = activeFlushCount.get();
+        }
+    }
+
+    private ExecutorService getFlushExecutor() {
+        if (flushExecutor == null) {
+            synchronized (this) {
+                if (flushExecutor == null) {
+                    final CustomThreadFactory threadFactory = new CustomThreadFactory("Stream Attribute Value Flush ",
+                            StroomThreadGroup.instance(), Thread.NORM_PRIORITY - 1);
+                    threadFactory.setDaemon(true);
+                    flushExecutor = Executors.newCachedThreadPool(threadFactory);
+                }
+            }
+        }
+        return flushExecutor;
+    }
+
     @Override
     @StroomFrequencySchedule("10s")
     @Transactional(propagation = Propagation.NEVER)
     public void flush() {
-        final List<StreamAttributeKey> keys = streamAttributeKeyService.findAll();
+        // Wait for any async flush to finish with a partition so that
+        // everything queued before now gets written.
+        for (final FlushPartition partition : getPartitions()) {
+            partition.lock.lock();
+            try {
+                flushPartition(partition);
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+    }
 
-        boolean ranOutOfItems = false;
+    /**
+     * Flush every partition that no other thread is currently flushing,
+     * starting at a different partition each time to spread the work out.
+     */
+    private void flushAvailablePartitions() {
+        final FlushPartition[] partitions = getPartitions();
+        final int start = Math.floorMod(nextPartition.getAndIncrement(), partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            final FlushPartition partition = partitions[(start + i) % partitions.length];
+            if (partition.lock.tryLock()) {
+                try {
+                    flushPartition(partition);
+                } finally {
+                    partition.lock.unlock();
+                }
+            }
+        }
+    }
 
-        final long applicableStreamAgeMs = getApplicableStreamAgeMs();
+    private void flushPartition(final FlushPartition partition) {
+        final int batchSize = getBatchSize();
+        boolean ranOutOfItems = false;
 
         while (!ranOutOfItems) {
-            final FindStreamAttributeValueCriteria criteria = new FindStreamAttributeValueCriteria();
-
-            final ArrayList<AsyncFlush> batchInsert = new ArrayList<AsyncFlush>();
+            final List<AsyncFlush> batchInsert = new ArrayList<>(batchSize);
             AsyncFlush item = null;
-            while ((item = queue.poll()) != null && batchInsert.size() < BATCH_SIZE) {
+            while (batchInsert.size() < batchSize && (item = partition.queue.poll()) != null) {
+                queueSize.decrementAndGet();
                 batchInsert.add(item);
-                criteria.obtainStreamIdSet().add(item.getStream());
-
             }
-            if (batchInsert.size() < BATCH_SIZE) {
+            if (batchInsert.size() < batchSize) {
                 ranOutOfItems = true;
             }
 
             if (batchInsert.size() > 0) {
                 final LogExecutionTime logExecutionTime = new LogExecutionTime();
+                flushBatch(batchInsert, logExecutionTime);
+                flushCount.incrementAndGet();
+                flushDurationMs.addAndGet(logExecutionTime.getDuration());
+            }
+        }
+    }
 
-                LOGGER.debug("flush() - Processing batch of %s, queue size is %s", batchInsert.size(), queue.size());
+    private void flushBatch(final List<AsyncFlush> batchInsert, final LogExecutionTime logExecutionTime) {
+        LOGGER.debug("flush() - Processing batch of %s, queue size is %s", batchInsert.size(), queueSize.get());
 
-                int skipCount = 0;
+        final List<StreamAttributeKey> keys = getKeys();
+        final long applicableStreamAgeMs = getApplicableStreamAgeMs();
 
-                // Key by the StreamAttributeKey pk
-                final Map<Long, Map<Long, StreamAttributeValue>> streamToAttributeMap = new HashMap<>();
-                for (final StreamAttributeValue value : streamAttributeValueService.find(criteria)) {
-                    Map<Long, StreamAttributeValue> map = streamToAttributeMap.get(value.getStreamId());
-                    if (map == null) {
-                        map = new HashMap<>();
-                        streamToAttributeMap.put(value.getStreamId(), map);
-                    }
-                    map.put(value.getStreamAttributeKeyId(), value);
-                }
+        // Only streams that are being appended to can already have values in
+        // the database.
+        final FindStreamAttributeValueCriteria criteria = new FindStreamAttributeValueCriteria();
+        for (final AsyncFlush asyncFlush : batchInsert) {
+            if (asyncFlush.isAppend()) {
+                criteria.obtainStreamIdSet().add(asyncFlush.getStream());
+            }
+        }
 
-                final List<StreamAttributeValue> batchUpdate = new ArrayList<>();
+        // Key by the StreamAttributeKey pk
+        final Map<Long, Map<Long, StreamAttributeValue>> streamToAttributeMap = new HashMap<>();
+        if (criteria.obtainStreamIdSet().size() > 0) {
+            for (final StreamAttributeValue value : streamAttributeValueService.find(criteria)) {
+                getAttributeMap(streamToAttributeMap, value.getStreamId()).put(value.getStreamAttributeKeyId(),
+                        value);
+            }
+        }
 
-                // Work out the batch inserts
-                for (final StreamAttributeKey streamMDKey : keys) {
-                    for (final AsyncFlush asyncFlush : batchInsert) {
-                        if (asyncFlush.getStream().getCreateMs() > applicableStreamAgeMs) {
-                            // Found a key
-                            if (asyncFlush.getHeaderMap().containsKey(streamMDKey.getName())) {
-                                final String newValue = asyncFlush.getHeaderMap().get(streamMDKey.getName());
-                                boolean dirty = false;
-                                StreamAttributeValue streamAttributeValue = null;
-                                final Map<Long, StreamAttributeValue> map = streamToAttributeMap
-                                        .get(asyncFlush.getStream().getId());
-                                if (map != null) {
-                                    streamAttributeValue = map.get(streamMDKey.getId());
-                                }
+        int skipCount = 0;
+        // Values can be changed more than once if a stream appears in the
+        // batch several times so make sure we only save each one once.
+        final Set<StreamAttributeValue> batchUpdate = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // Work out the batch inserts
+        for (final AsyncFlush asyncFlush : batchInsert) {
+            if (asyncFlush.getStream().getCreateMs() > applicableStreamAgeMs) {
+                final Map<Long, StreamAttributeValue> map = getAttributeMap(streamToAttributeMap,
+                        asyncFlush.getStream().getId());
 
-                                // Existing Item
-                                if (streamAttributeValue != null) {
-                                    if (streamMDKey.getFieldType().isNumeric()) {
-                                        final Long oldValueLong = streamAttributeValue.getValueNumber();
-                                        final Long newValueLong = Long.parseLong(newValue);
-
-                                        if (!oldValueLong.equals(newValueLong)) {
-                                            dirty = true;
-                                            streamAttributeValue.setValueNumber(newValueLong);
-                                        }
-                                    } else {
-                                        final String oldValue = streamAttributeValue.getValueString();
-
-                                        if (!oldValue.equals(newValue)) {
-                                            dirty = true;
-                                            streamAttributeValue.setValueString(newValue);
-                                        }
-                                    }
-
-                                } else {
+                for (final StreamAttributeKey streamMDKey : keys) {
+                    // Found a key
+                    if (asyncFlush.getHeaderMap().containsKey(streamMDKey.getName())) {
+                        final String newValue = asyncFlush.getHeaderMap().get(streamMDKey.getName());
+                        boolean dirty = false;
+                        StreamAttributeValue streamAttributeValue = map.get(streamMDKey.getId());
+
+                        // Existing Item
+                        if (streamAttributeValue != null) {
+                            if (streamMDKey.getFieldType().isNumeric()) {
+                                final Long oldValueLong = streamAttributeValue.getValueNumber();
+                                final Long newValueLong = Long.parseLong(newValue);
+
+                                if (!newValueLong.equals(oldValueLong)) {
                                     dirty = true;
-                                    streamAttributeValue = new StreamAttributeValue(asyncFlush.getStream(), streamMDKey,
-                                            newValue);
+                                    streamAttributeValue.setValueNumber(newValueLong);
                                 }
+                            } else {
+                                final String oldValue = streamAttributeValue.getValueString();
 
-                                if (dirty) {
-                                    batchUpdate.add(streamAttributeValue);
+                                if (!newValue.equals(oldValue)) {
+                                    dirty = true;
+                                    streamAttributeValue.setValueString(newValue);
                                 }
-
                             }
+
                         } else {
-                            skipCount++;
-                            LOGGER.debug("flush() - Skipping flush of old stream attributes %s %s",
-                                    asyncFlush.getStream(), DateUtil.createNormalDateTimeString(applicableStreamAgeMs));
+                            dirty = true;
+                            streamAttributeValue = new StreamAttributeValue(asyncFlush.getStream(), streamMDKey,
+                                    newValue);
+                            // Remember the new value in case the same stream
+                            // appears again in this batch.
+                            map.put(streamMDKey.getId(), streamAttributeValue);
+                        }
+
+                        if (dirty) {
+                            batchUpdate.add(streamAttributeValue);
                         }
                     }
                 }
+            } else {
+                skipCount++;
+                LOGGER.debug("flush() - Skipping flush of old stream attributes %s %s", asyncFlush.getStream(),
+                        DateUtil.createNormalDateTimeString(applicableStreamAgeMs));
+            }
+        }
 
-                // We might have no keys so will not have built any batch
-                // updates.
-                if (batchUpdate.size() > 0) {
-                    streamAttributeValueServiceTransactionHelper.saveBatch(batchUpdate);
-                }
+        // We might have no keys so will not have built any batch
+        // updates.
+        if (batchUpdate.size() > 0) {
+            streamAttributeValueServiceTransactionHelper.saveBatch(new ArrayList<>(batchUpdate));
+        }
 
-                if (logExecutionTime.getDuration() > 1000) {
-                    LOGGER.warn("flush() - Saved %s updates, skipped %s, queue size is %s, completed in %s",
-                            batchUpdate.size(), skipCount, queue.size(), logExecutionTime);
-                } else {
-                    LOGGER.debug("flush() - Saved %s updates, skipped %s, queue size is %s, completed in %s",
-                            batchUpdate.size(), skipCount, queue.size(), logExecutionTime);
-                }
+        if (logExecutionTime.getDuration() > 1000) {
+            LOGGER.warn("flush() - Saved %s updates, skipped %s, queue size is %s, completed in %s",
+                    batchUpdate.size(), skipCount, queueSize.get(), logExecutionTime);
+        } else {
+            LOGGER.debug("flush() - Saved %s updates, skipped %s, queue size is %s, completed in %s",
+                    batchUpdate.size(), skipCount, queueSize.get(), logExecutionTime);
+        }
+    }
+
+    private Map<Long, StreamAttributeValue> getAttributeMap(
+            final Map<Long, Map<Long, StreamAttributeValue>> streamToAttributeMap, final long streamId) {
+        Map<Long, StreamAttributeValue> map = streamToAttributeMap.get(streamId);
+        if (map == null) {
+            map = new HashMap<>();
+            streamToAttributeMap.put(streamId, map);
+        }
+        return map;
+    }
+
+    @StroomFrequencySchedule("1m")
+    @JobTrackedSchedule(jobName = "Stream Attributes Flush Statistics", description = "Write statistics about the stream attribute value flush queue")
+    public void writeStatistics() {
+        try {
+            final long count = flushCount.getAndSet(0);
+            final long durationMs = flushDurationMs.getAndSet(0);
+
+            final Statistics statistics = statisticsFactory.instance();
+            final List<StatisticTag> tags = Arrays
+                    .asList(new StatisticTag("Node", nodeCache.getDefaultNode().getName()));
+            final long now = System.currentTimeMillis();
+
+            // Value type events as neither of these are additive.
+            statistics.putEvent(new StatisticEvent(now, "Stream Attribute Flush Queue Size", tags,
+                    (double) queueSize.get()));
+            if (count > 0) {
+                statistics.putEvent(new StatisticEvent(now, "Stream Attribute Flush Latency ms", tags,
+                        (double) durationMs / count));
             }
+        } catch (final Throwable t) {
+            LOGGER.error(t.getMessage(), t);
         }
     }
 }
@@ -30,6 +30,8 @@ import javax.annotation.Resource;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 @Transactional
@@ -43,41 +45,95 @@ public class StreamAttributeValueServiceTransactionHelper {
     @Resource
     private StroomDatabaseInfo stroomDatabaseInfo;
 
-    private static final String INSERT_SQL = "INSERT INTO " + StreamAttributeValue.TABLE_NAME + " ("
+    // The number of rows to insert with each multi row insert statement.
+    private static final int ROWS_PER_INSERT = 100;
+
+    private static final String INSERT_COLUMNS_SQL = "INSERT INTO " + StreamAttributeValue.TABLE_NAME + " ("
             + StreamAttributeValue.VERSION + ", " + StreamAttributeValue.CREATE_MS + ", "
             + StreamAttributeValue.VALUE_STRING + ", " + StreamAttributeValue.VALUE_NUMBER + ", "
             + StreamAttributeValue.STREAM_ID + ", " + StreamAttributeValue.STREAM_ATTRIBUTE_KEY_ID
-            + ") VALUES (?, ?, ?, ?, ?, ?)";
+            + ") VALUES ";
+    private static final String INSERT_VALUES_SQL = "(?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_SQL = INSERT_COLUMNS_SQL + INSERT_VALUES_SQL;
+    private static final String MULTI_ROW_INSERT_SQL = createMultiRowInsertSql(ROWS_PER_INSERT);
+
+    private static final String UPDATE_SQL = "UPDATE " + StreamAttributeValue.TABLE_NAME + " SET "
+            + StreamAttributeValue.VERSION + " = " + StreamAttributeValue.VERSION + " + 1, "
+            + StreamAttributeValue.VALUE_STRING + " = ?, " + StreamAttributeValue.VALUE_NUMBER + " = ? WHERE "
+            + StreamAttributeValue.ID + " = ?";
+
+    private static String createMultiRowInsertSql(final int rows) {
+        final StringBuilder sb = new StringBuilder(INSERT_COLUMNS_SQL);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(INSERT_VALUES_SQL);
+        }
+        return sb.toString();
+    }
 
+    /**
+     * Insert new attribute values and update existing (persistent) ones. New
+     * values are written with multi row inserts of {@link #ROWS_PER_INSERT}
+     * rows that are themselves batched so that a large flush needs very few
+     * round trips to the database.
+     */
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void saveBatch(final List<StreamAttributeValue> list) {
         final LogExecutionTime logExecutionTime = new LogExecutionTime();
         if (list.size() > 0) {
+            final List<StreamAttributeValue> inserts = new ArrayList<>(list.size());
+            final List<StreamAttributeValue> updates = new ArrayList<>();
+            for (final StreamAttributeValue streamAttributeValue : list) {
+                if (streamAttributeValue.isPersistent()) {
+                    updates.add(streamAttributeValue);
+                } else {
+                    inserts.add(streamAttributeValue);
+                }
+            }
+
             Connection connection = null;
             try {
                 connection = dataSource.getConnection();
-                try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
-                    for (final StreamAttributeValue streamAttributeValue : list) {
-                        ps.setInt(1, 1);
-                        ps.setLong(2, streamAttributeValue.getCreateMs());
-                        if (streamAttributeValue.getValueString() != null) {
-                            ps.setString(3, streamAttributeValue.getValueString());
-                        } else {
-                            ps.setNull(3, Types.VARCHAR);
-                        }
-                        if (streamAttributeValue.getValueNumber() != null) {
-                            ps.setLong(4, streamAttributeValue.getValueNumber());
-                        } else {
-                            ps.setNull(4, Types.BIGINT);
+
+                // Insert as many rows as we can with multi row inserts.
+                final int multiRowCount = inserts.size() / ROWS_PER_INSERT;
+                if (multiRowCount > 0) {
+                    try (PreparedStatement ps = connection.prepareStatement(MULTI_ROW_INSERT_SQL)) {
+                        int index = 0;
+                        for (int i = 0; i < multiRowCount; i++) {
+                            int parameterIndex = 1;
+                            for (int j = 0; j < ROWS_PER_INSERT; j++) {
+                                parameterIndex = setInsertParameters(ps, parameterIndex, inserts.get(index++));
+                            }
+                            ps.addBatch();
                         }
-                        ps.setLong(5, streamAttributeValue.getStreamId());
-                        ps.setLong(6, streamAttributeValue.getStreamAttributeKeyId());
+                        ps.executeBatch();
+                    }
+                }
 
-                        ps.addBatch();
+                // Insert the remaining rows one at a time.
+                final int remainder = inserts.size() - (multiRowCount * ROWS_PER_INSERT);
+                if (remainder > 0) {
+                    try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+                        for (int i = inserts.size() - remainder; i < inserts.size(); i++) {
+                            setInsertParameters(ps, 1, inserts.get(i));
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
                     }
+                }
 
-                    ps.executeBatch();
-                    ps.close();
+                if (updates.size() > 0) {
+                    try (PreparedStatement ps = connection.prepareStatement(UPDATE_SQL)) {
+                        for (final StreamAttributeValue streamAttributeValue : updates) {
+                            setValueParameters(ps, 1, streamAttributeValue);
+                            ps.setLong(3, streamAttributeValue.getId());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
                 }
 
             } catch (final Exception ex) {
@@ -85,7 +141,36 @@ public class StreamAttributeValueServiceTransactionHelper {
             } finally {
                 ConnectionUtil.close(connection);
             }
+
+            LOGGER.debug("saveBatch() - inserted %s and updated %s records in %s", inserts.size(), updates.size(),
+                    logExecutionTime);
+        }
+    }
+
+    private int setInsertParameters(final PreparedStatement ps, final int startIndex,
+            final StreamAttributeValue streamAttributeValue) throws SQLException {
+        int index = startIndex;
+        ps.setInt(index++, 1);
+        ps.setLong(index++, streamAttributeValue.getCreateMs());
+        index = setValueParameters(ps, index, streamAttributeValue);
+        ps.setLong(index++, streamAttributeValue.getStreamId());
+        ps.setLong(index++, streamAttributeValue.getStreamAttributeKeyId());
+        return index;
+    }
+
+    private int setValueParameters(final PreparedStatement ps, final int startIndex,
+            final StreamAttributeValue streamAttributeValue) throws SQLException {
+        int index = startIndex;
+        if (streamAttributeValue.getValueString() != null) {
+            ps.setString(index++, streamAttributeValue.getValueString());
+        } else {
+            ps.setNull(index++, Types.VARCHAR);
+        }
+        if (streamAttributeValue.getValueNumber() != null) {
+            ps.setLong(index++, streamAttributeValue.getValueNumber());
+        } else {
+            ps.setNull(index++, Types.BIGINT);
         }
-        LOGGER.debug("saveBatch() - inserted %s records in %s", list.size(), logExecutionTime);
+        return index;
     }
 }
@@ -61,4 +61,13 @@ public interface StreamMaintenanceService extends FindService<StreamVolume, Find
      */
     ScanVolumePathResult scanVolumePath(Volume volume, boolean doDelete, String path, long oldFileAge);
 
+    /**
+     * If the path is a stream type day directory (e.g. EVENTS/2016/01/02) that
+     * is older than the old file age and no stream on the volume still
+     * references it then delete the whole directory in one go. Returns null
+     * if the path is not such a partition or streams with a longer retention
+     * still live in it, in which case it should be scanned as normal.
+     */
+    ScanVolumePathResult deleteExpiredPartition(Volume volume, boolean doDelete, String path, long oldFileAge);
+
 }
@@ -71,10 +71,13 @@ public class StreamRetentionExecutor {
         LOGGER.info("Stream Retention Executor - start");
         if (clusterLockService.tryLock(LOCK_NAME)) {
             try {
+                final long fencingToken = clusterLockService.getFencingToken(LOCK_NAME);
                 final FindFeedCriteria findFeedCriteria = new FindFeedCriteria();
                 final List<Feed> feedList = feedService.find(findFeedCriteria);
                 for (final Feed feed : feedList) {
                     if (!taskMonitor.isTerminated()) {
+                        // Stop if we have lost the lock.
+                        clusterLockService.checkFencingToken(LOCK_NAME, fencingToken);
                         processFeed(feed);
                     }
                 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.streamstore.server.fs;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import stroom.util.shared.EqualsBuilder;
+import stroom.util.shared.HashCodeBuilder;
+
+/**
+ * A node wide LRU cache of decompressed Block GZIP blocks so that concurrent
+ * searches, extraction, stepping and the data viewer don't all inflate the
+ * same blocks of recently read streams. Blocks are held in direct buffers so
+ * they don't add to heap pressure. The cache is limited to a number of bytes
+ * and is disabled if the limit is 0.
+ * <p>
+ * Block GZIP files are created via static factory methods so there is a single
+ * instance per node that is sized by {@link BlockGZIPBlockCacheManager}.
+ */
+public final class BlockGZIPBlockCache {
+    private static final BlockGZIPBlockCache INSTANCE = new BlockGZIPBlockCache();
+
+    private static class Key {
+        private final String path;
+        private final long lastModified;
+        private final long blockNumber;
+        private final int hashCode;
+
+        Key(final File file, final long lastModified, final long blockNumber) {
+            this.path = file.getPath();
+            this.lastModified = lastModified;
+            this.blockNumber = blockNumber;
+
+            final HashCodeBuilder builder = new HashCodeBuilder();
+            builder.append(path);
+            builder.append(lastModified);
+            builder.append(blockNumber);
+            hashCode = builder.toHashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this) {
+                return true;
+            } else if (!(o instanceof Key)) {
+                return false;
+            }
+
+            final Key key = (Key) o;
+            final EqualsBuilder builder = new EqualsBuilder();
+            builder.append(path, key.path);
+            builder.append(lastModified, key.lastModified);
+            builder.append(blockNumber, key.blockNumber);
+            return builder.isEquals();
+        }
+    }
+
+    /**
+     * Reads a cached block. Each reader gets its own view of the buffer so
+     * that the shared block is never modified.
+     */
+    static class BlockInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BlockInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int length = Math.min(len, buffer.remaining());
+            buffer.get(b, off, length);
+            return length;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final int length = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + length);
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private final LinkedHashMap<Key, ByteBuffer> map = new LinkedHashMap<>(16, 0.75F, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile long maxSize;
+    private long size;
+
+    BlockGZIPBlockCache() {
+    }
+
+    public static BlockGZIPBlockCache instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return A stream over the decompressed block or null if the block is not
+     *         cached.
+     */
+    InputStream get(final File file, final long lastModified, final long blockNumber) {
+        ByteBuffer block;
+        synchronized (map) {
+            block = map.get(new Key(file, lastModified, blockNumber));
+        }
+
+        if (block == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return new BlockInputStream(block.duplicate());
+    }
+
+    /**
+     * Copy a decompressed block into the cache.
+     *
+     * @return A stream over the decompressed block.
+     */
+    InputStream put(final File file, final long lastModified, final long blockNumber, final byte[] data) {
+        final long maxSize = this.maxSize;
+        if (data.length > maxSize) {
+            return new BlockInputStream(ByteBuffer.wrap(data));
+        }
+
+        final ByteBuffer block = ByteBuffer.allocateDirect(data.length);
+        block.put(data);
+        block.flip();
+
+        synchronized (map) {
+            final ByteBuffer previous = map.put(new Key(file, lastModified, blockNumber), block);
+            if (previous != null) {
+                size -= previous.capacity();
+            }
+            size += block.capacity();
+
+            // Evict the least recently used blocks until we are within budget.
+            final Iterator<ByteBuffer> iterator = map.values().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                size -= iterator.next().capacity();
+                iterator.remove();
+            }
+        }
+
+        return new BlockInputStream(block.duplicate());
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(final long maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+
+        synchronized (map) {
+            final Iterator<ByteBuffer> iterator = map.values().iterator();
+            while (size > this.maxSize && iterator.hasNext()) {
+                size -= iterator.next().capacity();
+                iterator.remove();
+            }
+        }
+    }
+
+    public long getSize() {
+        synchronized (map) {
+            return size;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+            size = 0;
+        }
+    }
+}
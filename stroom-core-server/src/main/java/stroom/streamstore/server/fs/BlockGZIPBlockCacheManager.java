@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.streamstore.server.fs;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.springframework.stereotype.Component;
+
+import stroom.entity.shared.Clearable;
+import stroom.jobsystem.server.JobTrackedSchedule;
+import stroom.node.server.NodeCache;
+import stroom.node.server.StroomPropertyService;
+import stroom.statistics.common.StatisticEvent;
+import stroom.statistics.common.StatisticTag;
+import stroom.statistics.common.Statistics;
+import stroom.statistics.common.StatisticsFactory;
+import stroom.util.logging.StroomLogger;
+import stroom.util.shared.ModelStringUtil;
+import stroom.util.spring.StroomFrequencySchedule;
+import stroom.util.spring.StroomStartup;
+
+/**
+ * Sizes the node wide {@link BlockGZIPBlockCache} from global properties and
+ * records how well it is doing.
+ */
+@Component
+public class BlockGZIPBlockCacheManager implements Clearable {
+    private static final StroomLogger LOGGER = StroomLogger.getLogger(BlockGZIPBlockCacheManager.class);
+
+    private final StroomPropertyService propertyService;
+    private final StatisticsFactory statisticsFactory;
+    private final NodeCache nodeCache;
+    private final BlockGZIPBlockCache blockCache = BlockGZIPBlockCache.instance();
+
+    private long lastHits;
+    private long lastMisses;
+
+    @Inject
+    public BlockGZIPBlockCacheManager(final StroomPropertyService propertyService,
+            final StatisticsFactory statisticsFactory, final NodeCache nodeCache) {
+        this.propertyService = propertyService;
+        this.statisticsFactory = statisticsFactory;
+        this.nodeCache = nodeCache;
+    }
+
+    @StroomStartup
+    public void startup() {
+        updateMaxSize();
+    }
+
+    @StroomFrequencySchedule("1m")
+    @JobTrackedSchedule(jobName = "Block Cache Statistics", description = "Apply the configured size of the decompressed stream block cache and write statistics about its hit rate")
+    public synchronized void writeStatistics() {
+        try {
+            updateMaxSize();
+
+            final long hits = blockCache.getHits();
+            final long misses = blockCache.getMisses();
+            final long deltaHits = hits - lastHits;
+            final long deltaMisses = misses - lastMisses;
+            lastHits = hits;
+            lastMisses = misses;
+
+            final Statistics statistics = statisticsFactory.instance();
+            final List<StatisticTag> tags = Arrays
+                    .asList(new StatisticTag("Node", nodeCache.getDefaultNode().getName()));
+            final long now = System.currentTimeMillis();
+
+            statistics.putEvent(new StatisticEvent(now, "Block Cache Hits", tags, deltaHits));
+            statistics.putEvent(new StatisticEvent(now, "Block Cache Misses", tags, deltaMisses));
+            statistics.putEvent(new StatisticEvent(now, "Block Cache Size", tags, (double) blockCache.getSize()));
+            if (deltaHits + deltaMisses > 0) {
+                statistics.putEvent(new StatisticEvent(now, "Block Cache Hit Rate %", tags,
+                        (deltaHits * 100D) / (deltaHits + deltaMisses)));
+            }
+        } catch (final Throwable t) {
+            LOGGER.error(t.getMessage(), t);
+        }
+    }
+
+    private void updateMaxSize() {
+        final Long maxSize = ModelStringUtil
+                .parseByteSizeString(propertyService.getProperty("stroom.streamstore.blockCacheSize"));
+        blockCache.setMaxSize(maxSize == null ? 0 : maxSize);
+        if (!blockCache.isEnabled()) {
+            blockCache.clear();
+        }
+    }
+
+    @Override
+    public void clear() {
+        blockCache.clear();
+    }
+}
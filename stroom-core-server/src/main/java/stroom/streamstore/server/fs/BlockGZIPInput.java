@@ -31,9 +31,9 @@ import stroom.io.StreamCloser;
  */
 public abstract class BlockGZIPInput extends InputStream implements SeekableInputStream {
     /**
-     * Pointer to the current GZIPstream
+     * Pointer to the current GZIPstream or decompressed block
      */
-    protected GZIPInputStream currentStream;
+    protected InputStream currentStream;
 
     /**
      * We read data into a buffer (rather than hit the RA file)
@@ -35,6 +35,13 @@ public class BlockGZIPInputFile extends BlockGZIPInput {
 
     private final StreamCloser streamCloser = new StreamCloser();
 
+    private final BlockGZIPBlockCache blockCache = BlockGZIPBlockCache.instance();
+    private final long lastModified;
+
+    // Set once a block has been read from the block cache after which the raw
+    // file is no longer positioned at the start of the next block.
+    private boolean readingCachedBlocks;
+
     RandomAccessFile getRaFile() {
         return raFile;
     }
@@ -65,6 +72,7 @@ public class BlockGZIPInputFile extends BlockGZIPInput {
     public BlockGZIPInputFile(final File bgz) throws IOException {
         this.raFile = new RandomAccessFile(bgz, BlockGZIPConstants.READ_ONLY);
         this.file = bgz;
+        this.lastModified = bgz.lastModified();
 
         raFile.seek(0);
         init();
@@ -80,6 +88,7 @@ public class BlockGZIPInputFile extends BlockGZIPInput {
         super(rawBufferSize);
         this.raFile = new RandomAccessFile(bgz, BlockGZIPConstants.READ_ONLY);
         this.file = bgz;
+        this.lastModified = bgz.lastModified();
 
         raFile.seek(0);
         init();
@@ -127,14 +136,7 @@ public class BlockGZIPInputFile extends BlockGZIPInput {
 
         // Moving block?
         if ((currentBlockNumber != newBlockNumber)) {
-            // Read our index
-            raFile.seek((idxStart + BlockGZIPConstants.LONG_BYTES + (newBlockNumber * BlockGZIPConstants.LONG_BYTES)));
-            currentRawStreamBuffer = createBufferedInputStream(true);
-            final long seekPos = readLong();
-            raFile.seek(seekPos);
-            currentRawStreamBuffer = createBufferedInputStream(true);
-            startGzipBlock();
-            currentStream.skip(newBlockOffset);
+            openBlock(newBlockNumber, newBlockOffset);
         } else {
             // Start a BGZIP block
             if (currentStream == null) {
@@ -149,6 +151,81 @@ public class BlockGZIPInputFile extends BlockGZIPInput {
         return n;
     }
 
+    /**
+     * Open a block and skip to an offset within it. Blocks that we seek to are
+     * read via the block cache if it is enabled.
+     */
+    private void openBlock(final long blockNumber, final long blockOffset) throws IOException {
+        // Nothing to open if we are at the end of the data.
+        if (blockNumber * blockSize >= dataLength) {
+            currentStream = null;
+            return;
+        }
+
+        if (blockCache.isEnabled()) {
+            InputStream block = blockCache.get(file, lastModified, blockNumber);
+            if (block == null) {
+                block = blockCache.put(file, lastModified, blockNumber, inflateBlock(blockNumber));
+            } else {
+                blockCount++;
+            }
+            currentStream = block;
+            readingCachedBlocks = true;
+        } else {
+            readingCachedBlocks = false;
+            seekToBlock(blockNumber);
+            super.startGzipBlock();
+        }
+        currentStream.skip(blockOffset);
+    }
+
+    /**
+     * Decompress a whole block.
+     */
+    private byte[] inflateBlock(final long blockNumber) throws IOException {
+        seekToBlock(blockNumber);
+        super.startGzipBlock();
+
+        // The last block may be shorter than the block size.
+        final byte[] data = new byte[(int) Math.min(blockSize, dataLength - (blockNumber * blockSize))];
+        final InputStream gzipStream = currentStream;
+        int off = 0;
+        while (off < data.length) {
+            final int len = gzipStream.read(data, off, data.length - off);
+            if (len == -1) {
+                throw new IOException("Unexpected end of block " + blockNumber);
+            }
+            off += len;
+        }
+        endGzipBlock();
+        gzipStream.close();
+
+        return data;
+    }
+
+    /**
+     * Position the raw file at the start of a block using our index.
+     */
+    private void seekToBlock(final long blockNumber) throws IOException {
+        raFile.seek((idxStart + BlockGZIPConstants.LONG_BYTES + (blockNumber * BlockGZIPConstants.LONG_BYTES)));
+        currentRawStreamBuffer = createBufferedInputStream(true);
+        final long seekPos = readLong();
+        raFile.seek(seekPos);
+        currentRawStreamBuffer = createBufferedInputStream(true);
+    }
+
+    @Override
+    protected void startGzipBlock() throws IOException {
+        if (readingCachedBlocks) {
+            // The raw file is not positioned at this block so locate it via
+            // the index. Only blocks we seek to are read via the cache so we
+            // go back to streaming sequential blocks from the file.
+            readingCachedBlocks = false;
+            seekToBlock(position / blockSize);
+        }
+        super.startGzipBlock();
+    }
+
     /**
      * Mark this stream so we can go back to this position.
      */
@@ -208,14 +285,7 @@ public class BlockGZIPInputFile extends BlockGZIPInput {
             final long blockNumber = newPosition / blockSize;
             final long blockOffset = newPosition % blockSize;
 
-            // Read our index
-            raFile.seek((idxStart + BlockGZIPConstants.LONG_BYTES + (blockNumber * BlockGZIPConstants.LONG_BYTES)));
-            currentRawStreamBuffer = createBufferedInputStream(true);
-            final long seekPos = readLong();
-            raFile.seek(seekPos);
-            currentRawStreamBuffer = createBufferedInputStream(true);
-            startGzipBlock();
-            currentStream.skip(blockOffset);
+            openBlock(blockNumber, blockOffset);
 
             position = newPosition;
         }
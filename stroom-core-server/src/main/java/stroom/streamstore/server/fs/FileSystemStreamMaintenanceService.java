@@ -22,6 +22,7 @@ import stroom.entity.server.util.StroomEntityManager;
 import stroom.entity.server.util.SQLBuilder;
 import stroom.entity.server.util.SQLUtil;
 import stroom.entity.shared.BaseResultList;
+import stroom.entity.shared.Period;
 import stroom.feed.shared.FeedService;
 import stroom.node.shared.Volume;
 import stroom.security.Secured;
@@ -42,6 +43,14 @@ import org.springframework.util.StringUtils;
 
 import javax.annotation.Resource;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -49,6 +58,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * API used by the tasks to interface to the stream store under the bonnet.
@@ -217,13 +227,14 @@ public class FileSystemStreamMaintenanceService
             LOGGER.debug("scanDirectory() - %s - Skipping as root is not a directory !!", directory);
             return result;
         }
-        // Get the list of kids
-        final String[] kids = directory.list();
+        // Get the list of kids along with their attributes so that we only
+        // need to touch each entry on disk once.
+        final Map<String, BasicFileAttributes> kids = listDirectory(directory.toPath());
 
         LOGGER.debug("scanDirectory() - %s", directory.getAbsolutePath());
 
         if (kids != null) {
-            result.setFileCount(kids.length);
+            result.setFileCount(kids.size());
         }
 
         // Here we check the file system for files before querying the database.
@@ -234,18 +245,114 @@ public class FileSystemStreamMaintenanceService
 
         // Loop around all the kids build a list of file names or sub processing
         // directories.
-        buildFilesKeyedByBaseName(result, repoPath, filesKeyedByBaseName, directory, kids);
+        buildFilesKeyedByBaseName(result, repoPath, filesKeyedByBaseName, kids);
 
         if (StringUtils.hasText(repoPath)) {
             buildStreamsKeyedByBaseName(volume, repoPath, streamsKeyedByBaseName);
 
-            deleteUnknownFiles(result, doDelete, directory, oldFileTime, filesKeyedByBaseName, streamsKeyedByBaseName);
+            deleteUnknownFiles(result, doDelete, directory, oldFileTime, filesKeyedByBaseName, streamsKeyedByBaseName,
+                    kids);
 
         }
 
         return result;
     }
 
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ScanVolumePathResult deleteExpiredPartition(final Volume volume, final boolean doDelete,
+            final String repoPath, final long oldFileAge) {
+        // Only stream type day directories are partitions.
+        if (!StringUtils.hasText(repoPath) || repoPath.split("/").length != 4) {
+            return null;
+        }
+        final StreamRange streamRange = new StreamRange(repoPath);
+        final Period createPeriod = streamRange.getCreatePeriod();
+        if (streamRange.isInvalidPath() || createPeriod == null) {
+            return null;
+        }
+
+        // Streams are written under the day they were created so nothing new
+        // can appear in a day that is older than the old file age.
+        final long oldFileTime = System.currentTimeMillis() - oldFileAge;
+        if (createPeriod.getTo() > oldFileTime) {
+            return null;
+        }
+
+        // Mixed retention, some streams created on this day are still live.
+        final SQLBuilder sql = new SQLBuilder();
+        sql.append("SELECT count(sv) FROM ");
+        sql.append(StreamVolume.class.getName());
+        sql.append(" sv");
+        sql.append(" WHERE sv.volume.id = ");
+        sql.arg(volume.getId());
+        sql.append(" AND sv.stream.streamType.path = ");
+        sql.arg(streamRange.getStreamTypePath());
+        SQLUtil.appendRangeQuery(sql, "sv.stream.createMs", createPeriod);
+        if (entityManager.executeQueryLongResult(sql) > 0) {
+            return null;
+        }
+
+        final File directory = new File(FileSystemUtil.createFileTypeRoot(volume), repoPath);
+        final AtomicLong fileCount = new AtomicLong();
+        final AtomicLong newestFileTime = new AtomicLong();
+        try {
+            Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    fileCount.incrementAndGet();
+                    newestFileTime.accumulateAndGet(attrs.lastModifiedTime().toMillis(), Math::max);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (final IOException e) {
+            LOGGER.error("deleteExpiredPartition() - Unable to read %s", directory, e);
+            return null;
+        }
+
+        // Something has touched the partition recently so play safe and let
+        // the normal scan decide what to do with each file.
+        if (newestFileTime.get() >= oldFileTime) {
+            return null;
+        }
+
+        final ScanVolumePathResult result = new ScanVolumePathResult();
+        result.setFileCount(fileCount.get());
+        if (doDelete) {
+            if (FileSystemUtil.deleteDirectory(directory)) {
+                LOGGER.debug("deleteExpiredPartition() - Deleted %s containing %s files", directory,
+                        fileCount.get());
+            } else {
+                LOGGER.error("deleteExpiredPartition() - Failed to delete %s", directory);
+            }
+        }
+        result.addDelete(directory.getAbsolutePath());
+        return result;
+    }
+
+    /**
+     * Read the entries of a directory with their basic attributes. Returns
+     * null if the directory cannot be read.
+     */
+    private Map<String, BasicFileAttributes> listDirectory(final Path directory) {
+        final Map<String, BasicFileAttributes> kids = new HashMap<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (final Path kid : stream) {
+                try {
+                    kids.put(kid.getFileName().toString(),
+                            Files.readAttributes(kid, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+                } catch (final IOException e) {
+                    // The file may have been removed since we listed it.
+                    LOGGER.debug("listDirectory() - Unable to read attributes of %s", kid, e);
+                }
+            }
+        } catch (final IOException e) {
+            LOGGER.error("listDirectory() - Unable to list %s", directory, e);
+            return null;
+        }
+        return kids;
+    }
+
     private void buildStreamsKeyedByBaseName(final Volume volume, final String repoPath,
             final Map<String, StreamVolume> streamsKeyedByBaseName) {
         // OK we have build up a list of files located in the directory
@@ -268,21 +375,20 @@ public class FileSystemStreamMaintenanceService
     }
 
     private void buildFilesKeyedByBaseName(final ScanVolumePathResult result, final String repoPath,
-            final Map<String, List<String>> filesKeyedByBaseName, final File directory, final String[] kids) {
+            final Map<String, List<String>> filesKeyedByBaseName, final Map<String, BasicFileAttributes> kids) {
         if (kids != null) {
-            for (int i = 0; i < kids.length; i++) {
-                final File kidFile = new File(directory, kids[i]);
+            for (final Entry<String, BasicFileAttributes> kid : kids.entrySet()) {
+                final String fileName = kid.getKey();
 
-                if (kidFile.isDirectory()) {
+                if (kid.getValue().isDirectory()) {
                     if (StringUtils.hasText(repoPath)) {
-                        result.addChildDirectory(repoPath + FileSystemUtil.SEPERATOR_CHAR + kids[i]);
+                        result.addChildDirectory(repoPath + FileSystemUtil.SEPERATOR_CHAR + fileName);
                     } else {
-                        result.addChildDirectory(kids[i]);
+                        result.addChildDirectory(fileName);
                     }
 
                 } else {
                     // Add to our list
-                    final String fileName = kids[i];
                     String baseName = fileName;
                     final int baseNameSplit = fileName.indexOf(".");
                     if (baseNameSplit != -1) {
@@ -304,10 +410,8 @@ public class FileSystemStreamMaintenanceService
     }
 
     private void tryDelete(final ScanVolumePathResult result, final boolean doDeleete, final File deleteFile,
-            final long oldFileTime) {
+            final long lastModified, final long oldFileTime) {
         try {
-            final long lastModified = deleteFile.lastModified();
-
             if (lastModified < oldFileTime) {
                 if (doDeleete) {
                     if (deleteFile.delete()) {
@@ -328,15 +432,15 @@ public class FileSystemStreamMaintenanceService
     }
 
     private void checkEmptyDirectory(final ScanVolumePathResult result, final boolean doDeleete, final File directory,
-            final long oldFileTime, final String[] kids) {
-        if (kids == null || kids.length == 0) {
-            tryDelete(result, doDeleete, directory, oldFileTime);
+            final long oldFileTime, final Map<String, BasicFileAttributes> kids) {
+        if (kids == null || kids.size() == 0) {
+            tryDelete(result, doDeleete, directory, directory.lastModified(), oldFileTime);
         }
     }
 
     private void deleteUnknownFiles(final ScanVolumePathResult result, final boolean doDelete, final File directory,
             final long oldFileTime, final Map<String, List<String>> filesKeyedByBaseName,
-            final Map<String, StreamVolume> streamsKeyedByBaseName) {
+            final Map<String, StreamVolume> streamsKeyedByBaseName, final Map<String, BasicFileAttributes> kids) {
         // OK now we can go through all the files that exist on the file
         // system and delete out as required
         for (final Entry<String, List<String>> entry : filesKeyedByBaseName.entrySet()) {
@@ -347,7 +451,8 @@ public class FileSystemStreamMaintenanceService
             // Case 1 - No stream volume found !
             if (md == null) {
                 for (final String file : files) {
-                    tryDelete(result, doDelete, new File(directory, file), oldFileTime);
+                    tryDelete(result, doDelete, new File(directory, file),
+                            kids.get(file).lastModifiedTime().toMillis(), oldFileTime);
                 }
             } else {
                 // Case 2 - match
@@ -20,13 +20,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.TreeSet;
 
 import stroom.io.SeekableInputStream;
 import stroom.streamstore.server.StreamSource;
 import stroom.streamstore.shared.StreamType;
+import stroom.util.collections.LongBitmap;
+import stroom.util.collections.LongBitmap.LongIterator;
 import stroom.util.io.StreamUtil;
 import stroom.util.logging.StroomLogger;
 
@@ -72,11 +71,11 @@ public class RASegmentInputStream extends InputStream implements SegmentInputStr
     private InputStream data;
     private InputStream index;
 
-    private Set<Long> included;
-    private Iterator<Long> includedIterator;
+    private LongBitmap included;
+    private LongIterator includedIterator;
 
-    private Set<Long> excluded;
-    private Iterator<Long> excludedIterator;
+    private LongBitmap excluded;
+    private LongIterator excludedIterator;
 
     private boolean includeAll = true;
 
@@ -183,12 +182,25 @@ public class RASegmentInputStream extends InputStream implements SegmentInputStr
         includeAll = false;
 
         if (included == null) {
-            included = new TreeSet<>();
+            included = new LongBitmap();
         }
 
         included.add(segment);
     }
 
+    /**
+     * Includes a set of segment numbers when reading from this input stream.
+     *
+     * @param segments
+     *            The segments to include.
+     */
+    public void include(final LongBitmap segments) {
+        final LongIterator iterator = segments.iterator();
+        while (iterator.hasNext()) {
+            include(iterator.next());
+        }
+    }
+
     /**
      * Includes all segments when reading from this input stream. This is the
      * default behaviour if no segments are specifically included or excluded.
@@ -215,7 +227,7 @@ public class RASegmentInputStream extends InputStream implements SegmentInputStr
         includeAll = true;
 
         if (excluded == null) {
-            excluded = new TreeSet<>();
+            excluded = new LongBitmap();
         }
 
         excluded.add(segment);
@@ -396,7 +408,7 @@ public class RASegmentInputStream extends InputStream implements SegmentInputStr
         if (includeAll) {
             // If we are including all and haven't specified specific excludes
             // then just read the data stream sequentially.
-            if (excluded == null || excluded.size() == 0) {
+            if (excluded == null || excluded.isEmpty()) {
                 totalBytesRead = doRead(b, off, len);
 
             } else {
@@ -451,7 +463,7 @@ public class RASegmentInputStream extends InputStream implements SegmentInputStr
         } else {
             // If we are excluding all and haven't specified specific includes
             // then just return -1.
-            if (included == null || included.size() == 0) {
+            if (included == null || included.isEmpty()) {
                 totalBytesRead = -1;
 
             } else {
@@ -536,6 +548,34 @@ public class RASegmentInputStream extends InputStream implements SegmentInputStr
         return singleByte[0];
     }
 
+    /**
+     * Skips over bytes by seeking the underlying data when every segment is
+     * being read, otherwise falls back to reading and discarding.
+     *
+     * @param n
+     *            the number of bytes to skip.
+     * @return the actual number of bytes skipped.
+     */
+    @Override
+    public long skip(final long n) throws IOException {
+        if (data == null || index == null) {
+            throw new IOException("Stream closed");
+        }
+
+        if (includeAll && (excluded == null || excluded.isEmpty())) {
+            if (n <= 0) {
+                return 0;
+            }
+
+            final long skipped = Math.min(n, windowByteEnd - windowPos);
+            windowPos += skipped;
+            doSeek(windowPos);
+            return skipped;
+        }
+
+        return super.skip(n);
+    }
+
     /**
      * Gets the byte range for the next included segment.
      */
@@ -615,11 +655,11 @@ public class RASegmentInputStream extends InputStream implements SegmentInputStr
         }
     }
 
-    public void setIncluded(final TreeSet<Long> included) {
+    public void setIncluded(final LongBitmap included) {
         this.included = included;
     }
 
-    public void setExcluded(final TreeSet<Long> excluded) {
+    public void setExcluded(final LongBitmap excluded) {
         this.excluded = excluded;
     }
 
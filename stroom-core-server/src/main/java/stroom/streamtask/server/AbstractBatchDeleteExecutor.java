@@ -41,6 +41,9 @@ public abstract class AbstractBatchDeleteExecutor {
     private final int deleteBatchSizeDefaultValue;
     private final String tempIdTable;
 
+    // The fencing token of the cluster lock while we hold it.
+    private volatile Long fencingToken;
+
     public AbstractBatchDeleteExecutor(final BatchIdTransactionHelper batchIdTransactionHelper,
             final ClusterLockService clusterLockService, final StroomPropertyService propertyService,
             final TaskMonitor taskMonitor, final String taskName, final String clusterLockName,
@@ -64,6 +67,7 @@ public abstract class AbstractBatchDeleteExecutor {
         LOGGER.info(taskName + " - start");
         if (clusterLockService.tryLock(clusterLockName)) {
             try {
+                fencingToken = clusterLockService.getFencingToken(clusterLockName);
                 if (!taskMonitor.isTerminated()) {
                     final Long age = getDeleteAge(deleteAgePropertyName);
                     if (age != null) {
@@ -74,6 +78,7 @@ public abstract class AbstractBatchDeleteExecutor {
             } catch (final Throwable t) {
                 LOGGER.error(t.getMessage(), t);
             } finally {
+                fencingToken = null;
                 clusterLockService.releaseLock(clusterLockName);
             }
         } else {
@@ -100,6 +105,7 @@ public abstract class AbstractBatchDeleteExecutor {
                 LOGGER.warn("%s ids found from previous delete that must not have completed successfully", count);
                 // Try and delete the remaining batch.
                 total += count;
+                checkFencingToken();
                 deleteCurrentBatch(total);
                 // Remove the current batch of ids from the id table.
                 truncateTempIdTable(total);
@@ -114,6 +120,7 @@ public abstract class AbstractBatchDeleteExecutor {
                     // If we inserted some ids then try and delete this batch.
                     if (count > 0) {
                         total += count;
+                        checkFencingToken();
                         deleteCurrentBatch(total);
                         // Remove the current batch of ids from the id table.
                         truncateTempIdTable(total);
@@ -127,6 +134,17 @@ public abstract class AbstractBatchDeleteExecutor {
 
     protected abstract void deleteCurrentBatch(final long total);
 
+    /**
+     * Make sure we still hold the cluster lock before deleting each batch in
+     * case it has been lost and another node has started deleting.
+     */
+    private void checkFencingToken() {
+        final Long token = fencingToken;
+        if (token != null) {
+            clusterLockService.checkFencingToken(clusterLockName, token);
+        }
+    }
+
     private void createTempIdTable() {
         info("Creating temp id table");
         final LogExecutionTime logExecutionTime = new LogExecutionTime();
@@ -42,11 +42,16 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Resource;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Task to clean the stream store.
@@ -68,9 +73,13 @@ public class FileSystemCleanExecutor {
     private Integer batchSize = null;
     private Long oldAge = null;
     private boolean deleteOut = false;
+    private long maxFilesPerSecond = 0;
+    private boolean partitionDelete = false;
     private AsyncTaskHelper<VoidResult> asyncTaskHelper;
+    private FileSystemCleanThrottle throttle;
 
     public static final String DELETE_OUT = "delete.out";
+    public static final String CHECKPOINT = "clean.checkpoint";
 
     public FileSystemCleanExecutor() {
     }
@@ -90,6 +99,17 @@ public class FileSystemCleanExecutor {
         this.deleteOut = Boolean.TRUE.toString().equalsIgnoreCase(matchFile);
     }
 
+    @Value("#{propertyConfigurer.getProperty('stroom.fileSystemCleanMaxFilesPerSecond')}")
+    public void setFileSystemCleanMaxFilesPerSecond(final String maxFilesPerSecond) {
+        final Long value = ModelStringUtil.parseNumberString(maxFilesPerSecond);
+        this.maxFilesPerSecond = value == null ? 0 : value;
+    }
+
+    @Value("#{propertyConfigurer.getProperty('stroom.fileSystemCleanPartitionDelete')}")
+    public void setFileSystemCleanPartitionDelete(final String partitionDelete) {
+        this.partitionDelete = Boolean.TRUE.toString().equalsIgnoreCase(partitionDelete);
+    }
+
     public Long getOldAge() {
         return oldAge;
     }
@@ -98,10 +118,18 @@ public class FileSystemCleanExecutor {
         return !deleteOut;
     }
 
+    public boolean isPartitionDelete() {
+        return partitionDelete;
+    }
+
     public AsyncTaskHelper<VoidResult> getAsyncTaskHelper() {
         return asyncTaskHelper;
     }
 
+    public FileSystemCleanThrottle getThrottle() {
+        return throttle;
+    }
+
     private void logInfo(final Object... args) {
         LOGGER.info(args);
         taskMonitor.info(args);
@@ -117,6 +145,7 @@ public class FileSystemCleanExecutor {
     public void clean(final Task<?> task, final long nodeId) {
         final Map<Volume, FileSystemCleanProgress> taskProgressMap = new HashMap<Volume, FileSystemCleanProgress>();
         final Map<Volume, PrintWriter> printWriterMap = new HashMap<Volume, PrintWriter>();
+        final Map<Volume, PrintWriter> checkpointWriterMap = new HashMap<Volume, PrintWriter>();
 
         if (batchSize == null) {
             batchSize = 20;
@@ -127,8 +156,10 @@ public class FileSystemCleanExecutor {
 
         // Load the node.
         asyncTaskHelper = new AsyncTaskHelper<>(null, taskMonitor, taskManager, batchSize);
+        throttle = new FileSystemCleanThrottle(maxFilesPerSecond);
 
-        logInfo("Starting file system clean task. oldAge = %s", ModelStringUtil.formatDurationString(oldAge));
+        logInfo("Starting file system clean task. oldAge = %s, maxFilesPerSecond = %s",
+                ModelStringUtil.formatDurationString(oldAge), maxFilesPerSecond);
 
         final LogExecutionTime logExecutionTime = new LogExecutionTime();
 
@@ -147,9 +178,20 @@ public class FileSystemCleanExecutor {
                 // Add to the task steps remaining.
 
                 for (final Volume volume : volumeList) {
-                    final FileSystemCleanProgress taskProgress = new FileSystemCleanProgress();
+                    final File dir = new File(volume.getPath());
+                    final FileSystemCleanProgress taskProgress = new FileSystemCleanProgress(
+                            readCheckpoint(new File(dir, CHECKPOINT)));
+                    if (dir.isDirectory()) {
+                        try {
+                            checkpointWriterMap.put(volume,
+                                    new PrintWriter(new OutputStreamWriter(
+                                            new FileOutputStream(new File(dir, CHECKPOINT), true),
+                                            StreamUtil.DEFAULT_CHARSET)));
+                        } catch (final Exception ex) {
+                            LOGGER.error("exec() - Error opening checkpoint file", ex);
+                        }
+                    }
                     if (deleteOut) {
-                        final File dir = new File(volume.getPath());
                         if (dir.isDirectory()) {
                             try {
                                 printWriterMap
@@ -195,6 +237,10 @@ public class FileSystemCleanExecutor {
                         trace.append(taskProgress.getScanFileCount());
                         trace.append(", Del ");
                         trace.append(taskProgress.getScanDeleteCount());
+                        trace.append(", Pending ");
+                        trace.append(taskProgress.getScanPending());
+                        trace.append(", Files/s ");
+                        trace.append(taskProgress.getScanFilesPerSecond());
                         trace.append(") ");
 
                         String line = null;
@@ -209,14 +255,55 @@ public class FileSystemCleanExecutor {
                             LOGGER.error("exec() - Error writing " + DELETE_OUT, ex);
                             task.terminate();
                         }
+
+                        final PrintWriter checkpointWriter = checkpointWriterMap.get(volume);
+                        while ((line = taskProgress.getCheckpointQueue().poll()) != null) {
+                            if (checkpointWriter != null) {
+                                checkpointWriter.println(line);
+                            }
+                        }
+                        if (checkpointWriter != null) {
+                            checkpointWriter.flush();
+                        }
                     }
                     logInfo(trace.toString());
                 }
             }
         } finally {
             printWriterMap.values().forEach(CloseableUtil::closeLogAndIngoreException);
+            checkpointWriterMap.values().forEach(CloseableUtil::closeLogAndIngoreException);
+        }
+
+        // Only forget the checkpoints once every volume has been fully
+        // scanned, a stopped clean will resume from where it got to.
+        if (!taskMonitor.isTerminated() && !task.isTerminated() && volumeList != null) {
+            for (final Volume volume : volumeList) {
+                final File checkpointFile = new File(volume.getPath(), CHECKPOINT);
+                if (checkpointFile.isFile() && !checkpointFile.delete()) {
+                    LOGGER.error("exec() - Failed to delete %s", checkpointFile.getAbsolutePath());
+                }
+            }
         }
 
         logInfo("start() - Completed file system clean task in %s", logExecutionTime);
     }
+
+    Set<String> readCheckpoint(final File checkpointFile) {
+        // Ignore checkpoints left by a clean that was stopped a long time ago
+        // as the directories may well contain old files again.
+        if (!checkpointFile.isFile() || checkpointFile.lastModified() < System.currentTimeMillis() - oldAge) {
+            return Collections.emptySet();
+        }
+
+        try {
+            final Set<String> checkpointSet = new HashSet<>(
+                    Files.readAllLines(checkpointFile.toPath(), StreamUtil.DEFAULT_CHARSET));
+            LOGGER.info("readCheckpoint() - Resuming clean of %s skipping %s directories",
+                    checkpointFile.getParent(), checkpointSet.size());
+            return checkpointSet;
+        } catch (final IOException e) {
+            LOGGER.error("readCheckpoint() - Unable to read %s", checkpointFile.getAbsolutePath(), e);
+            return Collections.emptySet();
+        }
+    }
 }
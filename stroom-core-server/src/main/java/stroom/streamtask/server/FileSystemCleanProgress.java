@@ -16,7 +16,9 @@
 
 package stroom.streamtask.server;
 
+import java.util.Collections;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -31,8 +33,21 @@ public class FileSystemCleanProgress {
     private final AtomicLong scanPending = new AtomicLong(0);
     private final AtomicLong scanComplete = new AtomicLong(0);
     private final Queue<String> lineQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<String> checkpointQueue = new ConcurrentLinkedQueue<>();
+    private final Set<String> checkpointSet;
+    private final long startTime = System.currentTimeMillis();
 
     public FileSystemCleanProgress() {
+        this(Collections.emptySet());
+    }
+
+    /**
+     * @param checkpointSet
+     *            Directories that were completely scanned by a previous clean
+     *            that did not finish and can be skipped by this one.
+     */
+    public FileSystemCleanProgress(final Set<String> checkpointSet) {
+        this.checkpointSet = checkpointSet;
     }
 
     public void addResult(final ScanVolumePathResult result) {
@@ -82,4 +97,24 @@ public class FileSystemCleanProgress {
     public Queue<String> getLineQueue() {
         return lineQueue;
     }
+
+    public void addCheckpoint(final String path) {
+        checkpointQueue.add(path);
+    }
+
+    public Queue<String> getCheckpointQueue() {
+        return checkpointQueue;
+    }
+
+    public boolean isCheckpointed(final String path) {
+        return checkpointSet.contains(path);
+    }
+
+    public long getScanFilesPerSecond() {
+        final long elapsed = System.currentTimeMillis() - startTime;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return scanFileCount.get() * 1000 / elapsed;
+    }
 }
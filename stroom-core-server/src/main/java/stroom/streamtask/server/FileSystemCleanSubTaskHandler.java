@@ -72,11 +72,28 @@ public class FileSystemCleanSubTaskHandler extends AbstractTaskHandler<FileSyste
             return VoidResult.INSTANCE;
         }
 
-        final ScanVolumePathResult result = streamMaintenanceService.scanVolumePath(task.getVolume(),
-                task.getParentHandler().isDelete(), task.getPath(), task.getParentHandler().getOldAge());
+        ScanVolumePathResult result = null;
+        if (task.getParentHandler().isPartitionDelete()) {
+            // Try and drop a whole expired day before visiting every file in it.
+            result = streamMaintenanceService.deleteExpiredPartition(task.getVolume(),
+                    task.getParentHandler().isDelete(), task.getPath(), task.getParentHandler().getOldAge());
+        }
+        if (result == null) {
+            result = streamMaintenanceService.scanVolumePath(task.getVolume(), task.getParentHandler().isDelete(),
+                    task.getPath(), task.getParentHandler().getOldAge());
+        }
 
         task.getTaskProgress().addResult(result);
 
+        // Directories without children hold the stream files so record them
+        // as done in case this clean is stopped and restarted.
+        if (result.getChildDirectoryList() == null || result.getChildDirectoryList().size() == 0) {
+            task.getTaskProgress().addCheckpoint(task.getPath());
+        }
+
+        // Hold this thread back if we are reading files faster than allowed.
+        task.getParentHandler().getThrottle().acquire(result.getFileCount());
+
         // Add a log line to indicate progress 1/3,44/100
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("createRunableForPath() -" + task.getLogPrefix() + "  - " + task.getPath() + ".  Scanned "
@@ -92,10 +109,15 @@ public class FileSystemCleanSubTaskHandler extends AbstractTaskHandler<FileSyste
         }
 
         if (result.getChildDirectoryList() != null && result.getChildDirectoryList().size() > 0) {
-            // Add to the task steps remaining.
-            task.getTaskProgress().addScanPending(result.getChildDirectoryList().size());
-
             for (final String subPath : result.getChildDirectoryList()) {
+                if (task.getTaskProgress().isCheckpointed(subPath)) {
+                    LOGGER.debug("exec() - Skipping %s as it was cleaned by a previous run", subPath);
+                    continue;
+                }
+
+                // Add to the task steps remaining.
+                task.getTaskProgress().addScanPending(1);
+
                 final FileSystemCleanSubTask subTask = new FileSystemCleanSubTask(task.getParentHandler(),
                         task.getParentTask(), task.getTaskProgress(), task.getVolume(), subPath, task.getLogPrefix());
                 if (!taskMonitor.isTerminated()) {
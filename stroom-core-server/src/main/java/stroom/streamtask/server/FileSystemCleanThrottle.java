@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.streamtask.server;
+
+import stroom.util.thread.ThreadUtil;
+
+/**
+ * Limits the rate at which the file system clean touches files across all of
+ * the sub tasks that are scanning volumes so that a clean does not starve
+ * stream processing of disk I/O. A limit of zero or less means no limit.
+ */
+public class FileSystemCleanThrottle {
+    private static final long ONE_SECOND_NS = 1000000000L;
+
+    private final long nanosPerFile;
+    private long nextFreeNanos;
+
+    public FileSystemCleanThrottle(final long maxFilesPerSecond) {
+        if (maxFilesPerSecond > 0) {
+            nanosPerFile = Math.max(1, ONE_SECOND_NS / maxFilesPerSecond);
+        } else {
+            nanosPerFile = 0;
+        }
+    }
+
+    /**
+     * Account for a number of files that have been read and wait until the
+     * rate limit allows more to be read.
+     */
+    public void acquire(final long fileCount) {
+        final long waitNanos = reserve(fileCount, System.nanoTime());
+        if (waitNanos > 0) {
+            ThreadUtil.sleep(waitNanos / 1000000L);
+        }
+    }
+
+    /**
+     * Reserve time for a number of files at the supplied time and return how
+     * long the caller must wait before the reservation starts. Any time the
+     * throttle has been idle is not carried forward as credit.
+     */
+    synchronized long reserve(final long fileCount, final long now) {
+        if (nanosPerFile == 0 || fileCount <= 0) {
+            return 0;
+        }
+
+        if (nextFreeNanos < now) {
+            nextFreeNanos = now;
+        }
+        final long waitNanos = nextFreeNanos - now;
+        nextFreeNanos += fileCount * nanosPerFile;
+        return waitNanos;
+    }
+}
@@ -17,6 +17,7 @@
 package stroom.volume.server;
 
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import stroom.node.shared.Volume;
 
@@ -32,7 +33,7 @@ public class RandomVolumeSelector implements VolumeSelector {
             return list.get(0);
         }
 
-        final double random = Math.random();
+        final double random = ThreadLocalRandom.current().nextDouble();
         final int index = (int) (random * list.size());
 
         return list.get(index);
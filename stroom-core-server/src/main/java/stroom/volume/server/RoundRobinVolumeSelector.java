@@ -35,18 +35,9 @@ public class RoundRobinVolumeSelector implements VolumeSelector {
             return list.get(0);
         }
 
-        final int pos = roundRobinPosition.incrementAndGet();
-
-        // Ensure the position is limited.
-        if (pos > 1000000) {
-            synchronized (roundRobinPosition) {
-                if (roundRobinPosition.get() > 10000) {
-                    roundRobinPosition.addAndGet(-10000);
-                }
-            }
-        }
-
-        final int index = pos % list.size();
+        // floorMod keeps the index positive when the counter wraps so no
+        // locking is needed to keep the position in range.
+        final int index = Math.floorMod(roundRobinPosition.incrementAndGet(), list.size());
         return list.get(index);
     }
 
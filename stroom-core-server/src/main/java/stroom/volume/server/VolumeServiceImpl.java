@@ -42,10 +42,13 @@ import stroom.statistics.common.StatisticTag;
 import stroom.statistics.common.Statistics;
 import stroom.statistics.common.StatisticsFactory;
 import stroom.streamstore.server.fs.FileSystemUtil;
+import stroom.task.server.GenericServerTask;
+import stroom.task.server.TaskManager;
 import stroom.util.logging.StroomLogger;
 import stroom.util.spring.StroomBeanStore;
 import stroom.util.spring.StroomFrequencySchedule;
 import stroom.util.spring.StroomStartup;
+import stroom.util.task.ServerTask;
 import event.logging.BaseAdvancedQueryItem;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
@@ -54,12 +57,15 @@ import javax.inject.Inject;
 import javax.inject.Provider;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -110,7 +116,9 @@ public class VolumeServiceImpl extends SystemEntityServiceImpl<Volume, FindVolum
     private final StroomPropertyService stroomPropertyService;
     private final StroomBeanStore stroomBeanStore;
     private final Provider<StatisticsFactory> factoryProvider;
-    private final AtomicReference<List<Volume>> currentVolumeState = new AtomicReference<>();
+    private final AtomicReference<VolumeSnapshot> currentVolumeState = new AtomicReference<>();
+    private final AtomicBoolean reloadPending = new AtomicBoolean();
+    private final Object reloadLock = new Object();
 
     private volatile Statistics statistics;
 
@@ -162,18 +170,17 @@ public class VolumeServiceImpl extends SystemEntityServiceImpl<Volume, FindVolum
 			final VolumeUseStatus indexStatus, final LocalVolumeUse localVolumeUse, final Set<Volume> allowedVolumes,
 			final int requiredNumber) {
 		final VolumeSelector volumeSelector = getVolumeSelector();
-		final List<Volume> allVolumeList = getCurrentState();
-		final List<Volume> freeVolumes = VolumeListUtil.removeFullVolumes(allVolumeList);
+		final VolumeSnapshot snapshot = getCurrentState();
 		Set<Volume> set = Collections.emptySet();
 
-		final List<Volume> filteredVolumeList = getFilteredVolumeList(freeVolumes, node, volumeType, streamStatus,
+		final List<Volume> filteredVolumeList = snapshot.getFilteredVolumeList(node, volumeType, streamStatus,
 				indexStatus, null, allowedVolumes);
 		if (filteredVolumeList.size() > 0) {
 			// Create a list of local volumes if we are set to prefer or require
 			// local.
 			List<Volume> localVolumeList = null;
 			if (localVolumeUse != null) {
-				localVolumeList = getFilteredVolumeList(freeVolumes, node, volumeType, streamStatus, indexStatus,
+				localVolumeList = snapshot.getFilteredVolumeList(node, volumeType, streamStatus, indexStatus,
 						Boolean.TRUE, allowedVolumes);
 
                 // If we require a local volume and there are none available
@@ -239,7 +246,7 @@ public class VolumeServiceImpl extends SystemEntityServiceImpl<Volume, FindVolum
         return set;
     }
 
-	private List<Volume> getFilteredVolumeList(final List<Volume> allVolumes, final Node node,
+	private static List<Volume> getFilteredVolumeList(final List<Volume> allVolumes, final Node node,
 			final VolumeType volumeType, final VolumeUseStatus streamStatus, final VolumeUseStatus indexStatus,
 			final Boolean local, final Set<Volume> allowedVolumes) {
 		final List<Volume> list = new ArrayList<>();
@@ -290,26 +297,82 @@ public class VolumeServiceImpl extends SystemEntityServiceImpl<Volume, FindVolum
 
 	@Override
 	public void onChange(final EntityEvent event) {
-		currentVolumeState.set(null);
+		// Keep handing out the current snapshot while a single background
+		// reload picks up the added or deleted volume.
+		if (currentVolumeState.get() != null) {
+			requestReload();
+		}
 	}
 
     @Override
     public void clear() {
-        currentVolumeState.set(null);
+        // Carry on serving the previous snapshot rather than making the next
+        // caller wait for the volumes to be loaded again.
+        if (currentVolumeState.get() != null) {
+            requestReload();
+        }
     }
 
-    private List<Volume> getCurrentState() {
-        List<Volume> state = currentVolumeState.get();
-        if (state == null) {
+    private VolumeSnapshot getCurrentState() {
+        VolumeSnapshot snapshot = currentVolumeState.get();
+        if (snapshot == null) {
+            // Only the first caller after startup loads the state, everybody
+            // else waits for it.
             synchronized (this) {
-                state = currentVolumeState.get();
-                if (state == null) {
-                    state = refresh();
-                    currentVolumeState.set(state);
+                snapshot = currentVolumeState.get();
+                if (snapshot == null) {
+                    refresh();
+                    snapshot = currentVolumeState.get();
                 }
             }
         }
-        return state;
+        return snapshot;
+    }
+
+    private void requestReload() {
+        if (reloadPending.compareAndSet(false, true)) {
+            try {
+                execReload();
+            } catch (final RuntimeException e) {
+                LOGGER.error("requestReload() - Unable to reload volumes", e);
+                reloadPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * Reload the volume list in the background.
+     */
+    void execReload() {
+        if (stroomBeanStore == null) {
+            reload(this);
+        } else {
+            // Run the reload as a task so that it has a security context and
+            // use the proxied service so that it has a transaction.
+            final VolumeService volumeService = stroomBeanStore.getBean(VolumeService.class);
+            final GenericServerTask reloadTask = new GenericServerTask(null, null,
+                    ServerTask.INTERNAL_PROCESSING_USER, "Volume State Reload", "reloading volumes");
+            reloadTask.setRunnable(() -> reload(volumeService));
+            stroomBeanStore.getBean(TaskManager.class).execAsync(reloadTask);
+        }
+    }
+
+    private void reload(final VolumeService volumeService) {
+        // Clear the flag first so that any change made while we are loading
+        // queues another reload. Reloads run one at a time so the last one to
+        // finish always has the latest state.
+        reloadPending.set(false);
+        synchronized (reloadLock) {
+            try {
+                final FindVolumeCriteria findVolumeCriteria = new FindVolumeCriteria();
+                findVolumeCriteria.addOrderBy(FindVolumeCriteria.ORDER_BY_ID);
+                currentVolumeState.set(new VolumeSnapshot(volumeService.find(findVolumeCriteria)));
+            } catch (final Throwable t) {
+                // Keep the previous snapshot, the next change or scheduled
+                // refresh will try again.
+                LOGGER.error("reload() - Unable to reload volumes", t);
+            }
+        }
     }
 
     @StroomFrequencySchedule("5m")
@@ -338,6 +401,10 @@ public class VolumeServiceImpl extends SystemEntityServiceImpl<Volume, FindVolum
             newState.add(volume);
         }
 
+        // Publish the sampled state so that volume selection picks up the
+        // latest free space without having to wait for a change event.
+        currentVolumeState.set(new VolumeSnapshot(newState));
+
         return newState;
     }
 
@@ -485,6 +552,37 @@ public class VolumeServiceImpl extends SystemEntityServiceImpl<Volume, FindVolum
         REQUIRED, PREFERRED
     }
 
+    /**
+     * An immutable view of the volumes along with any filtered lists of them
+     * that have been asked for, so that selecting volumes for a new stream
+     * does not have to filter the full list each time.
+     */
+    private static class VolumeSnapshot {
+        private static final int MAX_CACHED_FILTERS = 1000;
+
+        private final List<Volume> freeVolumes;
+        private final Map<List<Object>, List<Volume>> filteredVolumeCache = new ConcurrentHashMap<>();
+
+        VolumeSnapshot(final List<Volume> volumes) {
+            this.freeVolumes = Collections.unmodifiableList(VolumeListUtil.removeFullVolumes(volumes));
+        }
+
+        List<Volume> getFilteredVolumeList(final Node node, final VolumeType volumeType,
+                final VolumeUseStatus streamStatus, final VolumeUseStatus indexStatus, final Boolean local,
+                final Set<Volume> allowedVolumes) {
+            final List<Object> key = Arrays.asList(node, volumeType, streamStatus, indexStatus, local, allowedVolumes);
+            List<Volume> list = filteredVolumeCache.get(key);
+            if (list == null) {
+                list = Collections.unmodifiableList(VolumeServiceImpl.getFilteredVolumeList(freeVolumes, node,
+                        volumeType, streamStatus, indexStatus, local, allowedVolumes));
+                if (filteredVolumeCache.size() < MAX_CACHED_FILTERS) {
+                    filteredVolumeCache.put(key, list);
+                }
+            }
+            return list;
+        }
+    }
+
     private static class VolumeQueryAppender extends QueryAppender<Volume, FindVolumeCriteria> {
         public VolumeQueryAppender(final StroomEntityManager entityManager) {
             super(entityManager);
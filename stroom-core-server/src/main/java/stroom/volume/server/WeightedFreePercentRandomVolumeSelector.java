@@ -17,6 +17,7 @@
 package stroom.volume.server;
 
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import stroom.node.shared.Volume;
 import stroom.node.shared.VolumeState;
@@ -37,7 +38,7 @@ public class WeightedFreePercentRandomVolumeSelector implements VolumeSelector {
         }
 
         final double[] thresholds = getWeightingThresholds(filtered);
-        final double random = Math.random();
+        final double random = ThreadLocalRandom.current().nextDouble();
 
         int index = thresholds.length - 1;
         for (int i = 0; i < thresholds.length; i++) {
@@ -115,6 +115,11 @@ public class XMLSchemaCache implements EntityEvent.Handler {
         clear();
     }
 
+    @Override
+    public void onChange(final List<EntityEvent> events) {
+        clear();
+    }
+
     private void clear() {
         LOGGER.debug("Clearing XML schema cache");
         schemaSets.clear();
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.cache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestAbstractCacheBean extends StroomUnitTest {
+    private static class TestCacheBean extends AbstractCacheBean<String, String> {
+        private final AtomicInteger createCount = new AtomicInteger();
+        private final AtomicInteger destroyCount = new AtomicInteger();
+        private volatile CountDownLatch slowLatch;
+        private volatile CountDownLatch slowStarted;
+
+        public TestCacheBean(final CacheManagerAutoCloseable cacheManager, final int maxCacheEntries) {
+            super(cacheManager, "Test Cache", maxCacheEntries);
+        }
+
+        @Override
+        protected String create(final String key) {
+            createCount.incrementAndGet();
+            if (key.startsWith("slow") && slowLatch != null) {
+                if (slowStarted != null) {
+                    slowStarted.countDown();
+                }
+                try {
+                    slowLatch.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (key.startsWith("fail")) {
+                throw new IllegalStateException(key);
+            }
+            return key.toUpperCase();
+        }
+
+        @Override
+        protected void destroy(final String key, final String value) {
+            destroyCount.incrementAndGet();
+            super.destroy(key, value);
+        }
+    }
+
+    @Test
+    public void testSingleLoadPerKey() throws Exception {
+        try (CacheManagerAutoCloseable cacheManager = CacheManagerAutoCloseable.create()) {
+            final TestCacheBean cache = new TestCacheBean(cacheManager, 100);
+            cache.slowLatch = new CountDownLatch(1);
+
+            final ExecutorService executorService = Executors.newFixedThreadPool(4);
+            try {
+                final Future<String> slow1 = executorService.submit(() -> cache.get("slow"));
+                final Future<String> slow2 = executorService.submit(() -> cache.get("slow"));
+
+                // Other keys must not wait for the slow load.
+                final Future<String> fast = executorService.submit(() -> cache.get("fast"));
+                Assert.assertEquals("FAST", fast.get(10, TimeUnit.SECONDS));
+                Assert.assertFalse(slow1.isDone());
+
+                cache.slowLatch.countDown();
+                Assert.assertEquals("SLOW", slow1.get(10, TimeUnit.SECONDS));
+                Assert.assertEquals("SLOW", slow2.get(10, TimeUnit.SECONDS));
+                Assert.assertEquals(2, cache.createCount.get());
+            } finally {
+                executorService.shutdownNow();
+            }
+
+            Assert.assertEquals(2, cache.getInfo().getObjectCount());
+        }
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() throws Exception {
+        try (CacheManagerAutoCloseable cacheManager = CacheManagerAutoCloseable.create()) {
+            final TestCacheBean cache = new TestCacheBean(cacheManager, 100);
+            for (int i = 0; i < 2; i++) {
+                try {
+                    cache.get("fail");
+                    Assert.fail("Expected exception");
+                } catch (final IllegalStateException e) {
+                    Assert.assertEquals("fail", e.getMessage());
+                }
+            }
+            Assert.assertEquals(2, cache.createCount.get());
+            Assert.assertEquals(0, cache.getInfo().getObjectCount());
+        }
+    }
+
+    @Test
+    public void testWeightEviction() throws Exception {
+        try (CacheManagerAutoCloseable cacheManager = CacheManagerAutoCloseable.create()) {
+            final TestCacheBean cache = new TestCacheBean(cacheManager, 100);
+            cache.setWeigher((key, value) -> value.length());
+            cache.setMaxWeight(100);
+
+            cache.get("a");
+            cache.get("b");
+            // This pushes the cache over its weight limit so the least
+            // recently used entries go.
+            final String big = cache.get(repeat('c', 99));
+            Assert.assertEquals(99, big.length());
+            Assert.assertEquals(99, cache.getWeight());
+            Assert.assertEquals(2, cache.destroyCount.get());
+            Assert.assertNull(cache.getQuiet("a"));
+            Assert.assertEquals(2, cache.getInfo().getEvictionCount());
+        }
+    }
+
+    @Test
+    public void testEntryEviction() throws Exception {
+        try (CacheManagerAutoCloseable cacheManager = CacheManagerAutoCloseable.create()) {
+            final TestCacheBean cache = new TestCacheBean(cacheManager, 10);
+            for (int i = 0; i < 11; i++) {
+                cache.get("key" + i);
+                Thread.sleep(1);
+            }
+            Assert.assertEquals(9, cache.getInfo().getObjectCount());
+            Assert.assertNull(cache.getQuiet("key0"));
+            Assert.assertNotNull(cache.getQuiet("key10"));
+        }
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception {
+        try (CacheManagerAutoCloseable cacheManager = CacheManagerAutoCloseable.create()) {
+            final TestCacheBean cache = new TestCacheBean(cacheManager, 100);
+            cache.setRefreshAhead(1, TimeUnit.MILLISECONDS);
+
+            Assert.assertEquals("A", cache.get("a"));
+            Thread.sleep(5);
+            // The current value is returned while the refresh happens.
+            Assert.assertEquals("A", cache.get("a"));
+
+            for (int i = 0; i < 100 && cache.destroyCount.get() == 0; i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(2, cache.createCount.get());
+            Assert.assertEquals(1, cache.destroyCount.get());
+            Assert.assertEquals(1, cache.getInfo().getObjectCount());
+        }
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        try (CacheManagerAutoCloseable cacheManager = CacheManagerAutoCloseable.create()) {
+            final TestCacheBean cache = new TestCacheBean(cacheManager, 100);
+            cache.get("a");
+            cache.get("b");
+            cache.clear();
+            Assert.assertEquals(0, cache.getInfo().getObjectCount());
+            Assert.assertEquals(2, cache.destroyCount.get());
+            Assert.assertEquals(0, cache.getWeight());
+        }
+    }
+
+    @Test
+    public void testClearDuringLoad() throws Exception {
+        try (CacheManagerAutoCloseable cacheManager = CacheManagerAutoCloseable.create()) {
+            final TestCacheBean cache = new TestCacheBean(cacheManager, 100);
+            cache.slowLatch = new CountDownLatch(1);
+            cache.slowStarted = new CountDownLatch(1);
+
+            final ExecutorService executorService = Executors.newSingleThreadExecutor();
+            try {
+                final Future<String> slow = executorService.submit(() -> cache.get("slow"));
+                Assert.assertTrue(cache.slowStarted.await(10, TimeUnit.SECONDS));
+
+                // Nothing to destroy until the load completes.
+                cache.clear();
+                Assert.assertEquals(0, cache.destroyCount.get());
+
+                cache.slowLatch.countDown();
+                Assert.assertEquals("SLOW", slow.get(10, TimeUnit.SECONDS));
+            } finally {
+                executorService.shutdownNow();
+            }
+
+            // The value was never added to the cache so it is destroyed as
+            // soon as it has loaded.
+            Assert.assertEquals(1, cache.destroyCount.get());
+            Assert.assertEquals(0, cache.getInfo().getObjectCount());
+            Assert.assertEquals(0, cache.getWeight());
+        }
+    }
+
+    private String repeat(final char c, final int count) {
+        final StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.cache.shared.CacheInfo;
+import stroom.cache.shared.FindCacheInfoCriteria;
+import stroom.entity.shared.BaseResultList;
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestStroomCacheManagerImpl extends StroomUnitTest {
+    private static final String CACHE_NAME = "Test Bean Cache";
+
+    private static class TestCacheBean extends AbstractCacheBean<String, String> {
+        public TestCacheBean(final CacheManagerAutoCloseable cacheManager) {
+            super(cacheManager, CACHE_NAME, 100);
+        }
+
+        @Override
+        protected String create(final String key) {
+            return key.toUpperCase();
+        }
+    }
+
+    @Test
+    public void testCacheBeansAreListedAndCleared() throws Exception {
+        try (CacheManagerAutoCloseable cacheManager = CacheManagerAutoCloseable.create()) {
+            final TestCacheBean cacheBean = new TestCacheBean(cacheManager);
+            cacheBean.get("a");
+            cacheBean.get("b");
+
+            final StroomCacheManagerImpl stroomCacheManager = new StroomCacheManagerImpl(cacheManager);
+            Assert.assertTrue(stroomCacheManager.getCacheNames().contains(CACHE_NAME));
+
+            final FindCacheInfoCriteria criteria = new FindCacheInfoCriteria();
+            criteria.getName().setString(CACHE_NAME);
+            final BaseResultList<CacheInfo> infoList = stroomCacheManager.find(criteria);
+            Assert.assertEquals(1, infoList.size());
+            Assert.assertEquals(CACHE_NAME, infoList.get(0).getName());
+            Assert.assertEquals(2, infoList.get(0).getObjectCount());
+
+            stroomCacheManager.findClear(criteria);
+            Assert.assertEquals(0, stroomCacheManager.find(criteria).get(0).getObjectCount());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.entity.server.event;
+
+import stroom.entity.shared.DocRef;
+import stroom.entity.shared.EntityAction;
+import stroom.task.server.TaskCallback;
+import stroom.task.server.TaskManager;
+import stroom.util.shared.VoidResult;
+import stroom.util.spring.StroomBeanStore;
+import stroom.util.test.StroomUnitTest;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestEntityEventBusImpl extends StroomUnitTest {
+    private static final String TYPE = "Test";
+    private static final DocRef DOC1 = new DocRef(TYPE, "1");
+    private static final DocRef DOC2 = new DocRef(TYPE, "2");
+
+    @Mock
+    private StroomBeanStore stroomBeanStore;
+    @Mock
+    private TaskManager taskManager;
+    @InjectMocks
+    private EntityEventBusImpl entityEventBus;
+
+    @Before
+    public void init() throws Exception {
+        entityEventBus.setBatchWindow("0");
+        entityEventBus.addHandler(event -> {
+        }, TYPE);
+        entityEventBus.init();
+    }
+
+    @Test
+    public void testBatching() {
+        fire(DOC1, EntityAction.ADD);
+        fire(DOC2, EntityAction.ADD);
+
+        // Only one dispatch is scheduled for the batch.
+        getCallbacks(1);
+        Assert.assertEquals(Arrays.asList(event(DOC1, EntityAction.ADD), event(DOC2, EntityAction.ADD)),
+                entityEventBus.takePendingEvents());
+    }
+
+    @Test
+    public void testCoalescingKeepsEveryAction() {
+        fire(DOC1, EntityAction.UPDATE);
+        fire(DOC2, EntityAction.UPDATE);
+        fire(DOC1, EntityAction.DELETE);
+        fire(DOC1, EntityAction.UPDATE);
+
+        // Repeats of an action for an entity are sent once in the order they
+        // last happened but a different action is never dropped.
+        final List<EntityEvent> events = entityEventBus.takePendingEvents();
+        Assert.assertEquals(Arrays.asList(event(DOC2, EntityAction.UPDATE), event(DOC1, EntityAction.DELETE),
+                event(DOC1, EntityAction.UPDATE)), events);
+    }
+
+    @Test
+    public void testEventsFiredDuringDispatchAreDispatchedAfterwards() {
+        fire(DOC1, EntityAction.UPDATE);
+        final TaskCallback<VoidResult> callback = getCallbacks(1).get(0);
+        Assert.assertEquals(1, entityEventBus.takePendingEvents().size());
+
+        // An event fired while the dispatch is running waits for it to finish.
+        fire(DOC2, EntityAction.UPDATE);
+        getCallbacks(1);
+
+        callback.onSuccess(VoidResult.INSTANCE);
+        getCallbacks(2);
+        Assert.assertEquals(Arrays.asList(event(DOC2, EntityAction.UPDATE)), entityEventBus.takePendingEvents());
+    }
+
+    @Test
+    public void testDispatchFailure() {
+        fire(DOC1, EntityAction.UPDATE);
+        getCallbacks(1).get(0).onFailure(new RuntimeException("Rejected"));
+
+        // The events are kept and the dispatch is scheduled again without
+        // waiting for another event.
+        getCallbacks(2);
+        fire(DOC2, EntityAction.UPDATE);
+        getCallbacks(2);
+        Assert.assertEquals(Arrays.asList(event(DOC1, EntityAction.UPDATE), event(DOC2, EntityAction.UPDATE)),
+                entityEventBus.takePendingEvents());
+    }
+
+    @Test
+    public void testDispatchThrows() {
+        Mockito.doThrow(new RuntimeException("Rejected")).when(taskManager)
+                .execAsync(Mockito.any(DispatchEntityEventTask.class), Mockito.<TaskCallback<VoidResult>> any());
+        fire(DOC1, EntityAction.UPDATE);
+
+        // The dispatch is retried a few times before giving up.
+        getCallbacks(3);
+        Mockito.reset(taskManager);
+
+        // The next event schedules a new dispatch.
+        fire(DOC2, EntityAction.UPDATE);
+        getCallbacks(1);
+        Assert.assertEquals(2, entityEventBus.takePendingEvents().size());
+    }
+
+    private void fire(final DocRef docRef, final EntityAction action) {
+        entityEventBus.fire(event(docRef, action));
+    }
+
+    private EntityEvent event(final DocRef docRef, final EntityAction action) {
+        return new EntityEvent(docRef, action);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<TaskCallback<VoidResult>> getCallbacks(final int count) {
+        final ArgumentCaptor<TaskCallback> captor = ArgumentCaptor.forClass(TaskCallback.class);
+        Mockito.verify(taskManager, Mockito.times(count)).execAsync(Mockito.any(DispatchEntityEventTask.class),
+                captor.capture());
+        return (List) captor.getAllValues();
+    }
+}
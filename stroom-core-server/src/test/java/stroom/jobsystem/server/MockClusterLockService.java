@@ -40,4 +40,13 @@ public class MockClusterLockService implements ClusterLockService {
     @Override
     public void keepAlive() {
     }
+
+    @Override
+    public long getFencingToken(final String lockName) {
+        return 0;
+    }
+
+    @Override
+    public void checkFencingToken(final String lockName, final long token) {
+    }
 }
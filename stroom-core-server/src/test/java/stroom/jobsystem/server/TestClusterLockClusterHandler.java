@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.jobsystem.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+import stroom.util.thread.ThreadUtil;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestClusterLockClusterHandler extends StroomUnitTest {
+    private static final ClusterLockKey NODE1_KEY = new ClusterLockKey("TEST", "node1", 1);
+    private static final ClusterLockKey NODE2_KEY = new ClusterLockKey("TEST", "node2", 2);
+
+    @Test
+    public void testLockAndRelease() {
+        final ClusterLockClusterHandler handler = new ClusterLockClusterHandler(0);
+
+        final ClusterLockResult lock1 = exec(handler, NODE1_KEY, ClusterLockStyle.Try, 0);
+        Assert.assertTrue(lock1.isSuccess());
+        Assert.assertTrue(lock1.getEpoch() > 0);
+        Assert.assertTrue(lock1.getToken() > 0);
+
+        // Another node can't take the lock until it has been released.
+        Assert.assertFalse(exec(handler, NODE2_KEY, ClusterLockStyle.Try, lock1.getEpoch()).isSuccess());
+        Assert.assertFalse(exec(handler, NODE2_KEY, ClusterLockStyle.Release, lock1.getEpoch()).isSuccess());
+        Assert.assertTrue(exec(handler, NODE1_KEY, ClusterLockStyle.KeepAlive, lock1.getEpoch()).isSuccess());
+        Assert.assertTrue(exec(handler, NODE1_KEY, ClusterLockStyle.Release, lock1.getEpoch()).isSuccess());
+
+        // Tokens only ever increase.
+        final ClusterLockResult lock2 = exec(handler, NODE2_KEY, ClusterLockStyle.Try, lock1.getEpoch());
+        Assert.assertTrue(lock2.isSuccess());
+        Assert.assertEquals(lock1.getEpoch(), lock2.getEpoch());
+        Assert.assertTrue(lock2.getToken() > lock1.getToken());
+
+        // A keep alive for a released lock must not bring it back.
+        Assert.assertFalse(exec(handler, NODE1_KEY, ClusterLockStyle.KeepAlive, lock1.getEpoch()).isSuccess());
+    }
+
+    @Test
+    public void testReclaimDuringGracePeriod() {
+        final ClusterLockClusterHandler handler = new ClusterLockClusterHandler(60000);
+
+        // A new master won't grant fresh locks during the grace period but
+        // will let the holder from a previous master reclaim its lock.
+        Assert.assertFalse(exec(handler, NODE2_KEY, ClusterLockStyle.Try, 1).isSuccess());
+        final ClusterLockResult reclaimed = exec(handler, NODE1_KEY, ClusterLockStyle.KeepAlive, 1);
+        Assert.assertTrue(reclaimed.isSuccess());
+        Assert.assertTrue(reclaimed.getToken() > 0);
+
+        Assert.assertFalse(exec(handler, NODE2_KEY, ClusterLockStyle.KeepAlive, 1).isSuccess());
+        Assert.assertTrue(exec(handler, NODE1_KEY, ClusterLockStyle.Release, reclaimed.getEpoch()).isSuccess());
+    }
+
+    @Test
+    public void testNoGracePeriodOnColdStart() {
+        final ClusterLockClusterHandler handler = new ClusterLockClusterHandler(60000);
+
+        // Nobody has heard from a master before so there is nothing to
+        // reclaim and locks are granted straight away.
+        final ClusterLockResult lock1 = exec(handler, NODE1_KEY, ClusterLockStyle.Try, 0);
+        Assert.assertTrue(lock1.isSuccess());
+        Assert.assertTrue(exec(handler, NODE1_KEY, ClusterLockStyle.Release, lock1.getEpoch()).isSuccess());
+
+        // A later master change still waits for holders to reclaim.
+        ThreadUtil.sleep(10);
+        final long otherEpoch = System.currentTimeMillis();
+        Assert.assertFalse(exec(handler, NODE2_KEY, ClusterLockStyle.Try, otherEpoch).isSuccess());
+    }
+
+    @Test
+    public void testReclaimKeepsFencingToken() {
+        final ClusterLockClusterHandler handler = new ClusterLockClusterHandler(60000);
+
+        final ClusterLockResult reclaimed = exec(handler, NODE1_KEY, ClusterLockStyle.KeepAlive, 1, 42);
+        Assert.assertTrue(reclaimed.isSuccess());
+        Assert.assertEquals(42, reclaimed.getToken());
+        Assert.assertTrue(exec(handler, NODE1_KEY, ClusterLockStyle.Check, reclaimed.getEpoch(), 42).isSuccess());
+    }
+
+    @Test
+    public void testCheckFencingToken() {
+        final ClusterLockClusterHandler handler = new ClusterLockClusterHandler(0);
+
+        final ClusterLockResult lock1 = exec(handler, NODE1_KEY, ClusterLockStyle.Try, 0);
+        final long epoch = lock1.getEpoch();
+        Assert.assertTrue(exec(handler, NODE1_KEY, ClusterLockStyle.Check, epoch, lock1.getToken()).isSuccess());
+        Assert.assertFalse(exec(handler, NODE1_KEY, ClusterLockStyle.Check, epoch, lock1.getToken() - 1).isSuccess());
+        Assert.assertFalse(exec(handler, NODE2_KEY, ClusterLockStyle.Check, epoch, lock1.getToken()).isSuccess());
+
+        // Once the lock has been granted to someone else the old token is no
+        // longer valid.
+        Assert.assertTrue(exec(handler, NODE1_KEY, ClusterLockStyle.Release, epoch).isSuccess());
+        final ClusterLockResult lock2 = exec(handler, NODE2_KEY, ClusterLockStyle.Try, epoch);
+        Assert.assertFalse(exec(handler, NODE1_KEY, ClusterLockStyle.Check, epoch, lock1.getToken()).isSuccess());
+        Assert.assertTrue(exec(handler, NODE2_KEY, ClusterLockStyle.Check, epoch, lock2.getToken()).isSuccess());
+    }
+
+    @Test
+    public void testNewEpochWhenAnotherMasterHasServed() {
+        final ClusterLockClusterHandler handler = new ClusterLockClusterHandler(0);
+
+        final ClusterLockResult lock1 = exec(handler, NODE1_KEY, ClusterLockStyle.Try, 0);
+        Assert.assertTrue(lock1.isSuccess());
+
+        // A node that has heard from a later master tells us that our state is
+        // stale so the old lock is discarded.
+        ThreadUtil.sleep(10);
+        final long otherEpoch = System.currentTimeMillis();
+        final ClusterLockResult lock2 = exec(handler, NODE2_KEY, ClusterLockStyle.Try, otherEpoch);
+        Assert.assertTrue(lock2.isSuccess());
+        Assert.assertTrue(lock2.getEpoch() > otherEpoch);
+        Assert.assertTrue(lock2.getToken() > lock1.getToken());
+
+        // The old holder no longer holds the lock.
+        Assert.assertFalse(exec(handler, NODE1_KEY, ClusterLockStyle.KeepAlive, lock1.getEpoch()).isSuccess());
+    }
+
+    private ClusterLockResult exec(final ClusterLockClusterHandler handler, final ClusterLockKey key,
+            final ClusterLockStyle lockStyle, final long epoch) {
+        return exec(handler, key, lockStyle, epoch, 0);
+    }
+
+    private ClusterLockResult exec(final ClusterLockClusterHandler handler, final ClusterLockKey key,
+            final ClusterLockStyle lockStyle, final long epoch, final long token) {
+        return handler.exec(new ClusterLockClusterTask(new ClusterLockTask(key, lockStyle, epoch, token)));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.jobsystem.server;
+
+import stroom.node.server.NodeCache;
+import stroom.node.shared.Node;
+import stroom.task.server.TaskManager;
+import stroom.util.test.StroomUnitTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestClusterLockServiceImpl extends StroomUnitTest {
+    private static final String LOCK_NAME = "TEST";
+
+    private final ClusterLockClusterHandler master = new ClusterLockClusterHandler(0);
+
+    @Mock
+    private TaskManager taskManager;
+    @Mock
+    private NodeCache nodeCache;
+    @InjectMocks
+    private ClusterLockServiceImpl clusterLockService;
+
+    @Before
+    public void init() {
+        Mockito.when(nodeCache.getDefaultNode()).thenReturn(Node.create(null, "node1"));
+        Mockito.when(taskManager.exec(Matchers.any(ClusterLockTask.class))).thenAnswer(
+                invocation -> master.exec(new ClusterLockClusterTask((ClusterLockTask) invocation.getArguments()[0])));
+        clusterLockService.setLeaseLockNames(LOCK_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testTryLockIsReentrant() throws Exception {
+        Assert.assertTrue(clusterLockService.tryLock(LOCK_NAME));
+        Assert.assertTrue(clusterLockService.tryLock(LOCK_NAME));
+
+        // Another caller on this node can't have it until both holds have
+        // been released.
+        Assert.assertFalse(tryLockOnAnotherThread());
+        clusterLockService.releaseLock(LOCK_NAME);
+        Assert.assertFalse(tryLockOnAnotherThread());
+        clusterLockService.releaseLock(LOCK_NAME);
+
+        Assert.assertTrue(clusterLockService.tryLock(LOCK_NAME));
+        clusterLockService.releaseLock(LOCK_NAME);
+    }
+
+    @Test
+    public void testLockWaitsForLease() throws Exception {
+        // Another caller holds the lock when we ask for the lease.
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread holder = new Thread(() -> {
+            clusterLockService.tryLock(LOCK_NAME);
+            locked.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            clusterLockService.releaseLock(LOCK_NAME);
+        });
+        holder.start();
+        Assert.assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        final AtomicBoolean leased = new AtomicBoolean();
+        final Thread waiter = new Thread(() -> {
+            TransactionSynchronizationManager.initSynchronization();
+            try {
+                clusterLockService.lock(LOCK_NAME);
+                leased.set(true);
+                for (final TransactionSynchronization synchronization : TransactionSynchronizationManager
+                        .getSynchronizations()) {
+                    synchronization.beforeCommit(false);
+                    synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+                }
+            } finally {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        });
+        waiter.start();
+
+        // The lease is not granted while the lock is held but is as soon as
+        // it is released.
+        waiter.join(300);
+        Assert.assertFalse(leased.get());
+        release.countDown();
+        holder.join(10000);
+        waiter.join(10000);
+        Assert.assertTrue(leased.get());
+
+        // The lease was released when the transaction completed.
+        Assert.assertTrue(clusterLockService.tryLock(LOCK_NAME));
+        clusterLockService.releaseLock(LOCK_NAME);
+    }
+
+    private boolean tryLockOnAnotherThread() throws InterruptedException {
+        final AtomicBoolean success = new AtomicBoolean();
+        final Thread thread = new Thread(() -> {
+            success.set(clusterLockService.tryLock(LOCK_NAME));
+            if (success.get()) {
+                clusterLockService.releaseLock(LOCK_NAME);
+            }
+        });
+        thread.start();
+        thread.join();
+        return success.get();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.streamstore.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.streamstore.server.fs.BlockGZIPInputFile;
+import stroom.streamstore.server.fs.BlockGZIPOutputFile;
+import stroom.streamstore.server.fs.UncompressedInputStream;
+import stroom.streamstore.server.fs.serializable.RASegmentInputStream;
+import stroom.streamstore.server.fs.serializable.RASegmentOutputStream;
+import stroom.streamstore.server.fs.serializable.SegmentOutputStream;
+import stroom.util.io.StreamUtil;
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestLineOffsetIndex extends StroomUnitTest {
+    private static final int LINES = 5000;
+    private static final int INTERVAL = 100;
+
+    @Test
+    public void testSupported() {
+        Assert.assertTrue(LineOffsetIndex.isSupported("UTF-8"));
+        Assert.assertTrue(LineOffsetIndex.isSupported("ISO-8859-1"));
+        Assert.assertFalse(LineOffsetIndex.isSupported("UTF-16LE"));
+        Assert.assertFalse(LineOffsetIndex.isSupported("NOT-A-CHARSET"));
+    }
+
+    @Test
+    public void testGetCheckpoint() {
+        final LineOffsetIndex index = new LineOffsetIndex(10);
+        index.addCheckpoint(10, 100);
+        // Too close to the last checkpoint.
+        index.addCheckpoint(15, 150);
+        index.addCheckpoint(20, 200);
+
+        Assert.assertEquals(3, index.size());
+        Assert.assertEquals(0, index.getCheckpoint(9).getOffset());
+        Assert.assertEquals(100, index.getCheckpoint(10).getOffset());
+        Assert.assertEquals(100, index.getCheckpoint(19).getOffset());
+        Assert.assertEquals(200, index.getCheckpoint(1000).getOffset());
+        Assert.assertEquals(30, index.getNextCheckpointLineNo());
+        Assert.assertFalse(index.isComplete());
+    }
+
+    @Test
+    public void testSeekToCheckpoint() throws IOException {
+        final File dir = getCurrentTestDir();
+        try (SegmentOutputStream os = new RASegmentOutputStream(new BlockGZIPOutputFile(new File(dir, "test.dat")),
+                new FileOutputStream(new File(dir, "test.idx")))) {
+            // Use some multi byte characters so offsets and characters differ.
+            for (int i = 0; i < LINES; i++) {
+                os.write(("line " + i + " é€\n").getBytes(StreamUtil.DEFAULT_CHARSET));
+            }
+        }
+
+        // Build the index by reading the whole stream.
+        final LineOffsetIndex index = new LineOffsetIndex(INTERVAL);
+        try (RASegmentInputStream is = open(dir)) {
+            final LineOffsetIndex.NewlineOffsetInputStream newlineOffsetIS = new LineOffsetIndex.NewlineOffsetInputStream(
+                    is, 0);
+            final Reader reader = new InputStreamReader(newlineOffsetIS, StreamUtil.DEFAULT_CHARSET);
+            long lineNo = 0;
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c == '\n') {
+                    lineNo++;
+                    final long offset = newlineOffsetIS.nextLineOffset();
+                    if (lineNo >= index.getNextCheckpointLineNo()) {
+                        index.addCheckpoint(lineNo, offset);
+                    }
+                }
+            }
+            index.setLineCount(lineNo);
+        }
+
+        Assert.assertEquals(LINES, index.getLineCount());
+        // One checkpoint for the start of the stream and one per interval.
+        Assert.assertEquals(LINES / INTERVAL + 1, index.size());
+
+        // Check that seeking to a checkpoint lands on the start of that line.
+        for (final long wanted : new long[] { 0, 99, 100, 2345, LINES - 1 }) {
+            final LineOffsetIndex.Checkpoint checkpoint = index.getCheckpoint(wanted);
+            Assert.assertEquals(wanted - (wanted % INTERVAL), checkpoint.getLineNo());
+
+            try (RASegmentInputStream is = open(dir)) {
+                Assert.assertEquals(checkpoint.getOffset(), is.skip(checkpoint.getOffset()));
+                final BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(is, StreamUtil.DEFAULT_CHARSET));
+                Assert.assertEquals("line " + checkpoint.getLineNo() + " é€", reader.readLine());
+            }
+        }
+    }
+
+    private RASegmentInputStream open(final File dir) throws IOException {
+        return new RASegmentInputStream(new BlockGZIPInputFile(new File(dir, "test.dat")),
+                new UncompressedInputStream(new File(dir, "test.idx"), true));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.streamstore.server.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.util.io.FileUtil;
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestBlockGZIPBlockCache extends StroomUnitTest {
+    private static final int BLOCK_SIZE = 100;
+    private static final int DATA_SIZE = 1050;
+
+    @Test
+    public void testSeekUsesCache() throws IOException {
+        final File testFile = createFile();
+        final BlockGZIPBlockCache blockCache = BlockGZIPBlockCache.instance();
+        blockCache.clear();
+        blockCache.setMaxSize(1024 * 1024);
+        try {
+            final long hits = blockCache.getHits();
+            final long misses = blockCache.getMisses();
+
+            for (int i = 0; i < 2; i++) {
+                try (BlockGZIPInputFile inputFile = new BlockGZIPInputFile(testFile)) {
+                    // Seek forward across blocks and read past the end of a
+                    // cached block into the next one which is streamed from
+                    // the file rather than cached.
+                    inputFile.seek(250);
+                    assertRead(inputFile, 250, 200);
+                    // Seek backwards.
+                    inputFile.seek(20);
+                    assertRead(inputFile, 20, 30);
+                    // Read the short last block.
+                    inputFile.seek(1010);
+                    assertRead(inputFile, 1010, 40);
+                    Assert.assertEquals(-1, inputFile.read());
+                }
+            }
+
+            // The first pass inflates the blocks we seek to and the second
+            // finds them all in the cache.
+            Assert.assertEquals(3, blockCache.getMisses() - misses);
+            Assert.assertEquals(3, blockCache.getHits() - hits);
+            Assert.assertEquals(250, blockCache.getSize());
+        } finally {
+            blockCache.setMaxSize(0);
+            blockCache.clear();
+            FileUtil.deleteFile(testFile);
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        final BlockGZIPBlockCache blockCache = new BlockGZIPBlockCache();
+        blockCache.setMaxSize(250);
+        final File file = new File("test.bgz");
+
+        blockCache.put(file, 1, 0, new byte[100]);
+        blockCache.put(file, 1, 1, new byte[100]);
+        Assert.assertNotNull(blockCache.get(file, 1, 0));
+        blockCache.put(file, 1, 2, new byte[100]);
+
+        // Block 1 was least recently used.
+        Assert.assertEquals(200, blockCache.getSize());
+        Assert.assertNull(blockCache.get(file, 1, 1));
+        Assert.assertNotNull(blockCache.get(file, 1, 0));
+        Assert.assertNotNull(blockCache.get(file, 1, 2));
+
+        // A modified file doesn't see old blocks.
+        Assert.assertNull(blockCache.get(file, 2, 0));
+
+        // Blocks larger than the cache are not kept.
+        Assert.assertNotNull(blockCache.put(file, 1, 3, new byte[300]));
+        Assert.assertNull(blockCache.get(file, 1, 3));
+        Assert.assertEquals(200, blockCache.getSize());
+    }
+
+    private File createFile() throws IOException {
+        final File testFile = File.createTempFile("test", ".bgz", getCurrentTestDir());
+        FileUtil.deleteFile(testFile);
+        try (OutputStream os = new BlockGZIPOutputFile(testFile, BLOCK_SIZE)) {
+            for (int i = 0; i < DATA_SIZE; i++) {
+                os.write(expected(i));
+            }
+        }
+        return testFile;
+    }
+
+    private void assertRead(final InputStream inputStream, final int from, final int length) throws IOException {
+        for (int i = from; i < from + length; i++) {
+            Assert.assertEquals(expected(i), inputStream.read());
+        }
+    }
+
+    private int expected(final int position) {
+        return position % 251;
+    }
+}
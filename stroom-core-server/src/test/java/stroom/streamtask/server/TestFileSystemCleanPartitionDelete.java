@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.streamtask.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import stroom.entity.server.util.SQLBuilder;
+import stroom.entity.server.util.StroomEntityManager;
+import stroom.node.shared.Volume;
+import stroom.streamstore.server.ScanVolumePathResult;
+import stroom.streamstore.server.StreamMaintenanceService;
+import stroom.streamstore.server.fs.FileSystemStreamMaintenanceService;
+import stroom.streamstore.server.fs.FileSystemUtil;
+import stroom.task.server.AsyncTaskHelper;
+import stroom.task.server.TaskCallback;
+import stroom.util.date.DateUtil;
+import stroom.util.io.FileUtil;
+import stroom.util.io.StreamUtil;
+import stroom.util.shared.Task;
+import stroom.util.shared.VoidResult;
+import stroom.util.task.TaskMonitor;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestFileSystemCleanPartitionDelete extends StroomUnitTest {
+    private static final long ONE_DAY = 1000L * 60 * 60 * 24;
+    private static final String MONTH = "RAW_EVENTS/2016/01";
+    private static final String DAY = MONTH + "/02";
+    private static final String NEXT_DAY = MONTH + "/03";
+
+    @Mock
+    private StroomEntityManager entityManager;
+    @InjectMocks
+    private FileSystemStreamMaintenanceService fileSystemStreamMaintenanceService;
+
+    @Mock
+    private StreamMaintenanceService streamMaintenanceService;
+    @Mock
+    private TaskMonitor taskMonitor;
+    @InjectMocks
+    private FileSystemCleanSubTaskHandler fileSystemCleanSubTaskHandler;
+
+    @Mock
+    private FileSystemCleanExecutor fileSystemCleanExecutor;
+    @Mock
+    private AsyncTaskHelper<VoidResult> asyncTaskHelper;
+    @Mock
+    private Task<?> parentTask;
+
+    private Volume volume;
+    private File root;
+
+    @Before
+    public void setup() {
+        final File volumeDir = new File(getCurrentTestDir(), "partitionVolume");
+        FileSystemUtil.deleteDirectory(volumeDir);
+        FileUtil.mkdirs(volumeDir);
+
+        volume = new Volume();
+        volume.setId(1);
+        volume.setPath(volumeDir.getAbsolutePath());
+        root = FileSystemUtil.createFileTypeRoot(volume);
+
+        Mockito.when(fileSystemCleanExecutor.isDelete()).thenReturn(true);
+        Mockito.when(fileSystemCleanExecutor.getOldAge()).thenReturn(ONE_DAY);
+        Mockito.when(fileSystemCleanExecutor.getThrottle()).thenReturn(new FileSystemCleanThrottle(0));
+        Mockito.when(fileSystemCleanExecutor.getAsyncTaskHelper()).thenReturn(asyncTaskHelper);
+    }
+
+    @Test
+    public void testDeleteExpiredPartition() throws IOException {
+        final File day = createStreamFile(DAY, 0);
+        final File nextDay = createStreamFile(NEXT_DAY, 0);
+        Mockito.when(entityManager.executeQueryLongResult(Mockito.any(SQLBuilder.class))).thenReturn(0L);
+
+        final ScanVolumePathResult result = fileSystemStreamMaintenanceService.deleteExpiredPartition(volume, true,
+                DAY, ONE_DAY);
+
+        Assert.assertNotNull(result);
+        Assert.assertEquals(1, result.getFileCount());
+        Assert.assertEquals(Collections.singletonList(day.getAbsolutePath()), result.getDeleteList());
+        Assert.assertFalse(day.exists());
+        Assert.assertTrue(nextDay.isDirectory());
+    }
+
+    @Test
+    public void testPartitionStillReferenced() throws IOException {
+        final File day = createStreamFile(DAY, 0);
+        Mockito.when(entityManager.executeQueryLongResult(Mockito.any(SQLBuilder.class))).thenReturn(1L);
+
+        Assert.assertNull(fileSystemStreamMaintenanceService.deleteExpiredPartition(volume, true, DAY, ONE_DAY));
+        Assert.assertTrue(day.isDirectory());
+    }
+
+    @Test
+    public void testPartitionRecentlyModified() throws IOException {
+        final File day = createStreamFile(DAY, System.currentTimeMillis());
+        Mockito.when(entityManager.executeQueryLongResult(Mockito.any(SQLBuilder.class))).thenReturn(0L);
+
+        Assert.assertNull(fileSystemStreamMaintenanceService.deleteExpiredPartition(volume, true, DAY, ONE_DAY));
+        Assert.assertTrue(day.isDirectory());
+    }
+
+    @Test
+    public void testNotAPartition() {
+        Assert.assertNull(fileSystemStreamMaintenanceService.deleteExpiredPartition(volume, true, MONTH, ONE_DAY));
+        Mockito.verifyZeroInteractions(entityManager);
+    }
+
+    @Test
+    public void testDeletedPartitionIsCheckpointed() {
+        final ScanVolumePathResult deleted = new ScanVolumePathResult();
+        deleted.setFileCount(10);
+        deleted.addDelete(DAY);
+        Mockito.when(fileSystemCleanExecutor.isPartitionDelete()).thenReturn(true);
+        Mockito.when(streamMaintenanceService.deleteExpiredPartition(volume, true, DAY, ONE_DAY)).thenReturn(deleted);
+
+        final FileSystemCleanProgress progress = new FileSystemCleanProgress();
+        fileSystemCleanSubTaskHandler.exec(createSubTask(progress, DAY));
+
+        // The partition was dropped so the normal scan is not needed.
+        Mockito.verify(streamMaintenanceService, Mockito.never()).scanVolumePath(Mockito.any(Volume.class),
+                Mockito.anyBoolean(), Mockito.anyString(), Mockito.anyLong());
+        Assert.assertEquals(Collections.singletonList(DAY), Arrays.asList(progress.getCheckpointQueue().toArray()));
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() {
+        final ScanVolumePathResult month = new ScanVolumePathResult();
+        month.addChildDirectory(DAY);
+        month.addChildDirectory(NEXT_DAY);
+        Mockito.when(streamMaintenanceService.scanVolumePath(volume, true, MONTH, ONE_DAY)).thenReturn(month);
+
+        // A previous run dropped the first day before it was stopped.
+        final FileSystemCleanProgress progress = new FileSystemCleanProgress(new HashSet<>(Arrays.asList(DAY)));
+        fileSystemCleanSubTaskHandler.exec(createSubTask(progress, MONTH));
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<FileSystemCleanSubTask> captor = ArgumentCaptor.forClass(FileSystemCleanSubTask.class);
+        Mockito.verify(asyncTaskHelper).fork(captor.capture(), Mockito.any(TaskCallback.class));
+        Assert.assertEquals(NEXT_DAY, captor.getValue().getPath());
+    }
+
+    @Test
+    public void testMissingCheckpoint() {
+        final FileSystemCleanExecutor executor = createExecutor();
+        Assert.assertTrue(executor.readCheckpoint(new File(getCurrentTestDir(), "missing.checkpoint")).isEmpty());
+    }
+
+    @Test
+    public void testStaleCheckpoint() throws IOException {
+        final File checkpoint = writeCheckpoint(DAY);
+        FileUtil.setLastModified(checkpoint, System.currentTimeMillis() - 2 * ONE_DAY);
+
+        // The directories may have old files in them again so scan everything.
+        Assert.assertTrue(createExecutor().readCheckpoint(checkpoint).isEmpty());
+    }
+
+    @Test
+    public void testCurrentCheckpoint() throws IOException {
+        final File checkpoint = writeCheckpoint(DAY, NEXT_DAY);
+
+        final Set<String> checkpointSet = createExecutor().readCheckpoint(checkpoint);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(DAY, NEXT_DAY)), checkpointSet);
+    }
+
+    private File createStreamFile(final String path, final long lastModified) throws IOException {
+        final File dir = new File(root, path);
+        final File subDir = new File(dir, "001");
+        FileUtil.mkdirs(subDir);
+        final File file = new File(subDir, "TEST=001.revt.bgz");
+        FileUtil.createNewFile(file);
+
+        final long time = lastModified > 0 ? lastModified
+                : DateUtil.parseNormalDateTimeString(path.substring(path.indexOf('/') + 1).replace('/', '-')
+                        + "T12:00:00.000Z");
+        FileUtil.setLastModified(file, time);
+        return dir;
+    }
+
+    private File writeCheckpoint(final String... paths) throws IOException {
+        final File checkpoint = new File(getCurrentTestDir(), FileSystemCleanExecutor.CHECKPOINT);
+        Files.write(checkpoint.toPath(), Arrays.asList(paths), StreamUtil.DEFAULT_CHARSET);
+        return checkpoint;
+    }
+
+    private FileSystemCleanExecutor createExecutor() {
+        final FileSystemCleanExecutor executor = new FileSystemCleanExecutor();
+        executor.setFileSystemCleanOldAge("1d");
+        return executor;
+    }
+
+    private FileSystemCleanSubTask createSubTask(final FileSystemCleanProgress progress, final String path) {
+        return new FileSystemCleanSubTask(fileSystemCleanExecutor, parentTask, progress, volume, path, "Test");
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.streamtask.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestFileSystemCleanThrottle extends StroomUnitTest {
+    private static final long ONE_SECOND_NS = 1000000000L;
+
+    @Test
+    public void testBelowLimit() {
+        final FileSystemCleanThrottle throttle = new FileSystemCleanThrottle(100);
+
+        // 100 files a second is one file every 10ms so reading one file every
+        // 10ms never has to wait.
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(0, throttle.reserve(1, i * ONE_SECOND_NS / 100));
+        }
+    }
+
+    @Test
+    public void testAtLimit() {
+        final FileSystemCleanThrottle throttle = new FileSystemCleanThrottle(100);
+
+        // The first second's worth of files is allowed straight away.
+        Assert.assertEquals(0, throttle.reserve(100, 0));
+
+        // Any more files at the same time have to wait for the second to pass.
+        Assert.assertEquals(ONE_SECOND_NS, throttle.reserve(1, 0));
+        Assert.assertEquals(ONE_SECOND_NS + ONE_SECOND_NS / 100, throttle.reserve(1, 0));
+
+        // Part way through the wait is reduced by the time that has passed.
+        Assert.assertEquals(ONE_SECOND_NS / 2 + 2 * ONE_SECOND_NS / 100, throttle.reserve(1, ONE_SECOND_NS / 2));
+    }
+
+    @Test
+    public void testReset() {
+        final FileSystemCleanThrottle throttle = new FileSystemCleanThrottle(100);
+
+        Assert.assertEquals(0, throttle.reserve(200, 0));
+        Assert.assertEquals(2 * ONE_SECOND_NS, throttle.reserve(1, 0));
+
+        // Once the reserved time has passed the throttle starts again from
+        // now and the idle time is not saved up as credit.
+        final long now = 10 * ONE_SECOND_NS;
+        Assert.assertEquals(0, throttle.reserve(100, now));
+        Assert.assertEquals(ONE_SECOND_NS, throttle.reserve(1, now));
+    }
+
+    @Test
+    public void testNoLimit() {
+        final FileSystemCleanThrottle throttle = new FileSystemCleanThrottle(0);
+        Assert.assertEquals(0, throttle.reserve(1000000, 0));
+        Assert.assertEquals(0, throttle.reserve(1000000, 0));
+    }
+}
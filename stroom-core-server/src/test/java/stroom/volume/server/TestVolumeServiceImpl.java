@@ -60,7 +60,7 @@ public class TestVolumeServiceImpl extends StroomUnitTest {
             VolumeState.create(0, 1000));
 
     private List<Volume> volumeList = null;
-    private VolumeServiceImpl volumeServiceImpl = null;
+    private TestVolumeService volumeServiceImpl = null;
 
     @Before
     public void init() {
@@ -73,17 +73,7 @@ public class TestVolumeServiceImpl extends StroomUnitTest {
         final MockStroomPropertyService mockStroomPropertyService = new MockStroomPropertyService();
         mockStroomPropertyService.setProperty(VolumeServiceImpl.PROP_RESILIENT_REPLICATION_COUNT, "2");
 
-        volumeServiceImpl = new VolumeServiceImpl(null, new NodeCache(node1a), mockStroomPropertyService, null, null) {
-            @Override
-            public BaseResultList<Volume> find(final FindVolumeCriteria criteria) {
-                return BaseResultList.createUnboundedList(volumeList);
-            }
-
-            @Override
-            VolumeState saveVolumeState(final VolumeState volumeState) {
-                return volumeState;
-            }
-        };
+        volumeServiceImpl = new TestVolumeService(mockStroomPropertyService);
     }
 
     @Test
@@ -143,4 +133,91 @@ public class TestVolumeServiceImpl extends StroomUnitTest {
         Assert.assertTrue(call1.contains(public1b) ^ call2.contains(public1b));
     }
 
+    @Test
+    public void testSnapshotIsReused() {
+        volumeServiceImpl.getStreamVolumeSet(node1a);
+        volumeServiceImpl.getStreamVolumeSet(node1a);
+        volumeServiceImpl.getIndexVolumeSet(node1a, null);
+        Assert.assertEquals(1, volumeServiceImpl.findCount);
+    }
+
+    @Test
+    public void testClearServesPreviousSnapshotUntilReloaded() {
+        volumeServiceImpl.getStreamVolumeSet(node1a);
+        Assert.assertEquals(1, volumeServiceImpl.findCount);
+
+        // Drop a volume and clear, the reload is left waiting in the
+        // background.
+        volumeServiceImpl.deferReload = true;
+        volumeList.remove(public2b);
+        volumeServiceImpl.clear();
+        Assert.assertEquals(1, volumeServiceImpl.deferredReloads);
+
+        // Callers keep getting the previous snapshot without loading.
+        boolean seenRemoved = false;
+        for (int i = 0; i < 10; i++) {
+            seenRemoved |= volumeServiceImpl.getStreamVolumeSet(node1a).contains(public2b);
+        }
+        Assert.assertTrue(seenRemoved);
+        Assert.assertEquals(1, volumeServiceImpl.findCount);
+
+        // Further changes while a reload is pending do not queue more.
+        volumeServiceImpl.clear();
+        Assert.assertEquals(1, volumeServiceImpl.deferredReloads);
+
+        // Once the reload has run the removed volume is no longer used.
+        volumeServiceImpl.runReload();
+        Assert.assertEquals(2, volumeServiceImpl.findCount);
+        for (int i = 0; i < 10; i++) {
+            final Set<Volume> set = volumeServiceImpl.getStreamVolumeSet(node1a);
+            Assert.assertFalse(set.contains(public2b));
+            Assert.assertTrue(set.contains(public2a));
+        }
+        Assert.assertEquals(2, volumeServiceImpl.findCount);
+    }
+
+    @Test
+    public void testClearBeforeFirstSnapshot() {
+        // Nothing to serve yet so the first caller has to load the volumes.
+        volumeServiceImpl.deferReload = true;
+        volumeServiceImpl.clear();
+        Assert.assertEquals(0, volumeServiceImpl.deferredReloads);
+
+        Assert.assertEquals(2, volumeServiceImpl.getStreamVolumeSet(node1a).size());
+        Assert.assertEquals(1, volumeServiceImpl.findCount);
+    }
+
+    private class TestVolumeService extends VolumeServiceImpl {
+        private int findCount;
+        private boolean deferReload;
+        private int deferredReloads;
+
+        TestVolumeService(final MockStroomPropertyService stroomPropertyService) {
+            super(null, new NodeCache(node1a), stroomPropertyService, null, null);
+        }
+
+        @Override
+        public BaseResultList<Volume> find(final FindVolumeCriteria criteria) {
+            findCount++;
+            return BaseResultList.createUnboundedList(new ArrayList<>(volumeList));
+        }
+
+        @Override
+        VolumeState saveVolumeState(final VolumeState volumeState) {
+            return volumeState;
+        }
+
+        @Override
+        void execReload() {
+            if (deferReload) {
+                deferredReloads++;
+            } else {
+                super.execReload();
+            }
+        }
+
+        void runReload() {
+            super.execReload();
+        }
+    }
 }
@@ -29,6 +29,8 @@ public class StreamAttributeConstants {
     public static final String REC_FATAL = "RecFatal";
     public static final String DURATION = "Duration";
     public static final String NODE = "Node";
+    public static final String LOOKUP_CACHE_HITS = "LookupCacheHits";
+    public static final String LOOKUP_CACHE_MISSES = "LookupCacheMisses";
     public static final String FEED = "Feed";
     public static final String STREAM_ID = "StreamId";
     public static final String PARENT_STREAM_ID = "ParentStreamId";
@@ -50,6 +52,8 @@ public class StreamAttributeConstants {
         map.put(REC_FATAL, StreamAttributeFieldUse.COUNT_IN_DURATION_FIELD);
         map.put(DURATION, StreamAttributeFieldUse.DURATION_FIELD);
         map.put(NODE, StreamAttributeFieldUse.FIELD);
+        map.put(LOOKUP_CACHE_HITS, StreamAttributeFieldUse.COUNT_IN_DURATION_FIELD);
+        map.put(LOOKUP_CACHE_MISSES, StreamAttributeFieldUse.COUNT_IN_DURATION_FIELD);
         map.put(FEED, StreamAttributeFieldUse.FIELD);
         map.put(STREAM_ID, StreamAttributeFieldUse.ID);
         map.put(PARENT_STREAM_ID, StreamAttributeFieldUse.ID);
@@ -56,6 +56,7 @@ public class DownloadViewImpl extends ViewImpl implements DownloadView {
         fileType.addItem(DownloadSearchResultFileType.EXCEL);
         fileType.addItem(DownloadSearchResultFileType.CSV);
         fileType.addItem(DownloadSearchResultFileType.TSV);
+        fileType.addItem(DownloadSearchResultFileType.NDJSON);
 
         fileType.setSelectedItem(DownloadSearchResultFileType.EXCEL);
     }
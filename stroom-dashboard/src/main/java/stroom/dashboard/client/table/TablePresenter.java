@@ -19,14 +19,17 @@ package stroom.dashboard.client.table;
 import com.google.gwt.cell.client.FieldUpdater;
 import com.google.gwt.cell.client.SafeHtmlCell;
 import com.google.gwt.cell.client.ValueUpdater;
+import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.NativeEvent;
 import com.google.gwt.dom.client.Style.Unit;
 import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
 import com.google.gwt.safehtml.shared.SafeHtml;
 import com.google.gwt.safehtml.shared.SafeHtmlBuilder;
+import com.google.gwt.http.client.URL;
 import com.google.gwt.safehtml.shared.SafeHtmlUtils;
 import com.google.gwt.user.cellview.client.Column;
+import com.google.gwt.user.client.Window.Location;
 import com.google.gwt.view.client.RangeChangeEvent;
 import com.google.gwt.view.client.SelectionChangeEvent;
 import com.google.inject.Inject;
@@ -319,11 +322,17 @@ public class TablePresenter extends AbstractComponentPresenter<DataGridView<Row>
                     @Override
                     public void onHideRequest(final boolean autoClose, final boolean ok) {
                         if (ok) {
-                            dispatcher.execute(
-                                    new DownloadSearchResultsAction(queryKey, search, getComponentData().getId(),
-                                            downloadPresenter.getFileType(), downloadPresenter.isSample(),
-                                            downloadPresenter.getPercent(), timeZones.getTimeZone()),
-                                    new ExportFileCompleteHandler(null));
+                            if (queryKey instanceof QueryKeyImpl) {
+                                // Stream the results straight to the browser
+                                // rather than writing a file first.
+                                Location.assign(createDownloadUrl((QueryKeyImpl) queryKey));
+                            } else {
+                                dispatcher.execute(
+                                        new DownloadSearchResultsAction(queryKey, search, getComponentData().getId(),
+                                                downloadPresenter.getFileType(), downloadPresenter.isSample(),
+                                                downloadPresenter.getPercent(), timeZones.getTimeZone()),
+                                        new ExportFileCompleteHandler(null));
+                            }
                         }
 
                         HidePopupEvent.fire(TablePresenter.this, downloadPresenter);
@@ -341,6 +350,30 @@ public class TablePresenter extends AbstractComponentPresenter<DataGridView<Row>
         }
     }
 
+    private String createDownloadUrl(final QueryKeyImpl queryKey) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(GWT.getModuleBaseURL());
+        sb.append("searchresults");
+        appendParam(sb, "dashboardId", String.valueOf(queryKey.getDashboardId()), '?');
+        appendParam(sb, "dashboardName", queryKey.getDashboardName(), '&');
+        appendParam(sb, "queryId", queryKey.getQueryId(), '&');
+        appendParam(sb, "componentId", getComponentData().getId(), '&');
+        appendParam(sb, "fileType", downloadPresenter.getFileType().name(), '&');
+        appendParam(sb, "sample", String.valueOf(downloadPresenter.isSample()), '&');
+        appendParam(sb, "percent", String.valueOf(downloadPresenter.getPercent()), '&');
+        appendParam(sb, "dateTimeLocale", timeZones.getTimeZone(), '&');
+        return sb.toString();
+    }
+
+    private void appendParam(final StringBuilder sb, final String name, final String value, final char separator) {
+        if (value != null) {
+            sb.append(separator);
+            sb.append(name);
+            sb.append("=");
+            sb.append(URL.encodeQueryString(value));
+        }
+    }
+
     @Override
     public void startSearch() {
     }
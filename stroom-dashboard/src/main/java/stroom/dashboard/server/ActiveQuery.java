@@ -20,21 +20,35 @@ import java.util.HashMap;
 import java.util.Map;
 
 import stroom.query.SearchResultCollector;
+import stroom.query.shared.Search;
 import stroom.util.shared.SharedObject;
 
 public class ActiveQuery {
     private final Map<String, ComponentResultCreator> componentResultCreatorMap = new HashMap<String, ComponentResultCreator>();
     private final Map<String, SharedObject> lastResults = new HashMap<String, SharedObject>();
     private final SearchResultCollector searchResultCollector;
+    private final Search search;
 
     public ActiveQuery(final SearchResultCollector searchResultCollector) {
+        this(searchResultCollector, null);
+    }
+
+    public ActiveQuery(final SearchResultCollector searchResultCollector, final Search search) {
         this.searchResultCollector = searchResultCollector;
+        this.search = search;
     }
 
     public SearchResultCollector getSearchResultCollector() {
         return searchResultCollector;
     }
 
+    /**
+     * @return The search that started this query, if known.
+     */
+    public Search getSearch() {
+        return search;
+    }
+
     public Map<String, ComponentResultCreator> getComponentResultCreatorMap() {
         return componentResultCreatorMap;
     }
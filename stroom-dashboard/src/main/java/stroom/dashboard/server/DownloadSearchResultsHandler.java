@@ -16,18 +16,12 @@
 
 package stroom.dashboard.server;
 
-import stroom.dashboard.server.download.DelimitedTarget;
-import stroom.dashboard.server.download.ExcelTarget;
-import stroom.dashboard.server.download.SearchResultWriter;
-import stroom.dashboard.server.format.FieldFormatter;
-import stroom.dashboard.server.format.FormatterFactory;
 import stroom.dashboard.shared.Dashboard;
+import stroom.dashboard.shared.DownloadSearchResultFileType;
 import stroom.dashboard.shared.DownloadSearchResultsAction;
 import stroom.entity.server.util.EntityServiceExceptionUtil;
 import stroom.entity.shared.EntityServiceException;
 import stroom.logging.SearchEventLog;
-import stroom.query.ResultStore;
-import stroom.query.shared.Field;
 import stroom.query.shared.Search;
 import stroom.security.Secured;
 import stroom.servlet.SessionResourceStore;
@@ -45,7 +39,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.regex.Pattern;
 
 @TaskHandlerBean(task = DownloadSearchResultsAction.class)
@@ -90,7 +83,7 @@ public class DownloadSearchResultsHandler extends AbstractTaskHandler<DownloadSe
                 throw new EntityServiceException("The requested search data is not available");
             }
 
-            download(activeQuery, action.getComponentId(), file, action.getFileType().toString(), action.isSample(),
+            download(activeQuery, action.getComponentId(), file, action.getFileType(), action.isSample(),
                     action.getPercent(), action.getDateTimeLocale());
 
             searchEventLog.downloadResults(search.getDataSourceRef(), search.getExpression());
@@ -104,47 +97,12 @@ public class DownloadSearchResultsHandler extends AbstractTaskHandler<DownloadSe
     }
 
     private void download(final ActiveQuery activeQuery, final String componentId, final File file,
-            final String fileType, final boolean sample, final int percent, final String dateTimeLocale) {
-        final FormatterFactory formatterFactory = new FormatterFactory(dateTimeLocale);
-        final FieldFormatter fieldFormatter = new FieldFormatter(formatterFactory);
-
-        try {
-            // The result handler could possibly have not been set yet if the
-            // AsyncSearchTask has not started execution.
-            final ResultStore resultStore = activeQuery.getSearchResultCollector().getResultStore(componentId);
-            if (resultStore == null) {
-                throw new EntityServiceException("Search has not started yet");
-            }
-
-            final OutputStream outputStream = new FileOutputStream(file);
-            SearchResultWriter.Target target = null;
-
-            // Write delimited file.
-            switch (fileType) {
-            case "CSV":
-                target = new DelimitedTarget(fieldFormatter, outputStream, ",");
-                break;
-            case "TSV":
-                target = new DelimitedTarget(fieldFormatter, outputStream, "\t");
-                break;
-            case "EXCEL":
-                target = new ExcelTarget(outputStream);
-                break;
-            }
-
-            if (target == null) {
-                throw new RuntimeException("No target created for file type: " + fileType);
-            }
-
-            final ComponentResultCreator componentResultCreator = activeQuery.getComponentResultCreatorMap()
-                    .get(componentId);
-            final TableComponentResultCreator tableComponentResultCreator = (TableComponentResultCreator) componentResultCreator;
-            final List<Field> fields = tableComponentResultCreator.getFields();
-
-            final SampleGenerator sampleGenerator = new SampleGenerator(sample, percent);
-            final SearchResultWriter searchResultWriter = new SearchResultWriter(resultStore, fields, sampleGenerator);
-            searchResultWriter.write(target);
-
+            final DownloadSearchResultFileType fileType, final boolean sample, final int percent,
+            final String dateTimeLocale) {
+        final SearchResultDownloader downloader = new SearchResultDownloader(activeQuery, componentId, fileType,
+                sample, percent, dateTimeLocale);
+        try (final OutputStream outputStream = new FileOutputStream(file)) {
+            downloader.write(outputStream);
         } catch (final IOException e) {
             throw EntityServiceExceptionUtil.create(e);
         }
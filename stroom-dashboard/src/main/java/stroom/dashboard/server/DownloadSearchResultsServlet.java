@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.dashboard.server;
+
+import org.springframework.stereotype.Component;
+import stroom.dashboard.shared.Dashboard;
+import stroom.dashboard.shared.DownloadSearchResultFileType;
+import stroom.dashboard.shared.QueryKeyImpl;
+import stroom.logging.SearchEventLog;
+import stroom.query.shared.Search;
+import stroom.security.SecurityContext;
+import stroom.util.logging.StroomLogger;
+import stroom.util.task.TaskScopeContextHolder;
+
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>
+ * SERVLET that streams the results of a dashboard table straight to the
+ * client. Unlike {@link DownloadSearchResultsHandler} no temporary file is
+ * written: rows are sent as they are read from the result store using chunked
+ * transfer encoding, and are gzipped if the client accepts it, so exports of
+ * any size run in constant memory.
+ * </p>
+ */
+@Component(DownloadSearchResultsServlet.BEAN_NAME)
+public class DownloadSearchResultsServlet extends HttpServlet {
+    public static final String BEAN_NAME = "downloadSearchResultsServlet";
+
+    public static final String DASHBOARD_ID = "dashboardId";
+    public static final String DASHBOARD_NAME = "dashboardName";
+    public static final String QUERY_ID = "queryId";
+    public static final String COMPONENT_ID = "componentId";
+    public static final String FILE_TYPE = "fileType";
+    public static final String SAMPLE = "sample";
+    public static final String PERCENT = "percent";
+    public static final String DATE_TIME_LOCALE = "dateTimeLocale";
+
+    private static final long serialVersionUID = -6312457893546204172L;
+
+    private static final StroomLogger LOGGER = StroomLogger.getLogger(DownloadSearchResultsServlet.class);
+
+    private static final Pattern NON_BASIC_CHARS = Pattern.compile("[^A-Za-z0-9-_ ]");
+    private static final Pattern MULTIPLE_SPACE = Pattern.compile(" +");
+
+    private final transient ActiveQueriesManager activeQueriesManager;
+    private final transient SearchEventLog searchEventLog;
+    private final transient SecurityContext securityContext;
+
+    @Inject
+    DownloadSearchResultsServlet(final ActiveQueriesManager activeQueriesManager,
+                                 final SearchEventLog searchEventLog, final SecurityContext securityContext) {
+        this.activeQueriesManager = activeQueriesManager;
+        this.searchEventLog = searchEventLog;
+        this.securityContext = securityContext;
+    }
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
+        TaskScopeContextHolder.addContext();
+        try {
+            if (!securityContext.hasAppPermission(Dashboard.DOWNLOAD_SEARCH_RESULTS_PERMISSION)) {
+                response.sendError(HttpServletResponse.SC_FORBIDDEN,
+                        "You do not have permission to download search results");
+                return;
+            }
+
+            final QueryKeyImpl queryKey;
+            final String componentId = request.getParameter(COMPONENT_ID);
+            final DownloadSearchResultFileType fileType;
+            try {
+                queryKey = new QueryKeyImpl(Long.parseLong(request.getParameter(DASHBOARD_ID)),
+                        request.getParameter(DASHBOARD_NAME), request.getParameter(QUERY_ID));
+                fileType = DownloadSearchResultFileType.valueOf(request.getParameter(FILE_TYPE));
+            } catch (final RuntimeException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid download request");
+                return;
+            }
+            final boolean sample = Boolean.parseBoolean(request.getParameter(SAMPLE));
+            final int percent = getInt(request.getParameter(PERCENT), 100);
+            final String dateTimeLocale = request.getParameter(DATE_TIME_LOCALE);
+
+            final HttpSession session = request.getSession(false);
+            ActiveQuery activeQuery = null;
+            if (session != null && componentId != null) {
+                activeQuery = activeQueriesManager.get(session.getId()).getExistingQuery(queryKey);
+            }
+            if (activeQuery == null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND, "The requested search data is not available");
+                return;
+            }
+
+            download(request, response, queryKey, activeQuery,
+                    new SearchResultDownloader(activeQuery, componentId, fileType, sample, percent, dateTimeLocale),
+                    fileType);
+
+        } finally {
+            TaskScopeContextHolder.removeContext();
+        }
+    }
+
+    private void download(final HttpServletRequest request, final HttpServletResponse response,
+                          final QueryKeyImpl queryKey, final ActiveQuery activeQuery,
+                          final SearchResultDownloader downloader, final DownloadSearchResultFileType fileType)
+            throws IOException {
+        final Search search = activeQuery.getSearch();
+        try {
+            // Report a search that hasn't started before committing the
+            // response.
+            downloader.getResultStore();
+
+            String fileName = queryKey.toString();
+            fileName = NON_BASIC_CHARS.matcher(fileName).replaceAll("");
+            fileName = MULTIPLE_SPACE.matcher(fileName).replaceAll(" ");
+            fileName = fileName + "." + fileType.getExtension();
+
+            response.setContentType(getContentType(fileType));
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+
+            // Don't set a content length so that the container uses chunked
+            // encoding and sends rows as soon as its buffer fills. Excel
+            // files are already zip compressed.
+            OutputStream outputStream = response.getOutputStream();
+            if (fileType != DownloadSearchResultFileType.EXCEL && acceptsGzip(request)) {
+                response.setHeader("Content-Encoding", "gzip");
+                outputStream = new GZIPOutputStream(outputStream, true);
+            }
+
+            try {
+                downloader.write(outputStream);
+            } finally {
+                outputStream.close();
+            }
+
+            if (search != null) {
+                searchEventLog.downloadResults(search.getDataSourceRef(), search.getExpression());
+            }
+        } catch (final Exception e) {
+            LOGGER.debug(e.getMessage(), e);
+            if (search != null) {
+                searchEventLog.downloadResults(search.getDataSourceRef(), search.getExpression(), e);
+            }
+
+            // Once rows have been sent the best we can do is cut the response
+            // short.
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            } else {
+                LOGGER.error("Unable to complete download of search results - " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private String getContentType(final DownloadSearchResultFileType fileType) {
+        switch (fileType) {
+            case CSV:
+                return "text/csv; charset=UTF-8";
+            case TSV:
+                return "text/tab-separated-values; charset=UTF-8";
+            case NDJSON:
+                return "application/x-ndjson; charset=UTF-8";
+            default:
+                return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+        }
+    }
+
+    private boolean acceptsGzip(final HttpServletRequest request) {
+        final String acceptEncoding = request.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    private int getInt(final String value, final int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -124,7 +124,7 @@ class SearchBusPollActionHandler extends AbstractTaskHandler<SearchBusPollAction
                 // Create a new active query to store the result collector and
                 // any other state that we wish to maintain for the duration of
                 // the query.
-                final ActiveQuery newQuery = new ActiveQuery(newCollector);
+                final ActiveQuery newQuery = new ActiveQuery(newCollector, searchRequest.getSearch());
 
                 // Store the new active query for this query.
                 activeQueries.addNewQuery(queryKey, newQuery);
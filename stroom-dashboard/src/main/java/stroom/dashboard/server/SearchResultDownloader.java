@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.dashboard.server;
+
+import stroom.dashboard.server.download.DelimitedTarget;
+import stroom.dashboard.server.download.ExcelTarget;
+import stroom.dashboard.server.download.NdjsonTarget;
+import stroom.dashboard.server.download.SearchResultWriter;
+import stroom.dashboard.server.format.FieldFormatter;
+import stroom.dashboard.server.format.FormatterFactory;
+import stroom.dashboard.shared.DownloadSearchResultFileType;
+import stroom.entity.shared.EntityServiceException;
+import stroom.query.ResultStore;
+import stroom.query.shared.Field;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes the results of a table component to an output stream in one of the
+ * download formats. Rows are read from the result store and written straight
+ * to the stream one at a time so the output can be a file or an HTTP response.
+ */
+class SearchResultDownloader {
+    private final ActiveQuery activeQuery;
+    private final String componentId;
+    private final DownloadSearchResultFileType fileType;
+    private final boolean sample;
+    private final int percent;
+    private final String dateTimeLocale;
+
+    SearchResultDownloader(final ActiveQuery activeQuery, final String componentId,
+                           final DownloadSearchResultFileType fileType, final boolean sample, final int percent,
+                           final String dateTimeLocale) {
+        this.activeQuery = activeQuery;
+        this.componentId = componentId;
+        this.fileType = fileType;
+        this.sample = sample;
+        this.percent = percent;
+        this.dateTimeLocale = dateTimeLocale;
+    }
+
+    /**
+     * @return The result store for the component, checking that the search
+     *         has started so that errors can be reported before any output
+     *         is written.
+     */
+    ResultStore getResultStore() {
+        // The result handler could possibly have not been set yet if the
+        // AsyncSearchTask has not started execution.
+        final ResultStore resultStore = activeQuery.getSearchResultCollector().getResultStore(componentId);
+        if (resultStore == null) {
+            throw new EntityServiceException("Search has not started yet");
+        }
+        return resultStore;
+    }
+
+    void write(final OutputStream outputStream) throws IOException {
+        final ResultStore resultStore = getResultStore();
+
+        final FormatterFactory formatterFactory = new FormatterFactory(dateTimeLocale);
+        final FieldFormatter fieldFormatter = new FieldFormatter(formatterFactory);
+
+        SearchResultWriter.Target target = null;
+        switch (fileType) {
+            case CSV:
+                target = new DelimitedTarget(fieldFormatter, outputStream, ",");
+                break;
+            case TSV:
+                target = new DelimitedTarget(fieldFormatter, outputStream, "\t");
+                break;
+            case NDJSON:
+                target = new NdjsonTarget(fieldFormatter, outputStream);
+                break;
+            case EXCEL:
+                target = new ExcelTarget(outputStream);
+                break;
+        }
+
+        if (target == null) {
+            throw new RuntimeException("No target created for file type: " + fileType);
+        }
+
+        final ComponentResultCreator componentResultCreator = activeQuery.getComponentResultCreatorMap()
+                .get(componentId);
+        final TableComponentResultCreator tableComponentResultCreator = (TableComponentResultCreator) componentResultCreator;
+        final List<Field> fields = tableComponentResultCreator.getFields();
+
+        final SampleGenerator sampleGenerator = new SampleGenerator(sample, percent);
+        final SearchResultWriter searchResultWriter = new SearchResultWriter(resultStore, fields, sampleGenerator);
+        searchResultWriter.write(target);
+    }
+}
@@ -19,6 +19,8 @@ package stroom.dashboard.server.download;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
@@ -40,8 +42,16 @@ public class ExcelTarget implements SearchResultWriter.Target {
     private static final int TRUNCATED_LENGTH = EXCEL_MAX_CELL_CHARACTERS - 3;
     private static final String TRUNCATION_MARKER = "...";
 
+    // Only this many rows are held in memory, the rest are flushed to disk.
+    private static final int ROW_ACCESS_WINDOW = 100;
+
     private final OutputStream outputStream;
 
+    // Share cell styles between cells with the same format as workbooks hold
+    // every style ever created.
+    private final Map<String, CellStyle> dataFormatStyles = new HashMap<>();
+    private CellStyle headingStyle;
+
     private SXSSFWorkbook wb;
     private Sheet sh;
     private Row row;
@@ -55,9 +65,12 @@ public class ExcelTarget implements SearchResultWriter.Target {
 
     @Override
     public void start() throws IOException {
-        // Create a workbook with 100 rows in memory. Exceeding rows will be
-        // flushed to disk.
-        wb = new SXSSFWorkbook(100);
+        // Create a workbook with a bounded number of rows in memory. Exceeding
+        // rows will be flushed to disk.
+        wb = new SXSSFWorkbook(ROW_ACCESS_WINDOW);
+        // Compress the temporary files backing the workbook as large exports
+        // can otherwise use a lot of disk.
+        wb.setCompressTempFiles(true);
         sh = wb.createSheet();
     }
 
@@ -88,10 +101,12 @@ public class ExcelTarget implements SearchResultWriter.Target {
     @Override
     public void writeHeading(final Field field, final String heading) throws IOException {
         // Create a style for headings.
-        final Font headingFont = wb.createFont();
-        headingFont.setBold(true);
-        final CellStyle headingStyle = wb.createCellStyle();
-        headingStyle.setFont(headingFont);
+        if (headingStyle == null) {
+            final Font headingFont = wb.createFont();
+            headingFont.setBold(true);
+            headingStyle = wb.createCellStyle();
+            headingStyle.setFont(headingFont);
+        }
 
         final Cell cell = row.createCell(colNum++);
         cell.setCellType(Cell.CELL_TYPE_STRING);
@@ -170,10 +185,7 @@ public class ExcelTarget implements SearchResultWriter.Target {
                 }
             }
 
-            final DataFormat df = wb.createDataFormat();
-            final CellStyle cs = wb.createCellStyle();
-            cs.setDataFormat(df.getFormat(pattern));
-            cell.setCellStyle(cs);
+            cell.setCellStyle(getDataFormatStyle(wb, pattern));
 
         } else {
             cell.setCellValue(getText(value));
@@ -205,16 +217,24 @@ public class ExcelTarget implements SearchResultWriter.Target {
 
                 final String pattern = sb.toString();
 
-                final DataFormat df = wb.createDataFormat();
-                final CellStyle cs = wb.createCellStyle();
-                cs.setDataFormat(df.getFormat(pattern));
-                cell.setCellStyle(cs);
+                cell.setCellStyle(getDataFormatStyle(wb, pattern));
             }
         } else {
             cell.setCellValue(getText(value));
         }
     }
 
+    private CellStyle getDataFormatStyle(final SXSSFWorkbook wb, final String pattern) {
+        CellStyle cs = dataFormatStyles.get(pattern);
+        if (cs == null) {
+            final DataFormat df = wb.createDataFormat();
+            cs = wb.createCellStyle();
+            cs.setDataFormat(df.getFormat(pattern));
+            dataFormatStyles.put(pattern, cs);
+        }
+        return cs;
+    }
+
     private String getText(final Object value) {
         String text = value.toString();
         if (text.length() > EXCEL_MAX_CELL_CHARACTERS) {
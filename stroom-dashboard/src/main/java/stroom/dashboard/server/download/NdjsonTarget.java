@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.dashboard.server.download;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import stroom.dashboard.server.format.FieldFormatter;
+import stroom.query.shared.Field;
+
+/**
+ * Writes each result row as a JSON object on its own line keyed by the column
+ * headings (newline delimited JSON).
+ */
+public class NdjsonTarget implements SearchResultWriter.Target {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final FieldFormatter fieldFormatter;
+    private final OutputStream outputStream;
+    private final List<String> headings = new ArrayList<>();
+
+    private Writer writer;
+    private int colNum;
+
+    public NdjsonTarget(final FieldFormatter fieldFormatter, final OutputStream outputStream) {
+        this.fieldFormatter = fieldFormatter;
+        this.outputStream = outputStream;
+    }
+
+    @Override
+    public void start() throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+    }
+
+    @Override
+    public void end() throws IOException {
+        writer.close();
+    }
+
+    @Override
+    public void startLine() throws IOException {
+        colNum = 0;
+    }
+
+    @Override
+    public void endLine() throws IOException {
+        // The heading line doesn't produce any output.
+        if (colNum > 0) {
+            writer.write("}\n");
+        }
+    }
+
+    @Override
+    public void writeHeading(final Field field, final String heading) throws IOException {
+        headings.add(heading);
+    }
+
+    @Override
+    public void writeValue(final Field field, final Object value) throws IOException {
+        writer.write(colNum == 0 ? '{' : ',');
+
+        String heading = null;
+        if (colNum < headings.size()) {
+            heading = headings.get(colNum);
+        }
+        if (heading == null) {
+            heading = String.valueOf(colNum);
+        }
+        writeString(heading);
+        writer.write(':');
+
+        final String formatted = fieldFormatter.format(field, value);
+        if (formatted == null) {
+            writer.write("null");
+        } else {
+            writeString(formatted);
+        }
+
+        colNum++;
+    }
+
+    private void writeString(final String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write("\\u00");
+                        writer.write(HEX[(c >> 4) & 0xF]);
+                        writer.write(HEX[c & 0xF]);
+                    } else {
+                        writer.write(c);
+                    }
+                    break;
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -18,12 +18,14 @@ package stroom.dashboard.server.download;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 import stroom.dashboard.expression.Generator;
 import stroom.dashboard.server.SampleGenerator;
 import stroom.query.Item;
 import stroom.query.Items;
 import stroom.query.ResultStore;
+import stroom.query.UntrimmedResults;
 import stroom.query.shared.Field;
 
 public class SearchResultWriter {
@@ -79,37 +81,61 @@ public class SearchResultWriter {
 
     private void writeContent(final ResultStore resultStore, final List<Field> fields,
             final SampleGenerator sampleGenerator, final Target target) throws IOException {
-        final Items<Item> items = resultStore.getChildMap().get(null);
+        final UntrimmedResults untrimmedResults = resultStore.getUntrimmedResults();
+        if (untrimmedResults != null) {
+            // Stream the complete result set rather than the trimmed results
+            // held in memory. Child rows follow their parent.
+            untrimmedResults.read(item -> writeItem(item, fields, sampleGenerator, target));
+
+        } else {
+            writeItems(resultStore.getChildMap(), null, fields, sampleGenerator, target);
+        }
+    }
+
+    private void writeItems(final Map<String, Items<Item>> childMap, final String parentKey,
+            final List<Field> fields, final SampleGenerator sampleGenerator, final Target target)
+            throws IOException {
+        final Items<Item> items = childMap.get(parentKey);
         if (items != null) {
             for (final Item item : items) {
-                if (sampleGenerator.includeResult()) {
-                    target.startLine();
-                    for (int i = 0; i < fields.size(); i++) {
-                        final Field field = fields.get(i);
-                        if (field.isVisible()) {
-                            Object val = null;
-
-                            if (item.getValues().length > i) {
-                                final Object o = item.getValues()[i];
-                                val = o;
-
-                                if (o != null) {
-                                    // Convert all values into fully resolved
-                                    // objects evaluating functions where
-                                    // necessary.
-                                    if (o instanceof Generator) {
-                                        final Generator generator = (Generator) o;
-                                        val = generator.eval();
-                                    }
-                                }
-                            }
+                writeItem(item, fields, sampleGenerator, target);
 
-                            target.writeValue(field, val);
+                // Write any grouped child rows directly after their parent.
+                if (item.getGroupKey() != null) {
+                    writeItems(childMap, item.getGroupKey(), fields, sampleGenerator, target);
+                }
+            }
+        }
+    }
+
+    private void writeItem(final Item item, final List<Field> fields, final SampleGenerator sampleGenerator,
+            final Target target) throws IOException {
+        if (sampleGenerator.includeResult()) {
+            target.startLine();
+            for (int i = 0; i < fields.size(); i++) {
+                final Field field = fields.get(i);
+                if (field.isVisible()) {
+                    Object val = null;
+
+                    if (item.getValues().length > i) {
+                        final Object o = item.getValues()[i];
+                        val = o;
+
+                        if (o != null) {
+                            // Convert all values into fully resolved
+                            // objects evaluating functions where
+                            // necessary.
+                            if (o instanceof Generator) {
+                                final Generator generator = (Generator) o;
+                                val = generator.eval();
+                            }
                         }
                     }
-                    target.endLine();
+
+                    target.writeValue(field, val);
                 }
             }
+            target.endLine();
         }
     }
 }
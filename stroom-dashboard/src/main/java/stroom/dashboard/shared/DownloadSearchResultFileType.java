@@ -19,7 +19,7 @@ package stroom.dashboard.shared;
 import stroom.util.shared.HasDisplayValue;
 
 public enum DownloadSearchResultFileType implements HasDisplayValue {
-    EXCEL("Excel", "xlsx"), CSV("CSV", "csv"), TSV("TSV", "tsv");
+    EXCEL("Excel", "xlsx"), CSV("CSV", "csv"), TSV("TSV", "tsv"), NDJSON("NDJSON", "ndjson");
 
     private final String name;
     private final String extension;
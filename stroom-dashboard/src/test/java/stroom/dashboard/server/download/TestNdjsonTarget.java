@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.dashboard.server.download;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import stroom.dashboard.server.format.FieldFormatter;
+import stroom.dashboard.server.format.FormatterFactory;
+import stroom.util.test.StroomUnitTest;
+
+public class TestNdjsonTarget extends StroomUnitTest {
+    @Test
+    public void test() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final NdjsonTarget target = new NdjsonTarget(new FieldFormatter(new FormatterFactory(null)), outputStream);
+
+        target.start();
+
+        target.startLine();
+        target.writeHeading(null, "Name");
+        target.writeHeading(null, "Quote \"");
+        target.endLine();
+
+        target.startLine();
+        target.writeValue(null, "a\\b");
+        target.writeValue(null, "line1\nline2\u0001");
+        target.endLine();
+
+        target.startLine();
+        target.writeValue(null, "x");
+        target.writeValue(null, "y");
+        target.endLine();
+
+        target.end();
+
+        Assert.assertEquals("{\"Name\":\"a\\\\b\",\"Quote \\\"\":\"line1\\nline2\\u0001\"}\n"
+                + "{\"Name\":\"x\",\"Quote \\\"\":\"y\"}\n", new String(outputStream.toByteArray(), "UTF-8"));
+    }
+}
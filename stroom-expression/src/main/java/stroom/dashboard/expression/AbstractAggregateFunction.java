@@ -16,6 +16,10 @@
 
 package stroom.dashboard.expression;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public abstract class AbstractAggregateFunction extends AbstractManyChildFunction implements AggregateFunction {
     private static class AggregateGen extends AbstractSingleChildGenerator {
         private static final long serialVersionUID = -5622353515345145314L;
@@ -46,6 +50,18 @@ public abstract class AbstractAggregateFunction extends AbstractManyChildFunctio
             current = calculator.calc(current, aggregateGen.current);
             super.merge(generator);
         }
+
+        @Override
+        public void write(final DataOutput output) throws IOException {
+            GeneratorIO.writeDouble(output, current);
+            super.write(output);
+        }
+
+        @Override
+        public void read(final DataInput input) throws IOException {
+            current = GeneratorIO.readDouble(input);
+            super.read(input);
+        }
     }
 
     private static class Gen extends AbstractManyChildGenerator {
@@ -16,6 +16,10 @@
 
 package stroom.dashboard.expression;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public abstract class AbstractManyChildGenerator extends AbstractGenerator {
     private static final long serialVersionUID = 513621715143449935L;
 
@@ -50,4 +54,22 @@ public abstract class AbstractManyChildGenerator extends AbstractGenerator {
             childGenerators[i].merge(generator.childGenerators[i]);
         }
     }
+
+    @Override
+    public void write(final DataOutput output) throws IOException {
+        if (childGenerators != null) {
+            for (final Generator gen : childGenerators) {
+                gen.write(output);
+            }
+        }
+    }
+
+    @Override
+    public void read(final DataInput input) throws IOException {
+        if (childGenerators != null) {
+            for (final Generator gen : childGenerators) {
+                gen.read(input);
+            }
+        }
+    }
 }
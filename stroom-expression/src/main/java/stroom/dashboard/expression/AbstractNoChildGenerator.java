@@ -16,6 +16,10 @@
 
 package stroom.dashboard.expression;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public abstract class AbstractNoChildGenerator extends AbstractGenerator {
     private static final long serialVersionUID = 513621715143449935L;
 
@@ -36,4 +40,12 @@ public abstract class AbstractNoChildGenerator extends AbstractGenerator {
     @Override
     public void merge(final Generator generator) {
     }
+
+    @Override
+    public void write(final DataOutput output) throws IOException {
+    }
+
+    @Override
+    public void read(final DataInput input) throws IOException {
+    }
 }
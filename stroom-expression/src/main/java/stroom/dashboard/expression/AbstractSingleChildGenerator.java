@@ -16,6 +16,10 @@
 
 package stroom.dashboard.expression;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public abstract class AbstractSingleChildGenerator extends AbstractGenerator {
     private static final long serialVersionUID = 513621715143449935L;
 
@@ -44,4 +48,14 @@ public abstract class AbstractSingleChildGenerator extends AbstractGenerator {
     public void addChildren(final AbstractSingleChildGenerator generator) {
         childGenerator.merge(generator.childGenerator);
     }
+
+    @Override
+    public void write(final DataOutput output) throws IOException {
+        childGenerator.write(output);
+    }
+
+    @Override
+    public void read(final DataInput input) throws IOException {
+        childGenerator.read(input);
+    }
 }
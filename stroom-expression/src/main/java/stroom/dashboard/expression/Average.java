@@ -16,6 +16,10 @@
 
 package stroom.dashboard.expression;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class Average extends AbstractManyChildFunction implements AggregateFunction {
     private static class AggregateGen extends AbstractSingleChildGenerator {
         private static final long serialVersionUID = -6770724151493320673L;
@@ -53,6 +57,20 @@ public class Average extends AbstractManyChildFunction implements AggregateFunct
 
             super.merge(generator);
         }
+
+        @Override
+        public void write(final DataOutput output) throws IOException {
+            GeneratorIO.writeDouble(output, current);
+            output.writeInt(count);
+            super.write(output);
+        }
+
+        @Override
+        public void read(final DataInput input) throws IOException {
+            current = GeneratorIO.readDouble(input);
+            count = input.readInt();
+            super.read(input);
+        }
     }
 
     private static class Gen extends AbstractManyChildGenerator {
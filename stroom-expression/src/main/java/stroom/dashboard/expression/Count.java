@@ -16,6 +16,10 @@
 
 package stroom.dashboard.expression;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class Count extends AbstractFunction {
     private static class Gen extends AbstractNoChildGenerator {
         private static final long serialVersionUID = 9222017471352363944L;
@@ -38,6 +42,16 @@ public class Count extends AbstractFunction {
             count += countGen.count;
             super.merge(generator);
         }
+
+        @Override
+        public void write(final DataOutput output) throws IOException {
+            output.writeDouble(count);
+        }
+
+        @Override
+        public void read(final DataInput input) throws IOException {
+            count = input.readDouble();
+        }
     }
 
     public static final String NAME = "count";
@@ -16,6 +16,9 @@
 
 package stroom.dashboard.expression;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -52,6 +55,24 @@ public class CountGroups extends AbstractFunction {
             childGroups.addAll(countGen.childGroups);
             super.merge(generator);
         }
+
+        @Override
+        public void write(final DataOutput output) throws IOException {
+            output.writeLong(nonGroupedChildCount);
+            output.writeInt(childGroups.size());
+            for (final String group : childGroups) {
+                GeneratorIO.writeString(output, group);
+            }
+        }
+
+        @Override
+        public void read(final DataInput input) throws IOException {
+            nonGroupedChildCount = input.readLong();
+            final int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                childGroups.add(GeneratorIO.readString(input));
+            }
+        }
     }
 
     public static final String NAME = "countGroups";
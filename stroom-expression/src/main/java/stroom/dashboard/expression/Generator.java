@@ -16,6 +16,9 @@
 
 package stroom.dashboard.expression;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 public interface Generator extends Serializable, Comparable<Object> {
@@ -53,4 +56,22 @@ public interface Generator extends Serializable, Comparable<Object> {
      *            The generator to merge with this one.
      */
     void merge(Generator generator);
+
+    /**
+     * Write the state of this generator, and of any child generators, so that
+     * an equivalent generator created by the same expression can restore it
+     * with read().
+     *
+     * @param output
+     *            The output to write the generator state to.
+     */
+    void write(DataOutput output) throws IOException;
+
+    /**
+     * Restore the state written by write() into this newly created generator.
+     *
+     * @param input
+     *            The input to read the generator state from.
+     */
+    void read(DataInput input) throws IOException;
 }
@@ -16,6 +16,9 @@
 
 package stroom.dashboard.expression;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.text.ParseException;
 
 public class Random extends AbstractFunction {
@@ -33,6 +36,16 @@ public class Random extends AbstractFunction {
         public Object eval() {
             return value;
         }
+
+        @Override
+        public void write(final DataOutput output) throws IOException {
+            GeneratorIO.writeDouble(output, (Double) value);
+        }
+
+        @Override
+        public void read(final DataInput input) throws IOException {
+            value = GeneratorIO.readDouble(input);
+        }
     }
 
     public static final String NAME = "random";
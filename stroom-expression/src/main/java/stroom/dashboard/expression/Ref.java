@@ -16,6 +16,10 @@
 
 package stroom.dashboard.expression;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class Ref extends AbstractFunction {
     private static class NullGen extends AbstractNoChildGenerator {
         private static final long serialVersionUID = 8153777070911899616L;
@@ -28,6 +32,19 @@ public class Ref extends AbstractFunction {
         public Object eval() {
             return null;
         }
+
+        @Override
+        public void write(final DataOutput output) throws IOException {
+            // Write the same shape as Gen so that state can be restored
+            // whether or not the field was found when the expression was
+            // parsed.
+            GeneratorIO.writeString(output, null);
+        }
+
+        @Override
+        public void read(final DataInput input) throws IOException {
+            GeneratorIO.readString(input);
+        }
     }
 
     private static class Gen extends AbstractNoChildGenerator {
@@ -49,6 +66,16 @@ public class Ref extends AbstractFunction {
         public Object eval() {
             return current;
         }
+
+        @Override
+        public void write(final DataOutput output) throws IOException {
+            GeneratorIO.writeString(output, current);
+        }
+
+        @Override
+        public void read(final DataInput input) throws IOException {
+            current = GeneratorIO.readString(input);
+        }
     }
 
     private static final NullGen NULL_GEN = new NullGen();
@@ -28,6 +28,7 @@ import stroom.query.shared.IndexFieldsMap;
 import stroom.entity.server.event.EntityEvent;
 import stroom.entity.server.event.EntityEventHandler;
 import stroom.entity.shared.Clearable;
+import stroom.entity.shared.DocRef;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Element;
@@ -113,8 +114,27 @@ public class CachedIndexService implements Clearable, InitializingBean, EntityEv
         cacheManager.addCache(cache);
     }
 
+    /**
+     * Only remove the cached fields of the index that changed rather than
+     * everything.
+     */
     @Override
     public void onChange(final EntityEvent event) {
-        clear();
+        final DocRef docRef = event.getDocRef();
+        for (final Object key : cache.getKeys()) {
+            if (key instanceof Index && matches((Index) key, docRef)) {
+                selfPopulatingCache.remove(key);
+            }
+        }
+    }
+
+    private boolean matches(final Index index, final DocRef docRef) {
+        if (docRef.getUuid() != null && index.getUuid() != null) {
+            return docRef.getUuid().equals(index.getUuid());
+        }
+        if (docRef.getId() != null) {
+            return docRef.getId().longValue() == index.getId();
+        }
+        return true;
     }
 }
@@ -16,6 +16,8 @@
 
 package stroom.index.server;
 
+import java.util.concurrent.Future;
+
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
 
@@ -38,6 +40,8 @@ public interface IndexShardWriter extends Destroyable {
 
     boolean flush();
 
+    Future<Boolean> flushAsync();
+
     boolean delete();
 
     boolean deleteFromDisk();
@@ -21,12 +21,16 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 
 import javax.inject.Inject;
 
 import stroom.node.server.StroomPropertyService;
+import stroom.task.server.StroomThreadGroup;
 import stroom.util.logging.StroomLogger;
 import stroom.util.spring.StroomSpringProfiles;
 import org.springframework.context.annotation.Profile;
@@ -50,8 +54,8 @@ import stroom.util.shared.ModelStringUtil;
 import stroom.util.spring.StroomFrequencySchedule;
 import stroom.util.spring.StroomShutdown;
 import stroom.util.spring.StroomStartup;
+import stroom.util.thread.CustomThreadFactory;
 import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Element;
 
 /**
  * Pool API into open index shards.
@@ -63,6 +67,7 @@ public class IndexShardWriterCacheImpl extends AbstractCacheBean<IndexShardKey,
         implements IndexShardWriterCache, EntityEvent.Handler {
     private static final StroomLogger LOGGER = StroomLogger.getLogger(IndexShardWriterCacheImpl.class);
     private static final int MAX_CACHE_ENTRIES = 1000000;
+    private static final int DEFAULT_COMMIT_THREADS = 4;
 
     private final IndexService indexService;
     private final IndexShardService indexShardService;
@@ -72,6 +77,7 @@ public class IndexShardWriterCacheImpl extends AbstractCacheBean<IndexShardKey,
 
     private final ConcurrentHashMap<IndexShard, IndexShardWriter> ownedWriters = new ConcurrentHashMap<>();
     private final StripedLock writerCreationLocks = new StripedLock();
+    private volatile ThreadPoolExecutor commitExecutor;
 
     @Inject
     public IndexShardWriterCacheImpl(final CacheManager cacheManager, final StroomPropertyService stroomPropertyService,
@@ -205,10 +211,48 @@ public class IndexShardWriterCacheImpl extends AbstractCacheBean<IndexShardKey,
         // Create the writer.
         final IndexShardWriterImpl writer = new IndexShardWriterImpl(indexShardService, indexFields, index, indexShard,
                 ramBufferSizeMB);
+        writer.setCommitExecutor(getCommitExecutor());
 
         return writer;
     }
 
+    /**
+     * All shards on this node share one pool of commit threads so that
+     * flushing every shard at once doesn't commit them all at the same time.
+     */
+    private ThreadPoolExecutor getCommitExecutor() {
+        if (commitExecutor == null) {
+            synchronized (this) {
+                if (commitExecutor == null) {
+                    final int commitThreads = getCommitThreads();
+                    final CustomThreadFactory threadFactory = new CustomThreadFactory("Index Shard Commit ",
+                            StroomThreadGroup.instance(), Thread.NORM_PRIORITY - 1);
+                    threadFactory.setDaemon(true);
+                    final ThreadPoolExecutor executor = new ThreadPoolExecutor(commitThreads, commitThreads, 60,
+                            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+                    executor.allowCoreThreadTimeOut(true);
+                    commitExecutor = executor;
+                }
+            }
+        }
+        return commitExecutor;
+    }
+
+    private int getCommitThreads() {
+        int commitThreads = DEFAULT_COMMIT_THREADS;
+        if (stroomPropertyService != null) {
+            try {
+                final String property = stroomPropertyService.getProperty("stroom.index.commitThreads");
+                if (property != null) {
+                    commitThreads = Math.max(1, Integer.parseInt(property));
+                }
+            } catch (final Exception ex) {
+                LOGGER.error("getCommitThreads() - Integer.parseInt stroom.index.commitThreads", ex);
+            }
+        }
+        return commitThreads;
+    }
+
     private int getRamBufferSize() {
         int ramBufferSizeMB = 1024;
         if (stroomPropertyService != null) {
@@ -237,6 +281,10 @@ public class IndexShardWriterCacheImpl extends AbstractCacheBean<IndexShardKey,
         findClose(criteria);
         super.clear();
         ownedWriters.clear();
+
+        if (commitExecutor != null) {
+            commitExecutor.shutdown();
+        }
     }
 
     /**
@@ -300,24 +348,30 @@ public class IndexShardWriterCacheImpl extends AbstractCacheBean<IndexShardKey,
     /**
      * This is called by the lifecycle service and will call flush on all
      * objects in the pool without locking the pool for use in the mean time.
+     * Commits run on the shared commit threads so we start all of the commits
+     * before waiting for them to complete.
      */
     @Override
     public void flushAll() {
         final long startTime = System.currentTimeMillis();
         LOGGER.debug("flushAll() - Started");
         try {
-            final List<?> keys = getCache().getKeys();
-            for (final Object key : keys) {
+            final List<IndexShardKey> keys = getKeys();
+            final List<IndexShardWriter> writers = new ArrayList<>(keys.size());
+            for (final IndexShardKey key : keys) {
                 try {
                     // Try and get the element quietly as we don't want this
                     // call top extend the life of sessions
                     // that should be dying.
-                    final Element element = getCache().getQuiet(key);
-                    flush(element);
+                    final IndexShardWriter writer = getQuiet(key);
+                    if (writer != null) {
+                        writers.add(writer);
+                    }
                 } catch (final Throwable t) {
                     LOGGER.error(t.getMessage(), t);
                 }
             }
+            flush(writers);
         } catch (final Throwable t) {
             LOGGER.error(t.getMessage(), t);
         }
@@ -325,16 +379,26 @@ public class IndexShardWriterCacheImpl extends AbstractCacheBean<IndexShardKey,
                 ModelStringUtil.formatDurationString(System.currentTimeMillis() - startTime));
     }
 
-    private void flush(final Element element) {
-        if (element != null && element.getObjectValue() != null
-                && element.getObjectValue() instanceof IndexShardWriter) {
-            final IndexShardWriter indexShardWriter = (IndexShardWriter) element.getObjectValue();
-            if (indexShardWriter != null) {
-                try {
-                    indexShardWriter.flush();
-                } catch (final Exception ex) {
-                    LOGGER.error("flush() - Error flushing writer %s", indexShardWriter);
-                }
+    private void flush(final List<IndexShardWriter> writers) {
+        final List<Future<Boolean>> commits = new ArrayList<>(writers.size());
+        for (final IndexShardWriter writer : writers) {
+            try {
+                LOGGER.debug("flush() - Flushing index shard %s", writer.getIndexShard().getId());
+                commits.add(writer.flushAsync());
+            } catch (final Exception ex) {
+                LOGGER.error("flush() - Error flushing writer %s", writer);
+            }
+        }
+
+        for (final Future<Boolean> commit : commits) {
+            try {
+                commit.get();
+            } catch (final InterruptedException e) {
+                LOGGER.error("flush() - Interrupted waiting for commits");
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final Exception e) {
+                LOGGER.error(e, e);
             }
         }
     }
@@ -346,15 +410,7 @@ public class IndexShardWriterCacheImpl extends AbstractCacheBean<IndexShardKey,
      */
     @Override
     public Long findFlush(final FindIndexShardCriteria criteria) {
-        final List<IndexShardWriter> writers = getFilteredWriters(criteria);
-        for (final IndexShardWriter writer : writers) {
-            try {
-                LOGGER.debug("flush() - Flushing index shard %s", writer.getIndexShard().getId());
-                writer.flush();
-            } catch (final Exception e) {
-                LOGGER.error(e, e);
-            }
-        }
+        flush(getFilteredWriters(criteria));
         return null;
     }
 
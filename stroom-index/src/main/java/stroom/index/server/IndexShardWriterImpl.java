@@ -25,16 +25,21 @@ import stroom.query.shared.IndexField;
 import stroom.query.shared.IndexField.AnalyzerType;
 import stroom.query.shared.IndexFields;
 import stroom.streamstore.server.fs.FileSystemUtil;
+import stroom.task.server.StroomThreadGroup;
 import stroom.util.logging.StroomLogger;
 import stroom.util.logging.LoggerPrintStream;
 import stroom.util.shared.ModelStringUtil;
+import stroom.util.thread.CustomThreadFactory;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.LiveIndexWriterConfig;
+import org.apache.lucene.index.MergePolicy.OneMerge;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.LockObtainFailedException;
@@ -45,11 +50,20 @@ import org.joda.time.DateTime;
 
 import javax.persistence.EntityNotFoundException;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -58,6 +72,39 @@ public class IndexShardWriterImpl implements IndexShardWriter {
 
     public static final int DEFAULT_RAM_BUFFER_MB_SIZE = 1024;
 
+    /**
+     * Shards are written once and then only searched so we let more segments
+     * build up before merging while a shard is being written, merge in the
+     * background on a single thread per shard and then merge down to a single
+     * segment once the shard is finished.
+     */
+    private static final int MERGE_SEGMENTS_PER_TIER = 20;
+    private static final int MAX_MERGE_COUNT = 2;
+    private static final int MAX_MERGE_THREADS = 1;
+
+    /**
+     * Used by writers that have not been given the node wide commit executor,
+     * e.g. in tests and benchmarks.
+     */
+    private static final ThreadPoolExecutor DEFAULT_COMMIT_EXECUTOR = createDefaultCommitExecutor();
+
+    /**
+     * Runs forced merges of full and ended shards in the background.
+     */
+    private static final ThreadPoolExecutor DEFAULT_MERGE_EXECUTOR = createDefaultMergeExecutor();
+
+    /**
+     * Records how long background and forced merges take.
+     */
+    private static class TimedMergeScheduler extends ConcurrentMergeScheduler {
+        @Override
+        protected void doMerge(final OneMerge merge) throws IOException {
+            final long startTime = System.currentTimeMillis();
+            super.doMerge(merge);
+            IndexWriterMetrics.instance().recordMerge(System.currentTimeMillis() - startTime);
+        }
+    }
+
     /**
      * Used to manage the way fields are analysed.
      */
@@ -84,6 +131,24 @@ public class IndexShardWriterImpl implements IndexShardWriter {
     private volatile int lastCommitDocumentCount;
     private volatile long lastCommitDurationMs;
 
+    /**
+     * Commits are run on an executor shared by all shards on the node so that
+     * threads adding documents never wait for them and the number of shards
+     * committing at once is bounded.
+     */
+    private volatile Executor commitExecutor = DEFAULT_COMMIT_EXECUTOR;
+    private final Object commitMonitor = new Object();
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private FutureTask<Boolean> pendingCommit;
+
+    /**
+     * Shards that are full or whose partition has ended are merged down to a
+     * single segment once, on an executor of their own, so that commits and
+     * closes are never held up by a merge.
+     */
+    private volatile Executor mergeExecutor = DEFAULT_MERGE_EXECUTOR;
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+
     /**
      * When we are in debug mode we track some important info from the LUCENE
      * log so that we can report some debug info
@@ -127,7 +192,40 @@ public class IndexShardWriterImpl implements IndexShardWriter {
         fieldAnalyzers = new HashMap<>();
         updateFieldAnalyzers(indexFields);
         analyzerWrapper = new PerFieldAnalyzerWrapper(defaultAnalyzer, fieldAnalyzers);
+    }
+
+    private static ThreadPoolExecutor createDefaultCommitExecutor() {
+        final CustomThreadFactory threadFactory = new CustomThreadFactory("Index Shard Commit ",
+                StroomThreadGroup.instance(), Thread.NORM_PRIORITY - 1);
+        threadFactory.setDaemon(true);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadPoolExecutor createDefaultMergeExecutor() {
+        final CustomThreadFactory threadFactory = new CustomThreadFactory("Index Shard Merge ",
+                StroomThreadGroup.instance(), Thread.MIN_PRIORITY);
+        threadFactory.setDaemon(true);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * You can set this before the index has opened
+     */
+    public void setCommitExecutor(final Executor commitExecutor) {
+        this.commitExecutor = commitExecutor;
+    }
 
+    /**
+     * You can set this before the index has opened
+     */
+    public void setMergeExecutor(final Executor mergeExecutor) {
+        this.mergeExecutor = mergeExecutor;
     }
 
     /**
@@ -195,6 +293,15 @@ public class IndexShardWriterImpl implements IndexShardWriter {
                 final Version luceneVersion = LuceneVersionUtil.getLuceneVersion(indexShard.getIndexVersion());
                 final IndexWriterConfig indexWriterConfig = new IndexWriterConfig(luceneVersion, analyzerWrapper);
 
+                final TieredMergePolicy mergePolicy = new TieredMergePolicy();
+                mergePolicy.setSegmentsPerTier(MERGE_SEGMENTS_PER_TIER);
+                mergePolicy.setMaxMergeAtOnce(MERGE_SEGMENTS_PER_TIER);
+                indexWriterConfig.setMergePolicy(mergePolicy);
+
+                final TimedMergeScheduler mergeScheduler = new TimedMergeScheduler();
+                mergeScheduler.setMaxMergesAndThreads(MAX_MERGE_COUNT, MAX_MERGE_THREADS);
+                indexWriterConfig.setMergeScheduler(mergeScheduler);
+
                 // In debug mode we do extra trace in LUCENE and we also count
                 // certain logging info like merge and flush
                 // counts, so you can get this later using the trace method.
@@ -419,7 +526,8 @@ public class IndexShardWriterImpl implements IndexShardWriter {
                 if (indexWriter != null && isOpen()) {
                     // Avoid any sync blocks so try and inc the number and if it
                     // went over then drop it back and return false
-                    if (documentCount.incrementAndGet() <= maxDocumentCount) {
+                    final int count = documentCount.incrementAndGet();
+                    if (count <= maxDocumentCount) {
                         try {
                             final long startTime = System.currentTimeMillis();
 
@@ -453,6 +561,10 @@ public class IndexShardWriterImpl implements IndexShardWriter {
                         // the document count.
                         if (!added) {
                             documentCount.decrementAndGet();
+                        } else if (count == maxDocumentCount) {
+                            // The shard is now full so merge and commit it in
+                            // the background.
+                            flushAsync();
                         }
                     } else {
                         documentCount.decrementAndGet();
@@ -548,23 +660,97 @@ public class IndexShardWriterImpl implements IndexShardWriter {
     }
 
     @Override
-    public synchronized boolean flush() {
-        return flushOrClose(false);
+    public boolean flush() {
+        try {
+            return flushAsync().get();
+        } catch (final InterruptedException e) {
+            LOGGER.error("flush() - Interrupted waiting for commit " + toString());
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            LOGGER.error("flush()", e.getCause());
+        }
+        return false;
+    }
+
+    /**
+     * Schedule a commit on the commit executor. If a commit is already waiting
+     * to run then it will include all documents added so far so we return that
+     * instead of scheduling another.
+     */
+    @Override
+    public Future<Boolean> flushAsync() {
+        synchronized (commitMonitor) {
+            if (pendingCommit == null) {
+                pendingCommit = new FutureTask<>(this::commit);
+                commitExecutor.execute(pendingCommit);
+            }
+            return pendingCommit;
+        }
+    }
+
+    private boolean commit() {
+        // Any flush requested after this point needs another commit.
+        synchronized (commitMonitor) {
+            pendingCommit = null;
+        }
+        final boolean success = flushOrClose(false);
+        if (success) {
+            scheduleMerge();
+        }
+        return success;
+    }
+
+    /**
+     * Once no more documents are expected, i.e. the shard is full or its
+     * partition has ended, merge it down to a single segment in the
+     * background. The merge runs outside the commit lock so commits carry on
+     * while it does and a close waits for it; it is made durable by the commit
+     * it schedules when done.
+     */
+    private void scheduleMerge() {
+        if ((isFull() || isPartitionEnded()) && mergeScheduled.compareAndSet(false, true)) {
+            mergeExecutor.execute(() -> {
+                final IndexWriter indexWriter = this.indexWriter;
+                if (indexWriter != null) {
+                    try {
+                        indexWriter.forceMerge(1);
+                        flushAsync();
+                    } catch (final AlreadyClosedException e) {
+                        LOGGER.debug("scheduleMerge() - Closed before merge " + toString());
+                    } catch (final Throwable t) {
+                        LOGGER.error("scheduleMerge()", t);
+                    }
+                }
+            });
+        }
+    }
+
+    private boolean isPartitionEnded() {
+        final Long partitionToTime = indexShard.getPartitionToTime();
+        return partitionToTime != null && partitionToTime <= System.currentTimeMillis();
     }
 
     /**
      * Flush and close operations will cause docs in memory to be committed to
      * the shard so we use the same method to do both so we can consistently
-     * record commit times and doc counts.
+     * record commit times and doc counts. The commit itself is guarded by a
+     * separate lock to this writer so that opening and adding documents are
+     * not held up by it.
      */
-    private synchronized boolean flushOrClose(final boolean close) {
+    private boolean flushOrClose(final boolean close) {
         boolean success = false;
+        boolean attempted = false;
+        long startTime = 0;
 
-        if (isOpen()) {
-            // Record commit start time.
-            final long startTime = System.currentTimeMillis();
+        commitLock.lock();
+        try {
+            final IndexWriter indexWriter = this.indexWriter;
+            if (indexWriter != null && isOpen()) {
+                attempted = true;
+
+                // Record commit start time.
+                startTime = System.currentTimeMillis();
 
-            try {
                 if (LOGGER.isDebugEnabled()) {
                     if (close) {
                         LOGGER.debug("Closing index: " + toString());
@@ -582,6 +768,7 @@ public class IndexShardWriterImpl implements IndexShardWriter {
                 // Perform commit or close.
                 if (close) {
                     indexWriter.close();
+                    this.indexWriter = null;
                 } else {
                     indexWriter.commit();
                 }
@@ -593,6 +780,7 @@ public class IndexShardWriterImpl implements IndexShardWriter {
                 lastCommitDocumentCount = lastDocumentCount - docCountBeforeCommit;
                 final long timeNow = System.currentTimeMillis();
                 lastCommitDurationMs = (timeNow - startTime);
+                IndexWriterMetrics.instance().recordCommit(lastCommitDurationMs);
 
                 // Output some debug so we know how long commits are taking.
                 if (LOGGER.isDebugEnabled()) {
@@ -602,27 +790,29 @@ public class IndexShardWriterImpl implements IndexShardWriter {
                 }
 
                 success = true;
+            }
+        } catch (final Exception e) {
+            LOGGER.error("flushOrClose()", e);
 
-            } catch (final Exception e) {
-                LOGGER.error("flushOrClose()", e);
-
-            } finally {
-                // Synchronise the DB entry.
-                if (close) {
-                    setStatus(IndexShardStatus.CLOSED);
-                } else {
-                    sync();
-                }
+        } finally {
+            commitLock.unlock();
+        }
 
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("flushOrClose() - lastCommitDocumentCount=" + lastCommitDocumentCount
-                            + ", lastCommitDuration=" + lastCommitDurationMs);
+        if (attempted) {
+            // Synchronise the DB entry.
+            if (close) {
+                setStatus(IndexShardStatus.CLOSED);
+            } else {
+                sync();
+            }
 
-                    final long duration = System.currentTimeMillis() - startTime;
-                    final String durationString = ModelStringUtil.formatDurationString(duration);
-                    LOGGER.debug("flushOrClose() - finish " + toString() + " " + durationString);
-                }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("flushOrClose() - lastCommitDocumentCount=" + lastCommitDocumentCount
+                        + ", lastCommitDuration=" + lastCommitDurationMs);
 
+                final long duration = System.currentTimeMillis() - startTime;
+                final String durationString = ModelStringUtil.formatDurationString(duration);
+                LOGGER.debug("flushOrClose() - finish " + toString() + " " + durationString);
             }
         }
 
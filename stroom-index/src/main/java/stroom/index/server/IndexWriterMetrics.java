@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.index.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node wide counts and durations of index shard commits and merges. Index
+ * shard writers are not Spring beans so there is a single instance per node
+ * that {@link IndexWriterStatistics} records periodically.
+ */
+public final class IndexWriterMetrics {
+    private static final IndexWriterMetrics INSTANCE = new IndexWriterMetrics();
+
+    private final AtomicLong commitCount = new AtomicLong();
+    private final AtomicLong commitTimeMs = new AtomicLong();
+    private final AtomicLong mergeCount = new AtomicLong();
+    private final AtomicLong mergeTimeMs = new AtomicLong();
+
+    private IndexWriterMetrics() {
+        // Singleton.
+    }
+
+    public static IndexWriterMetrics instance() {
+        return INSTANCE;
+    }
+
+    void recordCommit(final long durationMs) {
+        commitCount.incrementAndGet();
+        commitTimeMs.addAndGet(durationMs);
+    }
+
+    void recordMerge(final long durationMs) {
+        mergeCount.incrementAndGet();
+        mergeTimeMs.addAndGet(durationMs);
+    }
+
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    public long getCommitTimeMs() {
+        return commitTimeMs.get();
+    }
+
+    public long getMergeCount() {
+        return mergeCount.get();
+    }
+
+    public long getMergeTimeMs() {
+        return mergeTimeMs.get();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.index.server;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.springframework.stereotype.Component;
+
+import stroom.jobsystem.server.JobTrackedSchedule;
+import stroom.node.server.NodeCache;
+import stroom.statistics.common.StatisticEvent;
+import stroom.statistics.common.StatisticTag;
+import stroom.statistics.common.Statistics;
+import stroom.statistics.common.StatisticsFactory;
+import stroom.util.logging.StroomLogger;
+import stroom.util.spring.StroomFrequencySchedule;
+
+/**
+ * Records how many index shard commits and merges have happened on this node
+ * and how long they took on average.
+ */
+@Component
+public class IndexWriterStatistics {
+    private static final StroomLogger LOGGER = StroomLogger.getLogger(IndexWriterStatistics.class);
+
+    private final StatisticsFactory statisticsFactory;
+    private final NodeCache nodeCache;
+    private final IndexWriterMetrics metrics = IndexWriterMetrics.instance();
+
+    private long lastCommitCount;
+    private long lastCommitTimeMs;
+    private long lastMergeCount;
+    private long lastMergeTimeMs;
+
+    @Inject
+    public IndexWriterStatistics(final StatisticsFactory statisticsFactory, final NodeCache nodeCache) {
+        this.statisticsFactory = statisticsFactory;
+        this.nodeCache = nodeCache;
+    }
+
+    @StroomFrequencySchedule("1m")
+    @JobTrackedSchedule(jobName = "Index Writer Statistics", description = "Write statistics about the number and duration of index shard commits and merges")
+    public synchronized void writeStatistics() {
+        try {
+            final long commitCount = metrics.getCommitCount();
+            final long commitTimeMs = metrics.getCommitTimeMs();
+            final long mergeCount = metrics.getMergeCount();
+            final long mergeTimeMs = metrics.getMergeTimeMs();
+
+            final Statistics statistics = statisticsFactory.instance();
+            final List<StatisticTag> tags = Arrays
+                    .asList(new StatisticTag("Node", nodeCache.getDefaultNode().getName()));
+            final long now = System.currentTimeMillis();
+
+            putEvents(statistics, now, tags, "Index Commit", commitCount - lastCommitCount,
+                    commitTimeMs - lastCommitTimeMs);
+            putEvents(statistics, now, tags, "Index Merge", mergeCount - lastMergeCount, mergeTimeMs - lastMergeTimeMs);
+
+            lastCommitCount = commitCount;
+            lastCommitTimeMs = commitTimeMs;
+            lastMergeCount = mergeCount;
+            lastMergeTimeMs = mergeTimeMs;
+        } catch (final Throwable t) {
+            LOGGER.error(t.getMessage(), t);
+        }
+    }
+
+    private void putEvents(final Statistics statistics, final long now, final List<StatisticTag> tags,
+            final String prefix, final long count, final long timeMs) {
+        statistics.putEvent(new StatisticEvent(now, prefix + " Count", tags, count));
+        if (count > 0) {
+            statistics.putEvent(new StatisticEvent(now, prefix + " Latency ms", tags, (double) timeMs / count));
+        }
+    }
+}
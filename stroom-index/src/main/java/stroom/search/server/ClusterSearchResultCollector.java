@@ -106,6 +106,7 @@ public class ClusterSearchResultCollector implements SearchResultCollector, Clus
     public void destroy() {
         clusterResultCollectorCache.remove(id);
         task.terminate();
+        resultHandler.destroy();
     }
 
     @Override
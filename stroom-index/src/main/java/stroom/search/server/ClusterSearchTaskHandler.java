@@ -62,6 +62,11 @@ import java.util.concurrent.atomic.AtomicLong;
 public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask, NodeResult>, ErrorReceiver {
     private static final StroomLogger LOGGER = StroomLogger.getLogger(ClusterSearchTaskHandler.class);
     private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * How long to wait for an extraction task to finish before polling the
+     * producers again to pick up newly arrived stored data.
+     */
+    private static final long EXTRACTION_POLL_INTERVAL_MS = 200;
 
     /**
      * We don't want to collect more than 1 million doc's data into the queue by
@@ -78,6 +83,7 @@ public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask,
     private final TaskManager taskManager;
     private final IndexService indexService;
     private final DictionaryService dictionaryService;
+    private final DictionaryQueryCache dictionaryQueryCache;
     private final TaskMonitor taskMonitor;
     private final CoprocessorFactory coprocessorFactory;
     private final IndexShardSearchTaskExecutor indexShardSearchTaskExecutor;
@@ -94,11 +100,12 @@ public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask,
     private final AtomicBoolean sendingComplete = new AtomicBoolean();
     private Index index;
 
-    private TransferList<String[]> storedData;
+    private TransferList<StoredDataBatch> storedData;
 
     @Inject
     public ClusterSearchTaskHandler(final TaskManager taskManager, final IndexService indexService,
-                                    final DictionaryService dictionaryService, final TaskMonitor taskMonitor,
+                                    final DictionaryService dictionaryService,
+                                    final DictionaryQueryCache dictionaryQueryCache, final TaskMonitor taskMonitor,
                                     final CoprocessorFactory coprocessorFactory,
                                     final IndexShardSearchTaskExecutor indexShardSearchTaskExecutor,
                                     final IndexShardSearchTaskProperties indexShardSearchTaskProperties,
@@ -107,6 +114,7 @@ public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask,
         this.taskManager = taskManager;
         this.indexService = indexService;
         this.dictionaryService = dictionaryService;
+        this.dictionaryQueryCache = dictionaryQueryCache;
         this.taskMonitor = taskMonitor;
         this.coprocessorFactory = coprocessorFactory;
         this.indexShardSearchTaskExecutor = indexShardSearchTaskExecutor;
@@ -283,7 +291,7 @@ public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask,
                         SearchExpressionQuery query = null;
                         try {
                             final SearchExpressionQueryBuilder searchExpressionQueryBuilder = new SearchExpressionQueryBuilder(
-                                    dictionaryService, indexFieldsMap, maxBooleanClauseCount);
+                                    dictionaryService, dictionaryQueryCache, indexFieldsMap, maxBooleanClauseCount);
                             query = searchExpressionQueryBuilder.buildQuery(version, expression);
 
                             // Make sure the query was created successfully.
@@ -305,8 +313,9 @@ public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask,
                 };
 
                 // Create a transfer list to capture stored data from the index
-                // that can be used by coprocessors.
-                storedData = new TransferList<>(maxStoredDataQueueSize);
+                // that can be used by coprocessors. Data arrives in batches,
+                // some of them partial, so bound the list by rows.
+                storedData = new TransferList<>(maxStoredDataQueueSize, StoredDataBatch::size);
                 final AtomicLong hitCount = new AtomicLong();
 
                 // Update the configuration.
@@ -317,6 +326,7 @@ public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask,
 
                 // Update config for the index shard search task executor.
                 indexShardSearchTaskExecutor.setMaxThreads(indexShardSearchTaskProperties.getMaxThreads());
+                indexShardSearchTaskExecutor.setAdaptive(indexShardSearchTaskProperties.isAdaptiveThreads());
 
                 // Make a task producer that will create event data extraction
                 // tasks when requested by the executor.
@@ -340,6 +350,7 @@ public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask,
                     } else {
                         // Update config for extraction task executor.
                         extractionTaskExecutor.setMaxThreads(extractionTaskProperties.getMaxThreads());
+                        extractionTaskExecutor.setAdaptive(extractionTaskProperties.isAdaptiveThreads());
 
                         // Create an object to make event lists from raw index
                         // data.
@@ -350,7 +361,8 @@ public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask,
                         // extraction tasks when requested by the executor.
                         final ExtractionTaskProducer extractionTaskProducer = new ExtractionTaskProducer(task,
                                 streamMapCreator, storedData, extractionFieldIndexMap, extractionCoprocessorsMap, this,
-                                extractionTaskProperties.getMaxThreadsPerTask());
+                                extractionTaskProperties.getMaxThreadsPerTask(),
+                                extractionTaskProperties.getCoalesceWindow());
 
                         // Add the task producer to the task executor.
                         extractionTaskExecutor.addProducer(extractionTaskProducer);
@@ -358,9 +370,13 @@ public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask,
                             // Wait for completion.
                             while (!task.isTerminated() && (!indexShardSearchTaskProducer.isComplete()
                                     || !extractionTaskProducer.isComplete())) {
-                                // Keep trying to execute extraction tasks.
+                                // Keep trying to execute extraction tasks,
+                                // waking as soon as a running task finishes
+                                // rather than always sleeping out the poll
+                                // interval.
+                                final long completionCount = extractionTaskExecutor.getCompletionCount();
                                 extractionTaskExecutor.exec();
-                                ThreadUtil.sleep(1000);
+                                awaitExtraction(completionCount);
                             }
                         } finally {
                             // Remove the task producer from the task executor.
@@ -377,6 +393,15 @@ public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask,
         }
     }
 
+    private void awaitExtraction(final long completionCount) {
+        try {
+            extractionTaskExecutor.awaitCompletion(completionCount, EXTRACTION_POLL_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            // Ignore.
+        }
+    }
+
     private void transfer(final Map<DocRef, Set<Coprocessor<?>>> extractionCoprocessorsMap,
                           final IndexShardSearchTaskProducer indexShardSearchTaskProducer) {
         // If we aren't required to filter streams and aren't using pipelines to
@@ -384,7 +409,7 @@ public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask,
         // coprocessors.
         final Set<Coprocessor<?>> coprocessors = extractionCoprocessorsMap.get(null);
         boolean complete = false;
-        List<String[]> list = null;
+        List<StoredDataBatch> list = null;
 
         while (!complete && !task.isTerminated()) {
             complete = indexShardSearchTaskProducer.isComplete();
@@ -409,13 +434,15 @@ public class ClusterSearchTaskHandler implements TaskHandler<ClusterSearchTask,
                 // extracting data. In this case pass
                 // raw values to the set of coprocessors that require raw values
                 // with no extraction.
-                for (final String[] values : list) {
-                    if (task.isTerminated()) {
-                        throw new TerminatedException();
-                    }
+                for (final StoredDataBatch batch : list) {
+                    for (int row = 0; row < batch.size(); row++) {
+                        if (task.isTerminated()) {
+                            throw new TerminatedException();
+                        }
 
-                    for (final Coprocessor<?> coprocessor : coprocessors) {
-                        coprocessor.receive(values);
+                        for (final Coprocessor<?> coprocessor : coprocessors) {
+                            coprocessor.receive(batch, row);
+                        }
                     }
                 }
             }
@@ -20,4 +20,13 @@ import stroom.query.shared.CoprocessorSettings;
 
 public interface Coprocessor<S extends CoprocessorSettings> extends PayloadFactory {
     void receive(String[] values);
+
+    /**
+     * Receive a single row of a batch of stored values. By default the row is
+     * turned into a string array; coprocessors that only need a few columns
+     * can read them from the batch directly instead.
+     */
+    default void receive(final StoredDataBatch batch, final int row) {
+        receive(batch.getValues(row));
+    }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Version;
+import org.apache.lucene.util.automaton.Automaton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import stroom.cache.AbstractCacheBean;
+import stroom.dictionary.shared.Dictionary;
+import stroom.entity.server.event.EntityEvent;
+import stroom.entity.server.event.EntityEventHandler;
+import stroom.entity.shared.DocRef;
+import stroom.query.shared.IndexField;
+import stroom.util.logging.StroomLogger;
+import stroom.util.shared.ModelStringUtil;
+import net.sf.ehcache.CacheManager;
+
+/**
+ * Holds the parts of the LUCENE queries built for recently used dictionaries
+ * so that large dictionaries are only compiled once per version rather than
+ * for every search.
+ */
+@Component
+@EntityEventHandler(type = Dictionary.ENTITY_TYPE)
+public class DictionaryQueryCache extends AbstractCacheBean<DictionaryQueryCache.Key, DictionaryQueryCache.CachedQuery>
+        implements EntityEvent.Handler {
+    private static final StroomLogger LOGGER = StroomLogger.getLogger(DictionaryQueryCache.class);
+
+    private static final int MAX_CACHE_ENTRIES = 1000;
+    private static final int DEFAULT_MAX_ENTRIES = 100;
+
+    @Inject
+    public DictionaryQueryCache(final CacheManager cacheManager) {
+        super(cacheManager, "Dictionary Query Cache", MAX_CACHE_ENTRIES);
+        setMaxWeight(DEFAULT_MAX_ENTRIES);
+        setMaxIdleTime(10, TimeUnit.MINUTES);
+    }
+
+    @Override
+    protected CachedQuery create(final Key key) {
+        return key.load();
+    }
+
+    /**
+     * Only remove the queries built for the dictionary that changed rather
+     * than everything.
+     */
+    @Override
+    public void onChange(final EntityEvent event) {
+        final DocRef docRef = event.getDocRef();
+        if (docRef == null || docRef.getUuid() == null) {
+            clear();
+        } else {
+            for (final Key key : getKeys()) {
+                if (docRef.getUuid().equals(key.uuid)) {
+                    remove(key);
+                }
+            }
+        }
+    }
+
+    @Value("#{propertyConfigurer.getProperty('stroom.search.dictionaryQueryCache.maxEntries')}")
+    public void setMaxEntries(final String maxEntries) {
+        try {
+            final Long value = ModelStringUtil.parseNumberString(maxEntries);
+            if (value != null && value > 0) {
+                setMaxWeight(value);
+            }
+        } catch (final NumberFormatException e) {
+            LOGGER.error(e, e);
+        }
+    }
+
+    @Value("#{propertyConfigurer.getProperty('stroom.search.dictionaryQueryCache.timeToIdle')}")
+    public void setTimeToIdle(final String timeToIdle) {
+        try {
+            final Long value = ModelStringUtil.parseDurationString(timeToIdle);
+            if (value != null && value > 0) {
+                setMaxIdleTime(value, TimeUnit.MILLISECONDS);
+            }
+        } catch (final NumberFormatException e) {
+            LOGGER.error(e, e);
+        }
+    }
+
+    static class Key {
+        private final String uuid;
+        private final byte version;
+        private final int dataHash;
+        private final String fieldName;
+        private final IndexField.AnalyzerType analyzerType;
+        private final boolean caseSensitive;
+        private final boolean termPositions;
+        private final Version matchVersion;
+        private final int hashCode;
+
+        // Builds the value on a cache miss. This is not part of the key and is
+        // dropped once used so cached keys don't hold on to the search that
+        // created them.
+        private volatile Supplier<CachedQuery> loader;
+
+        Key(final Dictionary dictionary, final IndexField indexField, final Version matchVersion,
+                final Supplier<CachedQuery> loader) {
+            this.uuid = dictionary.getUuid();
+            this.version = dictionary.getVersion();
+            // The version wraps so also check the content has not changed.
+            this.dataHash = dictionary.getData() == null ? 0 : dictionary.getData().hashCode();
+            this.fieldName = indexField.getFieldName();
+            this.analyzerType = indexField.getAnalyzerType();
+            this.caseSensitive = indexField.isCaseSensitive();
+            this.termPositions = indexField.isTermPositions();
+            this.matchVersion = matchVersion;
+            this.loader = loader;
+            this.hashCode = Objects.hash(uuid, version, dataHash, fieldName, analyzerType, caseSensitive,
+                    termPositions, matchVersion);
+        }
+
+        private CachedQuery load() {
+            final Supplier<CachedQuery> loader = this.loader;
+            this.loader = null;
+            if (loader == null) {
+                throw new IllegalStateException("Dictionary query has already been loaded");
+            }
+            return loader.get();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return version == key.version && dataHash == key.dataHash && caseSensitive == key.caseSensitive
+                    && termPositions == key.termPositions && Objects.equals(uuid, key.uuid)
+                    && Objects.equals(fieldName, key.fieldName) && analyzerType == key.analyzerType
+                    && matchVersion == key.matchVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * The compiled parts of a dictionary query. Queries get modified as they
+     * are combined so each search builds its own top level query around these
+     * parts. The line queries and the automaton are never modified once built
+     * so they are safe to share between searches.
+     */
+    static class CachedQuery {
+        private final List<Query> lineQueries;
+        private final Automaton termAutomaton;
+        private final Set<String> terms;
+
+        CachedQuery(final List<Query> lineQueries, final Automaton termAutomaton, final Set<String> terms) {
+            this.lineQueries = Collections.unmodifiableList(lineQueries);
+            this.termAutomaton = termAutomaton;
+            this.terms = Collections.unmodifiableSet(terms);
+        }
+
+        List<Query> getLineQueries() {
+            return lineQueries;
+        }
+
+        Automaton getTermAutomaton() {
+            return termAutomaton;
+        }
+
+        Set<String> getTerms() {
+            return terms;
+        }
+    }
+}
@@ -56,20 +56,34 @@ public class EventCoprocessor implements Coprocessor<EventCoprocessorSettings> {
         final Long longEventId = getLong(values, fieldIndexes[1]);
 
         if (longStreamId != null && longEventId != null) {
-            final EventRef ref = new EventRef(longStreamId, longEventId);
+            add(longStreamId, longEventId);
+        }
+    }
 
-            eventRefsLock.lock();
-            try {
-                if (eventRefs == null) {
-                    eventRefs = new EventRefs(minEvent, maxEvent, maxStreams, maxEvents, maxEventsPerStream);
-                }
+    @Override
+    public void receive(final StoredDataBatch batch, final int row) {
+        // Only the ids are needed so read them straight from the batch.
+        final long streamId = batch.getStreamId(row);
+        final long eventId = batch.getEventId(row);
+        if (streamId >= 0 && eventId >= 0) {
+            add(streamId, eventId);
+        }
+    }
 
-                eventRefs.add(ref);
-                this.maxEvent = eventRefs.getMaxEvent();
+    private void add(final long streamId, final long eventId) {
+        final EventRef ref = new EventRef(streamId, eventId);
 
-            } finally {
-                eventRefsLock.unlock();
+        eventRefsLock.lock();
+        try {
+            if (eventRefs == null) {
+                eventRefs = new EventRefs(minEvent, maxEvent, maxStreams, maxEvents, maxEventsPerStream);
             }
+
+            eventRefs.add(ref);
+            this.maxEvent = eventRefs.getMaxEvent();
+
+        } finally {
+            eventRefsLock.unlock();
         }
     }
 
@@ -148,4 +148,9 @@ public class EventSearchResultHandler implements ResultHandler {
     public ResultStore getResultStore(final String componentId) {
         return null;
     }
+
+    @Override
+    public void destroy() {
+        // Nothing to destroy.
+    }
 }
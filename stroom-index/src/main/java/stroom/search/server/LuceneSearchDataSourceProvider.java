@@ -60,6 +60,7 @@ public class LuceneSearchDataSourceProvider implements SearchDataSourceProvider
 
     private final IndexService indexService;
     private final DictionaryService dictionaryService;
+    private final DictionaryQueryCache dictionaryQueryCache;
     private final NodeCache nodeCache;
     private final TaskManager taskManager;
     private final FeedService feedService;
@@ -69,10 +70,11 @@ public class LuceneSearchDataSourceProvider implements SearchDataSourceProvider
 
     @Inject
     public LuceneSearchDataSourceProvider(final IndexService indexService, final DictionaryService dictionaryService,
-            final NodeCache nodeCache, final TaskManager taskManager, final FeedService feedService,
-            final ClusterResultCollectorCache clusterResultCollectorCache) {
+            final DictionaryQueryCache dictionaryQueryCache, final NodeCache nodeCache, final TaskManager taskManager,
+            final FeedService feedService, final ClusterResultCollectorCache clusterResultCollectorCache) {
         this.indexService = indexService;
         this.dictionaryService = dictionaryService;
+        this.dictionaryQueryCache = dictionaryQueryCache;
         this.nodeCache = nodeCache;
         this.taskManager = taskManager;
         this.feedService = feedService;
@@ -126,7 +128,7 @@ public class LuceneSearchDataSourceProvider implements SearchDataSourceProvider
             final IndexFieldsMap indexFieldsMap = new IndexFieldsMap(index.getIndexFieldsObject());
             // Parse the query.
             final SearchExpressionQueryBuilder searchExpressionQueryBuilder = new SearchExpressionQueryBuilder(
-                    dictionaryService, indexFieldsMap, maxBooleanClauseCount);
+                    dictionaryService, dictionaryQueryCache, indexFieldsMap, maxBooleanClauseCount);
             final SearchExpressionQuery query = searchExpressionQueryBuilder
                     .buildQuery(LuceneVersionUtil.CURRENT_LUCENE_VERSION, expression);
 
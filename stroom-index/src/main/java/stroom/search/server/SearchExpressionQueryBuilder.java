@@ -35,17 +35,25 @@ import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
 import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.AutomatonQuery;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MultiTermQuery;
 import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Version;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.BasicAutomata;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 /**
@@ -59,11 +67,14 @@ public class SearchExpressionQueryBuilder {
     private static final Pattern MULTIPLE_SPACE = Pattern.compile("[ ]+");
     private final IndexFieldsMap indexFieldsMap;
     private final DictionaryService dictionaryService;
+    private final DictionaryQueryCache dictionaryQueryCache;
     private final int maxBooleanClauseCount;
 
-    public SearchExpressionQueryBuilder(final DictionaryService dictionaryService, final IndexFieldsMap indexFieldsMap,
+    public SearchExpressionQueryBuilder(final DictionaryService dictionaryService,
+            final DictionaryQueryCache dictionaryQueryCache, final IndexFieldsMap indexFieldsMap,
             final int maxBooleanClauseCount) {
         this.dictionaryService = dictionaryService;
+        this.dictionaryQueryCache = dictionaryQueryCache;
         this.indexFieldsMap = indexFieldsMap;
         this.maxBooleanClauseCount = maxBooleanClauseCount;
     }
@@ -382,45 +393,87 @@ public class SearchExpressionQueryBuilder {
 
     private Query getDictionary(final String fieldName, final DocRef docRef,
             final IndexField indexField, final Version matchVersion, final Set<String> terms) {
-        final String[] wordArr = loadWords(docRef);
-        if (wordArr != null) {
-            final BooleanQuery dictionaryQuery = new BooleanQuery();
-            for (final String val : wordArr) {
-                Query query = null;
-
-                if (indexField.getFieldType().isNumeric()) {
-                    query = getNumericIn(fieldName, val);
-                } else if (IndexFieldType.DATE_FIELD.equals(indexField.getFieldType())) {
-                    query = getDateIn(fieldName, val);
-                } else {
-                    query = getSubQuery(matchVersion, indexField, val, terms);
-                }
+        final Dictionary dictionary = loadDictionary(docRef);
+        final String words = dictionary.getData();
+        if (words == null) {
+            return null;
+        }
 
-                if (query != null) {
-                    // Dictionary terms on one line must all exist in the
-                    // matching documents so change to must.
-                    query = modifyOccurance(query, Occur.MUST);
-                    dictionaryQuery.add(query, Occur.SHOULD);
-                }
+        // Dictionaries are often large and used by many searches so reuse the
+        // parts of the query built last time for this version of the
+        // dictionary.
+        final Supplier<DictionaryQueryCache.CachedQuery> loader = () -> compileDictionary(fieldName,
+                words.trim().split("\n"), indexField, matchVersion);
+        final DictionaryQueryCache.CachedQuery cachedQuery;
+        if (dictionaryQueryCache != null) {
+            cachedQuery = dictionaryQueryCache
+                    .get(new DictionaryQueryCache.Key(dictionary, indexField, matchVersion, loader));
+        } else {
+            cachedQuery = loader.get();
+        }
+        terms.addAll(cachedQuery.getTerms());
+
+        // Queries get modified as they are combined so build a new top level
+        // query around the shared parts.
+        final BooleanQuery dictionaryQuery = new BooleanQuery();
+        for (final Query lineQuery : cachedQuery.getLineQueries()) {
+            dictionaryQuery.add(lineQuery, Occur.SHOULD);
+        }
+        if (cachedQuery.getTermAutomaton() != null) {
+            final AutomatonQuery automatonQuery = new AutomatonQuery(new Term(fieldName),
+                    cachedQuery.getTermAutomaton());
+            // We don't score hits so just intersect with the term dictionary.
+            automatonQuery.setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE);
+            dictionaryQuery.add(automatonQuery, Occur.SHOULD);
+        }
+        return dictionaryQuery;
+    }
+
+    private DictionaryQueryCache.CachedQuery compileDictionary(final String fieldName, final String[] wordArr,
+            final IndexField indexField, final Version matchVersion) {
+        final List<Query> lineQueries = new ArrayList<>();
+        final Set<String> terms = new HashSet<>();
+        // Lines that resolve to a single term are matched with one automaton
+        // rather than a boolean clause each.
+        final SortedSet<BytesRef> singleTerms = new TreeSet<>();
+
+        for (final String val : wordArr) {
+            Query query = null;
+
+            if (indexField.getFieldType().isNumeric()) {
+                query = getNumericIn(fieldName, val);
+            } else if (IndexFieldType.DATE_FIELD.equals(indexField.getFieldType())) {
+                query = getDateIn(fieldName, val);
+            } else {
+                query = getSubQuery(matchVersion, indexField, val, terms);
+            }
+
+            if (query instanceof TermQuery) {
+                singleTerms.add(((TermQuery) query).getTerm().bytes());
+            } else if (query != null) {
+                // Dictionary terms on one line must all exist in the
+                // matching documents so change to must.
+                query = modifyOccurance(query, Occur.MUST);
+                lineQueries.add(query);
             }
-            return dictionaryQuery;
         }
 
-        return null;
+        Automaton termAutomaton = null;
+        if (singleTerms.size() == 1) {
+            lineQueries.add(new TermQuery(new Term(fieldName, singleTerms.first())));
+        } else if (singleTerms.size() > 1) {
+            termAutomaton = BasicAutomata.makeStringUnion(singleTerms);
+        }
+
+        return new DictionaryQueryCache.CachedQuery(lineQueries, termAutomaton, terms);
     }
 
-    private String[] loadWords(final DocRef docRef) {
+    private Dictionary loadDictionary(final DocRef docRef) {
         final Dictionary dictionary = dictionaryService.loadByUuid(docRef.getUuid());
         if (dictionary == null) {
             throw new SearchException("Dictionary \"" + docRef + "\" not found");
         }
-
-        final String words = dictionary.getData();
-        if (words != null) {
-            return words.trim().split("\n");
-        }
-
-        return null;
+        return dictionary;
     }
 
     private Occur getOccur(final ExpressionOperator operator) {
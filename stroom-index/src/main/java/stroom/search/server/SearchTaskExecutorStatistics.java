@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.springframework.stereotype.Component;
+
+import stroom.jobsystem.server.JobTrackedSchedule;
+import stroom.node.server.NodeCache;
+import stroom.search.server.extraction.ExtractionTaskExecutor;
+import stroom.search.server.shard.IndexShardSearchTaskExecutor;
+import stroom.search.server.taskqueue.TaskExecutor;
+import stroom.statistics.common.StatisticEvent;
+import stroom.statistics.common.StatisticTag;
+import stroom.statistics.common.Statistics;
+import stroom.statistics.common.StatisticsFactory;
+import stroom.util.logging.StroomLogger;
+import stroom.util.spring.StroomFrequencySchedule;
+
+/**
+ * Records the current thread limits chosen for the search task executors so
+ * that adaptive concurrency can be tuned against observed throughput.
+ */
+@Component
+public class SearchTaskExecutorStatistics {
+    private static final StroomLogger LOGGER = StroomLogger.getLogger(SearchTaskExecutorStatistics.class);
+
+    private final IndexShardSearchTaskExecutor indexShardSearchTaskExecutor;
+    private final ExtractionTaskExecutor extractionTaskExecutor;
+    private final StatisticsFactory statisticsFactory;
+    private final NodeCache nodeCache;
+
+    @Inject
+    public SearchTaskExecutorStatistics(final IndexShardSearchTaskExecutor indexShardSearchTaskExecutor,
+            final ExtractionTaskExecutor extractionTaskExecutor, final StatisticsFactory statisticsFactory,
+            final NodeCache nodeCache) {
+        this.indexShardSearchTaskExecutor = indexShardSearchTaskExecutor;
+        this.extractionTaskExecutor = extractionTaskExecutor;
+        this.statisticsFactory = statisticsFactory;
+        this.nodeCache = nodeCache;
+    }
+
+    @StroomFrequencySchedule("1m")
+    @JobTrackedSchedule(jobName = "Search Thread Statistics", description = "Write statistics about the number of threads used to search index shards and extract data")
+    public void writeStatistics() {
+        try {
+            final Statistics statistics = statisticsFactory.instance();
+            final List<StatisticTag> tags = Arrays
+                    .asList(new StatisticTag("Node", nodeCache.getDefaultNode().getName()));
+            final long now = System.currentTimeMillis();
+
+            putEvents(statistics, now, tags, "Search Shard", indexShardSearchTaskExecutor);
+            putEvents(statistics, now, tags, "Search Extraction", extractionTaskExecutor);
+        } catch (final Throwable t) {
+            LOGGER.error(t.getMessage(), t);
+        }
+    }
+
+    private void putEvents(final Statistics statistics, final long now, final List<StatisticTag> tags,
+            final String prefix, final TaskExecutor taskExecutor) {
+        // Value type events as none of these are additive.
+        statistics.putEvent(new StatisticEvent(now, prefix + " Thread Limit", tags,
+                (double) taskExecutor.getThreadLimit()));
+        statistics.putEvent(new StatisticEvent(now, prefix + " Active Threads", tags,
+                (double) taskExecutor.getActiveThreads()));
+        final double latencyMs = taskExecutor.getLatencyMs();
+        if (latencyMs >= 0) {
+            statistics.putEvent(new StatisticEvent(now, prefix + " Task Latency ms", tags, latencyMs));
+        }
+    }
+}
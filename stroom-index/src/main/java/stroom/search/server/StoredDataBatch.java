@@ -0,0 +1,236 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of stored field values read from an index shard, held by column
+ * rather than as a string array per hit. Stream and event ids are parsed once
+ * into primitive long columns and every other field is dictionary encoded so
+ * that repeated values share a single string. Rows are written in place with
+ * {@link #startRow()}, {@link #set(int, String)} and {@link #endRow()} and the
+ * whole batch is handed on by reference.
+ */
+public class StoredDataBatch {
+    /**
+     * The number of rows a shard reader puts in a batch before handing it on.
+     */
+    public static final int DEFAULT_MAX_ROWS = 1000;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NULL = -1;
+
+    private static class Column {
+        private final List<String> dictionary = new ArrayList<>();
+        private final Map<String, Integer> lookup = new HashMap<>();
+        private int[] codes;
+
+        Column(final int capacity) {
+            codes = new int[capacity];
+        }
+
+        void set(final int row, final String value) {
+            Integer code = lookup.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                lookup.put(value, code);
+            }
+            codes[row] = code;
+        }
+
+        String get(final int row) {
+            final int code = codes[row];
+            if (code == NULL) {
+                return null;
+            }
+            return dictionary.get(code);
+        }
+    }
+
+    private final int fieldCount;
+    private final int streamIdIndex;
+    private final int eventIdIndex;
+    private final int maxRows;
+    private final Column[] columns;
+
+    private long[] streamIds;
+    private long[] eventIds;
+    private int capacity;
+    private int size;
+    private boolean rowHasValues;
+
+    /**
+     * @param fieldCount
+     *            The number of stored fields in each row.
+     * @param streamIdIndex
+     *            The position of the stream id field or -1 if it isn't stored.
+     * @param eventIdIndex
+     *            The position of the event id field or -1 if it isn't stored.
+     * @param maxRows
+     *            The number of rows after which the batch is full.
+     */
+    public StoredDataBatch(final int fieldCount, final int streamIdIndex, final int eventIdIndex,
+            final int maxRows) {
+        this.fieldCount = fieldCount;
+        this.streamIdIndex = streamIdIndex;
+        this.eventIdIndex = eventIdIndex;
+        this.maxRows = maxRows;
+
+        capacity = Math.max(1, Math.min(INITIAL_CAPACITY, maxRows));
+        streamIds = new long[capacity];
+        eventIds = new long[capacity];
+        columns = new Column[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            if (i != streamIdIndex && i != eventIdIndex) {
+                columns[i] = new Column(capacity);
+            }
+        }
+    }
+
+    public void startRow() {
+        if (size == capacity) {
+            grow();
+        }
+        streamIds[size] = NULL;
+        eventIds[size] = NULL;
+        for (final Column column : columns) {
+            if (column != null) {
+                column.codes[size] = NULL;
+            }
+        }
+        rowHasValues = false;
+    }
+
+    /**
+     * Set a field value in the row being written. Stream and event id values
+     * that are not numbers are treated as missing.
+     */
+    public void set(final int fieldIndex, final String value) {
+        if (value == null) {
+            return;
+        }
+
+        if (fieldIndex == streamIdIndex) {
+            streamIds[size] = parseId(value);
+            rowHasValues |= streamIds[size] != NULL;
+        } else if (fieldIndex == eventIdIndex) {
+            eventIds[size] = parseId(value);
+            rowHasValues |= eventIds[size] != NULL;
+        } else {
+            columns[fieldIndex].set(size, value);
+            rowHasValues = true;
+        }
+    }
+
+    /**
+     * Finish the row being written. Rows without any values are discarded.
+     *
+     * @return True if the row was kept.
+     */
+    public boolean endRow() {
+        if (!rowHasValues) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    public boolean isFull() {
+        return size >= maxRows;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return The stream id for the row or -1 if it has none.
+     */
+    public long getStreamId(final int row) {
+        return streamIds[row];
+    }
+
+    /**
+     * @return The event id for the row or -1 if it has none.
+     */
+    public long getEventId(final int row) {
+        return eventIds[row];
+    }
+
+    public String getValue(final int row, final int fieldIndex) {
+        if (fieldIndex == streamIdIndex) {
+            return idToString(streamIds[row]);
+        } else if (fieldIndex == eventIdIndex) {
+            return idToString(eventIds[row]);
+        }
+        return columns[fieldIndex].get(row);
+    }
+
+    /**
+     * Build the string array form of a row for consumers that need it.
+     */
+    public String[] getValues(final int row) {
+        final String[] values = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            values[i] = getValue(row, i);
+        }
+        return values;
+    }
+
+    private void grow() {
+        capacity = Math.min(maxRows, capacity * 2);
+        if (capacity <= size) {
+            capacity = size + 1;
+        }
+        streamIds = Arrays.copyOf(streamIds, capacity);
+        eventIds = Arrays.copyOf(eventIds, capacity);
+        for (final Column column : columns) {
+            if (column != null) {
+                column.codes = Arrays.copyOf(column.codes, capacity);
+            }
+        }
+    }
+
+    private long parseId(final String value) {
+        try {
+            final long id = Long.parseLong(value);
+            if (id >= 0) {
+                return id;
+            }
+        } catch (final NumberFormatException e) {
+            // Ignore.
+        }
+        return NULL;
+    }
+
+    private String idToString(final long id) {
+        if (id == NULL) {
+            return null;
+        }
+        return String.valueOf(id);
+    }
+}
@@ -22,21 +22,19 @@ import stroom.dashboard.expression.FieldIndexMap;
 import stroom.query.CompiledDepths;
 import stroom.query.CompiledFields;
 import stroom.query.Item;
+import stroom.query.ItemAggregator;
 import stroom.query.ItemMapper;
-import stroom.query.ItemPartitioner;
 import stroom.query.Payload;
 import stroom.query.TableCoprocessorSettings;
 import stroom.query.TablePayload;
 import stroom.query.shared.Field;
 import stroom.query.shared.IndexFieldsMap;
 import stroom.query.shared.TableSettings;
-import stroom.mapreduce.BlockingPairQueue;
-import stroom.mapreduce.PairQueue;
 import stroom.mapreduce.UnsafePairQueue;
 import stroom.util.task.TaskMonitor;
 
 public class TableCoprocessor implements Coprocessor<TableCoprocessorSettings> {
-    private final PairQueue<String, Item> queue;
+    private final ItemAggregator aggregator;
     private final ItemMapper mapper;
 
     private final CompiledFields compiledFields;
@@ -50,8 +48,11 @@ public class TableCoprocessor implements Coprocessor<TableCoprocessorSettings> {
         compiledDepths = new CompiledDepths(fields, tableSettings.showDetail());
         compiledFields = new CompiledFields(indexFieldsMap, fields, fieldIndexMap);
 
-        queue = new BlockingPairQueue<>(taskMonitor);
-        mapper = new ItemMapper(queue, compiledFields, compiledDepths.getMaxDepth(), compiledDepths.getMaxGroupDepth());
+        // Combine rows into their groups as they arrive rather than queuing
+        // every row until the next payload is created.
+        aggregator = new ItemAggregator(compiledDepths.getDepths(), compiledDepths.getMaxDepth(), taskMonitor);
+        mapper = new ItemMapper(aggregator, compiledFields, compiledDepths.getMaxDepth(),
+                compiledDepths.getMaxGroupDepth());
     }
 
     @Override
@@ -61,21 +62,11 @@ public class TableCoprocessor implements Coprocessor<TableCoprocessorSettings> {
 
     @Override
     public Payload createPayload() {
-        final UnsafePairQueue<String, Item> outputQueue = new UnsafePairQueue<>();
-
-        // Create a partitioner to perform result reduction if needed.
-        final ItemPartitioner partitioner = new ItemPartitioner(compiledDepths.getDepths(),
-                compiledDepths.getMaxDepth());
-        partitioner.setOutputCollector(outputQueue);
-
-        // Partition the data prior to forwarding to the target node.
-        partitioner.read(queue);
-
-        // Perform partitioning.
-        partitioner.partition();
+        // Take the groups combined since the last payload was created.
+        final UnsafePairQueue<String, Item> outputQueue = aggregator.take();
 
         // Don't create a payload if the queue is empty.
-        if (outputQueue.size() == 0) {
+        if (outputQueue == null || outputQueue.size() == 0) {
             return null;
         }
 
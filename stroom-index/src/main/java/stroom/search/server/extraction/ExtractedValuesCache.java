@@ -0,0 +1,311 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server.extraction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.springframework.stereotype.Component;
+
+import stroom.entity.server.event.EntityEvent;
+import stroom.entity.server.event.EntityEventBus;
+import stroom.entity.shared.Clearable;
+import stroom.pipeline.shared.PipelineEntity;
+import stroom.pipeline.shared.TextConverter;
+import stroom.pipeline.shared.XSLT;
+import stroom.query.shared.IndexConstants;
+import stroom.util.collections.LongBitmap;
+import stroom.util.collections.LongBitmap.LongIterator;
+import stroom.util.logging.StroomLogger;
+import stroom.util.shared.EqualsBuilder;
+import stroom.util.shared.HashCodeBuilder;
+
+/**
+ * A node level LRU cache of the records that extraction pipelines produced for
+ * individual events so that re-running a search doesn't have to decode and
+ * transform the same events again. Records are attributed to events using the
+ * EventId value that extraction pipelines output. The cache is limited to a
+ * number of bytes and is disabled if the limit is 0.
+ * <p>
+ * Entries are keyed by pipeline version but translations are edited
+ * independently of pipelines so the whole cache is cleared whenever a
+ * pipeline, XSLT or text converter changes.
+ */
+@Component
+public class ExtractedValuesCache implements Clearable, EntityEvent.Handler {
+    private static final StroomLogger LOGGER = StroomLogger.getLogger(ExtractedValuesCache.class);
+
+    // Rough per object overheads used to estimate the memory used by records.
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int RECORD_OVERHEAD = 48;
+    private static final int VALUE_OVERHEAD = 48;
+
+    private static class Key {
+        private final String pipelineUuid;
+        private final byte pipelineVersion;
+        private final long streamId;
+        private final long eventId;
+        private final int hashCode;
+
+        Key(final PipelineEntity pipelineEntity, final long streamId, final long eventId) {
+            this.pipelineUuid = pipelineEntity.getUuid();
+            this.pipelineVersion = pipelineEntity.getVersion();
+            this.streamId = streamId;
+            this.eventId = eventId;
+
+            final HashCodeBuilder builder = new HashCodeBuilder();
+            builder.append(pipelineUuid);
+            builder.append(pipelineVersion);
+            builder.append(streamId);
+            builder.append(eventId);
+            hashCode = builder.toHashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this) {
+                return true;
+            } else if (!(o instanceof Key)) {
+                return false;
+            }
+
+            final Key key = (Key) o;
+            final EqualsBuilder builder = new EqualsBuilder();
+            builder.append(pipelineUuid, key.pipelineUuid);
+            builder.append(pipelineVersion, key.pipelineVersion);
+            builder.append(streamId, key.streamId);
+            builder.append(eventId, key.eventId);
+            return builder.isEquals();
+        }
+    }
+
+    /**
+     * The name value pairs of a single record output by an extraction
+     * pipeline.
+     */
+    public static class Record {
+        private final String[] names;
+        private final String[] values;
+
+        public Record(final String[] names, final String[] values) {
+            this.names = names;
+            this.values = values;
+        }
+
+        public String[] getNames() {
+            return names;
+        }
+
+        public String[] getValues() {
+            return values;
+        }
+
+        long estimateSize() {
+            long size = RECORD_OVERHEAD;
+            for (int i = 0; i < names.length; i++) {
+                size += VALUE_OVERHEAD + 2L * (names[i].length() + values[i].length());
+            }
+            return size;
+        }
+    }
+
+    private static class Entry {
+        private final List<Record> records;
+        private final long size;
+
+        Entry(final List<Record> records) {
+            this.records = records;
+            long size = ENTRY_OVERHEAD;
+            for (final Record record : records) {
+                size += record.estimateSize();
+            }
+            this.size = size;
+        }
+    }
+
+    /**
+     * Collects the records produced by one extraction pipeline for one stream
+     * so that they can be added to the cache once extraction has completed
+     * successfully.
+     */
+    public class Collector {
+        private final PipelineEntity pipelineEntity;
+        private final long streamId;
+        private final Map<Long, List<Record>> recordsByEvent = new HashMap<>();
+        private boolean attributable = true;
+
+        Collector(final PipelineEntity pipelineEntity, final long streamId) {
+            this.pipelineEntity = pipelineEntity;
+            this.streamId = streamId;
+        }
+
+        public void record(final Record record) {
+            Long eventId = null;
+            final String[] names = record.getNames();
+            for (int i = 0; i < names.length && eventId == null; i++) {
+                if (IndexConstants.EVENT_ID.equals(names[i])) {
+                    try {
+                        eventId = Long.parseLong(record.getValues()[i]);
+                    } catch (final NumberFormatException e) {
+                        // Ignore.
+                    }
+                }
+            }
+
+            if (eventId == null) {
+                // We can't tell which event this record came from so we can't
+                // cache anything for this stream.
+                attributable = false;
+            } else if (attributable) {
+                recordsByEvent.computeIfAbsent(eventId, k -> new ArrayList<>()).add(record);
+            }
+        }
+
+        /**
+         * Add the collected records to the cache. Events that didn't produce
+         * any records are cached as such.
+         */
+        public void commit(final LongBitmap eventIds) {
+            if (attributable) {
+                final LongIterator iterator = eventIds.iterator();
+                while (iterator.hasNext()) {
+                    final long eventId = iterator.next();
+                    List<Record> records = recordsByEvent.get(eventId);
+                    if (records == null) {
+                        records = new ArrayList<>(0);
+                    }
+                    put(new Key(pipelineEntity, streamId, eventId), new Entry(records));
+                }
+            }
+        }
+    }
+
+    private final ExtractionTaskProperties extractionTaskProperties;
+    private final LinkedHashMap<Key, Entry> map = new LinkedHashMap<>(16, 0.75F, true);
+    // Read without the lock to check whether the cache needs clearing.
+    private volatile long size;
+
+    @Inject
+    public ExtractedValuesCache(final ExtractionTaskProperties extractionTaskProperties,
+            final EntityEventBus entityEventBus) {
+        this.extractionTaskProperties = extractionTaskProperties;
+
+        try {
+            entityEventBus.addHandler(this, PipelineEntity.ENTITY_TYPE);
+            entityEventBus.addHandler(this, XSLT.ENTITY_TYPE);
+            entityEventBus.addHandler(this, TextConverter.ENTITY_TYPE);
+        } catch (final Exception e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return A collector for the records a pipeline produces for a stream or
+     *         null if the cache is disabled.
+     */
+    public Collector createCollector(final PipelineEntity pipelineEntity, final long streamId) {
+        if (getMaxSize() <= 0) {
+            return null;
+        }
+        return new Collector(pipelineEntity, streamId);
+    }
+
+    /**
+     * Get the cached records for all of the supplied events.
+     *
+     * @return The records for every event in order or null if any of the
+     *         events are not cached.
+     */
+    public List<Record> get(final PipelineEntity pipelineEntity, final long streamId, final LongBitmap eventIds) {
+        if (getMaxSize() <= 0) {
+            return null;
+        }
+
+        final List<Record> records = new ArrayList<>();
+        synchronized (map) {
+            final LongIterator iterator = eventIds.iterator();
+            while (iterator.hasNext()) {
+                final Entry entry = map.get(new Key(pipelineEntity, streamId, iterator.next()));
+                if (entry == null) {
+                    return null;
+                }
+                records.addAll(entry.records);
+            }
+        }
+        return records;
+    }
+
+    private void put(final Key key, final Entry entry) {
+        final long maxSize = getMaxSize();
+        if (entry.size > maxSize) {
+            return;
+        }
+
+        synchronized (map) {
+            final Entry previous = map.put(key, entry);
+            if (previous != null) {
+                size -= previous.size;
+            }
+            size += entry.size;
+
+            // Evict the least recently used entries until we are within
+            // budget.
+            final Iterator<Entry> iterator = map.values().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                size -= iterator.next().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    private long getMaxSize() {
+        final long maxSize = extractionTaskProperties.getValueCacheSize();
+        if (maxSize <= 0 && size > 0) {
+            clear();
+        }
+        return maxSize;
+    }
+
+    @Override
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+            size = 0;
+        }
+    }
+
+    @Override
+    public void onChange(final EntityEvent event) {
+        clear();
+    }
+
+    @Override
+    public void onChange(final List<EntityEvent> events) {
+        clear();
+    }
+}
@@ -16,11 +16,14 @@
 
 package stroom.search.server.extraction;
 
+import java.util.Map;
+
 import stroom.dashboard.expression.FieldIndexMap;
 import stroom.entity.shared.DocRef;
 import stroom.search.server.ClusterSearchTask;
 import stroom.pipeline.server.errorhandler.ErrorReceiver;
 import stroom.task.server.ThreadPoolImpl;
+import stroom.util.collections.LongBitmap;
 import stroom.util.shared.ThreadPool;
 import stroom.util.shared.VoidResult;
 import stroom.util.task.ServerTask;
@@ -36,22 +39,25 @@ public class ExtractionTask extends ServerTask<VoidResult> {
 
     private final ClusterSearchTask clusterSearchTask;
     private final long streamId;
-    private final long[] eventIds;
-    private final DocRef pipelineRef;
+    private final LongBitmap eventIds;
+    private final Map<DocRef, ResultReceiver> resultReceivers;
     private final FieldIndexMap fieldIndexes;
-    private final ResultReceiver resultReceiver;
     private final ErrorReceiver errorReceiver;
 
-    public ExtractionTask(final ClusterSearchTask clusterSearchTask, final long streamId, final long[] eventIds,
-            final DocRef pipelineRef, final FieldIndexMap fieldIndexes, final ResultReceiver resultReceiver,
+    /**
+     * @param resultReceivers
+     *            The extraction pipelines to run the events of the stream
+     *            through and the receivers for the results of each.
+     */
+    public ExtractionTask(final ClusterSearchTask clusterSearchTask, final long streamId, final LongBitmap eventIds,
+            final Map<DocRef, ResultReceiver> resultReceivers, final FieldIndexMap fieldIndexes,
             final ErrorReceiver errorReceiver) {
         super(clusterSearchTask);
         this.clusterSearchTask = clusterSearchTask;
         this.streamId = streamId;
         this.eventIds = eventIds;
-        this.pipelineRef = pipelineRef;
+        this.resultReceivers = resultReceivers;
         this.fieldIndexes = fieldIndexes;
-        this.resultReceiver = resultReceiver;
         this.errorReceiver = errorReceiver;
     }
 
@@ -63,22 +69,18 @@ public class ExtractionTask extends ServerTask<VoidResult> {
         return streamId;
     }
 
-    public long[] getEventIds() {
+    public LongBitmap getEventIds() {
         return eventIds;
     }
 
-    public DocRef getPipelineRef() {
-        return pipelineRef;
+    public Map<DocRef, ResultReceiver> getResultReceivers() {
+        return resultReceivers;
     }
 
     public FieldIndexMap getFieldIndexes() {
         return fieldIndexes;
     }
 
-    public ResultReceiver getResultReceiver() {
-        return resultReceiver;
-    }
-
     public ErrorReceiver getErrorReceiver() {
         return errorReceiver;
     }
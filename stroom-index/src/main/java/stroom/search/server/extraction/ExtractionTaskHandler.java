@@ -17,11 +17,14 @@
 package stroom.search.server.extraction;
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map.Entry;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import stroom.dashboard.expression.FieldIndexMap;
 import stroom.entity.shared.DocRef;
 import stroom.security.SecurityContext;
 import stroom.util.logging.StroomLogger;
@@ -30,6 +33,7 @@ import net.sf.ehcache.CacheException;
 import org.springframework.context.annotation.Scope;
 
 import stroom.search.server.SearchException;
+import stroom.search.server.extraction.ExtractionTask.ResultReceiver;
 import stroom.feed.shared.Feed;
 import stroom.feed.shared.FeedService;
 import stroom.pipeline.server.errorhandler.ErrorReceiver;
@@ -53,6 +57,7 @@ import stroom.streamstore.server.StreamStore;
 import stroom.streamstore.server.fs.serializable.RASegmentInputStream;
 import stroom.task.server.AbstractTaskHandler;
 import stroom.task.server.TaskHandlerBean;
+import stroom.util.collections.LongBitmap;
 import stroom.util.io.IgnoreCloseInputStream;
 import stroom.util.io.StreamUtil;
 import stroom.util.shared.Severity;
@@ -76,6 +81,8 @@ public class ExtractionTaskHandler extends AbstractTaskHandler<ExtractionTask, V
     private final PipelineDataCache pipelineDataCache;
     private final TaskMonitor taskMonitor;
     private final SecurityContext securityContext;
+    private final ExtractedValuesCache extractedValuesCache;
+    private final ExtractionTaskProperties extractionTaskProperties;
 
     private ExtractionTask task;
 
@@ -85,7 +92,8 @@ public class ExtractionTaskHandler extends AbstractTaskHandler<ExtractionTask, V
             final PipelineHolder pipelineHolder, final ErrorReceiverProxy errorReceiverProxy,
             final PipelineFactory pipelineFactory,
             @Named("cachedPipelineEntityService") final PipelineEntityService pipelineEntityService,
-            final PipelineDataCache pipelineDataCache, final TaskMonitor taskMonitor, final SecurityContext securityContext) {
+            final PipelineDataCache pipelineDataCache, final TaskMonitor taskMonitor, final SecurityContext securityContext,
+            final ExtractedValuesCache extractedValuesCache, final ExtractionTaskProperties extractionTaskProperties) {
         this.streamStore = streamStore;
         this.feedService = feedService;
         this.feedHolder = feedHolder;
@@ -98,6 +106,8 @@ public class ExtractionTaskHandler extends AbstractTaskHandler<ExtractionTask, V
         this.pipelineDataCache = pipelineDataCache;
         this.taskMonitor = taskMonitor;
         this.securityContext = securityContext;
+        this.extractedValuesCache = extractedValuesCache;
+        this.extractionTaskProperties = extractionTaskProperties;
     }
 
     @Override
@@ -107,69 +117,73 @@ public class ExtractionTaskHandler extends AbstractTaskHandler<ExtractionTask, V
 
             if (!taskMonitor.isTerminated()) {
                 final String streamId = String.valueOf(task.getStreamId());
-                taskMonitor.info("Extracting " + task.getEventIds().length + " records from stream " + streamId);
+                taskMonitor.info("Extracting " + task.getEventIds().getCardinality() + " records from stream " + streamId);
 
                 extract(task);
             }
         } finally {
             securityContext.restorePermissions();
 
-            task.getResultReceiver().complete();
+            for (final ResultReceiver resultReceiver : task.getResultReceivers().values()) {
+                resultReceiver.complete();
+            }
         }
 
         return VoidResult.INSTANCE;
     }
 
     private void extract(final ExtractionTask task) {
-        try {
-            this.task = task;
+        this.task = task;
 
-            // Set the current user.
-            currentUserHolder.setCurrentUser(task.getUserId());
+        // Set the current user.
+        currentUserHolder.setCurrentUser(task.getUserId());
 
-            final DocRef pipelineRef = task.getPipelineRef();
+        // Work out which pipelines actually need to see the stream. Any that
+        // have already extracted all of these events can be answered from the
+        // cache.
+        final List<PipelineEntity> pipelineEntities = new ArrayList<>();
+        final List<ResultReceiver> resultReceivers = new ArrayList<>();
+        for (final Entry<DocRef, ResultReceiver> entry : task.getResultReceivers().entrySet()) {
+            try {
+                final DocRef pipelineRef = entry.getKey();
 
-            // Get the translation that will be used to display results.
-            final PipelineEntity pipelineEntity = pipelineEntityService.loadByUuid(pipelineRef.getUuid());
-            if (pipelineEntity == null) {
-                throw new SearchException("Unable to find result pipeline: " + pipelineRef);
-            }
+                // Get the translation that will be used to display results.
+                final PipelineEntity pipelineEntity = pipelineEntityService.loadByUuid(pipelineRef.getUuid());
+                if (pipelineEntity == null) {
+                    throw new SearchException("Unable to find result pipeline: " + pipelineRef);
+                }
 
-            // Create the parser.
-            final PipelineData pipelineData = pipelineDataCache.get(pipelineEntity);
-            final Pipeline pipeline = pipelineFactory.create(pipelineData);
-            if (pipeline == null) {
-                throw new SearchException("Unable to create parser for pipeline: " + pipelineRef);
+                final List<ExtractedValuesCache.Record> records = extractedValuesCache.get(pipelineEntity,
+                        task.getStreamId(), task.getEventIds());
+                if (records != null) {
+                    receive(records, entry.getValue());
+                } else {
+                    pipelineEntities.add(pipelineEntity);
+                    resultReceivers.add(entry.getValue());
+                }
+            } catch (final Exception e) {
+                error(e.getMessage(), e);
             }
+        }
 
-            // Setup the id enrichment filter to try and recreate the conditions
-            // present when the index was built. We need to do this because the
-            // input stream is now filtered to only include events matched by
-            // the search. This means that the event ids cannot be calculated by
-            // just counting events.
-            final String streamId = String.valueOf(task.getStreamId());
-            final IdEnrichmentFilter idEnrichmentFilter = getFilter(pipeline, IdEnrichmentFilter.class);
-            idEnrichmentFilter.setup(streamId, task.getEventIds());
-
-            // Setup the search result output filter to expect the same order of
-            // event ids and give it the result cache and stored data to write
-            // values to.
-            final SearchResultOutputFilter searchResultOutputFilter = getFilter(pipeline,
-                    SearchResultOutputFilter.class);
-
-            searchResultOutputFilter.setup(task.getFieldIndexes(), task.getResultReceiver());
-
-            // Process the stream segments.
-            processData(task.getStreamId(), task.getEventIds(), pipelineEntity, pipeline);
-
-        } catch (final CacheException e) {
-            if (e.getCause() != null) {
-                error(e.getCause().getMessage(), e.getCause());
-            } else {
-                error(e.getMessage(), e);
+        if (pipelineEntities.size() > 0) {
+            processData(task.getStreamId(), task.getEventIds(), pipelineEntities, resultReceivers);
+        }
+    }
+
+    private void receive(final List<ExtractedValuesCache.Record> records, final ResultReceiver resultReceiver) {
+        final FieldIndexMap fieldIndexes = task.getFieldIndexes();
+        for (final ExtractedValuesCache.Record record : records) {
+            final String[] values = new String[fieldIndexes.size()];
+            final String[] recordNames = record.getNames();
+            final String[] recordValues = record.getValues();
+            for (int i = 0; i < recordNames.length; i++) {
+                final int fieldIndex = fieldIndexes.get(recordNames[i]);
+                if (fieldIndex >= 0) {
+                    values[fieldIndex] = recordValues[i];
+                }
             }
-        } catch (final Exception e) {
-            error(e.getMessage(), e);
+            resultReceiver.receive(values);
         }
     }
 
@@ -186,8 +200,8 @@ public class ExtractionTaskHandler extends AbstractTaskHandler<ExtractionTask, V
      * Extract data from the segment list. Returns the total number of segments
      * that were successfully extracted.
      */
-    private long processData(final long streamId, final long[] eventIds, final PipelineEntity pipelineEntity,
-            final Pipeline pipeline) {
+    private long processData(final long streamId, final LongBitmap eventIds, final List<PipelineEntity> pipelineEntities,
+            final List<ResultReceiver> resultReceivers) {
         final ErrorReceiver errorReceiver = (severity, location, elementId, message, e) -> {
             task.getErrorReceiver().log(severity, location, elementId, message, e);
             throw ProcessException.wrap(message, e);
@@ -209,15 +223,32 @@ public class ExtractionTaskHandler extends AbstractTaskHandler<ExtractionTask, V
                         segmentInputStream.include(0);
                         segmentInputStream.include(segmentInputStream.count() - 1);
 
-                        // Include as many segments as we can.
-                        for (final long segmentId : eventIds) {
-                            segmentInputStream.include(segmentId);
-                            count++;
+                        // Include all of the segments we want to extract.
+                        segmentInputStream.include(eventIds);
+                        count = eventIds.getCardinality();
+
+                        if (pipelineEntities.size() == 1) {
+                            // Now try and extract the data.
+                            extract(pipelineEntities.get(0), resultReceivers.get(0), streamSource,
+                                    segmentInputStream, count);
+                        } else {
+                            // Several pipelines need this stream so only read
+                            // and decompress the included segments once.
+                            try (final SegmentDataBuffer buffer = new SegmentDataBuffer(
+                                    extractionTaskProperties.getSharedBufferSize())) {
+                                buffer.write(segmentInputStream);
+                                for (int i = 0; i < pipelineEntities.size(); i++) {
+                                    try (final InputStream inputStream = buffer.getInputStream()) {
+                                        extract(pipelineEntities.get(i), resultReceivers.get(i), streamSource,
+                                                inputStream, count);
+                                    } catch (final Exception e) {
+                                        error("Unable to extract data from stream source with id: " + streamId + " - "
+                                                + e.getMessage(), e);
+                                    }
+                                }
+                            }
                         }
 
-                        // Now try and extract the data.
-                        extract(pipelineEntity, pipeline, streamSource, segmentInputStream, count);
-
                     } catch (final Exception e) {
                         // Something went wrong extracting data from this
                         // stream.
@@ -244,14 +275,39 @@ public class ExtractionTaskHandler extends AbstractTaskHandler<ExtractionTask, V
     /**
      * We do this one by one
      */
-    private void extract(final PipelineEntity pipelineEntity, final Pipeline pipeline, final StreamSource source,
-            final RASegmentInputStream segmentInputStream, final long count) {
+    private void extract(final PipelineEntity pipelineEntity, final ResultReceiver resultReceiver,
+            final StreamSource source, final InputStream segmentInputStream, final long count) {
         if (source != null && segmentInputStream != null) {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Reading " + count + " segments from stream " + source.getStream().getId());
             }
 
             try {
+                // Create the parser.
+                final PipelineData pipelineData = pipelineDataCache.get(pipelineEntity);
+                final Pipeline pipeline = pipelineFactory.create(pipelineData);
+                if (pipeline == null) {
+                    throw new SearchException("Unable to create parser for pipeline: " + DocRef.create(pipelineEntity));
+                }
+
+                // Setup the id enrichment filter to try and recreate the
+                // conditions present when the index was built. We need to do
+                // this because the input stream is now filtered to only include
+                // events matched by the search. This means that the event ids
+                // cannot be calculated by just counting events.
+                final String streamId = String.valueOf(task.getStreamId());
+                final IdEnrichmentFilter idEnrichmentFilter = getFilter(pipeline, IdEnrichmentFilter.class);
+                idEnrichmentFilter.setup(streamId, task.getEventIds());
+
+                // Setup the search result output filter to expect the same
+                // order of event ids and give it the result cache and stored
+                // data to write values to.
+                final SearchResultOutputFilter searchResultOutputFilter = getFilter(pipeline,
+                        SearchResultOutputFilter.class);
+                final ExtractedValuesCache.Collector collector = extractedValuesCache.createCollector(pipelineEntity,
+                        task.getStreamId());
+                searchResultOutputFilter.setup(task.getFieldIndexes(), resultReceiver, collector);
+
                 // Here we need to reload the feed as this will get the related
                 // objects Translation etc
                 final Feed feed = feedService.load(source.getStream().getFeed());
@@ -267,9 +323,19 @@ public class ExtractionTaskHandler extends AbstractTaskHandler<ExtractionTask, V
                 // Process the boundary.
                 pipeline.process(inputStream, encoding);
 
+                // Only remember what was extracted if we got all of it.
+                if (collector != null && !taskMonitor.isTerminated()) {
+                    collector.commit(task.getEventIds());
+                }
+
             } catch (final TerminatedException e) {
                 // Ignore stopped pipeline exceptions as we are meant to get
                 // these when a task is asked to stop prematurely.
+            } catch (final CacheException e) {
+                if (e.getCause() != null) {
+                    throw SearchException.wrap(e.getCause());
+                }
+                throw SearchException.wrap(e);
             } catch (final Exception e) {
                 throw SearchException.wrap(e);
             }
@@ -16,7 +16,8 @@
 
 package stroom.search.server.extraction;
 
-import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -29,30 +30,48 @@ import stroom.dashboard.expression.FieldIndexMap;
 import stroom.entity.shared.DocRef;
 import stroom.search.server.ClusterSearchTask;
 import stroom.search.server.Coprocessor;
-import stroom.search.server.Event;
+import stroom.search.server.StoredDataBatch;
 import stroom.search.server.extraction.ExtractionTask.ResultReceiver;
 import stroom.search.server.shard.TransferList;
 import stroom.search.server.taskqueue.AbstractTaskProducer;
 import stroom.pipeline.server.errorhandler.ErrorReceiver;
+import stroom.util.collections.LongBitmap;
 import stroom.util.shared.Severity;
 import stroom.util.shared.Task;
 
 public class ExtractionTaskProducer extends AbstractTaskProducer {
+    private static class PendingStream {
+        private final long firstSeen;
+        // Event ids are held in a bitmap so that they are kept in order and
+        // free of duplicates however many batches they arrive in.
+        private final LongBitmap eventIds = new LongBitmap();
+
+        PendingStream(final long firstSeen) {
+            this.firstSeen = firstSeen;
+        }
+    }
+
     private final ClusterSearchTask clusterSearchTask;
     private final StreamMapCreator streamMapCreator;
-    private final TransferList<String[]> storedData;
+    private final TransferList<StoredDataBatch> storedData;
     private final FieldIndexMap extractionFieldIndexMap;
     private final Map<DocRef, Set<Coprocessor<?>>> extractionCoprocessorsMap;
     private final ErrorReceiver errorReceiver;
+    private final long coalesceWindow;
+    private final boolean extracting;
+
+    // Events waiting to be extracted by stream in the order the streams were
+    // first seen.
+    private final Map<Long, PendingStream> pendingStreams = new LinkedHashMap<>();
 
     private final Queue<Task<?>> taskQueue = new ConcurrentLinkedQueue<>();
     private final AtomicInteger tasksCreated = new AtomicInteger();
     private final AtomicInteger tasksCompleted = new AtomicInteger();
 
     public ExtractionTaskProducer(final ClusterSearchTask clusterSearchTask, final StreamMapCreator streamMapCreator,
-            final TransferList<String[]> storedData, final FieldIndexMap extractionFieldIndexMap,
+            final TransferList<StoredDataBatch> storedData, final FieldIndexMap extractionFieldIndexMap,
             final Map<DocRef, Set<Coprocessor<?>>> extractionCoprocessorsMap, final ErrorReceiver errorReceiver,
-            final int maxThreadsPerTask) {
+            final int maxThreadsPerTask, final long coalesceWindow) {
         super(maxThreadsPerTask);
 
         this.clusterSearchTask = clusterSearchTask;
@@ -61,41 +80,106 @@ public class ExtractionTaskProducer extends AbstractTaskProducer {
         this.extractionFieldIndexMap = extractionFieldIndexMap;
         this.extractionCoprocessorsMap = extractionCoprocessorsMap;
         this.errorReceiver = errorReceiver;
+        this.coalesceWindow = coalesceWindow;
+
+        boolean extracting = false;
+        for (final DocRef pipelineRef : extractionCoprocessorsMap.keySet()) {
+            if (pipelineRef != null) {
+                extracting = true;
+            }
+        }
+        this.extracting = extracting;
     }
 
+    /**
+     * This is only asked once the index search has completed so any streams
+     * that are being held back to coalesce events are released.
+     */
     public boolean isComplete() {
         synchronized (taskQueue) {
-            if (tasksCreated.get() != tasksCompleted.get()) {
-                return false;
-            }
-            fillTaskQueue();
+            fillTaskQueue(true);
             return tasksCreated.get() == tasksCompleted.get();
-
         }
     }
 
-    private int fillTaskQueue() {
+    private int fillTaskQueue(final boolean flush) {
         synchronized (taskQueue) {
-            int added = 0;
-            final List<String[]> data = storedData.swap();
+            final List<StoredDataBatch> data = storedData.swap();
             if (data != null && data.size() > 0) {
-                final Map<Long, List<Event>> streamMap = streamMapCreator.createEventMap(data);
-                for (final Entry<Long, List<Event>> entry : streamMap.entrySet()) {
-                    final Long streamId = entry.getKey();
-                    final List<Event> events = entry.getValue();
+                final long now = System.currentTimeMillis();
+                final Set<Coprocessor<?>> coprocessors = extractionCoprocessorsMap.get(null);
+
+                // Hits from a shard tend to arrive grouped by stream so
+                // remember the last stream seen to avoid looking it up for
+                // every row.
+                long lastStreamId = -1;
+                boolean visible = false;
+                PendingStream pendingStream = null;
+
+                for (final StoredDataBatch batch : data) {
+                    for (int row = 0; row < batch.size(); row++) {
+                        final long streamId = batch.getStreamId(row);
+                        final long eventId = batch.getEventId(row);
+                        if (streamId < 0 || eventId < 0) {
+                            continue;
+                        }
+
+                        if (streamId != lastStreamId) {
+                            lastStreamId = streamId;
+                            visible = streamMapCreator.isVisible(streamId);
+                            pendingStream = null;
+                            if (visible && extracting) {
+                                pendingStream = pendingStreams.get(streamId);
+                                if (pendingStream == null) {
+                                    pendingStream = new PendingStream(now);
+                                    pendingStreams.put(streamId, pendingStream);
+                                }
+                            }
+                        }
+
+                        if (visible) {
+                            // Pass raw values to coprocessors that are not
+                            // requesting values to be extracted.
+                            if (coprocessors != null) {
+                                for (final Coprocessor<?> coprocessor : coprocessors) {
+                                    coprocessor.receive(batch, row);
+                                }
+                            }
+
+                            // Hold back the events for a short while so that
+                            // events for the same stream from later batches
+                            // can be extracted at the same time.
+                            if (pendingStream != null) {
+                                pendingStream.eventIds.add(eventId);
+                            }
+                        }
+                    }
+                }
+            }
 
-                    added += createTasks(streamId, events);
+            int added = 0;
+            final long cutoff = System.currentTimeMillis() - coalesceWindow;
+            final Iterator<Entry<Long, PendingStream>> iterator = pendingStreams.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Entry<Long, PendingStream> entry = iterator.next();
+                // Streams are in the order they were first seen so stop at the
+                // first one that is still within the window.
+                if (!flush && entry.getValue().firstSeen > cutoff) {
+                    break;
                 }
+                iterator.remove();
+                added += createTasks(entry.getKey(), entry.getValue());
             }
 
             return added;
         }
     }
 
-    private int createTasks(final long streamId, final List<Event> events) {
-        int created = 0;
-        long[] eventIds = null;
+    private int createTasks(final long streamId, final PendingStream pendingStream) {
+        final LongBitmap eventIds = pendingStream.eventIds;
 
+        // Decode the stream once for all of the pipelines that need it.
+        final Map<DocRef, ResultReceiver> resultReceivers = new LinkedHashMap<>();
         for (final Entry<DocRef, Set<Coprocessor<?>>> entry : extractionCoprocessorsMap.entrySet()) {
             final DocRef pipelineRef = entry.getKey();
             final Set<Coprocessor<?>> coprocessors = entry.getValue();
@@ -120,36 +204,20 @@ public class ExtractionTaskProducer extends AbstractTaskProducer {
                         tasksCompleted.incrementAndGet();
                     }
                 };
-
-                if (eventIds == null) {
-                    // Get a list of the event ids we are extracting for this
-                    // stream and sort them.
-                    eventIds = new long[events.size()];
-                    for (int i = 0; i < eventIds.length; i++) {
-                        eventIds[i] = events.get(i).getId();
-                    }
-                    // Sort the ids as the extraction expects them in order.
-                    Arrays.sort(eventIds);
-                }
-
-                tasksCreated.incrementAndGet();
-                final ExtractionTask task = new ExtractionTask(clusterSearchTask, streamId, eventIds, pipelineRef,
-                        extractionFieldIndexMap, resultReceiver, errorReceiver);
-                taskQueue.add(task);
-                created++;
-
-            } else {
-                // Pass raw values to coprocessors that are not requesting
-                // values to be extracted.
-                for (final Coprocessor<?> coprocessor : coprocessors) {
-                    for (final Event event : events) {
-                        coprocessor.receive(event.getValues());
-                    }
-                }
+                resultReceivers.put(pipelineRef, resultReceiver);
             }
         }
 
-        return created;
+        if (resultReceivers.size() == 0) {
+            return 0;
+        }
+
+        // Each pipeline reports its own completion.
+        tasksCreated.addAndGet(resultReceivers.size());
+        final ExtractionTask task = new ExtractionTask(clusterSearchTask, streamId, eventIds, resultReceivers,
+                extractionFieldIndexMap, errorReceiver);
+        taskQueue.add(task);
+        return 1;
     }
 
     @Override
@@ -162,7 +230,7 @@ public class ExtractionTaskProducer extends AbstractTaskProducer {
         synchronized (taskQueue) {
             if (!clusterSearchTask.isTerminated()) {
                 if (taskQueue.size() == 0) {
-                    final int added = fillTaskQueue();
+                    final int added = fillTaskQueue(false);
                     if (added > 0) {
                         task = taskQueue.poll();
                     }
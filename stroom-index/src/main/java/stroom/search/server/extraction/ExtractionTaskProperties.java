@@ -19,12 +19,15 @@ package stroom.search.server.extraction;
 import javax.inject.Inject;
 
 import stroom.node.server.StroomPropertyService;
+import stroom.util.shared.ModelStringUtil;
 import org.springframework.stereotype.Component;
 
 @Component
 public class ExtractionTaskProperties {
     private static final int DEFAULT_MAX_THREADS = 4;
     private static final int DEFAULT_MAX_THREADS_PER_TASK = 2;
+    private static final long DEFAULT_COALESCE_WINDOW = 500;
+    private static final long DEFAULT_SHARED_BUFFER_SIZE = 10 * 1024 * 1024;
 
     private final StroomPropertyService propertyService;
 
@@ -40,4 +43,30 @@ public class ExtractionTaskProperties {
     public int getMaxThreadsPerTask() {
         return propertyService.getIntProperty("stroom.search.extraction.maxThreadsPerTask", DEFAULT_MAX_THREADS_PER_TASK);
     }
+
+    public boolean isAdaptiveThreads() {
+        return propertyService.getBooleanProperty("stroom.search.extraction.adaptiveThreads", false);
+    }
+
+    public long getCoalesceWindow() {
+        return getLong(ModelStringUtil.parseDurationString(
+                propertyService.getProperty("stroom.search.extraction.coalesceWindow")), DEFAULT_COALESCE_WINDOW);
+    }
+
+    public long getValueCacheSize() {
+        return getLong(ModelStringUtil.parseByteSizeString(
+                propertyService.getProperty("stroom.search.extraction.valueCacheSize")), 0);
+    }
+
+    public long getSharedBufferSize() {
+        return getLong(ModelStringUtil.parseByteSizeString(
+                propertyService.getProperty("stroom.search.extraction.sharedBufferSize")), DEFAULT_SHARED_BUFFER_SIZE);
+    }
+
+    private long getLong(final Long value, final long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        return value;
+    }
 }
@@ -22,6 +22,9 @@ import org.springframework.stereotype.Component;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import stroom.dashboard.expression.FieldIndexMap;
 import stroom.search.server.extraction.ExtractionTask.ResultReceiver;
 import stroom.pipeline.server.factory.ConfigurableElement;
@@ -42,8 +45,14 @@ public class SearchResultOutputFilter extends AbstractXMLFilter {
 
     private FieldIndexMap fieldIndexes;
     private ResultReceiver resultReceiver;
+    private ExtractedValuesCache.Collector collector;
     private String[] values;
 
+    // All of the data in the current record if we are collecting it for the
+    // extracted values cache.
+    private List<String> recordNames;
+    private List<String> recordValues;
+
     @Override
     public void startElement(final String uri, final String localName, final String qName, final Attributes atts)
             throws SAXException {
@@ -59,10 +68,18 @@ public class SearchResultOutputFilter extends AbstractXMLFilter {
                     if (fieldIndex >= 0) {
                         values[fieldIndex] = value;
                     }
+                    if (collector != null) {
+                        recordNames.add(name);
+                        recordValues.add(value);
+                    }
                 }
             }
         } else if (RECORD.equals(localName)) {
             values = new String[fieldIndexes.size()];
+            if (collector != null) {
+                recordNames = new ArrayList<>();
+                recordValues = new ArrayList<>();
+            }
         }
 
         super.startElement(uri, localName, qName, atts);
@@ -72,13 +89,19 @@ public class SearchResultOutputFilter extends AbstractXMLFilter {
     public void endElement(final String uri, final String localName, final String qName) throws SAXException {
         if (RECORD.equals(localName)) {
             resultReceiver.receive(values);
+            if (collector != null) {
+                collector.record(new ExtractedValuesCache.Record(recordNames.toArray(new String[recordNames.size()]),
+                        recordValues.toArray(new String[recordValues.size()])));
+            }
         }
 
         super.endElement(uri, localName, qName);
     }
 
-    public void setup(final FieldIndexMap fieldIndexes, final ResultReceiver resultReceiver) {
+    public void setup(final FieldIndexMap fieldIndexes, final ResultReceiver resultReceiver,
+            final ExtractedValuesCache.Collector collector) {
         this.fieldIndexes = fieldIndexes;
         this.resultReceiver = resultReceiver;
+        this.collector = collector;
     }
 }
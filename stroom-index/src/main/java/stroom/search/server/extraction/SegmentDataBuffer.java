@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server.extraction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import stroom.util.io.FileUtil;
+import stroom.util.io.StreamUtil;
+
+/**
+ * Holds the decoded segments of a stream so that several extraction pipelines
+ * can read them without decoding the stream again. Data is kept in memory up
+ * to a limit and written to a temporary file beyond that so that a large
+ * selection can't exhaust the heap.
+ */
+class SegmentDataBuffer implements Closeable {
+    private final long memoryLimit;
+
+    private byte[] data;
+    private File file;
+
+    SegmentDataBuffer(final long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    public void write(final InputStream inputStream) throws IOException {
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        OutputStream outputStream = memory;
+        try {
+            final byte[] buffer = new byte[StreamUtil.BUFFER_SIZE];
+            int len;
+            while ((len = inputStream.read(buffer)) != -1) {
+                if (file == null && memory.size() + len > memoryLimit) {
+                    // Move what we have so far to a file and carry on there.
+                    file = File.createTempFile("extraction", ".dat", FileUtil.getTempDir());
+                    outputStream = new BufferedOutputStream(new FileOutputStream(file));
+                    memory.writeTo(outputStream);
+                    memory = null;
+                }
+                outputStream.write(buffer, 0, len);
+            }
+
+            if (file == null) {
+                data = memory.toByteArray();
+            }
+        } finally {
+            if (file != null) {
+                outputStream.close();
+            }
+        }
+    }
+
+    /**
+     * @return A new stream over all of the data that has been written.
+     */
+    public InputStream getInputStream() throws IOException {
+        if (file != null) {
+            return new BufferedInputStream(new FileInputStream(file));
+        }
+        return new ByteArrayInputStream(data);
+    }
+
+    boolean isSpilt() {
+        return file != null;
+    }
+
+    @Override
+    public void close() {
+        data = null;
+        if (file != null) {
+            FileUtil.deleteFile(file);
+            file = null;
+        }
+    }
+}
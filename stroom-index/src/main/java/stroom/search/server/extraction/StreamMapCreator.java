@@ -19,7 +19,6 @@ package stroom.search.server.extraction;
 import stroom.pipeline.server.errorhandler.ErrorReceiver;
 import stroom.query.shared.IndexConstants;
 import stroom.query.shared.IndexField;
-import stroom.search.server.Event;
 import stroom.security.SecurityContext;
 import stroom.streamstore.server.StreamStore;
 import stroom.streamstore.shared.Stream;
@@ -27,11 +26,8 @@ import stroom.streamstore.shared.StreamPermissionException;
 import stroom.util.logging.StroomLogger;
 import stroom.util.shared.Severity;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 public class StreamMapCreator {
     private static final StroomLogger LOGGER = StroomLogger.getLogger(StreamMapCreator.class);
@@ -39,9 +35,6 @@ public class StreamMapCreator {
     private final ErrorReceiver errorReceiver;
     private final StreamStore streamStore;
 
-    private final int streamIdIndex;
-    private final int eventIdIndex;
-
     private final SecurityContext securityContext;
     private Map<Long, Stream> fiteredStreamCache;
 
@@ -51,10 +44,10 @@ public class StreamMapCreator {
         this.streamStore = streamStore;
         this.securityContext = securityContext;
 
-        // First get the index in the stored data of the stream and event id
-        // fields.
-        streamIdIndex = getFieldIndex(storedFields, IndexConstants.STREAM_ID, true);
-        eventIdIndex = getFieldIndex(storedFields, IndexConstants.EVENT_ID, true);
+        // Warn if the stream and event id fields have not been stored as we
+        // can't extract data without them.
+        getFieldIndex(storedFields, IndexConstants.STREAM_ID, true);
+        getFieldIndex(storedFields, IndexConstants.EVENT_ID, true);
     }
 
     private int getFieldIndex(final IndexField[] storedFields, final String fieldName, final boolean warn) {
@@ -74,42 +67,14 @@ public class StreamMapCreator {
         return index;
     }
 
-    public HashMap<Long, List<Event>> createEventMap(final List<String[]> storedDataList) {
-        // Put the events into a map to group them by stream id.
-        final Map<Long, List<Event>> storedDataMap = new HashMap<Long, List<Event>>();
-        for (final String[] storedData : storedDataList) {
-            final Long longStreamId = getLong(storedData, streamIdIndex);
-            final Long longEventId = getLong(storedData, eventIdIndex);
-
-            final boolean include = true;
-
-            if (longStreamId != null && longEventId != null && include) {
-                List<Event> events = storedDataMap.get(longStreamId);
-                if (events == null) {
-                    events = new ArrayList<Event>();
-                    storedDataMap.put(longStreamId, events);
-                }
-                events.add(new Event(longEventId, storedData));
-            }
-        }
-
-        // Filter the streams by ones that should be visible to the current
-        // user.
-        final HashMap<Long, List<Event>> filteredDataMap = new HashMap<Long, List<Event>>();
-        for (final Entry<Long, List<Event>> entry : storedDataMap.entrySet()) {
-            final Long streamId = entry.getKey();
-            Stream stream = null;
-
-            stream = getStreamById(streamId);
-
-            // If the stream's id is undefined then it is a dummy we either
-            // couldn't find it or are not allowed to use it.
-            if (stream.isPersistent()) {
-                filteredDataMap.put(stream.getId(), entry.getValue());
-            }
-        }
-
-        return filteredDataMap;
+    /**
+     * @return True if the stream exists and the current user is allowed to
+     *         read it.
+     */
+    public boolean isVisible(final long streamId) {
+        // If the stream's id is undefined then it is a dummy we either
+        // couldn't find it or are not allowed to use it.
+        return getStreamById(streamId).isPersistent();
     }
 
     private Stream getStreamById(final long streamId) {
@@ -150,19 +115,6 @@ public class StreamMapCreator {
         return stream;
     }
 
-    private Long getLong(final String[] storedData, final int index) {
-        try {
-            if (index >= 0 && storedData.length > index) {
-                final String value = storedData[index];
-                return Long.parseLong(value);
-            }
-        } catch (final Exception e) {
-            // Ignore
-        }
-
-        return null;
-    }
-
     private void warn(final String message, final Throwable t) {
         errorReceiver.log(Severity.WARNING, null, null, message, t);
     }
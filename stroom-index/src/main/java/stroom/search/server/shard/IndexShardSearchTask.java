@@ -22,6 +22,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.util.Version;
 
 import stroom.search.server.ClusterSearchTask;
+import stroom.search.server.StoredDataBatch;
 import stroom.pipeline.server.errorhandler.ErrorReceiver;
 import stroom.task.server.ThreadPoolImpl;
 import stroom.util.shared.ThreadPool;
@@ -30,7 +31,7 @@ import stroom.util.task.ServerTask;
 
 public class IndexShardSearchTask extends ServerTask<VoidResult> {
     public interface ResultReceiver {
-        void receive(long shardId, String[] values);
+        void receive(long shardId, StoredDataBatch batch);
 
         void complete(long shardId);
     }
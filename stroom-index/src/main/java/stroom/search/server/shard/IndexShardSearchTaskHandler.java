@@ -20,7 +20,9 @@ import stroom.index.server.LuceneVersionUtil;
 import stroom.index.shared.IndexShard;
 import stroom.node.server.StroomPropertyService;
 import stroom.pipeline.server.errorhandler.TerminatedException;
+import stroom.query.shared.IndexConstants;
 import stroom.search.server.IndexShardSearcher;
+import stroom.search.server.StoredDataBatch;
 import stroom.search.server.shard.IndexShardSearcherCache.IndexShardSearcherPool;
 import stroom.task.server.AbstractTaskHandler;
 import stroom.task.server.GenericServerTask;
@@ -159,6 +161,7 @@ public class IndexShardSearchTaskHandler extends AbstractTaskHandler<IndexShardS
                 // Start retrieving stored data from the shard.
                 boolean complete = false;
                 List<Integer> list = null;
+                StoredDataBatch batch = null;
 
                 while (!complete && !task.isTerminated()) {
                     complete = completedSearch.get();
@@ -184,9 +187,26 @@ public class IndexShardSearchTaskHandler extends AbstractTaskHandler<IndexShardS
                                 throw new TerminatedException();
                             }
 
-                            getStoredData(task, reader, docId);
+                            if (batch == null) {
+                                batch = createBatch(task.getFieldNames());
+                            }
+                            getStoredData(task, reader, docId, batch);
+
+                            // Hand full batches on as we go so that extraction
+                            // can start before the shard is exhausted.
+                            if (batch.isFull()) {
+                                task.getResultReceiver().receive(task.getIndexShardId(), batch);
+                                batch = null;
+                            }
                         }
                     }
+
+                    // Don't hold on to a partial batch while we wait for more
+                    // hits to arrive.
+                    if (batch != null && batch.size() > 0) {
+                        task.getResultReceiver().receive(task.getIndexShardId(), batch);
+                        batch = null;
+                    }
                 }
             } catch (final Throwable t) {
                 error(task, t.getMessage(), t);
@@ -194,17 +214,31 @@ public class IndexShardSearchTaskHandler extends AbstractTaskHandler<IndexShardS
         }
     }
 
+    private StoredDataBatch createBatch(final String[] fieldNames) {
+        int streamIdIndex = -1;
+        int eventIdIndex = -1;
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (IndexConstants.STREAM_ID.equals(fieldNames[i])) {
+                streamIdIndex = i;
+            } else if (IndexConstants.EVENT_ID.equals(fieldNames[i])) {
+                eventIdIndex = i;
+            }
+        }
+        return new StoredDataBatch(fieldNames.length, streamIdIndex, eventIdIndex, StoredDataBatch.DEFAULT_MAX_ROWS);
+    }
+
     /**
-     * This method takes a list of document id's and extracts the stored fields
-     * that are required for data display. In some cases such as batch search we
-     * only want to get stream and event ids, in these cases no values are
-     * retrieved, only stream and event ids.
+     * This method takes a document id and adds the stored fields that are
+     * required for data display to the current batch. In some cases such as
+     * batch search we only want to get stream and event ids, in these cases no
+     * values are retrieved, only stream and event ids.
      */
-    private void getStoredData(final IndexShardSearchTask task, final IndexReader reader, final int docId) {
+    private void getStoredData(final IndexShardSearchTask task, final IndexReader reader, final int docId,
+                               final StoredDataBatch batch) {
         final String[] fieldNames = task.getFieldNames();
         try {
             final Document document = reader.document(docId);
-            String[] values = null;
+            batch.startRow();
 
             for (int i = 0; i < fieldNames.length; i++) {
                 final String storedField = fieldNames[i];
@@ -216,18 +250,13 @@ public class IndexShardSearchTaskHandler extends AbstractTaskHandler<IndexShardS
                     if (value != null) {
                         final String trimmed = value.trim();
                         if (trimmed.length() > 0) {
-                            if (values == null) {
-                                values = new String[fieldNames.length];
-                            }
-                            values[i] = trimmed;
+                            batch.set(i, trimmed);
                         }
                     }
                 }
             }
 
-            if (values != null) {
-                task.getResultReceiver().receive(task.getIndexShardId(), values);
-            }
+            batch.endRow();
         } catch (final Exception e) {
             error(task, e.getMessage(), e);
         }
@@ -24,6 +24,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import stroom.search.server.ClusterSearchTask;
+import stroom.search.server.StoredDataBatch;
 import stroom.search.server.shard.IndexShardSearchTask.IndexShardQueryFactory;
 import stroom.search.server.shard.IndexShardSearchTask.ResultReceiver;
 import stroom.search.server.taskqueue.AbstractTaskProducer;
@@ -44,7 +45,7 @@ public class IndexShardSearchTaskProducer extends AbstractTaskProducer {
     private final AtomicInteger tasksCompleted = new AtomicInteger();
 
     public IndexShardSearchTaskProducer(final ClusterSearchTask clusterSearchTask,
-            final TransferList<String[]> storedData, final IndexShardSearcherCache indexShardSearcherCache,
+            final TransferList<StoredDataBatch> storedData, final IndexShardSearcherCache indexShardSearcherCache,
             final List<Long> shards, final IndexShardQueryFactory queryFactory, final String[] fieldNames,
             final ErrorReceiver errorReceiver, final AtomicLong hitCount, final int maxThreadsPerTask) {
         super(maxThreadsPerTask);
@@ -56,9 +57,9 @@ public class IndexShardSearchTaskProducer extends AbstractTaskProducer {
         // by coprocessors.
         final ResultReceiver resultReceiver = new ResultReceiver() {
             @Override
-            public void receive(final long shardId, final String[] values) {
+            public void receive(final long shardId, final StoredDataBatch batch) {
                 try {
-                    while (!clusterSearchTask.isTerminated() && !storedData.offer(values, ONE_SECOND)) {
+                    while (!clusterSearchTask.isTerminated() && !storedData.offer(batch, ONE_SECOND)) {
                         // Loop until item is added or we terminate.
                     }
                 } catch (final Throwable e) {
@@ -42,6 +42,10 @@ public class IndexShardSearchTaskProperties {
         return propertyService.getIntProperty("stroom.search.shard.maxThreadsPerTask", DEFAULT_MAX_THREADS_PER_TASK);
     }
 
+    public boolean isAdaptiveThreads() {
+        return propertyService.getBooleanProperty("stroom.search.shard.adaptiveThreads", false);
+    }
+
     public int getMaxOpenShards() {
         int maxOpenShards = propertyService.getIntProperty("stroom.search.shard.maxOpen", DEFAULT_MAX_OPEN_SHARDS);
         final int maxThreadsPerTask = getMaxThreadsPerTask();
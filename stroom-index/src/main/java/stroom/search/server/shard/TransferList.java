@@ -21,14 +21,22 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
 
 public class TransferList<E> {
     private List<E> addList;
     private List<E> removeList;
 
-    // Maximum number of items in the list
+    // Maximum total size of the items in the list
     private final int capacity;
 
+    // How much of the capacity each item uses, e.g. the number of rows in a
+    // batch
+    private final ToIntFunction<E> sizeFunction;
+
+    // Total size of the items in the add list
+    private int addSize;
+
     // Main lock guarding all access
     private final ReentrantLock lock = new ReentrantLock();
 
@@ -39,7 +47,12 @@ public class TransferList<E> {
     private final Condition notFull = lock.newCondition();
 
     public TransferList(final int capacity) {
+        this(capacity, e -> 1);
+    }
+
+    public TransferList(final int capacity, final ToIntFunction<E> sizeFunction) {
         this.capacity = capacity;
+        this.sizeFunction = sizeFunction;
         addList = new ArrayList<>();
         removeList = new ArrayList<>();
     }
@@ -109,10 +122,14 @@ public class TransferList<E> {
     }
 
     private boolean add(final E e) {
-        if (addList.size() >= capacity) {
+        final int size = sizeFunction.applyAsInt(e);
+        // Always accept an item into an empty list so that one larger than
+        // the capacity can't block forever.
+        if (addList.size() > 0 && addSize + size > capacity) {
             return false;
         }
         addList.add(e);
+        addSize += size;
         notEmpty.signal();
         return true;
     }
@@ -129,6 +146,7 @@ public class TransferList<E> {
 
         // Ensure the add list is cleared so we can insert new items.
         addList.clear();
+        addSize = 0;
 
         notFull.signal();
         return removeList;
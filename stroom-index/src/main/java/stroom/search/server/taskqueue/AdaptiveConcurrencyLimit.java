@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server.taskqueue;
+
+/**
+ * Adjusts the number of threads a task executor may use by watching how long
+ * tasks take to complete. Latency is averaged over windows of completed tasks.
+ * While a window's average stays close to the long term average and the
+ * executor is saturated the limit is raised by one; when consecutive windows
+ * average well above the long term average the node is assumed to be CPU or
+ * IO bound and the limit is cut multiplicatively. Windows are large enough,
+ * and congestion has to last long enough, that tasks of varying size don't
+ * look like congestion. The limit never exceeds the configured maximum or
+ * drops below one.
+ */
+public class AdaptiveConcurrencyLimit {
+    private static final double SHORT_ALPHA = 0.3;
+    private static final double LONG_ALPHA = 0.01;
+    private static final double CONGESTION_RATIO = 1.5;
+    private static final double BACKOFF = 0.9;
+    private static final int MIN_WINDOW = 20;
+    private static final int CONGESTED_WINDOWS = 3;
+
+    private int maxLimit;
+    private int limit;
+    private double shortLatency = -1;
+    private double longLatency = -1;
+    private long samples;
+    private double windowLatency;
+    private int windowSamples;
+    private int congestedWindows;
+
+    public AdaptiveConcurrencyLimit(final int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = this.maxLimit;
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public synchronized void setMaxLimit(final int maxLimit) {
+        final int max = Math.max(1, maxLimit);
+        if (max != this.maxLimit) {
+            // Start from the new ceiling and let latency pull the limit down
+            // again if the node can't cope.
+            this.maxLimit = max;
+            this.limit = max;
+            resetWindow();
+            congestedWindows = 0;
+        }
+    }
+
+    /**
+     * @return The recent average task latency in milliseconds or -1 if no
+     *         task has completed yet.
+     */
+    public synchronized double getLatencyMs() {
+        if (shortLatency < 0) {
+            return -1;
+        }
+        return shortLatency / 1000000D;
+    }
+
+    /**
+     * Record the latency of a completed task.
+     *
+     * @param latencyNanos
+     *            How long the task took to run.
+     * @param saturated
+     *            True if starting the task used the last available thread.
+     */
+    public synchronized void update(final long latencyNanos, final boolean saturated) {
+        final double latency = Math.max(0, latencyNanos);
+        samples++;
+        if (shortLatency < 0) {
+            shortLatency = latency;
+            longLatency = latency;
+        } else {
+            shortLatency += SHORT_ALPHA * (latency - shortLatency);
+            // Use a plain average until there are enough samples for the
+            // long term average to settle so early tasks don't skew it.
+            longLatency += Math.max(LONG_ALPHA, 1D / samples) * (latency - longLatency);
+        }
+
+        // Only adjust once enough tasks have completed at the current limit to
+        // see its effect and to average out differences in task size.
+        windowLatency += latency;
+        windowSamples++;
+        if (windowSamples >= Math.max(limit, MIN_WINDOW)) {
+            final double average = windowLatency / windowSamples;
+            resetWindow();
+
+            if (average > longLatency * CONGESTION_RATIO) {
+                congestedWindows++;
+                if (congestedWindows >= CONGESTED_WINDOWS && limit > 1) {
+                    limit = Math.max(1, Math.min(limit - 1, (int) (limit * BACKOFF)));
+                    congestedWindows = 0;
+                }
+            } else {
+                congestedWindows = 0;
+                if (saturated && limit < maxLimit) {
+                    limit++;
+                }
+            }
+        }
+    }
+
+    private void resetWindow() {
+        windowLatency = 0;
+        windowSamples = 0;
+    }
+}
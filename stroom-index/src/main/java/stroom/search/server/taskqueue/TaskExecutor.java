@@ -17,6 +17,7 @@
 package stroom.search.server.taskqueue;
 
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import stroom.task.server.TaskCallbackAdaptor;
@@ -27,9 +28,14 @@ public class TaskExecutor {
     private static final int DEFAULT_MAX_THREADS = 5;
 
     private volatile int maxThreads = DEFAULT_MAX_THREADS;
+    private volatile boolean adaptive;
 
     private final TaskManager taskManager;
     private final AtomicInteger totalThreads = new AtomicInteger();
+    private final AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(DEFAULT_MAX_THREADS);
+
+    private final Object completionLock = new Object();
+    private long completionCount;
 
     private final ConcurrentSkipListSet<TaskProducer> producers = new ConcurrentSkipListSet<>();
     private volatile TaskProducer lastProducer;
@@ -57,8 +63,9 @@ public class TaskExecutor {
     private Task execNextTask() {
         Task<?> task = null;
 
+        final int threadLimit = getThreadLimit();
         final int total = totalThreads.getAndIncrement();
-        if (total < maxThreads) {
+        if (total < threadLimit) {
             // Try and get a task from usable producers.
             AtomicInteger producerThreadsUsed = null;
             final int tries = producers.size();
@@ -88,19 +95,17 @@ public class TaskExecutor {
                     exec();
 
                 } else {
+                    final boolean saturated = total + 1 >= threadLimit;
+                    final long startTime = System.nanoTime();
                     taskManager.execAsync(currentTask, new TaskCallbackAdaptor() {
                         @Override
                         public void onSuccess(final Object result) {
-                            totalThreads.decrementAndGet();
-                            currentProducerThreadsUsed.decrementAndGet();
-                            exec();
+                            complete(currentProducerThreadsUsed, startTime, saturated);
                         }
 
                         @Override
                         public void onFailure(final Throwable t) {
-                            totalThreads.decrementAndGet();
-                            currentProducerThreadsUsed.decrementAndGet();
-                            exec();
+                            complete(currentProducerThreadsUsed, startTime, saturated);
                         }
                     });
                 }
@@ -114,6 +119,45 @@ public class TaskExecutor {
         return task;
     }
 
+    private void complete(final AtomicInteger producerThreadsUsed, final long startTime, final boolean saturated) {
+        concurrencyLimit.update(System.nanoTime() - startTime, saturated);
+        totalThreads.decrementAndGet();
+        producerThreadsUsed.decrementAndGet();
+
+        synchronized (completionLock) {
+            completionCount++;
+            completionLock.notifyAll();
+        }
+
+        exec();
+    }
+
+    /**
+     * @return The number of tasks that have completed so far, to be passed to
+     *         {@link #awaitCompletion(long, long, TimeUnit)}.
+     */
+    public long getCompletionCount() {
+        synchronized (completionLock) {
+            return completionCount;
+        }
+    }
+
+    /**
+     * Wait until a task completes after the supplied completion count was
+     * taken or the timeout elapses, whichever is sooner.
+     */
+    public void awaitCompletion(final long lastCompletionCount, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (completionLock) {
+            long remaining = deadline - System.nanoTime();
+            while (completionCount == lastCompletionCount && remaining > 0) {
+                TimeUnit.NANOSECONDS.timedWait(completionLock, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        }
+    }
+
     private synchronized TaskProducer nextProducer() {
         TaskProducer producer = null;
         try {
@@ -132,7 +176,29 @@ public class TaskExecutor {
         return producer;
     }
 
+    public int getThreadLimit() {
+        if (adaptive) {
+            // The adaptive limit is kept in step with maxThreads but make sure
+            // we never go over it whatever order the settings changed in.
+            return Math.min(concurrencyLimit.getLimit(), maxThreads);
+        }
+        return maxThreads;
+    }
+
+    public int getActiveThreads() {
+        return Math.max(0, totalThreads.get());
+    }
+
+    public double getLatencyMs() {
+        return concurrencyLimit.getLatencyMs();
+    }
+
     public void setMaxThreads(final int maxThreads) {
         this.maxThreads = maxThreads;
+        concurrencyLimit.setMaxLimit(maxThreads);
+    }
+
+    public void setAdaptive(final boolean adaptive) {
+        this.adaptive = adaptive;
     }
 }
@@ -18,6 +18,8 @@ package stroom.index.server;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.document.Document;
@@ -93,6 +95,11 @@ public class MockIndexShardWriter implements IndexShardWriter {
         return true;
     }
 
+    @Override
+    public Future<Boolean> flushAsync() {
+        return CompletableFuture.completedFuture(true);
+    }
+
     public List<Document> getDocuments() {
         return documents;
     }
@@ -21,6 +21,9 @@ import java.io.IOException;
 import java.util.HashSet;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -183,6 +186,128 @@ public class TestIndexShardIO extends StroomUnitTest {
         writer.close();
     }
 
+    @Test
+    public void testFullShardMergedToOneSegment() throws IOException {
+        final Index index = new Index();
+        index.setName("Test");
+        index.setMaxDocsPerShard(5);
+
+        final Volume volume = new Volume();
+        volume.setPath(getCurrentTestDir().getAbsolutePath());
+        final IndexShard idx1 = new IndexShard();
+        idx1.setIndex(index);
+        idx1.setPartition("all");
+        idx1.setId(1L);
+        idx1.setVolume(volume);
+        idx1.setIndexVersion(LuceneVersionUtil.getCurrentVersion());
+
+        // Clean up from previous tests.
+        final File dir = IndexShardUtil.getIndexDir(idx1);
+        FileSystemUtil.deleteDirectory(dir);
+
+        final IndexShardWriterImpl writer = new IndexShardWriterImpl(service, indexFields, index, idx1);
+        writer.setMergeExecutor(Runnable::run);
+        writer.open(true);
+
+        // Commit each document to create several segments.
+        for (int i = 1; i < 5; i++) {
+            writer.addDocument(buildDocument(i));
+            writer.flush();
+        }
+        Assert.assertEquals(4, getSegmentCount(dir));
+
+        // The commit after filling the shard merges it and the merge is made
+        // durable by the commit that follows.
+        writer.addDocument(buildDocument(5));
+        Assert.assertTrue(writer.isFull());
+        writer.flush();
+        writer.flush();
+        Assert.assertEquals(5, idx1.getDocumentCount());
+        Assert.assertEquals(1, getSegmentCount(dir));
+
+        writer.close();
+    }
+
+    @Test
+    public void testEndedPartitionMerged() throws IOException {
+        final Index index = new Index();
+        index.setName("Test");
+
+        final Volume volume = new Volume();
+        volume.setPath(getCurrentTestDir().getAbsolutePath());
+        final IndexShard idx1 = new IndexShard();
+        idx1.setIndex(index);
+        idx1.setPartition("all");
+        idx1.setPartitionToTime(System.currentTimeMillis() + 60000);
+        idx1.setId(1L);
+        idx1.setVolume(volume);
+        idx1.setIndexVersion(LuceneVersionUtil.getCurrentVersion());
+
+        // Clean up from previous tests.
+        final File dir = IndexShardUtil.getIndexDir(idx1);
+        FileSystemUtil.deleteDirectory(dir);
+
+        final IndexShardWriterImpl writer = new IndexShardWriterImpl(service, indexFields, index, idx1);
+        writer.setMergeExecutor(Runnable::run);
+        writer.open(true);
+
+        // Commits don't merge the shard while its partition is current.
+        for (int i = 1; i <= 3; i++) {
+            writer.addDocument(buildDocument(i));
+            writer.flush();
+        }
+        Assert.assertEquals(3, getSegmentCount(dir));
+
+        // The first commit after the partition has ended merges it.
+        idx1.setPartitionToTime(System.currentTimeMillis() - 1000);
+        writer.flush();
+        writer.flush();
+        Assert.assertEquals(3, idx1.getDocumentCount());
+        Assert.assertEquals(1, getSegmentCount(dir));
+
+        writer.close();
+    }
+
+    @Test
+    public void testOpenShardNotMergedWhenClosed() throws IOException {
+        final Index index = new Index();
+        index.setName("Test");
+
+        final Volume volume = new Volume();
+        volume.setPath(getCurrentTestDir().getAbsolutePath());
+        final IndexShard idx1 = new IndexShard();
+        idx1.setIndex(index);
+        idx1.setPartition("all");
+        idx1.setId(1L);
+        idx1.setVolume(volume);
+        idx1.setIndexVersion(LuceneVersionUtil.getCurrentVersion());
+
+        // Clean up from previous tests.
+        final File dir = IndexShardUtil.getIndexDir(idx1);
+        FileSystemUtil.deleteDirectory(dir);
+
+        final IndexShardWriterImpl writer = new IndexShardWriterImpl(service, indexFields, index, idx1);
+        writer.setMergeExecutor(Runnable::run);
+        writer.open(true);
+        for (int i = 1; i <= 3; i++) {
+            writer.addDocument(buildDocument(i));
+            writer.flush();
+        }
+
+        // A shard that may still get more documents is left for Lucene's own
+        // merge policy rather than being merged every time it is closed.
+        writer.close();
+        Assert.assertEquals(3, idx1.getDocumentCount());
+        Assert.assertEquals(3, getSegmentCount(dir));
+    }
+
+    private int getSegmentCount(final File dir) throws IOException {
+        try (Directory directory = new NIOFSDirectory(dir);
+                DirectoryReader reader = DirectoryReader.open(directory)) {
+            return reader.leaves().size();
+        }
+    }
+
     @Test
     public void testWriteLoadsNoFlush() throws IOException {
         final Index index = new Index();
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server;
+
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.WildcardQuery;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.cache.CacheManagerAutoCloseable;
+import stroom.dictionary.MockDictionaryService;
+import stroom.dictionary.shared.Dictionary;
+import stroom.entity.server.event.EntityEvent;
+import stroom.entity.shared.DocRef;
+import stroom.entity.shared.EntityAction;
+import stroom.index.server.LuceneVersionUtil;
+import stroom.query.shared.Condition;
+import stroom.query.shared.ExpressionOperator;
+import stroom.query.shared.ExpressionTerm;
+import stroom.query.shared.IndexField;
+import stroom.query.shared.IndexField.AnalyzerType;
+import stroom.query.shared.IndexFieldsMap;
+import stroom.search.server.SearchExpressionQueryBuilder.SearchExpressionQuery;
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestSearchExpressionQueryBuilder extends StroomUnitTest {
+    @Test
+    public void testDictionaryTermsUseAutomaton() throws Exception {
+        final MockDictionaryService dictionaryService = new MockDictionaryService();
+        Dictionary dictionary = dictionaryService.create(null, "test");
+        dictionary.setData("host1\nhost2\nhost3\nweb*");
+        dictionary = dictionaryService.save(dictionary);
+
+        final IndexFieldsMap indexFieldsMap = new IndexFieldsMap();
+        indexFieldsMap.put(IndexField.createField("Host", AnalyzerType.KEYWORD));
+
+        final ExpressionOperator expression = new ExpressionOperator();
+        expression.addChild(new ExpressionTerm("Host", Condition.IN_DICTIONARY, DocRef.create(dictionary)));
+
+        try (CacheManagerAutoCloseable cacheManager = CacheManagerAutoCloseable.create()) {
+            final DictionaryQueryCache dictionaryQueryCache = new DictionaryQueryCache(cacheManager);
+
+            final SearchExpressionQuery query1 = new SearchExpressionQueryBuilder(dictionaryService,
+                    dictionaryQueryCache, indexFieldsMap, 1024)
+                            .buildQuery(LuceneVersionUtil.CURRENT_LUCENE_VERSION, expression);
+            final BooleanQuery booleanQuery = (BooleanQuery) query1.getQuery();
+
+            // The single terms are combined into one automaton clause and the
+            // wildcard line stays as its own clause.
+            Assert.assertEquals(2, booleanQuery.getClauses().length);
+            int automatonCount = 0;
+            int wildcardCount = 0;
+            for (final BooleanClause clause : booleanQuery.getClauses()) {
+                if (clause.getQuery() instanceof AutomatonQuery && !(clause.getQuery() instanceof WildcardQuery)) {
+                    automatonCount++;
+                } else if (clause.getQuery() instanceof WildcardQuery) {
+                    wildcardCount++;
+                }
+            }
+            Assert.assertEquals(1, automatonCount);
+            Assert.assertEquals(1, wildcardCount);
+            Assert.assertTrue(query1.getTerms().contains("host2"));
+            Assert.assertEquals(1, dictionaryQueryCache.getWeight());
+
+            // A second search builds an equal query from the cached parts.
+            final SearchExpressionQuery query2 = new SearchExpressionQueryBuilder(dictionaryService,
+                    dictionaryQueryCache, indexFieldsMap, 1024)
+                            .buildQuery(LuceneVersionUtil.CURRENT_LUCENE_VERSION, expression);
+            final Query cached = query2.getQuery();
+            Assert.assertNotSame(booleanQuery, cached);
+            Assert.assertEquals(booleanQuery, cached);
+            Assert.assertEquals(query1.getTerms(), query2.getTerms());
+            Assert.assertEquals(1, dictionaryQueryCache.getWeight());
+
+            // Modifying one search's query doesn't change the other.
+            for (final BooleanClause clause : booleanQuery.getClauses()) {
+                clause.setOccur(Occur.MUST);
+            }
+            for (final BooleanClause clause : ((BooleanQuery) cached).getClauses()) {
+                Assert.assertEquals(Occur.SHOULD, clause.getOccur());
+            }
+
+            // Changing the dictionary drops its cached query.
+            dictionaryQueryCache.onChange(new EntityEvent(DocRef.create(dictionary), EntityAction.UPDATE));
+            Assert.assertEquals(0, dictionaryQueryCache.getWeight());
+        }
+    }
+}
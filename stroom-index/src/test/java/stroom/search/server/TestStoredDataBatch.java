@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestStoredDataBatch extends StroomUnitTest {
+    @Test
+    public void testRows() {
+        final StoredDataBatch batch = new StoredDataBatch(4, 0, 1, 200);
+        for (int i = 0; i < 200; i++) {
+            batch.startRow();
+            batch.set(0, String.valueOf(i / 10));
+            batch.set(1, String.valueOf(i));
+            batch.set(2, "user" + (i % 3));
+            if (i % 2 == 0) {
+                batch.set(3, "even");
+            }
+            Assert.assertTrue(batch.endRow());
+        }
+
+        Assert.assertEquals(200, batch.size());
+        Assert.assertTrue(batch.isFull());
+
+        Assert.assertEquals(12, batch.getStreamId(125));
+        Assert.assertEquals(125, batch.getEventId(125));
+        Assert.assertArrayEquals(new String[] { "12", "125", "user2", null }, batch.getValues(125));
+        Assert.assertArrayEquals(new String[] { "0", "0", "user0", "even" }, batch.getValues(0));
+
+        // Repeated values share the same string instance.
+        Assert.assertSame(batch.getValue(3, 2), batch.getValue(6, 2));
+    }
+
+    @Test
+    public void testEmptyAndBadRows() {
+        final StoredDataBatch batch = new StoredDataBatch(3, 0, 1, 10);
+
+        // A row without values is dropped.
+        batch.startRow();
+        Assert.assertFalse(batch.endRow());
+
+        // Ids that are not numbers are treated as missing.
+        batch.startRow();
+        batch.set(0, "abc");
+        batch.set(1, "5");
+        batch.set(2, "value");
+        Assert.assertTrue(batch.endRow());
+
+        Assert.assertEquals(1, batch.size());
+        Assert.assertEquals(-1, batch.getStreamId(0));
+        Assert.assertEquals(5, batch.getEventId(0));
+        Assert.assertArrayEquals(new String[] { null, "5", "value" }, batch.getValues(0));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server.extraction;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import stroom.entity.server.event.EntityEvent;
+import stroom.entity.server.event.EntityEventBus;
+import stroom.entity.shared.DocRef;
+import stroom.entity.shared.EntityAction;
+import stroom.node.server.MockStroomPropertyService;
+import stroom.pipeline.shared.PipelineEntity;
+import stroom.pipeline.shared.XSLT;
+import stroom.query.shared.IndexConstants;
+import stroom.util.collections.LongBitmap;
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestExtractedValuesCache extends StroomUnitTest {
+    private static final String CACHE_SIZE_PROPERTY = "stroom.search.extraction.valueCacheSize";
+
+    private final MockStroomPropertyService propertyService = new MockStroomPropertyService();
+    private ExtractedValuesCache cache;
+    private PipelineEntity pipelineEntity;
+
+    @Before
+    public void init() {
+        propertyService.setProperty(CACHE_SIZE_PROPERTY, "1MB");
+        cache = new ExtractedValuesCache(new ExtractionTaskProperties(propertyService),
+                Mockito.mock(EntityEventBus.class));
+        pipelineEntity = new PipelineEntity();
+        pipelineEntity.setUuid("test");
+    }
+
+    @Test
+    public void testCommitAndGet() {
+        final ExtractedValuesCache.Collector collector = cache.createCollector(pipelineEntity, 1);
+        collector.record(record(2, "b"));
+        collector.record(record(1, "a"));
+        collector.commit(LongBitmap.of(1, 2, 3));
+
+        // Records come back in event order and events without records are
+        // cached as such.
+        final List<ExtractedValuesCache.Record> records = cache.get(pipelineEntity, 1, LongBitmap.of(1, 2, 3));
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals("a", records.get(0).getValues()[1]);
+        Assert.assertEquals("b", records.get(1).getValues()[1]);
+
+        // Any event that isn't cached means the stream has to be extracted.
+        Assert.assertNull(cache.get(pipelineEntity, 1, LongBitmap.of(1, 4)));
+        Assert.assertNull(cache.get(pipelineEntity, 2, LongBitmap.of(1)));
+
+        // A new version of the pipeline doesn't see the old records.
+        pipelineEntity.setVersion((byte) 1);
+        Assert.assertNull(cache.get(pipelineEntity, 1, LongBitmap.of(1)));
+    }
+
+    @Test
+    public void testUnattributableRecords() {
+        final ExtractedValuesCache.Collector collector = cache.createCollector(pipelineEntity, 1);
+        collector.record(record(1, "a"));
+        collector.record(new ExtractedValuesCache.Record(new String[] { "Value" }, new String[] { "b" }));
+        collector.commit(LongBitmap.of(1));
+
+        Assert.assertNull(cache.get(pipelineEntity, 1, LongBitmap.of(1)));
+    }
+
+    @Test
+    public void testEviction() {
+        // Only leave room for a few entries.
+        propertyService.setProperty(CACHE_SIZE_PROPERTY, "2kB");
+        for (long eventId = 1; eventId <= 100; eventId++) {
+            final ExtractedValuesCache.Collector collector = cache.createCollector(pipelineEntity, 1);
+            collector.record(record(eventId, "value" + eventId));
+            collector.commit(LongBitmap.of(eventId));
+        }
+
+        Assert.assertNull(cache.get(pipelineEntity, 1, LongBitmap.of(1)));
+        Assert.assertNotNull(cache.get(pipelineEntity, 1, LongBitmap.of(100)));
+    }
+
+    @Test
+    public void testClear() {
+        final ExtractedValuesCache.Collector collector = cache.createCollector(pipelineEntity, 1);
+        collector.record(record(1, "a"));
+        collector.commit(LongBitmap.of(1));
+        Assert.assertNotNull(cache.get(pipelineEntity, 1, LongBitmap.of(1)));
+
+        // Editing a translation clears the cache.
+        cache.onChange(new EntityEvent(new DocRef(XSLT.ENTITY_TYPE, "xslt"), EntityAction.UPDATE));
+        Assert.assertNull(cache.get(pipelineEntity, 1, LongBitmap.of(1)));
+    }
+
+    @Test
+    public void testDisabled() {
+        propertyService.setProperty(CACHE_SIZE_PROPERTY, "0");
+        Assert.assertNull(cache.createCollector(pipelineEntity, 1));
+        Assert.assertNull(cache.get(pipelineEntity, 1, LongBitmap.of(1)));
+    }
+
+    private ExtractedValuesCache.Record record(final long eventId, final String value) {
+        return new ExtractedValuesCache.Record(new String[] { IndexConstants.EVENT_ID, "Value" },
+                new String[] { String.valueOf(eventId), value });
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server.extraction;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import stroom.dashboard.expression.FieldIndexMap;
+import stroom.entity.shared.DocRef;
+import stroom.pipeline.server.errorhandler.ErrorReceiver;
+import stroom.pipeline.shared.PipelineEntity;
+import stroom.search.server.ClusterSearchTask;
+import stroom.search.server.Coprocessor;
+import stroom.search.server.StoredDataBatch;
+import stroom.search.server.shard.TransferList;
+import stroom.util.collections.LongBitmap;
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestExtractionTaskProducer extends StroomUnitTest {
+    private static final DocRef PIPELINE = new DocRef(PipelineEntity.ENTITY_TYPE, "pipeline");
+
+    private final TransferList<StoredDataBatch> storedData = new TransferList<>(100);
+    private ClusterSearchTask clusterSearchTask;
+    private StreamMapCreator streamMapCreator;
+    private Map<DocRef, Set<Coprocessor<?>>> coprocessorsMap;
+
+    @Before
+    public void init() {
+        clusterSearchTask = Mockito.mock(ClusterSearchTask.class);
+        streamMapCreator = Mockito.mock(StreamMapCreator.class);
+        Mockito.when(streamMapCreator.isVisible(Mockito.anyLong())).thenReturn(true);
+
+        coprocessorsMap = new HashMap<>();
+        coprocessorsMap.put(PIPELINE, Collections.singleton(Mockito.mock(Coprocessor.class)));
+    }
+
+    @Test
+    public void testEventsCoalescedWithinWindow() {
+        final ExtractionTaskProducer producer = createProducer(60000);
+
+        storedData.offer(batch(1, 1, 1, 2));
+        // The stream is held back until the window has passed.
+        Assert.assertNull(producer.next());
+
+        // Events for the same stream from later batches join it.
+        storedData.offer(batch(1, 3, 2, 1));
+        Assert.assertNull(producer.next());
+
+        // Completing the index search releases everything that is held back.
+        Assert.assertFalse(producer.isComplete());
+        final ExtractionTask task1 = (ExtractionTask) producer.next();
+        Assert.assertEquals(1, task1.getStreamId());
+        Assert.assertEquals(LongBitmap.of(1, 2, 3), task1.getEventIds());
+        final ExtractionTask task2 = (ExtractionTask) producer.next();
+        Assert.assertEquals(2, task2.getStreamId());
+        Assert.assertEquals(LongBitmap.of(1), task2.getEventIds());
+        Assert.assertNull(producer.next());
+
+        task1.getResultReceivers().get(PIPELINE).complete();
+        Assert.assertFalse(producer.isComplete());
+        task2.getResultReceivers().get(PIPELINE).complete();
+        Assert.assertTrue(producer.isComplete());
+    }
+
+    @Test
+    public void testNoWindow() {
+        final ExtractionTaskProducer producer = createProducer(0);
+
+        storedData.offer(batch(1, 1));
+        final ExtractionTask task = (ExtractionTask) producer.next();
+        Assert.assertNotNull(task);
+        Assert.assertEquals(LongBitmap.of(1), task.getEventIds());
+    }
+
+    @Test
+    public void testHiddenStreamsSkipped() {
+        Mockito.when(streamMapCreator.isVisible(2)).thenReturn(false);
+        final ExtractionTaskProducer producer = createProducer(0);
+
+        storedData.offer(batch(2, 1, 1, 1));
+        final ExtractionTask task = (ExtractionTask) producer.next();
+        Assert.assertEquals(1, task.getStreamId());
+        Assert.assertNull(producer.next());
+    }
+
+    private ExtractionTaskProducer createProducer(final long coalesceWindow) {
+        return new ExtractionTaskProducer(clusterSearchTask, streamMapCreator, storedData, new FieldIndexMap(),
+                coprocessorsMap, Mockito.mock(ErrorReceiver.class), 1, coalesceWindow);
+    }
+
+    /**
+     * @param ids
+     *            Pairs of stream and event ids.
+     */
+    private StoredDataBatch batch(final long... ids) {
+        final StoredDataBatch batch = new StoredDataBatch(2, 0, 1, 100);
+        for (int i = 0; i < ids.length; i += 2) {
+            batch.startRow();
+            batch.set(0, String.valueOf(ids[i]));
+            batch.set(1, String.valueOf(ids[i + 1]));
+            batch.endRow();
+        }
+        return batch;
+    }
+}
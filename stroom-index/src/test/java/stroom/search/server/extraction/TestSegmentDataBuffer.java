@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server.extraction;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.util.io.StreamUtil;
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestSegmentDataBuffer extends StroomUnitTest {
+    @Test
+    public void testInMemory() throws IOException {
+        test(createData(1000), 10000, false);
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        test(createData(100000), 10000, true);
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        test(new byte[0], 0, false);
+    }
+
+    private void test(final byte[] data, final long memoryLimit, final boolean spilt) throws IOException {
+        try (final SegmentDataBuffer buffer = new SegmentDataBuffer(memoryLimit)) {
+            buffer.write(new ByteArrayInputStream(data));
+            Assert.assertEquals(spilt, buffer.isSpilt());
+
+            // Every pipeline reads the same data.
+            for (int i = 0; i < 3; i++) {
+                try (final InputStream inputStream = buffer.getInputStream()) {
+                    Assert.assertArrayEquals(data, StreamUtil.streamToBuffer(inputStream, false).toByteArray());
+                }
+            }
+        }
+    }
+
+    private byte[] createData(final int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server.shard;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestTransferList extends StroomUnitTest {
+    @Test
+    public void testCapacityCountsItems() {
+        final TransferList<Integer> list = new TransferList<>(2);
+        Assert.assertTrue(list.offer(1));
+        Assert.assertTrue(list.offer(2));
+        Assert.assertFalse(list.offer(3));
+
+        Assert.assertEquals(Arrays.asList(1, 2), list.swap());
+        Assert.assertTrue(list.offer(3));
+    }
+
+    @Test
+    public void testCapacityCountsItemSize() {
+        final TransferList<List<String>> list = new TransferList<>(10, List::size);
+
+        // Small items don't use up the capacity as if they were full size.
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(list.offer(Collections.singletonList("a")));
+        }
+        Assert.assertFalse(list.offer(Collections.singletonList("a")));
+        Assert.assertEquals(10, list.swap().size());
+
+        // An item bigger than the capacity is still accepted into an empty
+        // list but nothing else is until it has been taken.
+        Assert.assertTrue(list.offer(Collections.nCopies(20, "a")));
+        Assert.assertFalse(list.offer(Collections.singletonList("a")));
+        Assert.assertEquals(1, list.swap().size());
+        Assert.assertNull(list.swap());
+    }
+}
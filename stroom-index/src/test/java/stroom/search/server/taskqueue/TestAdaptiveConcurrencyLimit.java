@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search.server.taskqueue;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestAdaptiveConcurrencyLimit extends StroomUnitTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void testBackOffWhenLatencyRises() {
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20);
+        for (int i = 0; i < 200; i++) {
+            limit.update(10 * MS, true);
+        }
+        Assert.assertEquals(20, limit.getLimit());
+
+        // A sustained jump in latency should pull the limit down but never
+        // below one.
+        for (int i = 0; i < 60; i++) {
+            limit.update(100 * MS, true);
+        }
+        Assert.assertTrue(limit.getLimit() < 20);
+        for (int i = 0; i < 1000; i++) {
+            limit.update(100000 * MS, true);
+        }
+        Assert.assertTrue(limit.getLimit() >= 1);
+    }
+
+    @Test
+    public void testGrowWhenSaturated() {
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8);
+        for (int i = 0; i < 50; i++) {
+            limit.update(10 * MS, true);
+        }
+        for (int i = 0; i < 60; i++) {
+            limit.update(100 * MS, true);
+        }
+        final int reduced = limit.getLimit();
+        Assert.assertTrue(reduced < 8);
+
+        // Once latency settles at the new level the limit should climb back
+        // to the maximum while the executor stays saturated.
+        for (int i = 0; i < 1000; i++) {
+            limit.update(100 * MS, true);
+        }
+        Assert.assertEquals(8, limit.getLimit());
+    }
+
+    @Test
+    public void testVaryingTaskSizeWithoutContention() {
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8);
+        final Random random = new Random(1);
+
+        // Tasks of very different sizes, e.g. small and large shards, with no
+        // contention shouldn't be mistaken for congestion.
+        for (int i = 0; i < 10000; i++) {
+            final long latency = random.nextBoolean() ? MS : (1 + random.nextInt(100)) * MS;
+            limit.update(latency, true);
+            Assert.assertEquals(8, limit.getLimit());
+        }
+    }
+
+    @Test
+    public void testNoGrowthWhenNotSaturated() {
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8);
+        for (int i = 0; i < 50; i++) {
+            limit.update(10 * MS, true);
+        }
+        for (int i = 0; i < 60; i++) {
+            limit.update(100 * MS, true);
+        }
+        Assert.assertTrue(limit.getLimit() < 8);
+
+        // Without saturation there is no reason to add threads.
+        for (int i = 0; i < 1000; i++) {
+            limit.update(100 * MS, false);
+        }
+        Assert.assertTrue(limit.getLimit() < 8);
+
+        // Changing the maximum resets the limit to the new ceiling.
+        limit.setMaxLimit(4);
+        Assert.assertEquals(4, limit.getLimit());
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import stroom.dashboard.expression.FieldIndexMap;
+import stroom.dashboard.expression.Generator;
+import stroom.dashboard.shared.ParamUtil;
+import stroom.mapreduce.UnsafePairQueue;
+import stroom.query.CompiledDepths;
+import stroom.query.CompiledFields;
+import stroom.query.CompiledSorter;
+import stroom.query.Item;
+import stroom.query.ItemMapper;
+import stroom.query.ItemSpillStore;
+import stroom.query.shared.Field;
+import stroom.query.shared.IndexField;
+import stroom.query.shared.IndexFieldType;
+import stroom.query.shared.IndexFieldsMap;
+import stroom.query.shared.Sort;
+import stroom.query.shared.Sort.SortDirection;
+import stroom.query.shared.TableSettings;
+import stroom.util.test.StroomUnitTest;
+
+public class TestItemSpillStore extends StroomUnitTest {
+    @Test
+    public void testGroupedCountsAreMergedAcrossRuns() throws IOException {
+        final IndexFieldsMap indexFieldsMap = createIndexFieldsMap("Text", IndexFieldType.FIELD);
+
+        final Field count = new Field("Count");
+        count.setExpression("count()");
+
+        final Field field = new Field("Text");
+        field.setExpression(ParamUtil.makeParam("Text"));
+        field.setGroup(0);
+
+        final TableSettings tableSettings = new TableSettings();
+        tableSettings.addField(count);
+        tableSettings.addField(field);
+
+        // Use a tiny memory budget so that every queue is spilt to disk.
+        final ItemSpillStore spillStore = createSpillStore(tableSettings, 1);
+        try {
+            for (int batch = 0; batch < 10; batch++) {
+                final UnsafePairQueue<String, Item> queue = new UnsafePairQueue<>();
+                final ItemMapper itemMapper = createItemMapper(queue, indexFieldsMap, tableSettings);
+                for (int i = 0; i < 300; i++) {
+                    itemMapper.collect(null, new String[] { "Text " + (i % 100) });
+                }
+                spillStore.add(queue);
+            }
+
+            final List<Item> items = read(spillStore);
+            Assert.assertEquals(100, items.size());
+            for (final Item item : items) {
+                final Object value = ((Generator) item.getValues()[0]).eval();
+                Assert.assertEquals(30D, ((Number) value).doubleValue(), 0);
+            }
+        } finally {
+            spillStore.destroy();
+        }
+    }
+
+    @Test
+    public void testSortedOutputIsComplete() throws IOException {
+        final IndexFieldsMap indexFieldsMap = createIndexFieldsMap("Number", IndexFieldType.ID);
+
+        final Field field = new Field("Number");
+        field.setExpression(ParamUtil.makeParam("Number"));
+        field.setSort(new Sort(0, SortDirection.ASCENDING));
+
+        final TableSettings tableSettings = new TableSettings();
+        tableSettings.addField(field);
+
+        final ItemSpillStore spillStore = createSpillStore(tableSettings, 1);
+        try {
+            for (int batch = 0; batch < 5; batch++) {
+                final UnsafePairQueue<String, Item> queue = new UnsafePairQueue<>();
+                final ItemMapper itemMapper = createItemMapper(queue, indexFieldsMap, tableSettings);
+                for (int i = 0; i < 3000; i++) {
+                    itemMapper.collect(null, new String[] { String.valueOf((int) (Math.random() * 1000)) });
+                }
+                spillStore.add(queue);
+            }
+
+            final List<Item> items = read(spillStore);
+            Assert.assertEquals(15000, items.size());
+
+            final CompiledSorter compiledSorter = new CompiledSorter(tableSettings.getFields());
+            for (int i = 1; i < items.size(); i++) {
+                Assert.assertTrue(compiledSorter.compare(items.get(i - 1), items.get(i)) <= 0);
+            }
+        } finally {
+            spillStore.destroy();
+        }
+    }
+
+    @Test
+    public void testGroupedChildrenFollowTheirParent() throws IOException {
+        final IndexFieldsMap indexFieldsMap = createIndexFieldsMap("Outer", IndexFieldType.FIELD);
+        indexFieldsMap.put(createIndexField("Inner", IndexFieldType.FIELD));
+
+        final Field count = new Field("Count");
+        count.setExpression("count()");
+
+        final Field outer = new Field("Outer");
+        outer.setExpression(ParamUtil.makeParam("Outer"));
+        outer.setGroup(0);
+
+        final Field inner = new Field("Inner");
+        inner.setExpression(ParamUtil.makeParam("Inner"));
+        inner.setGroup(1);
+        inner.setSort(new Sort(0, SortDirection.ASCENDING));
+
+        final TableSettings tableSettings = new TableSettings();
+        tableSettings.addField(count);
+        tableSettings.addField(outer);
+        tableSettings.addField(inner);
+
+        // Enough child rows that the hierarchy has to be sorted on disk.
+        final ItemSpillStore spillStore = createSpillStore(tableSettings, 1);
+        try {
+            for (int batch = 0; batch < 3; batch++) {
+                final UnsafePairQueue<String, Item> queue = new UnsafePairQueue<>();
+                final ItemMapper itemMapper = createItemMapper(queue, indexFieldsMap, tableSettings);
+                for (int i = 0; i < 4000; i++) {
+                    itemMapper.collect(null, new String[] { "Outer " + (i % 10), "Inner " + (10000 + i) });
+                }
+                spillStore.add(queue);
+            }
+
+            final List<Item> items = read(spillStore);
+            Assert.assertEquals(4010, items.size());
+
+            final CompiledSorter compiledSorter = new CompiledSorter(tableSettings.getFields());
+            Item parent = null;
+            Item previousChild = null;
+            int parents = 0;
+            int children = 0;
+            for (final Item item : items) {
+                final double value = ((Number) ((Generator) item.getValues()[0]).eval()).doubleValue();
+                if (item.getDepth() == 0) {
+                    Assert.assertEquals(1200D, value, 0);
+                    if (parent != null) {
+                        Assert.assertEquals(400, children);
+                    }
+                    parent = item;
+                    previousChild = null;
+                    parents++;
+                    children = 0;
+                } else {
+                    Assert.assertEquals(1, item.getDepth());
+                    Assert.assertEquals(3D, value, 0);
+                    Assert.assertNotNull(parent);
+                    Assert.assertTrue(item.getGroupKey().startsWith(parent.getGroupKey() + ":"));
+                    if (previousChild != null) {
+                        Assert.assertTrue(compiledSorter.compare(previousChild, item) <= 0);
+                    }
+                    previousChild = item;
+                    children++;
+                }
+            }
+            Assert.assertEquals(10, parents);
+            Assert.assertEquals(400, children);
+        } finally {
+            spillStore.destroy();
+        }
+    }
+
+    private IndexFieldsMap createIndexFieldsMap(final String fieldName, final IndexFieldType fieldType) {
+        final IndexFieldsMap indexFieldsMap = new IndexFieldsMap();
+        indexFieldsMap.put(createIndexField(fieldName, fieldType));
+        return indexFieldsMap;
+    }
+
+    private IndexField createIndexField(final String fieldName, final IndexFieldType fieldType) {
+        final IndexField indexField = new IndexField();
+        indexField.setFieldName(fieldName);
+        indexField.setFieldType(fieldType);
+        return indexField;
+    }
+
+    private ItemSpillStore createSpillStore(final TableSettings tableSettings, final long memoryBudget) {
+        final CompiledSorter compiledSorter = new CompiledSorter(tableSettings.getFields());
+        final CompiledDepths compiledDepths = new CompiledDepths(tableSettings.getFields(), tableSettings.showDetail());
+        final CompiledFields compiledFields = new CompiledFields(null, tableSettings.getFields(),
+                new FieldIndexMap(true));
+        return new ItemSpillStore(compiledFields, compiledSorter, compiledDepths, memoryBudget);
+    }
+
+    private ItemMapper createItemMapper(final UnsafePairQueue<String, Item> queue,
+            final IndexFieldsMap indexFieldsMap, final TableSettings tableSettings) {
+        final CompiledDepths compiledDepths = new CompiledDepths(tableSettings.getFields(), tableSettings.showDetail());
+        final CompiledFields compiledFields = new CompiledFields(indexFieldsMap, tableSettings.getFields(),
+                new FieldIndexMap(true));
+        return new ItemMapper(queue, compiledFields, compiledDepths.getMaxDepth(), compiledDepths.getMaxGroupDepth());
+    }
+
+    private List<Item> read(final ItemSpillStore spillStore) throws IOException {
+        final List<Item> items = new ArrayList<>();
+        spillStore.read(items::add);
+        return items;
+    }
+}
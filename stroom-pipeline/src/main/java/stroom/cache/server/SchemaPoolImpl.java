@@ -16,6 +16,8 @@
 
 package stroom.cache.server;
 
+import java.util.List;
+
 import javax.annotation.Resource;
 import javax.inject.Inject;
 
@@ -55,6 +57,11 @@ public class SchemaPoolImpl extends AbstractPoolCacheBean<SchemaKey, StoredSchem
         clear();
     }
 
+    @Override
+    public void onChange(final List<EntityEvent> events) {
+        clear();
+    }
+
     @Resource
     public void setXMLSchemaCache(final XMLSchemaCache xmlSchemaCache) {
         xmlSchemaCache.addClearHandler(() -> clear());
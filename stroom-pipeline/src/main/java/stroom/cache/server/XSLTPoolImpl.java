@@ -133,4 +133,9 @@ public class XSLTPoolImpl extends AbstractPoolCacheBean<VersionedEntityDecorator
     public void onChange(final EntityEvent event) {
         clear();
     }
+
+    @Override
+    public void onChange(final List<EntityEvent> events) {
+        clear();
+    }
 }
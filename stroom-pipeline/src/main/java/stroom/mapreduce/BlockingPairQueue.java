@@ -19,11 +19,12 @@ package stroom.mapreduce;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 import stroom.util.shared.Monitor;
-import stroom.util.thread.ThreadUtil;
 
 public class BlockingPairQueue<K, V> implements PairQueue<K, V> {
     private static final long serialVersionUID = 3205692727588879153L;
@@ -35,6 +36,7 @@ public class BlockingPairQueue<K, V> implements PairQueue<K, V> {
     private volatile List<Pair<K, V>> queue;
     private final AtomicInteger size = new AtomicInteger();
     private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
 
     private transient Iterator<Pair<K, V>> emptyIter;
 
@@ -45,32 +47,29 @@ public class BlockingPairQueue<K, V> implements PairQueue<K, V> {
     @Override
     public void collect(final K key, final V value) {
         final Pair<K, V> pair = new Pair<>(key, value);
-        while (!offer(pair) && (monitor == null || !monitor.isTerminated())) {
-            ThreadUtil.sleep(100);
-        }
-    }
-
-    private boolean offer(final Pair<K, V> pair) {
-        boolean success = false;
         lock.lock();
         try {
-            // We won't allow more than max results to go into the queue.
-            if (size.get() >= MAX_SIZE) {
-                success = false;
-
-            } else {
-                if (queue == null) {
-                    queue = new ArrayList<>();
+            // We won't allow more than max results to go into the queue so
+            // wait for the queue to be drained.
+            while (size.get() >= MAX_SIZE) {
+                if (monitor != null && monitor.isTerminated()) {
+                    return;
                 }
+                // Wake up now and again to check for termination.
+                notFull.await(1, TimeUnit.SECONDS);
+            }
 
-                queue.add(pair);
-                size.incrementAndGet();
-                success = true;
+            if (queue == null) {
+                queue = new ArrayList<>();
             }
+
+            queue.add(pair);
+            size.incrementAndGet();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
         } finally {
             lock.unlock();
         }
-        return success;
     }
 
     @Override
@@ -81,6 +80,7 @@ public class BlockingPairQueue<K, V> implements PairQueue<K, V> {
             local = queue;
             queue = null;
             size.set(0);
+            notFull.signalAll();
         } finally {
             lock.unlock();
         }
@@ -32,6 +32,8 @@ import stroom.pipeline.shared.data.PipelineElementType;
 import stroom.pipeline.shared.data.PipelineElementType.Category;
 import stroom.pipeline.state.StreamHolder;
 import stroom.streamstore.shared.Stream;
+import stroom.util.collections.LongBitmap;
+import stroom.util.collections.LongBitmap.LongIterator;
 import stroom.util.shared.Severity;
 import stroom.util.spring.StroomScope;
 
@@ -61,7 +63,7 @@ public class IdEnrichmentFilter extends AbstractXMLFilter {
 
     // These variables are used in search result output.
     private String streamId;
-    private long[] eventIds;
+    private LongIterator eventIds;
 
     /**
      * This method tells filters that a stream is about to be parsed so that
@@ -135,14 +137,13 @@ public class IdEnrichmentFilter extends AbstractXMLFilter {
                 // If we are using this is search result output then we need to
                 // get event ids from a list.
                 if (eventIds != null) {
-                    final int index = (int) count;
-                    if (eventIds.length <= index) {
+                    if (!eventIds.hasNext()) {
                         final String msg = "Unexpected number of events being extracted";
                         final ProcessException searchException = new ProcessException(msg);
                         errorReceiverProxy.log(Severity.FATAL_ERROR, null, getElementId(), msg, searchException);
                         throw searchException;
                     }
-                    eventId = String.valueOf(eventIds[index]);
+                    eventId = String.valueOf(eventIds.next());
                 } else {
                     eventId = String.valueOf(count + 1);
                 }
@@ -195,8 +196,8 @@ public class IdEnrichmentFilter extends AbstractXMLFilter {
         depth--;
     }
 
-    public void setup(final String streamId, final long[] eventIds) {
+    public void setup(final String streamId, final LongBitmap eventIds) {
         this.streamId = streamId;
-        this.eventIds = eventIds;
+        this.eventIds = eventIds.iterator();
     }
 }
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.pipeline.server.filter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.TransformerHandler;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+import stroom.cache.server.StoredXsltExecutable;
+import stroom.cache.server.XSLTPool;
+import stroom.entity.shared.VersionedEntityDecorator;
+import stroom.pipeline.server.LocationFactory;
+import stroom.pipeline.server.errorhandler.ErrorListenerAdaptor;
+import stroom.pipeline.server.errorhandler.ErrorReceiver;
+import stroom.pipeline.server.errorhandler.ErrorReceiverIdDecorator;
+import stroom.pipeline.server.errorhandler.ErrorReceiverProxy;
+import stroom.pipeline.server.errorhandler.StoredErrorReceiver;
+import stroom.pipeline.shared.XSLT;
+import stroom.pipeline.shared.data.PipelineReference;
+import stroom.pool.PoolItem;
+import stroom.task.server.StroomThreadGroup;
+import stroom.util.thread.CustomThreadFactory;
+import stroom.xml.event.BaseEvent;
+import stroom.xml.event.Event;
+import stroom.xml.event.simple.SimpleEventList;
+import stroom.xml.event.simple.SimpleEventListBuilder;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.jaxp.TemplatesImpl;
+import net.sf.saxon.jaxp.TransformerImpl;
+import net.sf.saxon.s9api.XsltExecutable;
+
+/**
+ * Translates split XML documents on several threads at once for
+ * {@link XSLTFilter}. Each thread uses its own compiled copy of the XSLT taken
+ * from the pool. The translated output and any errors are captured and handed
+ * back in the order the documents were submitted so that everything after the
+ * XSLT filter sees exactly the same sequence of events as it would if the
+ * documents were translated one at a time.
+ */
+class ParallelTranslator {
+    /**
+     * The SAX events of a single split document along with the source
+     * location of each element so that errors can be reported against the
+     * right line.
+     */
+    static class Document extends SimpleEventListBuilder {
+        private final Locator locator;
+
+        public Document(final Locator locator) {
+            this.locator = locator;
+        }
+
+        @Override
+        public void setDocumentLocator(final Locator locator) {
+            // Locations are recorded against each element instead.
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName,
+                final Attributes atts) throws SAXException {
+            if (locator != null) {
+                ((SimpleEventList) getEventList())
+                        .add(new Position(locator.getLineNumber(), locator.getColumnNumber()));
+            }
+            super.startElement(uri, localName, qName, atts);
+        }
+    }
+
+    /**
+     * The output of translating a single document.
+     */
+    static class Result {
+        private final SimpleEventList output;
+        private final StoredErrorReceiver errors;
+        private final Exception exception;
+
+        public Result(final SimpleEventList output, final StoredErrorReceiver errors, final Exception exception) {
+            this.output = output;
+            this.errors = errors;
+            this.exception = exception;
+        }
+
+        public SimpleEventList getOutput() {
+            return output;
+        }
+
+        public StoredErrorReceiver getErrors() {
+            return errors;
+        }
+
+        public Exception getException() {
+            return exception;
+        }
+    }
+
+    private static class Position extends BaseEvent {
+        private final int lineNumber;
+        private final int columnNumber;
+
+        public Position(final int lineNumber, final int columnNumber) {
+            this.lineNumber = lineNumber;
+            this.columnNumber = columnNumber;
+        }
+
+        @Override
+        public void fire(final ContentHandler handler) throws SAXException {
+        }
+    }
+
+    private static class ReplayLocator implements Locator {
+        private int lineNumber = -1;
+        private int columnNumber = -1;
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return null;
+        }
+
+        @Override
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return columnNumber;
+        }
+    }
+
+    private static class Worker {
+        private final PoolItem<VersionedEntityDecorator<XSLT>, StoredXsltExecutable> poolItem;
+        private final ErrorReceiverProxy errorReceiver;
+        private final ErrorListener errorListener;
+
+        public Worker(final PoolItem<VersionedEntityDecorator<XSLT>, StoredXsltExecutable> poolItem,
+                final ErrorReceiverProxy errorReceiver, final ErrorListener errorListener) {
+            this.poolItem = poolItem;
+            this.errorReceiver = errorReceiver;
+            this.errorListener = errorListener;
+        }
+    }
+
+    private final XSLTPool xsltPool;
+    private final int maxPending;
+    private final List<Worker> workers;
+    private final BlockingQueue<Worker> idleWorkers;
+    private final ArrayDeque<Future<Result>> pending;
+    private final ExecutorService executor;
+
+    public ParallelTranslator(final String elementId, final XSLTPool xsltPool,
+            final VersionedEntityDecorator<XSLT> xslt, final LocationFactory locationFactory,
+            final List<PipelineReference> pipelineReferences, final int threads) {
+        this.xsltPool = xsltPool;
+        this.maxPending = threads * 2;
+        this.workers = new ArrayList<>(threads);
+        this.idleWorkers = new ArrayBlockingQueue<>(threads);
+        this.pending = new ArrayDeque<>(maxPending);
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                // Each worker reports errors to its own proxy so that they can
+                // be captured per document and replayed in order.
+                final ErrorReceiverProxy errorReceiver = new ErrorReceiverProxy();
+                final ErrorReceiver functionErrorReceiver = new ErrorReceiverIdDecorator(elementId, errorReceiver);
+                final PoolItem<VersionedEntityDecorator<XSLT>, StoredXsltExecutable> poolItem = xsltPool
+                        .borrowConfiguredTemplate(xslt, functionErrorReceiver, locationFactory, pipelineReferences);
+                final Worker worker = new Worker(poolItem, errorReceiver,
+                        new ErrorListenerAdaptor(elementId, locationFactory, errorReceiver));
+                workers.add(worker);
+                idleWorkers.add(worker);
+            }
+        } catch (final RuntimeException e) {
+            returnWorkers();
+            throw e;
+        }
+
+        // Worker threads are created by the processing thread so they inherit
+        // its task scope.
+        final CustomThreadFactory threadFactory = new CustomThreadFactory("XSLT Translation ",
+                StroomThreadGroup.instance(), Thread.NORM_PRIORITY - 1);
+        threadFactory.setDaemon(true);
+        executor = Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    public void submit(final Document document) {
+        final SimpleEventList input = (SimpleEventList) document.getEventList();
+        pending.add(executor.submit(() -> translate(input)));
+    }
+
+    /**
+     * Gets the result of the oldest document still pending. Unless all results
+     * are wanted this only returns a result if it is complete or we need to
+     * wait for it to bound the number of documents held in memory.
+     *
+     * @return The next result in submission order or null if there isn't one
+     *         to hand back yet.
+     */
+    public Result next(final boolean all) {
+        final Future<Result> future = pending.peek();
+        if (future == null) {
+            return null;
+        }
+        if (!all && !future.isDone() && pending.size() < maxPending) {
+            return null;
+        }
+
+        pending.poll();
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e.getMessage(), e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            Exception exception = null;
+            if (cause instanceof Exception) {
+                exception = (Exception) cause;
+            } else {
+                exception = new RuntimeException(cause.getMessage(), cause);
+            }
+            return new Result(new SimpleEventList(), new StoredErrorReceiver(), exception);
+        }
+    }
+
+    /**
+     * Discards any documents that have not been handed back yet.
+     */
+    public void clear() {
+        for (final Future<Result> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+    }
+
+    public void close() {
+        clear();
+        executor.shutdownNow();
+        try {
+            // Don't return the XSLT to the pool while it is still in use.
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        returnWorkers();
+    }
+
+    private Result translate(final SimpleEventList input) throws InterruptedException {
+        final Worker worker = idleWorkers.take();
+        final StoredErrorReceiver errors = new StoredErrorReceiver();
+        final SimpleEventListBuilder output = new SimpleEventListBuilder() {
+            @Override
+            public void setDocumentLocator(final Locator locator) {
+                // The translating thread's locator means nothing downstream.
+            }
+        };
+
+        Exception exception = null;
+        try {
+            worker.errorReceiver.setErrorReceiver(errors);
+
+            final XsltExecutable xsltExecutable = worker.poolItem.getValue().getXsltExecutable();
+            final Configuration configuration = xsltExecutable.getUnderlyingCompiledStylesheet().getConfiguration();
+            configuration.setErrorListener(worker.errorListener);
+            configuration.setLineNumbering(true);
+
+            final TemplatesImpl templates = new TemplatesImpl(xsltExecutable);
+            final TransformerImpl transformer = (TransformerImpl) templates.newTransformer();
+            transformer.setErrorListener(worker.errorListener);
+
+            final TransformerHandler handler = transformer.newTransformerHandler();
+            handler.setResult(new SAXResult(output));
+
+            final ReplayLocator locator = new ReplayLocator();
+            handler.setDocumentLocator(locator);
+            for (final Event event : input.getEvents()) {
+                if (event instanceof Position) {
+                    final Position position = (Position) event;
+                    locator.lineNumber = position.lineNumber;
+                    locator.columnNumber = position.columnNumber;
+                } else {
+                    event.fire(handler);
+                }
+            }
+        } catch (final Exception e) {
+            exception = e;
+        } finally {
+            worker.errorReceiver.setErrorReceiver(null);
+            idleWorkers.add(worker);
+        }
+
+        return new Result((SimpleEventList) output.getEventList(), errors, exception);
+    }
+
+    private void returnWorkers() {
+        for (final Worker worker : workers) {
+            xsltPool.returnObject(worker.poolItem);
+        }
+        workers.clear();
+    }
+}
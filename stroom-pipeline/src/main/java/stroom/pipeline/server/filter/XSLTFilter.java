@@ -60,6 +60,7 @@ import stroom.pipeline.state.PipelineContext;
 import stroom.pool.PoolItem;
 import stroom.util.CharBuffer;
 import stroom.util.shared.Severity;
+import stroom.xml.event.Event;
 import net.sf.saxon.Configuration;
 import net.sf.saxon.jaxp.TemplatesImpl;
 import net.sf.saxon.jaxp.TransformerImpl;
@@ -108,6 +109,10 @@ public class XSLTFilter extends AbstractXMLFilter {
     private int elementCount;
     private int maxElementCount;
 
+    private int translationThreads = 1;
+    private ParallelTranslator parallelTranslator;
+    private ParallelTranslator.Document document;
+
     @Inject
     public XSLTFilter(final XSLTPool xsltPool, final ErrorReceiverProxy errorReceiverProxy,
             final XSLTService xsltService, final StroomPropertyService stroomPropertyService,
@@ -250,6 +255,12 @@ public class XSLTFilter extends AbstractXMLFilter {
                         final String msg = sb.toString();
                         throw new ProcessException(msg);
                     }
+
+                    if (translationThreads > 1 && !pipelineContext.isStepping()) {
+                        parallelTranslator = new ParallelTranslator(getElementId(), xsltPool,
+                                new VersionedEntityDecorator<>(xslt), locationFactory, pipelineReferences,
+                                translationThreads);
+                    }
                 }
             }
 
@@ -272,6 +283,10 @@ public class XSLTFilter extends AbstractXMLFilter {
     @Override
     public void endProcessing() {
         try {
+            if (parallelTranslator != null) {
+                parallelTranslator.close();
+                parallelTranslator = null;
+            }
             if (poolItem != null) {
                 xsltPool.returnObject(poolItem);
                 poolItem = null;
@@ -281,6 +296,30 @@ public class XSLTFilter extends AbstractXMLFilter {
         }
     }
 
+    @Override
+    public void startStream() {
+        // Anything left over from a stream that failed part way through must
+        // not be output into this one.
+        if (parallelTranslator != null) {
+            parallelTranslator.clear();
+        }
+        document = null;
+        super.startStream();
+    }
+
+    @Override
+    public void endStream() {
+        try {
+            // All translations for a stream must be output before the stream
+            // ends as writers and meta data functions depend on it.
+            outputTranslations(true);
+        } catch (final SAXException e) {
+            throw new ProcessException(e.getMessage(), e);
+        } finally {
+            super.endStream();
+        }
+    }
+
     /**
      * @param locator
      *            an object that can return the location of any SAX document
@@ -305,7 +344,11 @@ public class XSLTFilter extends AbstractXMLFilter {
     @Override
     public void startDocument() throws SAXException {
         try {
-            if (xsltExecutable != null) {
+            if (parallelTranslator != null) {
+                document = new ParallelTranslator.Document(locator);
+                document.startDocument();
+
+            } else if (xsltExecutable != null) {
                 // Make sure the executable points at the local error handler.
                 final Configuration configuration = xsltExecutable.getUnderlyingCompiledStylesheet().getConfiguration();
                 configuration.setErrorListener(errorListener);
@@ -345,7 +388,16 @@ public class XSLTFilter extends AbstractXMLFilter {
      */
     @Override
     public void endDocument() throws SAXException {
-        if (handler != null) {
+        if (document != null) {
+            document.endDocument();
+            parallelTranslator.submit(document);
+            document = null;
+            elementCount = 0;
+
+            // Output any translations that are ready.
+            outputTranslations(false);
+
+        } else if (handler != null) {
             try {
                 handler.endDocument();
 
@@ -377,6 +429,49 @@ public class XSLTFilter extends AbstractXMLFilter {
         }
     }
 
+    private void outputTranslations(final boolean all) throws SAXException {
+        if (parallelTranslator == null) {
+            return;
+        }
+
+        ParallelTranslator.Result result = parallelTranslator.next(all);
+        while (result != null) {
+            result.getErrors().replay(errorReceiverProxy);
+            result.getOutput().fire(getFilter());
+
+            final Exception e = result.getException();
+            if (e != null) {
+                // Translation stops at the first failure just as it would if
+                // the documents were being translated one at a time.
+                parallelTranslator.clear();
+                try {
+                    final ProcessException processException = getNestedProcessException(e);
+                    if (processException != null) {
+                        throw processException;
+                    }
+
+                    if (e.getCause() != null) {
+                        throw getRuntimeException(e.getCause());
+                    }
+
+                    throw getRuntimeException(e);
+
+                } finally {
+                    if (!endsDocument(result)) {
+                        super.endDocument();
+                    }
+                }
+            }
+
+            result = parallelTranslator.next(all);
+        }
+    }
+
+    private boolean endsDocument(final ParallelTranslator.Result result) {
+        final List<Event> events = result.getOutput().getEvents();
+        return events.size() > 0 && events.get(events.size() - 1).isEndDocument();
+    }
+
     private ProcessException getNestedProcessException(Throwable e) {
         Throwable nested = e;
         while (nested != null && nested != nested.getCause()) {
@@ -413,7 +508,9 @@ public class XSLTFilter extends AbstractXMLFilter {
      */
     @Override
     public void startPrefixMapping(final String prefix, final String uri) throws SAXException {
-        if (handler != null) {
+        if (document != null) {
+            document.startPrefixMapping(prefix, uri);
+        } else if (handler != null) {
             handler.startPrefixMapping(prefix, uri);
         } else if (passThrough) {
             super.startPrefixMapping(prefix, uri);
@@ -435,7 +532,9 @@ public class XSLTFilter extends AbstractXMLFilter {
      */
     @Override
     public void endPrefixMapping(final String prefix) throws SAXException {
-        if (handler != null) {
+        if (document != null) {
+            document.endPrefixMapping(prefix);
+        } else if (handler != null) {
             handler.endPrefixMapping(prefix);
         } else if (passThrough) {
             super.endPrefixMapping(prefix);
@@ -468,7 +567,7 @@ public class XSLTFilter extends AbstractXMLFilter {
     @Override
     public void startElement(final String uri, final String localName, final String qName, final Attributes atts)
             throws SAXException {
-        if (handler != null) {
+        if (handler != null || document != null) {
             elementCount++;
             if (elementCount > maxElementCount) {
                 final StringBuilder sb = new StringBuilder();
@@ -493,7 +592,11 @@ public class XSLTFilter extends AbstractXMLFilter {
                 }
             }
 
-            handler.startElement(uri, localName, qName, atts);
+            if (document != null) {
+                document.startElement(uri, localName, qName, atts);
+            } else {
+                handler.startElement(uri, localName, qName, atts);
+            }
         } else if (passThrough) {
             super.startElement(uri, localName, qName, atts);
         }
@@ -517,7 +620,9 @@ public class XSLTFilter extends AbstractXMLFilter {
      */
     @Override
     public void endElement(final String uri, final String localName, final String qName) throws SAXException {
-        if (handler != null) {
+        if (document != null) {
+            document.endElement(uri, localName, qName);
+        } else if (handler != null) {
             handler.endElement(uri, localName, qName);
         } else if (passThrough) {
             super.endElement(uri, localName, qName);
@@ -540,7 +645,9 @@ public class XSLTFilter extends AbstractXMLFilter {
      */
     @Override
     public void characters(final char[] ch, final int start, final int length) throws SAXException {
-        if (handler != null) {
+        if (document != null) {
+            document.characters(ch, start, length);
+        } else if (handler != null) {
             handler.characters(ch, start, length);
         } else if (passThrough) {
             super.characters(ch, start, length);
@@ -562,7 +669,9 @@ public class XSLTFilter extends AbstractXMLFilter {
      */
     @Override
     public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException {
-        if (handler != null) {
+        if (document != null) {
+            document.ignorableWhitespace(ch, start, length);
+        } else if (handler != null) {
             handler.ignorableWhitespace(ch, start, length);
         } else if (passThrough) {
             super.ignorableWhitespace(ch, start, length);
@@ -583,7 +692,9 @@ public class XSLTFilter extends AbstractXMLFilter {
      */
     @Override
     public void processingInstruction(final String target, final String data) throws SAXException {
-        if (handler != null) {
+        if (document != null) {
+            document.processingInstruction(target, data);
+        } else if (handler != null) {
             handler.processingInstruction(target, data);
         } else if (passThrough) {
             super.processingInstruction(target, data);
@@ -601,7 +712,9 @@ public class XSLTFilter extends AbstractXMLFilter {
      */
     @Override
     public void skippedEntity(final String name) throws SAXException {
-        if (handler != null) {
+        if (document != null) {
+            document.skippedEntity(name);
+        } else if (handler != null) {
             handler.skippedEntity(name);
         } else if (passThrough) {
             super.skippedEntity(name);
@@ -650,6 +763,11 @@ public class XSLTFilter extends AbstractXMLFilter {
         this.suppressXSLTNotFoundWarnings = suppressXSLTNotFoundWarnings;
     }
 
+    @PipelineProperty(description = "The number of split XML documents to translate at the same time. Output is passed on in the original order. Leave at 1 if the XSLT uses stroom:put() and stroom:get() to share values between documents.", defaultValue = "1")
+    public void setTranslationThreads(final int translationThreads) {
+        this.translationThreads = translationThreads;
+    }
+
     @PipelineProperty(description = "A list of places to load reference data from if required.")
     public void setPipelineReference(final PipelineReference pipelineReference) {
         if (pipelineReferences == null) {
@@ -241,17 +241,37 @@ public class BadTextXMLFilterReader extends TransformReader {
         return false;
     }
 
+    /**
+     * Reads the next code point from a local block of input rather than making
+     * a call down the reader chain for every character.
+     */
     private int readCP() throws IOException {
-        int cp = in.read();
-        if (Character.isHighSurrogate((char) cp)) {
+        int cp = readChar();
+        if (cp >= 0 && Character.isHighSurrogate((char) cp)) {
             final char hiSurrogate = (char) cp;
-            cp = in.read();
-            assert(Character.isLowSurrogate((char) cp));
-            cp = Character.toCodePoint(hiSurrogate, (char) cp);
+            final int lo = readChar();
+            if (lo >= 0 && Character.isLowSurrogate((char) lo)) {
+                cp = Character.toCodePoint(hiSurrogate, (char) lo);
+            } else if (lo >= 0) {
+                // Leave the unpaired character to be read next.
+                m_inPos--;
+            }
         }
         return cp;
     }
 
+    private int readChar() throws IOException {
+        while (m_inPos >= m_inLen) {
+            final int nread = in.read(m_inBuf, 0, m_inBuf.length);
+            if (nread < 0) {
+                return -1;
+            }
+            m_inPos = 0;
+            m_inLen = nread;
+        }
+        return m_inBuf[m_inPos++];
+    }
+
     private static boolean isNameStartChar(final int cp) {
         return (cp >= 'A' && cp <= 'Z') || (cp >= 'a' && cp <= 'z') || cp == ':' || cp == '_'
                 || (cp >= 0xc0 && cp <= 0xd6) || (cp >= 0xd8 && cp <= 0xf6) || (cp >= 0xf8 && cp <= 0x2ff)
@@ -267,7 +287,12 @@ public class BadTextXMLFilterReader extends TransformReader {
 
     private void writeCP(final int cp) {
         assert(cp >= 0 && cp <= 0x10ffff);
-        m_cbuf.put(Character.toChars(cp));
+        if (Character.isBmpCodePoint(cp)) {
+            m_cbuf.put((char) cp);
+        } else {
+            m_cbuf.put(Character.highSurrogate(cp));
+            m_cbuf.put(Character.lowSurrogate(cp));
+        }
     }
 
     private enum XMLstate {
@@ -279,7 +304,10 @@ public class BadTextXMLFilterReader extends TransformReader {
                                                             // should be larger
                                                             // than any single
                                                             // entity.
+    private static final int INPUT_BUFFER_SIZE = 8192;
     private final CharBuffer m_cbuf;
+    private final char[] m_inBuf = new char[INPUT_BUFFER_SIZE];
+    private int m_inPos, m_inLen;
     private int m_cbufUsed;
     private int m_leafBeginText, m_leafEndText;
     private int m_cachedCP;
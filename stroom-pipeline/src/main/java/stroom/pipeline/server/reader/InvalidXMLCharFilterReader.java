@@ -76,60 +76,73 @@ public class InvalidXMLCharFilterReader extends TransformReader {
     }
 
     /**
-     * Read UTF-16 char values into an array.
+     * Read UTF-16 char values into an array. Characters are checked in place
+     * in a single pass over the block read from the underlying reader so the
+     * cost per character is a couple of comparisons for ordinary text.
      */
     @Override
-    public int read(final char cbuf[], int off, int len) throws IOException {
-        final int originalOff = off;
-        if (m_haveReadAhead && len - off > 0) {
+    public int read(final char cbuf[], final int off, final int len) throws IOException {
+        if (len <= 0) {
+            return 0;
+        }
+
+        int start = off;
+        if (m_haveReadAhead) {
             m_haveReadAhead = false;
-            cbuf[off++] = m_readAhead;
-            --len;
+            cbuf[start++] = m_readAhead;
+            if (start == off + len) {
+                return 1;
+            }
         }
-        if (len > 0) {
-            final int nread = in.read(cbuf, off, len);
-            if (nread >= 0) {
-                final int endOffset = off + nread;
-                while (off < endOffset) {
-                    if (Character.isHighSurrogate(cbuf[off])) {
-                        final int lowSurrogateIdx = off + 1;
-                        if (lowSurrogateIdx < endOffset) {
-                            if (!isValidCharSurrogatePair(cbuf[off], cbuf[lowSurrogateIdx])) {
-                                cbuf[off] = cbuf[lowSurrogateIdx] = REPLACEMENT_CHAR;
-                                m_streamModified = true;
-                            }
-                        } else {
-                            final int readAhead = in.read();
-                            if (readAhead >= 0) {
-                                m_haveReadAhead = true;
-                                m_readAhead = (char) readAhead;
-                                assert(m_readAhead == readAhead);
-                                if (isValidCharSurrogatePair(cbuf[off], m_readAhead))
-                                    break;
-                                else {
-                                    cbuf[off] = m_readAhead = REPLACEMENT_CHAR;
-                                    m_streamModified = true;
-                                }
-                            } else
-                                cbuf[off] = REPLACEMENT_CHAR;
 
-                        }
-                        off += 2;
-                    } else {
-                        if (!isValidCharBMP(cbuf[off])) {
-                            cbuf[off] = REPLACEMENT_CHAR;
+        final int nread = in.read(cbuf, start, off + len - start);
+        if (nread <= 0) {
+            // Return any read-ahead character on its own.
+            return (start > off) ? start - off : nread;
+        }
+
+        final int end = start + nread;
+        int i = start;
+        while (i < end) {
+            final char ch = cbuf[i];
+            if (ch >= 0x20 && ch < 0xd800) {
+                // By far the most common case.
+                ++i;
+            } else if (Character.isHighSurrogate(ch)) {
+                if (i + 1 < end) {
+                    if (!isValidCharSurrogatePair(ch, cbuf[i + 1])) {
+                        cbuf[i] = cbuf[i + 1] = REPLACEMENT_CHAR;
+                        m_streamModified = true;
+                    }
+                    i += 2;
+                } else {
+                    // The low surrogate is in the next block so read it ahead
+                    // and hand it out on the next read.
+                    final int readAhead = in.read();
+                    if (readAhead >= 0) {
+                        m_haveReadAhead = true;
+                        m_readAhead = (char) readAhead;
+                        if (!isValidCharSurrogatePair(ch, m_readAhead)) {
+                            cbuf[i] = m_readAhead = REPLACEMENT_CHAR;
                             m_streamModified = true;
                         }
-                        ++off;
+                    } else {
+                        cbuf[i] = REPLACEMENT_CHAR;
+                        m_streamModified = true;
                     }
+                    ++i;
+                }
+            } else {
+                if (!isValidCharBMP(ch)) {
+                    cbuf[i] = REPLACEMENT_CHAR;
+                    m_streamModified = true;
                 }
-                // Count of new characters + any read-ahead character.
-                return endOffset - originalOff;
+                ++i;
             }
-            // An error reading from underlying character stream.
-            assert(nread == -1);
         }
-        return (originalOff == off) ? -1 : 1;
+
+        // Count of new characters + any read-ahead character.
+        return end - off;
     }
 
     /**
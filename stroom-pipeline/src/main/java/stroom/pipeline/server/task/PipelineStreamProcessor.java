@@ -50,6 +50,7 @@ import stroom.pipeline.server.factory.Pipeline;
 import stroom.pipeline.server.factory.PipelineDataCache;
 import stroom.pipeline.server.factory.PipelineFactory;
 import stroom.pipeline.server.factory.Processor;
+import stroom.pipeline.server.xsltfunctions.LookupCache;
 import stroom.pipeline.shared.PipelineEntity;
 import stroom.pipeline.shared.PipelineEntityService;
 import stroom.pipeline.shared.data.PipelineData;
@@ -206,6 +207,8 @@ public class PipelineStreamProcessor implements StreamProcessorTaskExecutor {
     @Resource
     private RecordCount recordCount;
     @Resource
+    private LookupCache lookupCache;
+    @Resource
     private StreamCloser streamCloser;
     @Resource
     private RecordErrorReceiver recordErrorReceiver;
@@ -579,6 +582,13 @@ public class PipelineStreamProcessor implements StreamProcessorTaskExecutor {
             metaData.put(StreamAttributeConstants.REC_FATAL, String.valueOf(getMarkerCount(Severity.FATAL_ERROR)));
             metaData.put(StreamAttributeConstants.DURATION, String.valueOf(recordCount.getDuration()));
             metaData.put(StreamAttributeConstants.NODE, nodeCache.getDefaultNode().getName());
+            // Only streams that did lookups get the lookup cache attributes.
+            final long lookupCacheHits = lookupCache.getHits();
+            final long lookupCacheMisses = lookupCache.getMisses();
+            if (lookupCacheHits + lookupCacheMisses > 0) {
+                metaData.put(StreamAttributeConstants.LOOKUP_CACHE_HITS, String.valueOf(lookupCacheHits));
+                metaData.put(StreamAttributeConstants.LOOKUP_CACHE_MISSES, String.valueOf(lookupCacheMisses));
+            }
         } catch (final Exception e) {
             outputError(e);
         }
@@ -66,6 +66,8 @@ public class SteppingController {
 
     private TaskMonitor taskMonitor;
 
+    private int lookAhead;
+
     public void registerMonitor(final ElementMonitor monitor) {
         monitors.add(monitor);
     }
@@ -119,6 +121,15 @@ public class SteppingController {
         this.taskMonitor = taskMonitor;
     }
 
+    /**
+     * Sets the number of records to keep recording after the requested record
+     * has been found so that the following steps can be answered without
+     * processing the stream again.
+     */
+    public void setLookAhead(final int lookAhead) {
+        this.lookAhead = lookAhead;
+    }
+
     public void setStepLocation(final StepLocation stepLocation) {
         this.stepLocation = stepLocation;
     }
@@ -152,6 +163,17 @@ public class SteppingController {
         // Move source location.
         moveSourceLocation(locator);
 
+        // If we have already found the record we are looking for then we are
+        // only looking ahead.
+        if (foundLocation != null && lookAhead > 0
+                && !StepType.BACKWARD.equals(request.getStepType())
+                && !StepType.LAST.equals(request.getStepType())) {
+            storeRecord(currentStreamNo, currentRecordNo);
+            lookAhead--;
+            clearAllFilters();
+            return lookAhead == 0;
+        }
+
         // First we need to check that the record is ok WRT the location of the
         // record, i.e. is it after the last record found if stepping forward
         // etc.
@@ -179,34 +201,13 @@ public class SteppingController {
             // have found the record we are interested in and any filter matches
             // if one has been specified.
             if (allMatch || filterMatch) {
-                // Create a location for each monitoring filter to store data
-                // against.
-                foundLocation = new StepLocation(streamHolder.getStream().getId(), currentStreamNo, currentRecordNo);
-                final StepData stepData = steppingResponseCache.getStepData(foundLocation);
-
-                // Record the current source location.
-                final Location start = locationFactory.create(currentStartLocation.getLineNo(),
-                        currentStartLocation.getColNo());
-                final Location end = locationFactory.create(currentEndLocation.getLineNo(),
-                        currentEndLocation.getColNo());
-
-                final int startLineNo = start.getLineNo() > 1 ? start.getLineNo() : 1;
-                final int startColNo = start.getColNo() > 1 ? start.getColNo() : 1;
-                final int endLineNo = end.getLineNo() > 1 ? end.getLineNo() : 1;
-                final int endColNo = end.getColNo() > 1 ? end.getColNo() : 1;
-
-                final Highlight highlight = new Highlight((int) currentStreamNo, startLineNo, startColNo,
-                        (int) currentStreamNo, endLineNo, endColNo);
-                final List<Highlight> highlights = new ArrayList<>(1);
-                highlights.add(highlight);
-                stepData.setSourceHighlights(highlights);
-
-                // Stores all data for the current step.
-                storeStepData(stepData);
+                foundLocation = storeRecord(currentStreamNo, currentRecordNo);
 
                 // We want to exit early if we have found a record and are
-                // stepping first, forward or refreshing.
-                if (!StepType.BACKWARD.equals(request.getStepType()) && !StepType.LAST.equals(request.getStepType())) {
+                // stepping first, forward or refreshing unless we have been
+                // asked to look ahead.
+                if (!StepType.BACKWARD.equals(request.getStepType()) && !StepType.LAST.equals(request.getStepType())
+                        && lookAhead <= 0) {
                     return true;
                 }
             }
@@ -222,6 +223,34 @@ public class SteppingController {
 
     }
 
+    private StepLocation storeRecord(final long currentStreamNo, final long currentRecordNo) {
+        // Create a location for each monitoring filter to store data against.
+        final StepLocation location = new StepLocation(streamHolder.getStream().getId(), currentStreamNo,
+                currentRecordNo);
+        final StepData stepData = steppingResponseCache.getStepData(location);
+
+        // Record the current source location.
+        final Location start = locationFactory.create(currentStartLocation.getLineNo(),
+                currentStartLocation.getColNo());
+        final Location end = locationFactory.create(currentEndLocation.getLineNo(), currentEndLocation.getColNo());
+
+        final int startLineNo = start.getLineNo() > 1 ? start.getLineNo() : 1;
+        final int startColNo = start.getColNo() > 1 ? start.getColNo() : 1;
+        final int endLineNo = end.getLineNo() > 1 ? end.getLineNo() : 1;
+        final int endColNo = end.getColNo() > 1 ? end.getColNo() : 1;
+
+        final Highlight highlight = new Highlight((int) currentStreamNo, startLineNo, startColNo,
+                (int) currentStreamNo, endLineNo, endColNo);
+        final List<Highlight> highlights = new ArrayList<>(1);
+        highlights.add(highlight);
+        stepData.setSourceHighlights(highlights);
+
+        // Stores all data for the current step.
+        storeStepData(stepData);
+
+        return location;
+    }
+
     public void storeStepData(final StepData stepData) {
         // Store the current data and reset for each filter.
         for (final ElementMonitor monitor : monitors) {
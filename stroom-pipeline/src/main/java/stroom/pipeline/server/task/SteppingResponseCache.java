@@ -17,6 +17,7 @@
 package stroom.pipeline.server.task;
 
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
@@ -55,4 +56,8 @@ public class SteppingResponseCache {
 
         return data;
     }
+
+    public Map<StepLocation, StepData> getStepDataMap() {
+        return Collections.unmodifiableMap(locationMap);
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.pipeline.server.task;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import stroom.pipeline.shared.StepLocation;
+import stroom.streamstore.shared.FindStreamCriteria;
+
+/**
+ * Holds what a user's stepping session has already worked out so that each
+ * step does not have to start from scratch. This is the list of streams that
+ * the criteria matched and the step data of records that have already been
+ * processed with the current code.
+ */
+public class SteppingSession {
+    private static final int MAX_STEP_DATA = 200;
+
+    private FindStreamCriteria criteria;
+    private List<Long> allStreamIdList;
+    private List<Long> filteredStreamIdList;
+    private Map<String, String> code;
+
+    private final Map<StepLocation, StepData> stepDataMap = new LinkedHashMap<StepLocation, StepData>(16, 0.75F,
+            true) {
+        private static final long serialVersionUID = 2455651226733520537L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<StepLocation, StepData> eldest) {
+            return size() > MAX_STEP_DATA;
+        }
+    };
+
+    public boolean isCriteriaMatch(final FindStreamCriteria criteria) {
+        return this.criteria != null && this.criteria.equals(criteria);
+    }
+
+    public void setStreamIdLists(final FindStreamCriteria criteria, final List<Long> allStreamIdList,
+            final List<Long> filteredStreamIdList) {
+        this.criteria = criteria;
+        this.allStreamIdList = allStreamIdList;
+        this.filteredStreamIdList = filteredStreamIdList;
+    }
+
+    public List<Long> getAllStreamIdList() {
+        return allStreamIdList;
+    }
+
+    public List<Long> getFilteredStreamIdList() {
+        return filteredStreamIdList;
+    }
+
+    /**
+     * Step data is only valid for the code that produced it so forget it all
+     * if the user has changed the code since the last step.
+     */
+    public void setCode(final Map<String, String> code) {
+        if (!Objects.equals(this.code, code)) {
+            stepDataMap.clear();
+            if (code == null) {
+                this.code = null;
+            } else {
+                this.code = new HashMap<>(code);
+            }
+        }
+    }
+
+    public StepData getStepData(final StepLocation location) {
+        return stepDataMap.get(location);
+    }
+
+    public void putStepData(final StepLocation location, final StepData stepData) {
+        stepDataMap.put(location, stepData);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.pipeline.server.task;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import net.sf.ehcache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import stroom.cache.AbstractCacheBean;
+import stroom.entity.server.event.EntityEvent;
+import stroom.entity.server.event.EntityEventBus;
+import stroom.pipeline.shared.PipelineEntity;
+import stroom.pipeline.shared.TextConverter;
+import stroom.pipeline.shared.XSLT;
+import stroom.util.logging.StroomLogger;
+import stroom.util.spring.StroomFrequencySchedule;
+
+/**
+ * Keeps a stepping session per user session and pipeline. Sessions are dropped
+ * whenever a pipeline, XSLT or text converter changes as the step data they
+ * hold may no longer be what the pipeline would produce.
+ */
+@Component
+public class SteppingSessionCache extends AbstractCacheBean<SteppingSessionKey, SteppingSession>
+        implements EntityEvent.Handler {
+    private static final StroomLogger LOGGER = StroomLogger.getLogger(SteppingSessionCache.class);
+
+    private static final int MAX_CACHE_ENTRIES = 100;
+
+    @Inject
+    public SteppingSessionCache(final CacheManager cacheManager, final EntityEventBus entityEventBus) {
+        super(cacheManager, "Stepping Session Cache", MAX_CACHE_ENTRIES);
+        setMaxIdleTime(10, TimeUnit.MINUTES);
+
+        try {
+            entityEventBus.addHandler(this, PipelineEntity.ENTITY_TYPE);
+            entityEventBus.addHandler(this, XSLT.ENTITY_TYPE);
+            entityEventBus.addHandler(this, TextConverter.ENTITY_TYPE);
+        } catch (final Exception e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected SteppingSession create(final SteppingSessionKey key) {
+        return new SteppingSession();
+    }
+
+    @Override
+    @StroomFrequencySchedule("1m")
+    public void evictExpiredElements() {
+        super.evictExpiredElements();
+    }
+
+    @Override
+    public void onChange(final EntityEvent event) {
+        clear();
+    }
+
+    @Override
+    public void onChange(final List<EntityEvent> events) {
+        clear();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.pipeline.server.task;
+
+import stroom.util.shared.EqualsBuilder;
+import stroom.util.shared.HashCodeBuilder;
+
+public class SteppingSessionKey {
+    private final String sessionId;
+    private final String userId;
+    private final String pipelineUuid;
+    private final String childStreamType;
+    private final int hashCode;
+
+    public SteppingSessionKey(final String sessionId, final String userId, final String pipelineUuid,
+            final String childStreamType) {
+        this.sessionId = sessionId;
+        this.userId = userId;
+        this.pipelineUuid = pipelineUuid;
+        this.childStreamType = childStreamType;
+
+        final HashCodeBuilder builder = new HashCodeBuilder();
+        builder.append(sessionId);
+        builder.append(userId);
+        builder.append(pipelineUuid);
+        builder.append(childStreamType);
+        hashCode = builder.toHashCode();
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || !(o instanceof SteppingSessionKey)) {
+            return false;
+        }
+
+        final SteppingSessionKey key = (SteppingSessionKey) o;
+        final EqualsBuilder builder = new EqualsBuilder();
+        builder.append(sessionId, key.sessionId);
+        builder.append(userId, key.userId);
+        builder.append(pipelineUuid, key.pipelineUuid);
+        builder.append(childStreamType, key.childStreamType);
+        return builder.isEquals();
+    }
+
+    @Override
+    public String toString() {
+        return "sessionId=" + sessionId + ", userId=" + userId + ", pipelineUuid=" + pipelineUuid
+                + ", childStreamType=" + childStreamType;
+    }
+}
@@ -33,6 +33,7 @@ import stroom.pipeline.shared.PipelineEntity;
 import stroom.pipeline.shared.PipelineEntityService;
 import stroom.pipeline.shared.StepLocation;
 import stroom.pipeline.shared.StepType;
+import stroom.pipeline.shared.SteppingFilterSettings;
 import stroom.pipeline.shared.SteppingResult;
 import stroom.pipeline.shared.data.PipelineData;
 import stroom.pipeline.shared.data.PipelineElementType;
@@ -70,6 +71,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.Set;
 
 @TaskHandlerBean(task = SteppingTask.class)
@@ -79,6 +81,10 @@ public class SteppingTaskHandler extends AbstractTaskHandler<SteppingTask, Stepp
     private static final StroomLogger LOGGER = StroomLogger.getLogger(SteppingTaskHandler.class);
     private static final SAXParserFactory PARSER_FACTORY;
 
+    // The number of records to record beyond the one requested when stepping
+    // forward so that the next few steps can be answered by the session.
+    private static final int LOOK_AHEAD = 10;
+
     static {
         PARSER_FACTORY = SAXParserFactory.newInstance();
         PARSER_FACTORY.setNamespaceAware(true);
@@ -118,6 +124,9 @@ public class SteppingTaskHandler extends AbstractTaskHandler<SteppingTask, Stepp
     private PipelineDataCache pipelineDataCache;
     @Resource
     private PipelineContext pipelineContext;
+    @Resource
+    private SteppingSessionCache steppingSessionCache;
+    private SteppingSession session;
     private List<Long> allStreamIdList;
     private List<Long> filteredStreamIdList;
     private int currentStreamIndex = -1;
@@ -131,6 +140,22 @@ public class SteppingTaskHandler extends AbstractTaskHandler<SteppingTask, Stepp
 
     @Override
     public SteppingResult exec(final SteppingTask request) {
+        // Get the session that remembers what previous steps through this
+        // pipeline have already worked out. Steps within a session are run one
+        // at a time.
+        String childStreamType = null;
+        if (request.getChildStreamType() != null) {
+            childStreamType = request.getChildStreamType().getName();
+        }
+        session = steppingSessionCache.get(new SteppingSessionKey(request.getSessionId(), request.getUserId(),
+                request.getPipeline().getUuid(), childStreamType));
+
+        synchronized (session) {
+            return step(request);
+        }
+    }
+
+    private SteppingResult step(final SteppingTask request) {
         // Set the current user so they are visible during translation.
         currentUserHolder.setCurrentUser(request.getUserId());
 
@@ -144,6 +169,23 @@ public class SteppingTaskHandler extends AbstractTaskHandler<SteppingTask, Stepp
         controller.setRequest(request);
         controller.setTaskMonitor(taskMonitor);
 
+        // Forget any step data that was produced by different code.
+        session.setCode(request.getCode());
+
+        // See if the session already has the record we are stepping to.
+        final SteppingResult sessionResult = getSessionResult(request);
+        if (sessionResult != null) {
+            return sessionResult;
+        }
+
+        // When stepping forward without filters keep recording the records
+        // that follow the one we find.
+        final StepType requestStepType = request.getStepType();
+        if ((StepType.FIRST.equals(requestStepType) || StepType.FORWARD.equals(requestStepType))
+                && !isFilterActive(request)) {
+            controller.setLookAhead(LOOK_AHEAD);
+        }
+
         try {
             // Initialise the process by finding streams to process and setting
             // the step location.
@@ -165,6 +207,12 @@ public class SteppingTaskHandler extends AbstractTaskHandler<SteppingTask, Stepp
             lastFeed = null;
         }
 
+        // Remember every record we have recorded so that stepping back to them
+        // or on to the ones we looked ahead at is immediate.
+        for (final Entry<StepLocation, StepData> entry : steppingResponseCache.getStepDataMap().entrySet()) {
+            session.putStepData(entry.getKey(), entry.getValue());
+        }
+
         // Set the output.
         if (controller.getLastFoundLocation() != null) {
             currentLocation = controller.getLastFoundLocation();
@@ -173,6 +221,53 @@ public class SteppingTaskHandler extends AbstractTaskHandler<SteppingTask, Stepp
             // memory.
             stepData = steppingResponseCache.getStepData(currentLocation);
 
+        } else {
+            // Pick up any step data that remains so we can deliver any errors
+            // that caused the system not to step.
+            stepData = new StepData();
+            controller.storeStepData(stepData);
+        }
+
+        return createResult(request, stepData, controller.isFound());
+    }
+
+    private SteppingResult getSessionResult(final SteppingTask request) {
+        // Only plain steps to the adjacent record can be answered from the
+        // session as filters may skip any number of records.
+        final StepType stepType = request.getStepType();
+        final StepLocation location = request.getStepLocation();
+        if (location == null || isFilterActive(request)) {
+            return null;
+        }
+
+        StepLocation adjacent = null;
+        if (StepType.FORWARD.equals(stepType) && location.getRecordNo() < Long.MAX_VALUE) {
+            adjacent = new StepLocation(location.getStreamId(), location.getStreamNo(), location.getRecordNo() + 1);
+        } else if (StepType.BACKWARD.equals(stepType) && location.getRecordNo() > 1
+                && location.getRecordNo() < Long.MAX_VALUE) {
+            adjacent = new StepLocation(location.getStreamId(), location.getStreamNo(), location.getRecordNo() - 1);
+        }
+        if (adjacent == null) {
+            return null;
+        }
+
+        final StepData stepData = session.getStepData(adjacent);
+        if (stepData == null) {
+            return null;
+        }
+
+        // Make sure the stream is still one that we are stepping through.
+        if (!getFilteredStreamIdList(request).contains(adjacent.getStreamId())) {
+            return null;
+        }
+
+        currentLocation = adjacent;
+        curentStreamOffset = allStreamIdList.indexOf(adjacent.getStreamId());
+        return createResult(request, stepData, true);
+    }
+
+    private SteppingResult createResult(final SteppingTask request, final StepData stepData, final boolean found) {
+        if (found) {
             // Fill in the source data if it hasn't been already.
             for (final ElementData elementData : stepData.getElementMap().values()) {
                 if (elementData.getElementType().hasRole(PipelineElementType.ROLE_PARSER)
@@ -181,16 +276,21 @@ public class SteppingTaskHandler extends AbstractTaskHandler<SteppingTask, Stepp
                     elementData.setInput(data);
                 }
             }
-
-        } else {
-            // Pick up any step data that remains so we can deliver any errors
-            // that caused the system not to step.
-            stepData = new StepData();
-            controller.storeStepData(stepData);
         }
 
         return new SteppingResult(request.getStepFilterMap(), currentLocation, stepData.convertToShared(),
-                curentStreamOffset, controller.isFound(), generalErrors);
+                curentStreamOffset, found, generalErrors);
+    }
+
+    private boolean isFilterActive(final SteppingTask request) {
+        if (request.getStepFilterMap() != null) {
+            for (final SteppingFilterSettings settings : request.getStepFilterMap().values()) {
+                if (settings != null && settings.isActive()) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     private void initialise(final SteppingTask request) {
@@ -204,8 +304,7 @@ public class SteppingTaskHandler extends AbstractTaskHandler<SteppingTask, Stepp
                 return;
             }
 
-            final FindStreamCriteria criteria = request.getCriteria();
-            final List<Long> streamIdList = getFilteredStreamIdList(criteria);
+            final List<Long> streamIdList = getFilteredStreamIdList(request);
             currentStreamIndex = -1;
 
             if (streamIdList.size() > 0) {
@@ -383,11 +482,12 @@ public class SteppingTaskHandler extends AbstractTaskHandler<SteppingTask, Stepp
         return null;
     }
 
-    private List<Long> getFilteredStreamIdList(final FindStreamCriteria criteria) {
+    private List<Long> getFilteredStreamIdList(final SteppingTask request) {
         // Query the DB to get a list of tasks and associated streams to get
         // the source data from. Put the results into an array for use
         // during this request.
         if (filteredStreamIdList == null) {
+            final FindStreamCriteria criteria = request.getCriteria();
             List<Long> filteredList = Collections.emptyList();
 
             if (criteria.getStreamIdSet() == null || Boolean.TRUE.equals(criteria.getStreamIdSet().getMatchAll())) {
@@ -399,6 +499,17 @@ public class SteppingTaskHandler extends AbstractTaskHandler<SteppingTask, Stepp
 
             criteria.getFetchSet().add(StreamType.ENTITY_TYPE);
 
+            // Stepping forward and backward can reuse the streams found by the
+            // last step in this session but going to the first or last record
+            // looks again.
+            final StepType stepType = request.getStepType();
+            if ((StepType.FORWARD.equals(stepType) || StepType.BACKWARD.equals(stepType))
+                    && session.isCriteriaMatch(criteria)) {
+                allStreamIdList = session.getAllStreamIdList();
+                filteredStreamIdList = session.getFilteredStreamIdList();
+                return filteredStreamIdList;
+            }
+
             // Find streams.
             final List<Stream> allStreamList = streamStore.find(criteria);
             allStreamIdList = new ArrayList<Long>(allStreamList.size());
@@ -425,6 +536,7 @@ public class SteppingTaskHandler extends AbstractTaskHandler<SteppingTask, Stepp
             }
 
             filteredStreamIdList = filteredList;
+            session.setStreamIdLists(criteria, allStreamIdList, filteredStreamIdList);
         }
 
         return filteredStreamIdList;
@@ -100,6 +100,8 @@ public abstract class AbstractLookup extends StroomExtensionFunctionCall {
     private StreamHolder streamHolder;
 
     private long defaultMs = -1;
+    private String lastTime;
+    private long lastTimeMs;
 
     @Override
     protected Sequence call(final String functionName, final XPathContext context, final Sequence[] arguments)
@@ -131,7 +133,15 @@ public abstract class AbstractLookup extends StroomExtensionFunctionCall {
         if (arguments.length > 2) {
             final String time = getSafeString(functionName, context, arguments, 2);
             try {
-                ms = DateUtil.parseNormalDateTimeString(time);
+                // Several lookups are often made with the same event time so
+                // avoid parsing it again.
+                if (time != null && time.equals(lastTime)) {
+                    ms = lastTimeMs;
+                } else {
+                    ms = DateUtil.parseNormalDateTimeString(time);
+                    lastTime = time;
+                    lastTimeMs = ms;
+                }
             } catch (final Throwable e) {
                 if (!ignoreWarnings) {
                     final StringBuilder sb = new StringBuilder("Lookup failed to parse date: " + time);
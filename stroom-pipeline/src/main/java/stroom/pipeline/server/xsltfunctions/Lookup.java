@@ -16,31 +16,47 @@
 
 package stroom.pipeline.server.xsltfunctions;
 
+import javax.annotation.Resource;
+
 import stroom.util.spring.StroomScope;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import stroom.xml.event.np.NPEventList;
 import net.sf.saxon.expr.XPathContext;
+import net.sf.saxon.om.EmptyAtomicSequence;
 import net.sf.saxon.om.Sequence;
 import net.sf.saxon.trans.XPathException;
 
 @Component
 @Scope(StroomScope.PROTOTYPE)
 public class Lookup extends AbstractLookup {
+    @Resource
+    private LookupCache lookupCache;
+
     @Override
     protected Sequence doLookup(final XPathContext context, final String map, final String key, final long eventTime,
             final boolean ignoreWarnings, final StringBuilder lookupIdentifier) throws XPathException {
-        final SequenceMaker sequenceMaker = new SequenceMaker(context);
         final NPEventList eventList = (NPEventList) getReferenceData(map, key, eventTime, lookupIdentifier);
-        if (eventList != null) {
+        if (eventList == null) {
+            if (!ignoreWarnings) {
+                createLookupFailWarning(context, map, key, eventTime, null);
+            }
+            return EmptyAtomicSequence.getInstance();
+        }
+
+        // The built tree is immutable so reuse it if we have seen this value
+        // before.
+        Sequence sequence = lookupCache.get(context.getConfiguration(), eventList);
+        if (sequence == null) {
+            final SequenceMaker sequenceMaker = new SequenceMaker(context);
             sequenceMaker.open();
             sequenceMaker.consume(eventList);
             sequenceMaker.close();
-        } else if (!ignoreWarnings) {
-            createLookupFailWarning(context, map, key, eventTime, null);
+            sequence = sequenceMaker.toSequence();
+            lookupCache.put(context.getConfiguration(), eventList, sequence);
         }
 
-        return sequenceMaker.toSequence();
+        return sequence;
     }
 }
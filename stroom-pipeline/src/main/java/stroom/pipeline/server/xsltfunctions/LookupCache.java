@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.pipeline.server.xsltfunctions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.om.Sequence;
+import stroom.util.spring.StroomScope;
+import stroom.xml.event.EventList;
+
+/**
+ * Remembers the trees built for reference data values during a task so that
+ * translations that look up the same value for every record only build the
+ * tree once. Values are held against the event list instance returned by the
+ * map store, which is unique for a map, key and effective stream, and the
+ * Saxon configuration the tree was built with.
+ */
+@Component
+@Scope(value = StroomScope.TASK)
+public class LookupCache {
+    private static final int MAX_SIZE = 1000;
+
+    private final Map<Key, Sequence> map = new LinkedHashMap<Key, Sequence>(16, 0.75F, true) {
+        private static final long serialVersionUID = 6446573374924290962L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, Sequence> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private long hits;
+    private long misses;
+
+    public synchronized Sequence get(final Configuration configuration, final EventList eventList) {
+        final Sequence sequence = map.get(new Key(configuration, eventList));
+        if (sequence != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return sequence;
+    }
+
+    public synchronized void put(final Configuration configuration, final EventList eventList, final Sequence sequence) {
+        map.put(new Key(configuration, eventList), sequence);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static class Key {
+        private final Configuration configuration;
+        private final EventList eventList;
+        private final int hashCode;
+
+        Key(final Configuration configuration, final EventList eventList) {
+            this.configuration = configuration;
+            this.eventList = eventList;
+            this.hashCode = 31 * System.identityHashCode(configuration) + System.identityHashCode(eventList);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return configuration == key.configuration && eventList == key.eventList;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
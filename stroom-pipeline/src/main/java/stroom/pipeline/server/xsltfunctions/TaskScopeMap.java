@@ -29,11 +29,11 @@ import stroom.util.spring.StroomScope;
 public class TaskScopeMap {
     private final Map<String, String> map = new HashMap<String, String>();
 
-    public void put(final String key, final String value) {
+    public synchronized void put(final String key, final String value) {
         map.put(key, value);
     }
 
-    public String get(final String key) {
+    public synchronized String get(final String key) {
         return map.get(key);
     }
 }
@@ -54,6 +54,7 @@ public class EffectiveStreamCache extends AbstractCacheBean<EffectiveStreamKey,
         this.internPool = internPool;
         setMaxIdleTime(10, TimeUnit.MINUTES);
         setMaxLiveTime(10, TimeUnit.MINUTES);
+        setRefreshAhead(8, TimeUnit.MINUTES);
     }
 
     @Override
@@ -21,6 +21,8 @@ import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 
 import stroom.util.logging.StroomLogger;
+import stroom.util.shared.ModelStringUtil;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import stroom.cache.AbstractCacheBean;
@@ -48,6 +50,17 @@ public final class MapStoreCache extends AbstractCacheBean<MapStoreCacheKey, Map
         this.internPool = internPool;
         setMaxIdleTime(10, TimeUnit.MINUTES);
         setMaxLiveTime(10, TimeUnit.MINUTES);
+        // Reload map stores that are still in use in the background so
+        // lookups don't stall while they are reloaded on expiry.
+        setRefreshAhead(8, TimeUnit.MINUTES);
+        // Weigh map stores by the number of entries they hold so that a few
+        // very large stores can't push everything else out of memory.
+        setWeigher((key, mapStore) -> {
+            if (mapStore instanceof MapStoreImpl) {
+                return ((MapStoreImpl) mapStore).size();
+            }
+            return 1;
+        });
     }
 
     @Override
@@ -83,6 +96,18 @@ public final class MapStoreCache extends AbstractCacheBean<MapStoreCacheKey, Map
         return mapStore;
     }
 
+    @Value("#{propertyConfigurer.getProperty('stroom.referenceData.mapStoreCache.maxEntries')}")
+    public void setMaxEntries(final String maxEntries) {
+        try {
+            final Long value = ModelStringUtil.parseNumberString(maxEntries);
+            if (value != null && value > 0) {
+                setMaxWeight(value);
+            }
+        } catch (final NumberFormatException e) {
+            LOGGER.error(e, e);
+        }
+    }
+
     public ReferenceDataLoader getReferenceDataLoader() {
         return referenceDataLoader;
     }
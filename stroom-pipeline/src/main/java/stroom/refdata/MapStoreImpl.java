@@ -150,6 +150,22 @@ public class MapStoreImpl implements MapStore {
         return eventList;
     }
 
+    /**
+     * @return The number of keys and ranges held by this store.
+     */
+    public long size() {
+        long size = 0;
+        if (keyMap != null) {
+            size += keyMap.size();
+        }
+        if (rangeMap != null) {
+            for (final RangeStore[] rangeStores : rangeMap.values()) {
+                size += rangeStores.length;
+            }
+        }
+        return size;
+    }
+
     @Override
     public int hashCode() {
         final HashCodeBuilder builder = new HashCodeBuilder();
@@ -609,6 +609,10 @@ public class DS3Parser extends AbstractParser {
                     debugLine.append(ex.getExecutionString());
                     debugLine.append(" (");
                     debugLine.append(ModelStringUtil.formatCsv(ex.getTotalExecutionCount()));
+                    if (ex.getTotalBypassCount() > 0) {
+                        debugLine.append(", bypassed ");
+                        debugLine.append(ModelStringUtil.formatCsv(ex.getTotalBypassCount()));
+                    }
                     debugLine.append(") ");
                     debugLine.append(ModelStringUtil.formatDurationString(ex.getTotalExecutionTime()));
                 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.xml.converter.ds3;
+
+/**
+ * Hand-coded replacement for simple split regular expressions such as
+ * <code>^(.*?)\n</code> or <code>([^,]*),</code>. These find the first
+ * occurrence of a delimiter and capture everything before it, which can be
+ * done with a plain scan of the input rather than the regex engine.
+ */
+class DelimiterScanner {
+    private final char[] delimiter;
+    private final boolean stopAtLineTerminator;
+
+    /**
+     * @param delimiter
+     *            The literal delimiter to find.
+     * @param stopAtLineTerminator
+     *            True if the content before the delimiter may not contain a
+     *            line terminator, i.e. it was matched with <code>.</code>
+     *            without DOTALL.
+     */
+    DelimiterScanner(final String delimiter, final boolean stopAtLineTerminator) {
+        this.delimiter = delimiter.toCharArray();
+        this.stopAtLineTerminator = stopAtLineTerminator;
+    }
+
+    /**
+     * Find the position of the delimiter in the supplied input.
+     *
+     * @return The index of the first char of the delimiter or -1 if the
+     *         pattern would not have matched.
+     */
+    int indexOf(final CharSequence cs) {
+        final char first = delimiter[0];
+        final int last = cs.length() - delimiter.length;
+        for (int i = 0; i <= last; i++) {
+            final char c = cs.charAt(i);
+            if (c == first && matchesAt(cs, i)) {
+                return i;
+            }
+            if (stopAtLineTerminator && isLineTerminator(c)) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    int getDelimiterLength() {
+        return delimiter.length;
+    }
+
+    String getDelimiter() {
+        return new String(delimiter);
+    }
+
+    private boolean matchesAt(final CharSequence cs, final int offset) {
+        for (int i = 1; i < delimiter.length; i++) {
+            if (cs.charAt(offset + i) != delimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The chars that <code>.</code> will not match unless DOTALL is set, see
+     * {@link java.util.regex.Pattern}.
+     */
+    private static boolean isLineTerminator(final char c) {
+        return c == '\n' || c == '\r' || c == 0x85 || c == 0x2028 || c == 0x2029;
+    }
+}
@@ -25,5 +25,11 @@ public interface ExecutionProfiler {
 
     long getTotalExecutionCount();
 
+    /**
+     * The number of executions that were resolved without running the full
+     * expression, e.g. by a literal prefilter or a delimiter scan.
+     */
+    long getTotalBypassCount();
+
     String getExecutionString();
 }
@@ -19,6 +19,8 @@ package stroom.xml.converter.ds3;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.lang.StringEscapeUtils;
+
 import stroom.util.logging.StroomLogger;
 import stroom.xml.converter.ds3.NodeFactory.NodeType;
 import stroom.xml.converter.ds3.ref.VarMap;
@@ -27,25 +29,46 @@ public class Regex extends Expression implements ExecutionProfiler, Match {
     private static final StroomLogger LOGGER = StroomLogger.getLogger(Regex.class);
 
     private final Pattern pattern;
+    private final String requiredLiteral;
+    private final DelimiterScanner delimiterScanner;
     private Matcher matcher;
+    private CharSequence cs;
+    private int delimiterStart = -1;
 
     private long totalExecutionTime = 0;
     private long totalExecutionCount = 0;
+    private long totalBypassCount = 0;
     private long execStartTime = -1;
 
     Regex(final VarMap varMap, final RegexFactory factory) {
         super(varMap, factory);
         pattern = factory.getPattern();
+        requiredLiteral = factory.getRequiredLiteral();
+        delimiterScanner = factory.getDelimiterScanner();
     }
 
     @Override
     public void setInput(final CharSequence cs) {
         if (LOGGER.isDebugEnabled()) {
             long startTime = System.currentTimeMillis();
-            matcher = pattern.matcher(cs);
+            setMatcherInput(cs);
             totalExecutionTime += System.currentTimeMillis() - startTime;
         } else {
-            matcher = pattern.matcher(cs);
+            setMatcherInput(cs);
+        }
+    }
+
+    private void setMatcherInput(final CharSequence cs) {
+        this.cs = cs;
+        delimiterStart = -1;
+
+        // Reuse the matcher rather than creating a new one for every record.
+        if (delimiterScanner == null) {
+            if (matcher == null) {
+                matcher = pattern.matcher(cs);
+            } else {
+                matcher.reset(cs);
+            }
         }
     }
 
@@ -54,7 +77,7 @@ public class Regex extends Expression implements ExecutionProfiler, Match {
         if (LOGGER.isDebugEnabled()) {
             totalExecutionCount++;
             execStartTime = System.currentTimeMillis();
-            if (matcher.find(0)) {
+            if (find()) {
                 totalExecutionTime += System.currentTimeMillis() - execStartTime;
                 execStartTime = -1;
                 return this;
@@ -63,7 +86,7 @@ public class Regex extends Expression implements ExecutionProfiler, Match {
                 execStartTime = -1;
             }
         } else {
-            if (matcher.find(0)) {
+            if (find()) {
                 return this;
             }
         }
@@ -71,6 +94,41 @@ public class Regex extends Expression implements ExecutionProfiler, Match {
         return null;
     }
 
+    private boolean find() {
+        // Simple splits are matched by scanning for the delimiter.
+        if (delimiterScanner != null) {
+            totalBypassCount++;
+            delimiterStart = delimiterScanner.indexOf(cs);
+            return delimiterStart != -1;
+        }
+
+        // Don't bother running the regex if the input doesn't contain text
+        // that every match requires.
+        if (requiredLiteral != null && !contains(cs, requiredLiteral)) {
+            totalBypassCount++;
+            return false;
+        }
+
+        return matcher.find(0);
+    }
+
+    private static boolean contains(final CharSequence cs, final String literal) {
+        final char first = literal.charAt(0);
+        final int last = cs.length() - literal.length();
+        for (int i = 0; i <= last; i++) {
+            if (cs.charAt(i) == first) {
+                int j = 1;
+                while (j < literal.length() && cs.charAt(i + j) == literal.charAt(j)) {
+                    j++;
+                }
+                if (j == literal.length()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @Override
     public NodeType getNodeType() {
         return NodeType.REGEX;
@@ -78,7 +136,21 @@ public class Regex extends Expression implements ExecutionProfiler, Match {
 
     @Override
     public String getExecutionString() {
-        return getNodeType().getName() + "'" + pattern.pattern() + "'";
+        final StringBuilder sb = new StringBuilder();
+        sb.append(getNodeType().getName());
+        sb.append("'");
+        sb.append(pattern.pattern());
+        sb.append("'");
+        if (delimiterScanner != null) {
+            sb.append(" [scan '");
+            sb.append(StringEscapeUtils.escapeJava(delimiterScanner.getDelimiter()));
+            sb.append("']");
+        } else if (requiredLiteral != null) {
+            sb.append(" [prefilter '");
+            sb.append(StringEscapeUtils.escapeJava(requiredLiteral));
+            sb.append("']");
+        }
+        return sb.toString();
     }
 
     @Override
@@ -86,6 +158,11 @@ public class Regex extends Expression implements ExecutionProfiler, Match {
         return totalExecutionCount;
     }
 
+    @Override
+    public long getTotalBypassCount() {
+        return totalBypassCount;
+    }
+
     @Override
     public long getTotalExecutionTime() {
         // If we are still mid execution then add the current execution time on.
@@ -98,28 +175,52 @@ public class Regex extends Expression implements ExecutionProfiler, Match {
 
     @Override
     public int start() {
+        if (delimiterScanner != null) {
+            return 0;
+        }
         return matcher.start();
     }
 
     @Override
     public int start(final int group) {
+        if (delimiterScanner != null) {
+            checkGroup(group);
+            return 0;
+        }
         return matcher.start(group);
     }
 
     @Override
     public int end() {
+        if (delimiterScanner != null) {
+            return delimiterStart + delimiterScanner.getDelimiterLength();
+        }
         return matcher.end();
     }
 
     @Override
     public int end(final int group) {
+        if (delimiterScanner != null) {
+            checkGroup(group);
+            if (group == 0) {
+                return end();
+            }
+            return delimiterStart;
+        }
         return matcher.end(group);
     }
 
+    private void checkGroup(final int group) {
+        // Scanned patterns only ever have a single capturing group.
+        if (group < 0 || group > 1) {
+            throw new IndexOutOfBoundsException("No group " + group);
+        }
+    }
+
     @Override
     public Buffer filter(final Buffer buffer, final int group) {
-        int start = matcher.start(group);
-        int end = matcher.end(group);
+        int start = start(group);
+        int end = end(group);
         int len = end - start;
 
         // Sometimes a match gives us -1 as the start and end. This happens if
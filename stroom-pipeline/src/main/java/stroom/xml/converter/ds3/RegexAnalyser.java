@@ -0,0 +1,446 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.xml.converter.ds3;
+
+import java.util.regex.Pattern;
+
+/**
+ * Analyses data splitter regular expressions when a config is loaded so that
+ * matching can avoid the regex engine where it is not needed. The analysis is
+ * deliberately conservative: anything it does not understand results in no
+ * literal and no scanner so the pattern is matched exactly as before.
+ */
+final class RegexAnalyser {
+    private static final int SUPPORTED_FLAGS = Pattern.DOTALL | Pattern.MULTILINE;
+    private static final String LAZY_ANY = "(.*?)";
+
+    private static final int CLASS = -1;
+    private static final int UNSUPPORTED = -2;
+
+    private RegexAnalyser() {
+        // Utility class.
+    }
+
+    /**
+     * Get the longest run of literal text that every match of the pattern
+     * must contain. Input that does not contain this text cannot match.
+     *
+     * @return The required literal or null if none could be determined.
+     */
+    static String getRequiredLiteral(final String pattern, final int flags) {
+        if (pattern == null || (flags & ~SUPPORTED_FLAGS) != 0) {
+            return null;
+        }
+
+        String longest = "";
+        final StringBuilder run = new StringBuilder();
+        final int len = pattern.length();
+        int i = 0;
+        while (i < len) {
+            final char c = pattern.charAt(i);
+            int literal = CLASS;
+            int next;
+
+            switch (c) {
+            case '\\':
+                if (i + 1 >= len) {
+                    return null;
+                }
+                literal = unescape(pattern.charAt(i + 1));
+                if (literal == UNSUPPORTED) {
+                    return null;
+                }
+                next = i + 2;
+                break;
+            case '[':
+                next = skipClass(pattern, i);
+                break;
+            case '(':
+                next = skipGroup(pattern, i);
+                break;
+            case '.':
+            case '^':
+            case '$':
+                next = i + 1;
+                break;
+            case '|':
+            case ')':
+            case '?':
+            case '*':
+            case '+':
+            case '{':
+                // Top level alternation means nothing is required and
+                // anything else here is unexpected.
+                return null;
+            default:
+                if (Character.isSurrogate(c)) {
+                    return null;
+                }
+                literal = c;
+                next = i + 1;
+            }
+
+            if (next == -1) {
+                return null;
+            }
+
+            // See if the atom is quantified.
+            final int quantifierEnd = skipQuantifier(pattern, next);
+            if (quantifierEnd == -1) {
+                return null;
+            }
+
+            if (literal >= 0) {
+                if (quantifierEnd == next) {
+                    run.append((char) literal);
+                } else {
+                    // A quantified char is only required if it must occur at
+                    // least once and even then what follows is not adjacent.
+                    if (getMinimum(pattern, next) > 0) {
+                        run.append((char) literal);
+                    }
+                    longest = longest(longest, run);
+                }
+            } else {
+                longest = longest(longest, run);
+            }
+
+            i = quantifierEnd;
+        }
+
+        longest = longest(longest, run);
+        if (longest.length() == 0) {
+            return null;
+        }
+        return longest;
+    }
+
+    /**
+     * Get a hand-coded scanner for simple split patterns, i.e.
+     * <code>^(.*?)delimiter</code> or <code>([^c]*)c</code>.
+     *
+     * @return A scanner that finds the same matches as the pattern or null if
+     *         the pattern is not a simple split.
+     */
+    static DelimiterScanner getDelimiterScanner(final String pattern, final int flags) {
+        if (pattern == null || (flags & ~SUPPORTED_FLAGS) != 0) {
+            return null;
+        }
+
+        final boolean dotAll = (flags & Pattern.DOTALL) != 0;
+        final boolean multiLine = (flags & Pattern.MULTILINE) != 0;
+        final boolean anchored = pattern.startsWith("^");
+        final int start = anchored ? 1 : 0;
+
+        // Lazy match of anything up to a literal delimiter. Unless the
+        // pattern is anchored to the start of the input or '.' can match line
+        // terminators the regex engine may match from a later position so we
+        // can't scan for it.
+        if (pattern.startsWith(LAZY_ANY, start)) {
+            if (dotAll || (anchored && !multiLine)) {
+                final String delimiter = getLiteral(pattern, start + LAZY_ANY.length());
+                if (delimiter != null) {
+                    return new DelimiterScanner(delimiter, !dotAll);
+                }
+            }
+            return null;
+        }
+
+        // Anything but a char followed by that char.
+        if (pattern.startsWith("([^", start)) {
+            final int classEnd = readChar(pattern, start + 3, true);
+            if (classEnd != -1 && pattern.startsWith("]*)", classEnd)) {
+                final int delimiterEnd = readChar(pattern, classEnd + 3, false);
+                if (delimiterEnd == pattern.length()) {
+                    final char classChar = getChar(pattern, start + 3);
+                    final char delimiter = getChar(pattern, classEnd + 3);
+                    if (classChar == delimiter) {
+                        return new DelimiterScanner(String.valueOf(delimiter), false);
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Read the remainder of the pattern from the supplied offset as literal
+     * text.
+     *
+     * @return The literal or null if the remainder contains anything other
+     *         than literal chars.
+     */
+    private static String getLiteral(final String pattern, final int offset) {
+        final StringBuilder sb = new StringBuilder();
+        int i = offset;
+        while (i < pattern.length()) {
+            final char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= pattern.length()) {
+                    return null;
+                }
+                final int literal = unescape(pattern.charAt(i + 1));
+                if (literal < 0) {
+                    return null;
+                }
+                sb.append((char) literal);
+                i += 2;
+            } else if (".^$|()[]{}?*+".indexOf(c) != -1 || Character.isSurrogate(c)) {
+                return null;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+
+        if (sb.length() == 0) {
+            return null;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Read a single literal char, possibly escaped, from the pattern.
+     *
+     * @return The offset after the char or -1 if there isn't a literal char
+     *         at the offset.
+     */
+    private static int readChar(final String pattern, final int offset, final boolean inClass) {
+        if (offset >= pattern.length()) {
+            return -1;
+        }
+        final char c = pattern.charAt(offset);
+        if (c == '\\') {
+            if (offset + 1 < pattern.length() && unescape(pattern.charAt(offset + 1)) >= 0) {
+                return offset + 2;
+            }
+            return -1;
+        }
+        if (Character.isSurrogate(c)) {
+            return -1;
+        }
+        if (inClass) {
+            if ("[]&^".indexOf(c) != -1) {
+                return -1;
+            }
+        } else if (".^$|()[]{}?*+".indexOf(c) != -1) {
+            return -1;
+        }
+        return offset + 1;
+    }
+
+    /**
+     * Get the value of a literal char that has already been checked with
+     * {@link #readChar(String, int, boolean)}.
+     */
+    private static char getChar(final String pattern, final int offset) {
+        final char c = pattern.charAt(offset);
+        if (c == '\\') {
+            return (char) unescape(pattern.charAt(offset + 1));
+        }
+        return c;
+    }
+
+    /**
+     * Get the char that an escape sequence represents.
+     *
+     * @return The char, CLASS if the escape represents a class of chars or a
+     *         boundary, or UNSUPPORTED if the escape takes further arguments
+     *         that would need parsing.
+     */
+    private static int unescape(final char c) {
+        switch (c) {
+        case 't':
+            return '\t';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 'f':
+            return '\f';
+        case 'a':
+            return '\u0007';
+        case 'e':
+            return '\u001B';
+        case 'd':
+        case 'D':
+        case 's':
+        case 'S':
+        case 'w':
+        case 'W':
+        case 'b':
+        case 'B':
+        case 'A':
+        case 'G':
+        case 'Z':
+        case 'z':
+        case 'h':
+        case 'H':
+        case 'v':
+        case 'V':
+        case 'R':
+            return CLASS;
+        default:
+            if (Character.isLetterOrDigit(c) || Character.isSurrogate(c)) {
+                return UNSUPPORTED;
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Skip a character class starting at the supplied offset.
+     *
+     * @return The offset after the class or -1 if it could not be parsed.
+     */
+    private static int skipClass(final String pattern, final int offset) {
+        int depth = 0;
+        int i = offset;
+        while (i < pattern.length()) {
+            final char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == 'Q') {
+                    return -1;
+                }
+                i += 2;
+            } else if (c == '[') {
+                depth++;
+                i++;
+                // A ']' straight after the opening bracket is literal.
+                if (i < pattern.length() && pattern.charAt(i) == '^') {
+                    i++;
+                }
+                if (i < pattern.length() && pattern.charAt(i) == ']') {
+                    i++;
+                }
+            } else if (c == ']') {
+                depth--;
+                i++;
+                if (depth == 0) {
+                    return i;
+                }
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skip a group starting at the supplied offset.
+     *
+     * @return The offset after the group or -1 if it could not be parsed or
+     *         contains inline flags that would change how the rest of the
+     *         pattern matches.
+     */
+    private static int skipGroup(final String pattern, final int offset) {
+        int depth = 0;
+        int i = offset;
+        while (i < pattern.length()) {
+            final char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == 'Q') {
+                    return -1;
+                }
+                i += 2;
+            } else if (c == '[') {
+                i = skipClass(pattern, i);
+                if (i == -1) {
+                    return -1;
+                }
+            } else if (c == '(') {
+                if (i + 2 < pattern.length() && pattern.charAt(i + 1) == '?'
+                        && "idmsuxU-".indexOf(pattern.charAt(i + 2)) != -1) {
+                    return -1;
+                }
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+                if (depth == 0) {
+                    return i;
+                }
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skip a quantifier and any lazy or possessive suffix.
+     *
+     * @return The offset after the quantifier, the supplied offset if there
+     *         isn't one or -1 if it could not be parsed.
+     */
+    private static int skipQuantifier(final String pattern, final int offset) {
+        if (offset >= pattern.length()) {
+            return offset;
+        }
+
+        int i = offset;
+        final char c = pattern.charAt(i);
+        if (c == '?' || c == '*' || c == '+') {
+            i++;
+        } else if (c == '{') {
+            i = pattern.indexOf('}', i);
+            if (i == -1) {
+                return -1;
+            }
+            i++;
+        } else {
+            return offset;
+        }
+
+        if (i < pattern.length() && (pattern.charAt(i) == '?' || pattern.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Get the minimum number of times a quantifier requires the preceding
+     * atom to occur.
+     */
+    private static int getMinimum(final String pattern, final int offset) {
+        final char c = pattern.charAt(offset);
+        if (c == '+') {
+            return 1;
+        }
+        if (c == '{') {
+            int i = offset + 1;
+            int min = 0;
+            while (i < pattern.length() && Character.isDigit(pattern.charAt(i))) {
+                min = Math.min(min * 10 + (pattern.charAt(i) - '0'), 1000);
+                i++;
+            }
+            return min;
+        }
+        return 0;
+    }
+
+    private static String longest(final String longest, final StringBuilder run) {
+        String result = longest;
+        if (run.length() > longest.length()) {
+            result = run.toString();
+        }
+        run.setLength(0);
+        return result;
+    }
+}
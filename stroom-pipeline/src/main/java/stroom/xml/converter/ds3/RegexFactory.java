@@ -23,6 +23,8 @@ import stroom.xml.converter.ds3.ref.VarMap;
 
 public class RegexFactory extends ExpressionFactory {
     private final Pattern pattern;
+    private final String requiredLiteral;
+    private final DelimiterScanner delimiterScanner;
 
     public RegexFactory(final NodeFactory parent, final String id, final String pattern) {
         this(parent, id, 0, -1, null, -1, pattern, 0);
@@ -37,6 +39,15 @@ public class RegexFactory extends ExpressionFactory {
             this.pattern = null;
         }
 
+        // Work out if we can avoid running the regex engine for some or all
+        // input.
+        delimiterScanner = RegexAnalyser.getDelimiterScanner(pattern, flags);
+        if (delimiterScanner == null) {
+            requiredLiteral = RegexAnalyser.getRequiredLiteral(pattern, flags);
+        } else {
+            requiredLiteral = null;
+        }
+
         final StringBuilder sb = new StringBuilder();
         if (pattern != null) {
             sb.append(" pattern=\"");
@@ -61,6 +72,22 @@ public class RegexFactory extends ExpressionFactory {
         return pattern;
     }
 
+    /**
+     * @return Literal text that input must contain for the pattern to match or
+     *         null if there isn't any.
+     */
+    String getRequiredLiteral() {
+        return requiredLiteral;
+    }
+
+    /**
+     * @return A scanner that can be used instead of the pattern or null if the
+     *         pattern is not a simple split.
+     */
+    DelimiterScanner getDelimiterScanner() {
+        return delimiterScanner;
+    }
+
     @Override
     public Regex newInstance(final VarMap varMap) {
         return new Regex(varMap, this);
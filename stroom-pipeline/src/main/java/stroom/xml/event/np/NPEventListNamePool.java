@@ -32,8 +32,12 @@
 
 package stroom.xml.event.np;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import net.sf.saxon.lib.NamespaceConstant;
 import net.sf.saxon.om.NameChecker;
@@ -88,13 +92,13 @@ import net.sf.saxon.value.Whitespace;
  * constants representing these names are found in {@link StandardNames}.
  *
  * <p>
- * Operations that update the NamePool, or that have the potential to update it,
- * are synchronized. Read-only operations are done without synchronization.
- * Although technically unsafe, this has not led to any problems in practice.
- * Performance problems due to excessive contention on the NamePool have
- * occasionally been observed: if this happens, the best strategy is to consider
- * splitting the workload to use multiple Configurations each with a separate
- * NamePool.
+ * Unlike the Saxon original, allocating an unprefixed name in a known namespace
+ * does not lock the pool. Names are added to the end of their hash chain with a
+ * compare and swap so the position of an entry, and therefore its fingerprint,
+ * never changes once allocated. Each thread also keeps a small cache of the
+ * name codes it has recently allocated. Allocating new URIs and prefixes is
+ * rare and is still synchronized; the URI and prefix tables are published
+ * through volatile fields so they can be read without locking.
  * </p>
  *
  * <h3>Internal organization of the NamePool</h3>
@@ -146,7 +150,7 @@ import net.sf.saxon.value.Whitespace;
  * </p>
  */
 public class NPEventListNamePool implements Serializable {
-    private static final long serialVersionUID = 2014345361495591413L;
+    private static final long serialVersionUID = -4237906181584306118L;
 
     /**
      * FP_MASK is a mask used to obtain a fingerprint from a nameCode. Given a
@@ -178,9 +182,12 @@ public class NPEventListNamePool implements Serializable {
     private static class NameEntry implements Serializable {
         private static final long serialVersionUID = 8411087666788132364L;
 
-        String localName;
-        short uriCode;
-        NameEntry nextEntry; // link to next NameEntry with the same hashcode
+        private static final AtomicReferenceFieldUpdater<NameEntry, NameEntry> NEXT_ENTRY_UPDATER = AtomicReferenceFieldUpdater
+                .newUpdater(NameEntry.class, NameEntry.class, "nextEntry");
+
+        final String localName;
+        final short uriCode;
+        volatile NameEntry nextEntry; // link to next NameEntry with the same hashcode
 
         /**
          * Create a NameEntry for a QName
@@ -196,6 +203,15 @@ public class NPEventListNamePool implements Serializable {
             nextEntry = null;
         }
 
+        /**
+         * Append an entry to this one if no other thread has done so first.
+         *
+         * @return true if the entry was appended
+         */
+        boolean casNextEntry(final NameEntry entry) {
+            return NEXT_ENTRY_UPDATER.compareAndSet(this, null, entry);
+        }
+
         /**
          * Create a copy of a NameEntry, as well as the chain of NameEntries
          * starting from this NameEntry
@@ -212,17 +228,23 @@ public class NPEventListNamePool implements Serializable {
 
     }
 
-    NameEntry[] hashslots = new NameEntry[1024];
+    final AtomicReferenceArray<NameEntry> hashslots = new AtomicReferenceArray<>(1024);
 
-    String[] prefixes = new String[100];
-    short prefixesUsed = 0;
-    String[] uris = new String[100];
-    short[][] prefixCodesForUri = new short[100][0];
-    short urisUsed = 0;
+    // The tables below are only modified while synchronized. Entries are
+    // written before the count is incremented so readers that read the count
+    // first will always see them.
+    volatile String[] prefixes = new String[100];
+    volatile short prefixesUsed = 0;
+    volatile String[] uris = new String[100];
+    volatile short[][] prefixCodesForUri = new short[100][0];
+    volatile short urisUsed = 0;
 
     // General purpose cache for data held by clients of the namePool
     private HashMap<Class<?>, Object> clientData;
 
+    // Recently allocated name codes for each thread.
+    private transient ThreadLocal<NameCodeCache> nameCodeCache = ThreadLocal.withInitial(NameCodeCache::new);
+
     /**
      * Create a NamePool
      */
@@ -268,9 +290,10 @@ public class NPEventListNamePool implements Serializable {
      */
     public synchronized NPEventListNamePool copy() {
         NPEventListNamePool n = new NPEventListNamePool();
-        for (int i = 0; i < hashslots.length; i++) {
-            if (hashslots[i] != null) {
-                n.hashslots[i] = hashslots[i].copy();
+        for (int i = 0; i < hashslots.length(); i++) {
+            final NameEntry entry = hashslots.get(i);
+            if (entry != null) {
+                n.hashslots.set(i, entry.copy());
             }
         }
         if (n.prefixes.length < prefixesUsed) {
@@ -303,7 +326,7 @@ public class NPEventListNamePool implements Serializable {
     private NameEntry getNameEntry(int nameCode) {
         int hash = nameCode & 0x3ff;
         int depth = (nameCode >> 10) & 0x3ff;
-        NameEntry entry = hashslots[hash];
+        NameEntry entry = hashslots.get(hash);
 
         for (int i = 1; i < depth; i++) {
             if (entry == null) {
@@ -493,6 +516,7 @@ public class NPEventListNamePool implements Serializable {
             String[] u = new String[urisUsed * 2];
             System.arraycopy(prefixCodesForUri, 0, p, 0, urisUsed);
             System.arraycopy(uris, 0, u, 0, urisUsed);
+            // Publish the prefix codes first as they are looked up by URI code.
             prefixCodesForUri = p;
             uris = u;
         }
@@ -510,7 +534,9 @@ public class NPEventListNamePool implements Serializable {
      *         pool
      */
     public short getCodeForURI(String uri) {
-        for (short j = 0; j < urisUsed; j++) {
+        final short used = urisUsed;
+        final String[] uris = this.uris;
+        for (short j = 0; j < used; j++) {
             if (uris[j].equals(uri)) {
                 return j;
             }
@@ -567,7 +593,9 @@ public class NPEventListNamePool implements Serializable {
      *         -1 if not found
      */
     public short getCodeForPrefix(String prefix) {
-        for (short i = 0; i < prefixesUsed; i++) {
+        final short used = prefixesUsed;
+        final String[] prefixes = this.prefixes;
+        for (short i = 0; i < used; i++) {
             if (prefixes[i].equals(prefix)) {
                 return i;
             }
@@ -633,7 +661,31 @@ public class NPEventListNamePool implements Serializable {
      *         namepool. The Name itself may be retrieved using the getName(int)
      *         method
      */
-    public synchronized int allocate(String prefix, String uri, String localName) {
+    public int allocate(String prefix, String uri, String localName) {
+        final NameCodeCache cache = nameCodeCache.get();
+        int nameCode = cache.get(prefix, uri, localName);
+        if (nameCode == -1) {
+            if (prefix.length() == 0 && uri != null && !NamespaceConstant.isReserved(uri)
+                    && !NamespaceConstant.SAXON.equals(uri)) {
+                // Unprefixed names in a namespace we already know about don't
+                // need to lock the pool.
+                short uriCode = getCodeForURI(uri);
+                if (uriCode == -1) {
+                    uriCode = allocateCodeForURI(uri);
+                }
+                nameCode = allocateFingerprint(uriCode, localName);
+            } else {
+                nameCode = allocateSynchronized(prefix, uri, localName);
+            }
+            cache.put(prefix, uri, localName, nameCode);
+        }
+        return nameCode;
+    }
+
+    /**
+     * Allocate a name that needs a prefix or is in a reserved namespace.
+     */
+    private synchronized int allocateSynchronized(String prefix, String uri, String localName) {
         short prefixCode = allocateCodeForPrefix(prefix);
         if (NamespaceConstant.isReserved(uri) || NamespaceConstant.SAXON.equals(uri)) {
             int fp = StandardNames.getFingerprint(uri, localName);
@@ -665,9 +717,6 @@ public class NPEventListNamePool implements Serializable {
         // otherwise register the name in this NamePool
         short uriCode = allocateCodeForURIInternal(uri);
 
-        int hash = (localName.hashCode() & 0x7fffffff) % 1023;
-        int depth = 1;
-
         final short[] prefixCodes = prefixCodesForUri[uriCode];
         int prefixIndex;
         if (prefix.length() == 0) {
@@ -688,37 +737,57 @@ public class NPEventListNamePool implements Serializable {
             prefixIndex = prefixPosition + 1;
         }
 
-        NameEntry entry;
+        return (prefixIndex << 20) + allocateFingerprint(uriCode, localName);
+    }
 
-        if (hashslots[hash] == null) {
-            entry = new NameEntry(uriCode, localName);
-            hashslots[hash] = entry;
-        } else {
-            entry = hashslots[hash];
-            while (true) {
-                boolean sameLocalName = (entry.localName.equals(localName));
-                boolean sameURI = (entry.uriCode == uriCode);
-
-                if (sameLocalName && sameURI) {
-                    // may need to add a new prefix to the entry
-                    break;
-                } else {
-                    NameEntry next = entry.nextEntry;
-                    depth++;
-                    if (depth >= 1024) {
-                        throw new NamePoolLimitException("Saxon name pool is full");
-                    }
-                    if (next == null) {
-                        entry.nextEntry = new NameEntry(uriCode, localName);
-                        break;
-                    } else {
-                        entry = next;
-                    }
-                }
+    /**
+     * Find or add the entry for a name in its hash chain without locking. New
+     * entries are only ever appended to the end of a chain so the depth of an
+     * entry never changes.
+     *
+     * @param uriCode
+     *            the code of the namespace URI
+     * @param localName
+     *            the local part of the name
+     * @return the fingerprint of the name
+     */
+    private int allocateFingerprint(final short uriCode, final String localName) {
+        final int hash = (localName.hashCode() & 0x7fffffff) % 1023;
+        NameEntry newEntry = null;
+
+        NameEntry entry = hashslots.get(hash);
+        if (entry == null) {
+            newEntry = new NameEntry(uriCode, localName);
+            if (hashslots.compareAndSet(hash, null, newEntry)) {
+                return (1 << 10) + hash;
             }
+            entry = hashslots.get(hash);
         }
 
-        return ((prefixIndex << 20) + (depth << 10) + hash);
+        int depth = 1;
+        while (true) {
+            if (entry.uriCode == uriCode && entry.localName.equals(localName)) {
+                return (depth << 10) + hash;
+            }
+
+            NameEntry next = entry.nextEntry;
+            if (next == null) {
+                if (depth + 1 >= 1024) {
+                    throw new NamePoolLimitException("Saxon name pool is full");
+                }
+                if (newEntry == null) {
+                    newEntry = new NameEntry(uriCode, localName);
+                }
+                if (entry.casNextEntry(newEntry)) {
+                    return ((depth + 1) << 10) + hash;
+                }
+                // Another thread appended an entry first so check that one.
+                next = entry.nextEntry;
+            }
+
+            entry = next;
+            depth++;
+        }
     }
 
     /**
@@ -959,13 +1028,7 @@ public class NPEventListNamePool implements Serializable {
                     // otherwise, look for the name in this namepool
                 }
             }
-            uriCode = -1;
-            for (short j = 0; j < urisUsed; j++) {
-                if (uris[j].equals(uri)) {
-                    uriCode = j;
-                    break;
-                }
-            }
+            uriCode = getCodeForURI(uri);
             if (uriCode == -1) {
                 return -1;
             }
@@ -974,13 +1037,11 @@ public class NPEventListNamePool implements Serializable {
         int hash = (localName.hashCode() & 0x7fffffff) % 1023;
         int depth = 1;
 
-        NameEntry entry;
-
-        if (hashslots[hash] == null) {
+        NameEntry entry = hashslots.get(hash);
+        if (entry == null) {
             return -1;
         }
 
-        entry = hashslots[hash];
         while (true) {
             if (entry.uriCode == uriCode && entry.localName.equals(localName)) {
                 break;
@@ -1105,7 +1166,7 @@ public class NPEventListNamePool implements Serializable {
     public synchronized void diagnosticDump() {
         System.err.println("Contents of NamePool " + this);
         for (int i = 0; i < 1024; i++) {
-            NameEntry entry = hashslots[i];
+            NameEntry entry = hashslots.get(i);
             int depth = 0;
             while (entry != null) {
                 System.err.println("Fingerprint " + depth + '/' + i);
@@ -1136,7 +1197,7 @@ public class NPEventListNamePool implements Serializable {
         int slots = 0;
         int entries = 0;
         for (int i = 0; i < 1024; i++) {
-            NameEntry entry = hashslots[i];
+            NameEntry entry = hashslots.get(i);
             if (entry != null)
                 slots++;
             while (entry != null) {
@@ -1148,6 +1209,54 @@ public class NPEventListNamePool implements Serializable {
                 + " prefixes, " + urisUsed + " URIs");
     }
 
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        nameCodeCache = ThreadLocal.withInitial(NameCodeCache::new);
+    }
+
+    /**
+     * A small direct mapped cache of name codes that a single thread has
+     * recently allocated. Name codes never change once allocated so entries
+     * never need to be invalidated.
+     */
+    private static final class NameCodeCache {
+        private static final int SIZE = 64;
+
+        private final String[] prefixes = new String[SIZE];
+        private final String[] uris = new String[SIZE];
+        private final String[] localNames = new String[SIZE];
+        private final int[] nameCodes = new int[SIZE];
+
+        int get(final String prefix, final String uri, final String localName) {
+            final int index = index(uri, localName);
+            final String cachedLocalName = localNames[index];
+            if (cachedLocalName != null && cachedLocalName.equals(localName) && prefixes[index].equals(prefix)) {
+                final String cachedUri = uris[index];
+                if (cachedUri == null ? uri == null : cachedUri.equals(uri)) {
+                    return nameCodes[index];
+                }
+            }
+            return -1;
+        }
+
+        void put(final String prefix, final String uri, final String localName, final int nameCode) {
+            final int index = index(uri, localName);
+            prefixes[index] = prefix;
+            uris[index] = uri;
+            localNames[index] = localName;
+            nameCodes[index] = nameCode;
+        }
+
+        private static int index(final String uri, final String localName) {
+            int hash = localName.hashCode() * 31;
+            if (uri != null) {
+                hash += uri.hashCode();
+            }
+            hash ^= hash >>> 16;
+            return hash & (SIZE - 1);
+        }
+    }
+
     /**
      * Uncaught Exception raised when some limit in the design of the name pool
      * is exceeded
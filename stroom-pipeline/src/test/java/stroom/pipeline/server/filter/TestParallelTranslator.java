@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.pipeline.server.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import stroom.cache.server.StoredXsltExecutable;
+import stroom.cache.server.XSLTPool;
+import stroom.entity.shared.VersionedEntityDecorator;
+import stroom.pipeline.server.DefaultLocationFactory;
+import stroom.pipeline.server.LocationFactory;
+import stroom.pipeline.server.errorhandler.ErrorReceiver;
+import stroom.pipeline.server.errorhandler.StoredErrorReceiver;
+import stroom.pipeline.shared.XSLT;
+import stroom.pipeline.shared.data.PipelineReference;
+import stroom.pool.PoolItem;
+import stroom.util.io.StreamUtil;
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+import net.sf.saxon.s9api.Processor;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestParallelTranslator extends StroomUnitTest {
+    // Records take a varying amount of time to translate so they complete out
+    // of order.
+    private static final String XSLT_DATA = "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" "
+            + "xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" version=\"2.0\">"
+            + "<xsl:template match=\"records\"><outs><xsl:apply-templates/></outs></xsl:template>"
+            + "<xsl:template match=\"record\">"
+            + "<out sum=\"{sum(for $i in 1 to (xs:integer(.) mod 7) * 10000 return $i)}\">"
+            + "<xsl:value-of select=\".\"/></out></xsl:template>" + "</xsl:stylesheet>";
+
+    private static class TestXSLTPool implements XSLTPool {
+        private int borrowed;
+
+        @Override
+        public PoolItem<VersionedEntityDecorator<XSLT>, StoredXsltExecutable> borrowConfiguredTemplate(
+                final VersionedEntityDecorator<XSLT> k, final ErrorReceiver errorReceiver,
+                final LocationFactory locationFactory, final List<PipelineReference> pipelineReferences) {
+            return borrowObject(k);
+        }
+
+        @Override
+        public synchronized PoolItem<VersionedEntityDecorator<XSLT>, StoredXsltExecutable> borrowObject(
+                final VersionedEntityDecorator<XSLT> key) {
+            try {
+                borrowed++;
+                final Processor processor = new Processor(false);
+                final StoredXsltExecutable executable = new StoredXsltExecutable(processor.newXsltCompiler()
+                        .compile(new StreamSource(StreamUtil.stringToStream(key.getEntity().getData()))), null,
+                        new StoredErrorReceiver());
+                return new PoolItem<>(key, executable);
+            } catch (final Exception e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public synchronized void returnObject(
+                final PoolItem<VersionedEntityDecorator<XSLT>, StoredXsltExecutable> poolItem) {
+            borrowed--;
+        }
+    }
+
+    @Test
+    public void testOutputOrder() throws Exception {
+        final XSLT xslt = new XSLT();
+        xslt.setName("test");
+        xslt.setData(XSLT_DATA);
+
+        final TestXSLTPool xsltPool = new TestXSLTPool();
+        final ParallelTranslator translator = new ParallelTranslator("xsltFilter", xsltPool,
+                new VersionedEntityDecorator<>(xslt), new DefaultLocationFactory(), null, 4);
+        Assert.assertEquals(4, xsltPool.borrowed);
+
+        final List<String> output = new ArrayList<>();
+        try {
+            for (int i = 0; i < 100; i++) {
+                translator.submit(createDocument(String.valueOf(i)));
+                collect(translator.next(false), output);
+            }
+            ParallelTranslator.Result result = translator.next(true);
+            while (result != null) {
+                collect(result, output);
+                result = translator.next(true);
+            }
+        } finally {
+            translator.close();
+        }
+
+        Assert.assertEquals(0, xsltPool.borrowed);
+        Assert.assertEquals(100, output.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("<outs><out>" + i + "</out></outs>", output.get(i));
+        }
+    }
+
+    private void collect(final ParallelTranslator.Result result, final List<String> output) throws SAXException {
+        if (result != null) {
+            Assert.assertNull(result.getException());
+            final StringBuilder sb = new StringBuilder();
+            result.getOutput().fire(new DefaultHandler() {
+                @Override
+                public void startElement(final String uri, final String localName, final String qName,
+                        final Attributes attributes) {
+                    sb.append("<").append(localName).append(">");
+                }
+
+                @Override
+                public void endElement(final String uri, final String localName, final String qName) {
+                    sb.append("</").append(localName).append(">");
+                }
+
+                @Override
+                public void characters(final char[] ch, final int start, final int length) {
+                    sb.append(ch, start, length);
+                }
+            });
+            output.add(sb.toString());
+        }
+    }
+
+    private ParallelTranslator.Document createDocument(final String value) throws Exception {
+        final ParallelTranslator.Document document = new ParallelTranslator.Document(null);
+        document.startDocument();
+        document.startElement("", "records", "records", new AttributesImpl());
+        document.startElement("", "record", "record", new AttributesImpl());
+        final char[] chars = value.toCharArray();
+        document.characters(chars, 0, chars.length);
+        document.endElement("", "record", "record");
+        document.endElement("", "records", "records");
+        document.endDocument();
+        return document;
+    }
+}
@@ -201,4 +201,27 @@ public class TestInvalidXMLCharFilterReader {
     public void testReadArrayFullUTF16_XML11() throws IOException {
         readArrayFullUTF16(m_brokenutf16str, InvalidXMLCharFilterReader.XMLmode.XML_1_1);
     }
+
+    @Test
+    public void testReadArrayWithOffsetMatchesReadChar() throws IOException {
+        final Reader charReader = getReader(m_brokenutf16str, InvalidXMLCharFilterReader.XMLmode.XML_1_0);
+        final StringBuilder expected = new StringBuilder();
+        int ch = charReader.read();
+        while (ch != -1) {
+            expected.append((char) ch);
+            ch = charReader.read();
+        }
+
+        for (final int chunkSize : m_test_chunk_sizes) {
+            final Reader arrayReader = getReader(m_brokenutf16str, InvalidXMLCharFilterReader.XMLmode.XML_1_0);
+            final char[] buf = new char[chunkSize + 3];
+            final StringBuilder actual = new StringBuilder();
+            int len = arrayReader.read(buf, 3, chunkSize);
+            while (len != -1) {
+                actual.append(buf, 3, len);
+                len = arrayReader.read(buf, 3, chunkSize);
+            }
+            assertEquals(expected.toString(), actual.toString());
+        }
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.pipeline.server.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.pipeline.shared.StepLocation;
+import stroom.streamstore.shared.FindStreamCriteria;
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestSteppingSession extends StroomUnitTest {
+    @Test
+    public void testCodeChangeClearsStepData() {
+        final SteppingSession session = new SteppingSession();
+        final Map<String, String> code = new HashMap<>();
+        code.put("xsltFilter", "<xsl:stylesheet/>");
+        session.setCode(code);
+
+        final StepLocation location = new StepLocation(1, 1, 1);
+        final StepData stepData = new StepData();
+        session.putStepData(location, stepData);
+
+        // The same code should keep the step data.
+        session.setCode(new HashMap<>(code));
+        Assert.assertSame(stepData, session.getStepData(location));
+
+        // Changed code should not.
+        code.put("xsltFilter", "<xsl:stylesheet version=\"2.0\"/>");
+        session.setCode(code);
+        Assert.assertNull(session.getStepData(location));
+    }
+
+    @Test
+    public void testStepDataIsBounded() {
+        final SteppingSession session = new SteppingSession();
+        for (int i = 1; i <= 1000; i++) {
+            session.putStepData(new StepLocation(1, 1, i), new StepData());
+        }
+
+        Assert.assertNull(session.getStepData(new StepLocation(1, 1, 1)));
+        Assert.assertNotNull(session.getStepData(new StepLocation(1, 1, 1000)));
+    }
+
+    @Test
+    public void testCriteriaMatch() {
+        final SteppingSession session = new SteppingSession();
+        final FindStreamCriteria criteria = new FindStreamCriteria();
+        Assert.assertFalse(session.isCriteriaMatch(criteria));
+
+        final List<Long> streamIdList = new ArrayList<>(Arrays.asList(1L, 2L, 3L));
+        session.setStreamIdLists(criteria, streamIdList, streamIdList);
+        Assert.assertTrue(session.isCriteriaMatch(new FindStreamCriteria()));
+        Assert.assertEquals(streamIdList, session.getFilteredStreamIdList());
+
+        final FindStreamCriteria other = new FindStreamCriteria();
+        other.obtainStreamIdSet().add(2L);
+        Assert.assertFalse(session.isCriteriaMatch(other));
+    }
+}
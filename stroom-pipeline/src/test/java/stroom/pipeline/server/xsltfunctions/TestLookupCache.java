@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.pipeline.server.xsltfunctions;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.om.Sequence;
+import net.sf.saxon.value.StringValue;
+import stroom.util.test.StroomUnitTest;
+import stroom.xml.event.EventList;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLookupCache extends StroomUnitTest {
+    @Test
+    public void testHitsAndMisses() {
+        final LookupCache lookupCache = new LookupCache();
+        final Configuration configuration1 = new Configuration();
+        final Configuration configuration2 = new Configuration();
+        final EventList eventList1 = handler -> {
+        };
+        final EventList eventList2 = handler -> {
+        };
+        final Sequence sequence = new StringValue("test");
+
+        Assert.assertNull(lookupCache.get(configuration1, eventList1));
+        lookupCache.put(configuration1, eventList1, sequence);
+        Assert.assertSame(sequence, lookupCache.get(configuration1, eventList1));
+
+        // Trees must not be shared between configurations or values.
+        Assert.assertNull(lookupCache.get(configuration2, eventList1));
+        Assert.assertNull(lookupCache.get(configuration1, eventList2));
+
+        Assert.assertEquals(1, lookupCache.getHits());
+        Assert.assertEquals(3, lookupCache.getMisses());
+    }
+}
@@ -50,6 +50,10 @@ public class TestExecutionProfilerTopN extends StroomUnitTest {
             return id;
         }
 
+        @Override
+        public long getTotalBypassCount() {
+            return 0;
+        }
     }
 
     @Test
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.xml.converter.ds3;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestRegexAnalyser extends StroomUnitTest {
+    private static final String[] INPUTS = new String[] { "", "a", ",", "a,b", ",a", "abc,def,ghi", "abc\ndef\n",
+            "abc\r\ndef", "\n", "ab c\n", "no delimiter here", "user=bob ip=1.2.3.4", "foo:bar|baz|",
+            "2012-08-28 09:56:00 ERROR x", "abc\ndef,", "date=2012 user=", "\t\tabc\t" };
+
+    @Test
+    public void testRequiredLiteral() {
+        Assert.assertEquals(" ERROR", literal("^\\d+-\\d+ ERROR(.*)$"));
+        Assert.assertEquals("user=", literal("user=(\\S+)"));
+        Assert.assertEquals(" ip=", literal("(\\w+) ip=([0-9.]+)"));
+        Assert.assertEquals("abc", literal("abcd?e"));
+        Assert.assertEquals("abcd", literal("abcd+e"));
+        Assert.assertEquals(".", literal("a*\\.b*"));
+        Assert.assertEquals("\n", literal("[^\\n]*\\n"));
+
+        Assert.assertNull(literal("abc|def"));
+        Assert.assertNull(literal("(abc)?"));
+        Assert.assertNull(literal("\\d+"));
+        Assert.assertNull(literal("(?i)abc"));
+        Assert.assertNull(literal("\\Qabc\\E"));
+        Assert.assertNull(literal("\\x41bc"));
+        Assert.assertNull(RegexAnalyser.getRequiredLiteral("abc", Pattern.CASE_INSENSITIVE));
+    }
+
+    @Test
+    public void testDelimiterScanner() {
+        Assert.assertNotNull(RegexAnalyser.getDelimiterScanner("^(.*?)\\n", 0));
+        Assert.assertNotNull(RegexAnalyser.getDelimiterScanner("(.*?),", Pattern.DOTALL));
+        Assert.assertNotNull(RegexAnalyser.getDelimiterScanner("([^,]*),", 0));
+        Assert.assertNotNull(RegexAnalyser.getDelimiterScanner("^([^\\|]*)\\|", 0));
+
+        Assert.assertNull(RegexAnalyser.getDelimiterScanner("(.*?),", 0));
+        Assert.assertNull(RegexAnalyser.getDelimiterScanner("^(.*?),", Pattern.MULTILINE));
+        Assert.assertNull(RegexAnalyser.getDelimiterScanner("([^,]+),", 0));
+        Assert.assertNull(RegexAnalyser.getDelimiterScanner("([^,]*);", 0));
+        Assert.assertNull(RegexAnalyser.getDelimiterScanner("^(.*?)\\n+", 0));
+        Assert.assertNull(RegexAnalyser.getDelimiterScanner("^(.*?),", Pattern.CASE_INSENSITIVE));
+    }
+
+    @Test
+    public void testSameResultsAsRegex() {
+        final String[] patterns = new String[] { "^(.*?)\\n", "^(.*?),", "^(.*?)\\r\\n", "(.*?),", "([^,]*),",
+                "^([^\\|]*)\\|", "([^\\n]*)\\n", "user=(\\S+)", "(\\w+) ip=([0-9.]+)", "^\\d+-\\d+-\\d+ .* ERROR(.*)$",
+                "abcd?e?f*", "(a|b)c", "[^,]*,(d)" };
+        final int[] flags = new int[] { 0, Pattern.DOTALL, Pattern.MULTILINE, Pattern.DOTALL | Pattern.MULTILINE };
+
+        for (final String pattern : patterns) {
+            for (final int flag : flags) {
+                final RegexFactory factory = new RegexFactory(null, "regex", 0, -1, null, -1, pattern, flag);
+                final Regex regex = new Regex(null, factory);
+                for (final String input : INPUTS) {
+                    final String message = pattern + " (" + flag + ") on '" + input + "'";
+                    final Matcher matcher = Pattern.compile(pattern, flag).matcher(input);
+                    final char[] chars = input.toCharArray();
+                    final CharBuffer buffer = new CharBuffer(chars, 0, chars.length);
+                    regex.setInput(buffer);
+                    final Match match = regex.match();
+
+                    if (matcher.find(0)) {
+                        Assert.assertNotNull(message, match);
+                        for (int group = 0; group <= matcher.groupCount(); group++) {
+                            Assert.assertEquals(message, matcher.start(group), match.start(group));
+                            Assert.assertEquals(message, matcher.end(group), match.end(group));
+                        }
+                    } else {
+                        Assert.assertNull(message, match);
+                    }
+                }
+            }
+        }
+    }
+
+    private String literal(final String pattern) {
+        return RegexAnalyser.getRequiredLiteral(pattern, 0);
+    }
+}
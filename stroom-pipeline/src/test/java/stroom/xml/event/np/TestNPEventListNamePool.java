@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.xml.event.np;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestNPEventListNamePool extends StroomUnitTest {
+    private static final int NAMES = 5000;
+    private static final String[] URIS = new String[] { "", "reference-data:2", "event-logging:3" };
+
+    @Test
+    public void testConcurrentAllocate() throws Exception {
+        final NPEventListNamePool namePool = new NPEventListNamePool();
+        final ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<int[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final int offset = i;
+                futures.add(executorService.submit(() -> {
+                    final int[] codes = new int[NAMES * URIS.length];
+                    // Each thread allocates the names in a different order.
+                    for (int j = 0; j < codes.length; j++) {
+                        final int index = (j + offset * 997) % codes.length;
+                        codes[index] = namePool.allocate("", URIS[index % URIS.length], "name" + (index / URIS.length));
+                    }
+                    return codes;
+                }));
+            }
+
+            final int[] expected = futures.get(0).get();
+            for (final Future<int[]> future : futures) {
+                Assert.assertArrayEquals(expected, future.get());
+            }
+
+            for (int i = 0; i < expected.length; i++) {
+                Assert.assertEquals(URIS[i % URIS.length], namePool.getURI(expected[i]));
+                Assert.assertEquals("name" + (i / URIS.length), namePool.getLocalName(expected[i]));
+                Assert.assertEquals(expected[i],
+                        namePool.getFingerprint(URIS[i % URIS.length], "name" + (i / URIS.length)));
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSerialisation() throws Exception {
+        final NPEventListNamePool namePool = new NPEventListNamePool();
+        final int nameCode = namePool.allocate("", "reference-data:2", "key");
+        final int prefixedCode = namePool.allocate("rd", "reference-data:2", "value");
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(namePool);
+        }
+        final NPEventListNamePool copy;
+        try (final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            copy = (NPEventListNamePool) ois.readObject();
+        }
+
+        Assert.assertEquals("key", copy.getLocalName(nameCode));
+        Assert.assertEquals("rd:value", copy.getDisplayName(prefixedCode));
+        Assert.assertEquals(nameCode, copy.allocate("", "reference-data:2", "key"));
+        Assert.assertEquals(prefixedCode, copy.allocate("rd", "reference-data:2", "value"));
+    }
+}
@@ -22,11 +22,18 @@ public class ResultStore {
     private final Map<String, Items<Item>> childMap;
     private final long size;
     private final long totalSize;
+    private final UntrimmedResults untrimmedResults;
 
     public ResultStore(final Map<String, Items<Item>> childMap, final long size, final long totalSize) {
+        this(childMap, size, totalSize, null);
+    }
+
+    public ResultStore(final Map<String, Items<Item>> childMap, final long size, final long totalSize,
+            final UntrimmedResults untrimmedResults) {
         this.childMap = childMap;
         this.size = size;
         this.totalSize = totalSize;
+        this.untrimmedResults = untrimmedResults;
     }
 
     public Map<String, Items<Item>> getChildMap() {
@@ -40,4 +47,13 @@ public class ResultStore {
     public long getTotalSize() {
         return totalSize;
     }
+
+    /**
+     * @return The complete set of top level results if the store is able to
+     *         provide them, or null if only the trimmed results in the child
+     *         map are available.
+     */
+    public UntrimmedResults getUntrimmedResults() {
+        return untrimmedResults;
+    }
 }
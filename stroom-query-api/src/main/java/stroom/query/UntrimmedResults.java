@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.query;
+
+import java.io.IOException;
+
+/**
+ * Gives access to the complete set of results for a table, including grouped
+ * child and detail rows, i.e. results that have not been trimmed to fit the in
+ * memory result store. These results may be held on disk so are streamed to a
+ * handler rather than returned as a collection.
+ */
+public interface UntrimmedResults {
+    interface ItemHandler {
+        void handle(Item item) throws IOException;
+    }
+
+    /**
+     * Pass every result to the supplied handler. Results at each level are in
+     * sort order and every result is followed directly by its children.
+     *
+     * @param handler
+     *            The handler to receive each result.
+     */
+    void read(ItemHandler handler) throws IOException;
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.query;
+
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import stroom.mapreduce.OutputCollector;
+import stroom.mapreduce.UnsafePairQueue;
+import stroom.util.shared.Monitor;
+
+/**
+ * Combines items with the same group key as they are collected so that the
+ * memory used for grouped results depends on the number of groups rather than
+ * the number of rows. Items without a group key are kept as they are.
+ * <p>
+ * Producers block once the number of groups and ungrouped items held reaches
+ * the maximum size until the items are taken by {@link #take()}, which
+ * returns everything collected since the last call.
+ */
+public class ItemAggregator implements OutputCollector<String, Item> {
+    private static final int MAX_SIZE = 1000000;
+
+    private static class Store {
+        private final ConcurrentHashMap<String, Item> groups = new ConcurrentHashMap<>();
+        private final Queue<Item> ungrouped = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+    }
+
+    private final ItemReducer reducer;
+    private final Monitor monitor;
+    private final int maxSize;
+
+    // Producers share the read lock so they can add to the current store
+    // concurrently, the write lock is only needed to swap it when taking.
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final ReentrantLock fullLock = new ReentrantLock();
+    private final Condition notFull = fullLock.newCondition();
+
+    private volatile Store store = new Store();
+
+    public ItemAggregator(final int[] depths, final int maxDepth, final Monitor monitor) {
+        this(depths, maxDepth, monitor, MAX_SIZE);
+    }
+
+    public ItemAggregator(final int[] depths, final int maxDepth, final Monitor monitor, final int maxSize) {
+        this.reducer = new ItemReducer(depths, maxDepth);
+        this.monitor = monitor;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void collect(final String key, final Item value) {
+        // Items for groups we already hold don't need more space.
+        if (key == null || !store.groups.containsKey(key)) {
+            if (!awaitSpace()) {
+                return;
+            }
+        }
+
+        swapLock.readLock().lock();
+        try {
+            final Store current = store;
+            if (key == null) {
+                // We don't group items with null keys.
+                current.ungrouped.add(value);
+                current.size.incrementAndGet();
+            } else {
+                current.groups.compute(key, (k, existing) -> {
+                    if (existing == null) {
+                        current.size.incrementAndGet();
+                        return value;
+                    }
+                    reducer.combine(existing, value);
+                    return existing;
+                });
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Wait until there is room for more items.
+     *
+     * @return False if the monitor was terminated while waiting.
+     */
+    private boolean awaitSpace() {
+        if (store.size.get() < maxSize) {
+            return true;
+        }
+
+        fullLock.lock();
+        try {
+            while (store.size.get() >= maxSize) {
+                if (monitor != null && monitor.isTerminated()) {
+                    return false;
+                }
+                // Wake up now and again to check for termination.
+                notFull.await(1, TimeUnit.SECONDS);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            fullLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Take everything collected since the last call.
+     *
+     * @return A queue of the aggregated items or null if nothing has been
+     *         collected.
+     */
+    public UnsafePairQueue<String, Item> take() {
+        Store taken;
+        swapLock.writeLock().lock();
+        try {
+            taken = store;
+            if (taken.size.get() == 0) {
+                return null;
+            }
+            store = new Store();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        // Let any blocked producers carry on.
+        fullLock.lock();
+        try {
+            notFull.signalAll();
+        } finally {
+            fullLock.unlock();
+        }
+
+        final UnsafePairQueue<String, Item> queue = new UnsafePairQueue<>();
+        for (final Item item : taken.ungrouped) {
+            queue.collect(null, item);
+        }
+        for (final Entry<String, Item> entry : taken.groups.entrySet()) {
+            queue.collect(entry.getKey(), entry.getValue());
+        }
+        return queue;
+    }
+}
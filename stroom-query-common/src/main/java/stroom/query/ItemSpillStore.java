@@ -0,0 +1,622 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.query;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import stroom.dashboard.expression.Expression;
+import stroom.dashboard.expression.Generator;
+import stroom.mapreduce.Pair;
+import stroom.mapreduce.UnsafePairQueue;
+import stroom.util.io.CloseableUtil;
+import stroom.util.io.FileUtil;
+import stroom.util.logging.StroomLogger;
+
+/**
+ * Keeps a copy of every item received by a table, including grouped child and
+ * detail rows, so that the complete, untrimmed result set can be read back,
+ * e.g. for a download. Items are encoded as they are added and buffered until
+ * the memory budget is exceeded at which point they are reduced, sorted by
+ * group key and spilt to a run file on local disk. Reading performs a merge
+ * sort over all runs, combining items with the same group key, and then an
+ * external sort that orders the children of each parent by the table sort
+ * order so that every item can be output directly after its parent.
+ */
+public class ItemSpillStore implements UntrimmedResults {
+    private static final StroomLogger LOGGER = StroomLogger.getLogger(ItemSpillStore.class);
+
+    private static final int MIN_SORT_CHUNK_SIZE = 1000;
+
+    private static final Comparator<String> KEY_COMPARATOR = (o1, o2) -> {
+        // Items without a group key are never combined so we put them last.
+        if (o1 == null) {
+            return o2 == null ? 0 : 1;
+        } else if (o2 == null) {
+            return -1;
+        }
+        return o1.compareTo(o2);
+    };
+    private static final Comparator<String> PARENT_KEY_COMPARATOR = (o1, o2) -> {
+        // Top level items have no parent key so we put them first.
+        if (o1 == null) {
+            return o2 == null ? 0 : -1;
+        } else if (o2 == null) {
+            return 1;
+        }
+        return o1.compareTo(o2);
+    };
+    private static final Comparator<Item> ITEM_KEY_COMPARATOR = (o1, o2) -> KEY_COMPARATOR.compare(o1.groupKey,
+            o2.groupKey);
+
+    private final CompiledFields compiledFields;
+    private final CompiledDepths compiledDepths;
+    private final long memoryBudget;
+    private final Comparator<Item> hierarchyComparator;
+    private final List<File> runs = new ArrayList<>();
+
+    private File dir;
+    private List<byte[]> pendingBlocks = new ArrayList<>();
+    private long pendingBytes;
+    private int activeSpills;
+    private long spiltBytes;
+    private long spiltItems;
+    private boolean destroyed;
+
+    public ItemSpillStore(final CompiledFields compiledFields, final CompiledSorter compiledSorter,
+            final CompiledDepths compiledDepths, final long memoryBudget) {
+        this.compiledFields = compiledFields;
+        this.compiledDepths = compiledDepths;
+        this.memoryBudget = memoryBudget;
+
+        // Children are grouped under their parent key and then ordered by the
+        // table sort, or by group key if there is no sort.
+        Comparator<Item> comparator = (o1, o2) -> PARENT_KEY_COMPARATOR.compare(o1.parentKey, o2.parentKey);
+        if (compiledSorter.hasSort()) {
+            comparator = comparator.thenComparing(compiledSorter);
+        }
+        hierarchyComparator = comparator.thenComparing(ITEM_KEY_COMPARATOR);
+    }
+
+    /**
+     * Add a copy of all items in the supplied queue to the store. This must be
+     * called before the items are merged into the in memory result store as
+     * merging modifies the items.
+     */
+    public void add(final UnsafePairQueue<String, Item> queue) {
+        List<byte[]> blocks = null;
+        try {
+            // Encode the items before taking the lock so that other threads
+            // are not held up.
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (final RunWriter writer = new RunWriter(bytes)) {
+                for (final Pair<String, Item> pair : queue) {
+                    writer.write(pair.getValue());
+                }
+            }
+            final byte[] block = bytes.toByteArray();
+
+            synchronized (this) {
+                if (destroyed) {
+                    return;
+                }
+
+                pendingBlocks.add(block);
+                pendingBytes += block.length;
+                if (pendingBytes >= memoryBudget) {
+                    blocks = takePending();
+                }
+            }
+
+            if (blocks != null) {
+                spill(blocks);
+            }
+        } catch (final IOException e) {
+            LOGGER.error(e.getMessage(), e);
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void read(final ItemHandler handler) throws IOException {
+        final List<byte[]> blocks;
+        synchronized (this) {
+            // Wait for any spills that are in progress so that all items we
+            // have been given are either pending or in a run.
+            while (activeSpills > 0 && !destroyed) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+            if (destroyed) {
+                return;
+            }
+            blocks = takePending();
+        }
+
+        // Spill anything we have buffered so that all items are in runs that
+        // will not change while we read them.
+        spill(blocks);
+
+        final List<File> snapshot;
+        final long sortChunkSize;
+        synchronized (this) {
+            if (destroyed) {
+                return;
+            }
+            snapshot = new ArrayList<>(runs);
+            sortChunkSize = getSortChunkSize();
+        }
+
+        final HierarchySorter sorter = new HierarchySorter(sortChunkSize);
+        try {
+            merge(snapshot, sorter::add);
+            sorter.read(handler);
+        } finally {
+            sorter.destroy();
+        }
+    }
+
+    /**
+     * Delete all run files held by this store.
+     */
+    public synchronized void destroy() {
+        destroyed = true;
+        pendingBlocks.clear();
+        pendingBytes = 0;
+        runs.clear();
+        notifyAll();
+
+        if (dir != null) {
+            try {
+                FileUtil.forceDelete(dir);
+            } catch (final RuntimeException e) {
+                LOGGER.error(e.getMessage(), e);
+            }
+            dir = null;
+        }
+    }
+
+    private List<byte[]> takePending() {
+        final List<byte[]> blocks = pendingBlocks;
+        pendingBlocks = new ArrayList<>();
+        pendingBytes = 0;
+        activeSpills++;
+        return blocks;
+    }
+
+    private void spill(final List<byte[]> blocks) throws IOException {
+        try {
+            // Reduce the pending items so that each group key appears only
+            // once in the run.
+            final UnsafePairQueue<String, Item> reduced = new UnsafePairQueue<>();
+            final ItemPartitioner partitioner = new ItemPartitioner(compiledDepths.getDepths(),
+                    compiledDepths.getMaxDepth());
+            partitioner.setOutputCollector(reduced);
+            long bytes = 0;
+            long count = 0;
+            for (final byte[] block : blocks) {
+                try (final RunReader reader = new RunReader(new ByteArrayInputStream(block))) {
+                    Item item = reader.next();
+                    while (item != null) {
+                        partitioner.collect(item.groupKey, item);
+                        count++;
+                        item = reader.next();
+                    }
+                }
+                bytes += block.length;
+            }
+            if (count == 0) {
+                return;
+            }
+            partitioner.partition();
+
+            final List<Item> items = new ArrayList<>(reduced.size());
+            for (final Pair<String, Item> pair : reduced) {
+                items.add(pair.getValue());
+            }
+            Collections.sort(items, ITEM_KEY_COMPARATOR);
+
+            final File run = writeRun(items);
+            synchronized (this) {
+                if (destroyed) {
+                    deleteFile(run);
+                } else {
+                    runs.add(run);
+                    spiltBytes += bytes;
+                    spiltItems += count;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                activeSpills--;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized File createRunFile() throws IOException {
+        if (destroyed) {
+            throw new IOException("Store has been destroyed");
+        }
+        if (dir == null) {
+            dir = Files.createTempDirectory(FileUtil.getTempDir().toPath(), "resultStore").toFile();
+        }
+        return File.createTempFile("run", ".bin", dir);
+    }
+
+    private File writeRun(final List<Item> items) throws IOException {
+        final File file = createRunFile();
+        try (final RunWriter writer = new RunWriter(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (final Item item : items) {
+                writer.write(item);
+            }
+        }
+        return file;
+    }
+
+    private void deleteFile(final File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Unable to delete \"" + file.getAbsolutePath() + "\"");
+        }
+    }
+
+    private long getSortChunkSize() {
+        // Estimate how many items will fit in the memory budget from the
+        // average encoded size of the items we have seen so far.
+        if (spiltItems == 0) {
+            return MIN_SORT_CHUNK_SIZE;
+        }
+        final long averageSize = Math.max(1, spiltBytes / spiltItems);
+        return Math.max(MIN_SORT_CHUNK_SIZE, memoryBudget / averageSize);
+    }
+
+    /**
+     * Merge sort the supplied runs by group key, reducing items with the same
+     * key as we go.
+     */
+    private void merge(final List<File> files, final ItemHandler handler) throws IOException {
+        final ItemReducer reducer = new ItemReducer(compiledDepths.getDepths(), compiledDepths.getMaxDepth());
+        final PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, files.size()),
+                (o1, o2) -> ITEM_KEY_COMPARATOR.compare(o1.current, o2.current));
+        final List<RunReader> readers = new ArrayList<>(files.size());
+        try {
+            for (final File file : files) {
+                final RunReader reader = new RunReader(new BufferedInputStream(new FileInputStream(file)));
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+
+            final List<Item> group = new ArrayList<>();
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                final Item first = reader.current;
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+
+                if (first.groupKey == null) {
+                    handler.handle(first);
+
+                } else {
+                    group.clear();
+                    group.add(first);
+
+                    // Gather items with the same key from the other runs.
+                    reader = queue.peek();
+                    while (reader != null && first.groupKey.equals(reader.current.groupKey)) {
+                        queue.poll();
+                        group.add(reader.current);
+                        if (reader.advance()) {
+                            queue.add(reader);
+                        }
+                        reader = queue.peek();
+                    }
+
+                    if (group.size() == 1) {
+                        handler.handle(first);
+                    } else {
+                        final UnsafePairQueue<String, Item> output = new UnsafePairQueue<>();
+                        reducer.reduce(first.groupKey, group, output);
+                        for (final Pair<String, Item> pair : output) {
+                            handler.handle(pair.getValue());
+                        }
+                    }
+                }
+            }
+        } finally {
+            CloseableUtil.close(readers.toArray(new Closeable[readers.size()]));
+        }
+    }
+
+    /**
+     * Sorts merged items so that the children of each parent are together and
+     * in table sort order. Items are sorted in chunks that fit the memory
+     * budget, spilling each chunk to disk, and the chunks are merged into a
+     * single file on read. The offset of the first child of each parent is
+     * recorded so that the children can be read back directly after their
+     * parent.
+     */
+    private class HierarchySorter {
+        private final long chunkSize;
+        private final List<Item> chunk = new ArrayList<>();
+        private final List<File> files = new ArrayList<>();
+
+        HierarchySorter(final long chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        void add(final Item item) throws IOException {
+            chunk.add(item);
+            if (chunk.size() >= chunkSize) {
+                Collections.sort(chunk, hierarchyComparator);
+                files.add(writeRun(chunk));
+                chunk.clear();
+            }
+        }
+
+        void read(final ItemHandler handler) throws IOException {
+            Collections.sort(chunk, hierarchyComparator);
+
+            if (files.size() == 0) {
+                // Everything fitted in memory.
+                final Map<String, List<Item>> children = new HashMap<>();
+                for (final Item item : chunk) {
+                    children.computeIfAbsent(item.parentKey, k -> new ArrayList<>()).add(item);
+                }
+                chunk.clear();
+                readChildren(children, null, handler);
+                return;
+            }
+
+            files.add(writeRun(chunk));
+            chunk.clear();
+
+            final File sorted = createRunFile();
+            files.add(sorted);
+            final Map<String, Long> offsets = writeSorted(sorted);
+            readChildren(sorted, offsets, null, handler);
+        }
+
+        private void readChildren(final Map<String, List<Item>> children, final String parentKey,
+                final ItemHandler handler) throws IOException {
+            final List<Item> items = children.get(parentKey);
+            if (items != null) {
+                for (final Item item : items) {
+                    handler.handle(item);
+                    if (item.groupKey != null) {
+                        readChildren(children, item.groupKey, handler);
+                    }
+                }
+            }
+        }
+
+        private Map<String, Long> writeSorted(final File sorted) throws IOException {
+            final Map<String, Long> offsets = new HashMap<>();
+            final PriorityQueue<RunReader> queue = new PriorityQueue<>(files.size(),
+                    (o1, o2) -> hierarchyComparator.compare(o1.current, o2.current));
+            final List<RunReader> readers = new ArrayList<>(files.size());
+            final CountingOutputStream outputStream = new CountingOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(sorted)));
+            try (final RunWriter writer = new RunWriter(outputStream)) {
+                for (final File file : files) {
+                    if (file != sorted) {
+                        final RunReader reader = new RunReader(new BufferedInputStream(new FileInputStream(file)));
+                        readers.add(reader);
+                        if (reader.advance()) {
+                            queue.add(reader);
+                        }
+                    }
+                }
+
+                while (!queue.isEmpty()) {
+                    final RunReader reader = queue.poll();
+                    final Item item = reader.current;
+                    if (!offsets.containsKey(item.parentKey)) {
+                        offsets.put(item.parentKey, outputStream.count);
+                    }
+                    writer.write(item);
+                    if (reader.advance()) {
+                        queue.add(reader);
+                    }
+                }
+            } finally {
+                CloseableUtil.close(readers.toArray(new Closeable[readers.size()]));
+            }
+            return offsets;
+        }
+
+        private void readChildren(final File sorted, final Map<String, Long> offsets, final String parentKey,
+                final ItemHandler handler) throws IOException {
+            final Long offset = offsets.get(parentKey);
+            if (offset == null) {
+                return;
+            }
+
+            final FileInputStream inputStream = new FileInputStream(sorted);
+            try (final RunReader reader = new RunReader(new BufferedInputStream(inputStream))) {
+                inputStream.getChannel().position(offset);
+
+                Item item = reader.next();
+                while (item != null && PARENT_KEY_COMPARATOR.compare(parentKey, item.parentKey) == 0) {
+                    handler.handle(item);
+                    if (item.groupKey != null) {
+                        readChildren(sorted, offsets, item.groupKey, handler);
+                    }
+                    item = reader.next();
+                }
+            }
+        }
+
+        void destroy() {
+            for (final File file : files) {
+                deleteFile(file);
+            }
+            files.clear();
+        }
+    }
+
+    /**
+     * Counts the bytes written so that we know the offset of each item in the
+     * sorted file.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(final OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Writes items as a sequence of parent key, group key, depth and the
+     * state of each generator. A leading flag marks each record so that the
+     * end of the run can be detected.
+     */
+    private static class RunWriter implements Closeable {
+        private final DataOutputStream out;
+
+        RunWriter(final OutputStream outputStream) {
+            out = new DataOutputStream(outputStream);
+        }
+
+        void write(final Item item) throws IOException {
+            out.writeBoolean(true);
+            writeKey(item.parentKey);
+            writeKey(item.groupKey);
+            out.writeInt(item.depth);
+            out.writeInt(item.values.length);
+            for (final Object value : item.values) {
+                if (value == null) {
+                    out.writeBoolean(false);
+                } else if (value instanceof Generator) {
+                    out.writeBoolean(true);
+                    ((Generator) value).write(out);
+                } else {
+                    throw new IOException("Unable to write value of type " + value.getClass().getName());
+                }
+            }
+        }
+
+        private void writeKey(final String key) throws IOException {
+            if (key == null) {
+                out.writeInt(-1);
+            } else {
+                final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.writeBoolean(false);
+            out.close();
+        }
+    }
+
+    /**
+     * Reads items written by RunWriter, creating a new generator from the
+     * field expression for each value and restoring its state.
+     */
+    private class RunReader implements Closeable {
+        private final DataInputStream in;
+        private Item current;
+
+        RunReader(final InputStream inputStream) {
+            in = new DataInputStream(inputStream);
+        }
+
+        Item next() throws IOException {
+            advance();
+            return current;
+        }
+
+        boolean advance() throws IOException {
+            current = null;
+            if (in.readBoolean()) {
+                final String parentKey = readKey();
+                final String groupKey = readKey();
+                final int depth = in.readInt();
+                final Object[] values = new Object[in.readInt()];
+                for (int i = 0; i < values.length; i++) {
+                    if (in.readBoolean()) {
+                        final Expression expression = compiledFields.getField(i).getExpression();
+                        final Generator generator = expression.createGenerator();
+                        generator.read(in);
+                        values[i] = generator;
+                    }
+                }
+                current = new Item(parentKey, groupKey, values, depth);
+            }
+            return current != null;
+        }
+
+        private String readKey() throws IOException {
+            final int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            final byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
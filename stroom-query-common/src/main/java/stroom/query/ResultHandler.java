@@ -30,4 +30,6 @@ public interface ResultHandler {
     boolean isComplete();
 
     ResultStore getResultStore(String componentId);
+
+    void destroy();
 }
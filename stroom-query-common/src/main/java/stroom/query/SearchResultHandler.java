@@ -106,4 +106,11 @@ public class SearchResultHandler implements ResultHandler {
         }
         return null;
     }
+
+    @Override
+    public void destroy() {
+        for (final TablePayloadHandler tablePayloadHandler : handlerMap.values()) {
+            tablePayloadHandler.destroy();
+        }
+    }
 }
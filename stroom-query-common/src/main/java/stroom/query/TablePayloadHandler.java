@@ -23,6 +23,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
+import stroom.dashboard.expression.FieldIndexMap;
 import stroom.query.Items.RemoveHandler;
 import stroom.query.shared.Field;
 import stroom.mapreduce.Pair;
@@ -34,10 +35,15 @@ import stroom.node.shared.ClientProperties;
 import stroom.util.config.StroomProperties;
 import stroom.util.logging.StroomLogger;
 import stroom.util.shared.HasTerminate;
+import stroom.util.shared.ModelStringUtil;
 
 public class TablePayloadHandler implements PayloadHandler {
     private static final StroomLogger LOGGER = StroomLogger.getLogger(TablePayloadHandler.class);
 
+    public static final String SPILL_ENABLED_PROPERTY = "stroom.search.resultStore.spillEnabled";
+    public static final String SPILL_MEMORY_BUDGET_PROPERTY = "stroom.search.resultStore.spillMemoryBudget";
+    private static final long DEFAULT_SPILL_MEMORY_BUDGET = 64 * 1024 * 1024;
+
     private static class ResultStoreCreator implements Reader<String, Item> {
         private final CompiledSorter sorter;
         private final Map<String, Items<Item>> childMap;
@@ -47,8 +53,8 @@ public class TablePayloadHandler implements PayloadHandler {
             childMap = new HashMap<>();
         }
 
-        public ResultStore create(final long size, final long totalSize) {
-            return new ResultStore(childMap, size, totalSize);
+        public ResultStore create(final long size, final long totalSize, final UntrimmedResults untrimmedResults) {
+            return new ResultStore(childMap, size, totalSize, untrimmedResults);
         }
 
         @Override
@@ -129,6 +135,7 @@ public class TablePayloadHandler implements PayloadHandler {
     private final CompiledSorter compiledSorter;
     private final CompiledDepths compiledDepths;
     private final int[] storeTrimSizes;
+    private final ItemSpillStore spillStore;
     private volatile PairQueue<String, Item> currentQueue;
     private volatile ResultStore resultStore;
     private final AtomicLong totalResults = new AtomicLong();
@@ -140,6 +147,28 @@ public class TablePayloadHandler implements PayloadHandler {
         this.compiledSorter = new CompiledSorter(fields);
         this.compiledDepths = new CompiledDepths(fields, showDetails);
         this.storeTrimSizes = getStoreTrimSizes(storeTrimSizes);
+        this.spillStore = createSpillStore(fields);
+    }
+
+    private ItemSpillStore createSpillStore(final List<Field> fields) {
+        if (!StroomProperties.getBooleanProperty(SPILL_ENABLED_PROPERTY, false)) {
+            return null;
+        }
+
+        long memoryBudget = DEFAULT_SPILL_MEMORY_BUDGET;
+        try {
+            final String value = StroomProperties.getProperty(SPILL_MEMORY_BUDGET_PROPERTY);
+            if (value != null && value.trim().length() > 0) {
+                memoryBudget = ModelStringUtil.parseByteSizeString(value);
+            }
+        } catch (final Exception e) {
+            LOGGER.warn(e.getMessage());
+        }
+
+        // The spill store recreates generators from the field expressions when
+        // it reads items back so it needs its own compiled copy of the fields.
+        final CompiledFields compiledFields = new CompiledFields(null, fields, new FieldIndexMap(true));
+        return new ItemSpillStore(compiledFields, compiledSorter, compiledDepths, memoryBudget);
     }
 
     private int[] getStoreTrimSizes(final int[] storeTrimSizes) {
@@ -251,6 +280,14 @@ public class TablePayloadHandler implements PayloadHandler {
          */
         totalResults.getAndAdd(newQueue.size());
 
+        /*
+         * Keep a copy of the untrimmed results before merging modifies the
+         * items.
+         */
+        if (spillStore != null) {
+            spillStore.add(newQueue);
+        }
+
         if (currentQueue == null) {
             currentQueue = updateResultStore(newQueue);
 
@@ -297,7 +334,7 @@ public class TablePayloadHandler implements PayloadHandler {
         }
 
         // Update the result store reference to point at this new store.
-        this.resultStore = resultStoreCreator.create(size, totalResults.get());
+        this.resultStore = resultStoreCreator.create(size, totalResults.get(), spillStore);
 
         // Give back the remaining queue items ready for the next result.
         return remaining;
@@ -305,7 +342,8 @@ public class TablePayloadHandler implements PayloadHandler {
 
     @Override
     public boolean shouldTerminateSearch() {
-        if (!compiledSorter.hasSort() && !compiledDepths.hasGroupBy()) {
+        // If we are keeping untrimmed results then we want all of them.
+        if (spillStore == null && !compiledSorter.hasSort() && !compiledDepths.hasGroupBy()) {
             if (resultStore != null && resultStore.getTotalSize() >= storeTrimSizes[0]) {
                 return true;
             }
@@ -316,4 +354,10 @@ public class TablePayloadHandler implements PayloadHandler {
     public ResultStore getResultStore() {
         return resultStore;
     }
+
+    public void destroy() {
+        if (spillStore != null) {
+            spillStore.destroy();
+        }
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.query;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.dashboard.expression.FieldIndexMap;
+import stroom.dashboard.expression.Generator;
+import stroom.mapreduce.Pair;
+import stroom.mapreduce.UnsafePairQueue;
+import stroom.query.shared.Field;
+import stroom.query.shared.IndexField;
+import stroom.query.shared.IndexFieldsMap;
+import stroom.query.shared.TableSettings;
+import stroom.util.task.MonitorImpl;
+import stroom.util.test.StroomJUnit4ClassRunner;
+import stroom.util.test.StroomUnitTest;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestItemAggregator extends StroomUnitTest {
+    @Test
+    public void testGroupedDeltas() {
+        final Field user = new Field("User");
+        user.setExpression("${User}");
+        user.setGroup(0);
+        final Field count = new Field("Count");
+        count.setExpression("count()");
+
+        final TableSettings tableSettings = new TableSettings();
+        tableSettings.addField(user);
+        tableSettings.addField(count);
+
+        final FieldIndexMap fieldIndexMap = new FieldIndexMap(true);
+        final CompiledDepths compiledDepths = new CompiledDepths(tableSettings.getFields(), tableSettings.showDetail());
+        final CompiledFields compiledFields = new CompiledFields(createIndexFieldsMap(), tableSettings.getFields(),
+                fieldIndexMap);
+        final ItemAggregator aggregator = new ItemAggregator(compiledDepths.getDepths(), compiledDepths.getMaxDepth(),
+                new MonitorImpl());
+        final ItemMapper itemMapper = new ItemMapper(aggregator, compiledFields, compiledDepths.getMaxDepth(),
+                compiledDepths.getMaxGroupDepth());
+
+        collect(itemMapper, fieldIndexMap, 0, 6000);
+        final UnsafePairQueue<String, Item> first = aggregator.take();
+        Assert.assertEquals(10, first.size());
+        Assert.assertEquals(6000, sumCounts(first));
+
+        // The next take only contains rows collected since the last one.
+        collect(itemMapper, fieldIndexMap, 6000, 10000);
+        final UnsafePairQueue<String, Item> second = aggregator.take();
+        Assert.assertEquals(10, second.size());
+        Assert.assertEquals(4000, sumCounts(second));
+
+        Assert.assertNull(aggregator.take());
+    }
+
+    @Test
+    public void testProducersBlockWhenFull() throws InterruptedException {
+        final Field user = new Field("User");
+        user.setExpression("${User}");
+
+        final TableSettings tableSettings = new TableSettings();
+        tableSettings.addField(user);
+
+        final FieldIndexMap fieldIndexMap = new FieldIndexMap(true);
+        final CompiledDepths compiledDepths = new CompiledDepths(tableSettings.getFields(), tableSettings.showDetail());
+        final CompiledFields compiledFields = new CompiledFields(createIndexFieldsMap(), tableSettings.getFields(),
+                fieldIndexMap);
+        final ItemAggregator aggregator = new ItemAggregator(compiledDepths.getDepths(), compiledDepths.getMaxDepth(),
+                new MonitorImpl(), 10);
+        final ItemMapper itemMapper = new ItemMapper(aggregator, compiledFields, compiledDepths.getMaxDepth(),
+                compiledDepths.getMaxGroupDepth());
+
+        // Ungrouped rows can't be combined so the producer has to wait for
+        // them to be taken.
+        final AtomicInteger collected = new AtomicInteger();
+        final CountDownLatch full = new CountDownLatch(10);
+        final Thread producer = new Thread(() -> {
+            for (int i = 0; i < 20; i++) {
+                collect(itemMapper, fieldIndexMap, i, i + 1);
+                collected.incrementAndGet();
+                full.countDown();
+            }
+        });
+        producer.start();
+
+        // Wait for the aggregator to fill and the producer to block waiting
+        // for space.
+        Assert.assertTrue(full.await(10, TimeUnit.SECONDS));
+        awaitBlocked(producer);
+        Assert.assertEquals(10, collected.get());
+
+        // Taking the items lets the producer add the rest.
+        Assert.assertEquals(10, aggregator.take().size());
+        producer.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertFalse(producer.isAlive());
+        Assert.assertEquals(20, collected.get());
+        Assert.assertEquals(10, aggregator.take().size());
+    }
+
+    private void awaitBlocked(final Thread thread) throws InterruptedException {
+        final long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (thread.getState() != Thread.State.TIMED_WAITING) {
+            Assert.assertTrue("Timed out waiting for " + thread.getName() + " to block",
+                    System.currentTimeMillis() < timeout);
+            Thread.sleep(10);
+        }
+    }
+
+    private IndexFieldsMap createIndexFieldsMap() {
+        final IndexFieldsMap indexFieldsMap = new IndexFieldsMap();
+        indexFieldsMap.put(IndexField.createField("User"));
+        return indexFieldsMap;
+    }
+
+    private void collect(final ItemMapper itemMapper, final FieldIndexMap fieldIndexMap, final int from,
+            final int to) {
+        final int userIndex = fieldIndexMap.get("User");
+        for (int i = from; i < to; i++) {
+            final String[] values = new String[fieldIndexMap.size()];
+            values[userIndex] = "user" + (i % 10);
+            itemMapper.collect(null, values);
+        }
+    }
+
+    private long sumCounts(final UnsafePairQueue<String, Item> queue) {
+        long total = 0;
+        for (final Pair<String, Item> pair : queue) {
+            final Generator generator = (Generator) pair.getValue().getValues()[1];
+            total += ((Number) generator.eval()).longValue();
+        }
+        return total;
+    }
+}
@@ -74,6 +74,7 @@ public class StatStoreSearchResultCollector implements SearchResultCollector {
     @Override
     public void destroy() {
         task.terminate();
+        resultHandler.destroy();
     }
 
     @Override
@@ -0,0 +1,480 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.util.collections;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed set of non-negative longs in the style of a roaring bitmap.
+ * Values are split into a 48 bit key and a 16 bit low part. Each key has a
+ * container for its low parts which is a sorted array while it holds up to
+ * 4096 values and a 65536 bit bitmap beyond that, so dense runs of ids cost
+ * about a bit each and sparse ids about two bytes each. Values are always
+ * iterated in ascending order.
+ */
+public class LongBitmap implements Externalizable {
+    private static final long serialVersionUID = -2934870938487146022L;
+
+    public interface LongIterator {
+        boolean hasNext();
+
+        long next();
+    }
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final byte ARRAY_TYPE = 0;
+    private static final byte BITMAP_TYPE = 1;
+
+    private long[] keys = new long[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    public LongBitmap() {
+        // Default constructor necessary for serialisation.
+    }
+
+    public static LongBitmap of(final long... values) {
+        final LongBitmap bitmap = new LongBitmap();
+        for (final long value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    public void add(final long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative values are not supported: " + value);
+        }
+
+        final long key = value >>> 16;
+        int index = findContainer(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+        containers[index] = containers[index].add((char) value);
+    }
+
+    public boolean contains(final long value) {
+        if (value < 0) {
+            return false;
+        }
+        final int index = findContainer(value >>> 16);
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Add every value in the supplied bitmap to this one.
+     */
+    public void or(final LongBitmap other) {
+        for (int i = 0; i < other.size; i++) {
+            final long key = other.keys[i];
+            final int index = findContainer(key);
+            if (index < 0) {
+                insertContainer(-index - 1, key, other.containers[i].copy());
+            } else {
+                containers[index] = containers[index].or(other.containers[i]);
+            }
+        }
+    }
+
+    public long getCardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public LongIterator iterator() {
+        return new LongIterator() {
+            private int containerIndex = -1;
+            private long high;
+            private CharCursor cursor;
+
+            @Override
+            public boolean hasNext() {
+                while (cursor == null || !cursor.hasNext()) {
+                    containerIndex++;
+                    if (containerIndex >= size) {
+                        return false;
+                    }
+                    high = keys[containerIndex] << 16;
+                    cursor = containers[containerIndex].cursor();
+                }
+                return true;
+            }
+
+            @Override
+            public long next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return high | cursor.next();
+            }
+        };
+    }
+
+    public long[] toArray() {
+        final long[] array = new long[(int) getCardinality()];
+        final LongIterator iterator = iterator();
+        int i = 0;
+        while (iterator.hasNext()) {
+            array[i++] = iterator.next();
+        }
+        return array;
+    }
+
+    public void write(final DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(keys[i]);
+            containers[i].write(out);
+        }
+    }
+
+    public void read(final DataInput in) throws IOException {
+        final int count = in.readInt();
+        keys = new long[Math.max(4, count)];
+        containers = new Container[keys.length];
+        size = 0;
+        for (int i = 0; i < count; i++) {
+            final long key = in.readLong();
+            final byte type = in.readByte();
+            final Container container;
+            if (type == ARRAY_TYPE) {
+                container = ArrayContainer.read(in);
+            } else if (type == BITMAP_TYPE) {
+                container = BitmapContainer.read(in);
+            } else {
+                throw new IOException("Unknown container type " + type);
+            }
+            keys[size] = key;
+            containers[size] = container;
+            size++;
+        }
+    }
+
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+        write(out);
+    }
+
+    @Override
+    public void readExternal(final ObjectInput in) throws IOException {
+        read(in);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o == this) {
+            return true;
+        } else if (!(o instanceof LongBitmap)) {
+            return false;
+        }
+
+        final LongBitmap other = (LongBitmap) o;
+        final LongIterator i1 = iterator();
+        final LongIterator i2 = other.iterator();
+        while (i1.hasNext() && i2.hasNext()) {
+            if (i1.next() != i2.next()) {
+                return false;
+            }
+        }
+        return !i1.hasNext() && !i2.hasNext();
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 0;
+        final LongIterator iterator = iterator();
+        while (iterator.hasNext()) {
+            final long value = iterator.next();
+            hashCode = 31 * hashCode + (int) (value ^ (value >>> 32));
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "LongBitmap{cardinality=" + getCardinality() + "}";
+    }
+
+    private int findContainer(final long key) {
+        // Ids are usually added in ascending order so check the last
+        // container first.
+        if (size == 0 || keys[size - 1] < key) {
+            return -(size + 1);
+        }
+        if (keys[size - 1] == key) {
+            return size - 1;
+        }
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertContainer(final int index, final long key, final Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private interface CharCursor {
+        boolean hasNext();
+
+        int next();
+    }
+
+    private abstract static class Container {
+        abstract Container add(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract Container copy();
+
+        abstract CharCursor cursor();
+
+        abstract void write(DataOutput out) throws IOException;
+
+        Container or(final Container other) {
+            Container result = this;
+            final CharCursor cursor = other.cursor();
+            while (cursor.hasNext()) {
+                result = result.add((char) cursor.next());
+            }
+            return result;
+        }
+    }
+
+    private static class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(final char[] values, final int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(final char value) {
+            int index;
+            if (cardinality == 0 || values[cardinality - 1] < value) {
+                index = cardinality;
+            } else {
+                index = Arrays.binarySearch(values, 0, cardinality, value);
+                if (index >= 0) {
+                    return this;
+                }
+                index = -index - 1;
+            }
+
+            if (cardinality >= ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        boolean contains(final char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(1, cardinality)), cardinality);
+        }
+
+        @Override
+        CharCursor cursor() {
+            return new CharCursor() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < cardinality;
+                }
+
+                @Override
+                public int next() {
+                    return values[index++];
+                }
+            };
+        }
+
+        @Override
+        void write(final DataOutput out) throws IOException {
+            out.writeByte(ARRAY_TYPE);
+            out.writeShort(cardinality);
+            for (int i = 0; i < cardinality; i++) {
+                out.writeChar(values[i]);
+            }
+        }
+
+        static ArrayContainer read(final DataInput in) throws IOException {
+            final int cardinality = in.readUnsignedShort();
+            final char[] values = new char[Math.max(1, cardinality)];
+            for (int i = 0; i < cardinality; i++) {
+                values[i] = in.readChar();
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+
+        private BitmapContainer toBitmap() {
+            final BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[BITMAP_WORDS], 0);
+        }
+
+        BitmapContainer(final long[] words, final int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(final char value) {
+            final int index = value >>> 6;
+            final long bit = 1L << value;
+            if ((words[index] & bit) == 0) {
+                words[index] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(final char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        Container or(final Container other) {
+            if (other instanceof BitmapContainer) {
+                final long[] otherWords = ((BitmapContainer) other).words;
+                cardinality = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] |= otherWords[i];
+                    cardinality += Long.bitCount(words[i]);
+                }
+                return this;
+            }
+            return super.or(other);
+        }
+
+        @Override
+        CharCursor cursor() {
+            return new CharCursor() {
+                private int wordIndex;
+                private long word = words[0];
+
+                @Override
+                public boolean hasNext() {
+                    while (word == 0) {
+                        wordIndex++;
+                        if (wordIndex >= BITMAP_WORDS) {
+                            return false;
+                        }
+                        word = words[wordIndex];
+                    }
+                    return true;
+                }
+
+                @Override
+                public int next() {
+                    hasNext();
+                    final int value = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                    // Clear the lowest set bit.
+                    word &= word - 1;
+                    return value;
+                }
+            };
+        }
+
+        @Override
+        void write(final DataOutput out) throws IOException {
+            out.writeByte(BITMAP_TYPE);
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                out.writeLong(words[i]);
+            }
+        }
+
+        static BitmapContainer read(final DataInput in) throws IOException {
+            final long[] words = new long[BITMAP_WORDS];
+            int cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] = in.readLong();
+                cardinality += Long.bitCount(words[i]);
+            }
+            return new BitmapContainer(words, cardinality);
+        }
+    }
+}
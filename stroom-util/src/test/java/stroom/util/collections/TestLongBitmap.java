@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stroom.util.collections;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import stroom.util.test.StroomJUnit4ClassRunner;
+
+@RunWith(StroomJUnit4ClassRunner.class)
+public class TestLongBitmap {
+    @Test
+    public void testAgainstTreeSet() {
+        final Random random = new Random(1234);
+        final TreeSet<Long> expected = new TreeSet<>();
+        final LongBitmap bitmap = new LongBitmap();
+
+        // Mix sparse values across many containers with dense runs that force
+        // bitmap containers.
+        for (int i = 0; i < 20000; i++) {
+            final long value = (long) (random.nextDouble() * 10000000000L);
+            expected.add(value);
+            bitmap.add(value);
+        }
+        for (long i = 1000000; i < 1020000; i++) {
+            expected.add(i);
+            bitmap.add(i);
+        }
+        for (long i = 5000; i >= 0; i -= 3) {
+            expected.add(i);
+            bitmap.add(i);
+        }
+
+        assertEquals(expected, bitmap);
+        Assert.assertTrue(bitmap.contains(1000500));
+        Assert.assertFalse(bitmap.contains(5001));
+        Assert.assertFalse(bitmap.contains(-1));
+    }
+
+    @Test
+    public void testOr() {
+        final LongBitmap a = new LongBitmap();
+        final LongBitmap b = new LongBitmap();
+        final TreeSet<Long> expected = new TreeSet<>();
+        for (long i = 0; i < 70000; i += 2) {
+            a.add(i);
+            expected.add(i);
+        }
+        for (long i = 1; i < 200000; i += 5) {
+            b.add(i);
+            expected.add(i);
+        }
+
+        a.or(b);
+        assertEquals(expected, a);
+
+        // The source of the union must not be changed by later additions.
+        a.add(199999);
+        Assert.assertFalse(b.contains(199999));
+    }
+
+    @Test
+    public void testSerialisation() throws IOException, ClassNotFoundException {
+        final LongBitmap bitmap = LongBitmap.of(1, 2, 3, 65536, 1L << 40);
+        for (long i = 100000; i < 110000; i++) {
+            bitmap.add(i);
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.write(new DataOutputStream(bytes));
+        final LongBitmap copy = new LongBitmap();
+        copy.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(bitmap, copy);
+        Assert.assertEquals(bitmap.getCardinality(), copy.getCardinality());
+
+        final ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream oos = new ObjectOutputStream(objectBytes)) {
+            oos.writeObject(bitmap);
+        }
+        try (final ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(objectBytes.toByteArray()))) {
+            Assert.assertEquals(bitmap, ois.readObject());
+        }
+    }
+
+    private void assertEquals(final TreeSet<Long> expected, final LongBitmap bitmap) {
+        Assert.assertEquals(expected.size(), bitmap.getCardinality());
+        final long[] array = bitmap.toArray();
+        int i = 0;
+        for (final Long value : expected) {
+            Assert.assertEquals(value.longValue(), array[i++]);
+        }
+    }
+}